@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen;
+
+/**
+ * A stable merge sort of <code>int</code> indexes, for tables kept in parallel primitive arrays:
+ * the indexes of the table rows are sorted by a comparator that looks the rows up, so the rows are
+ * neither moved nor boxed.
+ * 
+ * <pre>
+ * int[] order = new int[size];
+ * for (int i = 0; i &lt; size; i++) {
+ * 	order[i] = i;
+ * }
+ * IndexSort.sort(order, new int[size], 0, size, (row1, row2) -&gt; Long.compare(keys[row1], keys[row2]));
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class IndexSort {
+	
+	/**
+	 * Compares two indexes by the rows they point to.
+	 */
+	@FunctionalInterface
+	public interface Comparator {
+		
+		/**
+		 * Compares two indexes.
+		 * 
+		 * @param index1 The first index.
+		 * @param index2 The second index.
+		 * 
+		 * @return A negative number, zero or a positive number if the first row is lower than,
+		 *         equal to or greater than the second one.
+		 */
+		int compare(int index1, int index2);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private IndexSort() {
+	}
+	
+	/**
+	 * Sorts a range of indexes. Equal rows keep their order.
+	 * 
+	 * @param order The indexes.
+	 * @param buffer A buffer at least as large as <code>to</code>; its contents are overwritten.
+	 * @param from The first position, inclusive.
+	 * @param to The last position, exclusive.
+	 * @param comparator The comparator of the rows.
+	 */
+	public static void sort(int[] order, int[] buffer, int from, int to, Comparator comparator) {
+		if (to - from < 2) {
+			return;
+		}
+		int middle = from + to >>> 1;
+		sort(order, buffer, from, middle, comparator);
+		sort(order, buffer, middle, to, comparator);
+		if (comparator.compare(order[middle - 1], order[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(order, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for (int i = from; i < to; i++) {
+			if (right >= to || left < middle && comparator.compare(buffer[left], buffer[right]) <= 0) {
+				order[i] = buffer[left++];
+			} else {
+				order[i] = buffer[right++];
+			}
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The fixed size entries of a file, mapped in memory and sorted by the <code>long</code> key at the
+ * start of each entry, compared as unsigned numbers. The file is mapped in chunks that hold whole
+ * entries, so files larger than a single mapping are supported, and the entries of a key are found
+ * with a binary search.
+ * 
+ * <pre>
+ * SortedEntries entries = SortedEntries.map(channel, HEADER_SIZE, count, ENTRY_SIZE, 1 &lt;&lt; 30);
+ * for (long entry = entries.lowerBound(key); entries.hasKey(entry, key); entry++) {
+ * 	int value = entries.getInt(entry, 8);
+ * }
+ * </pre>
+ * 
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class SortedEntries {
+	
+	@SuppressWarnings("javadoc")
+	private final ByteBuffer[] chunks;
+	
+	@SuppressWarnings("javadoc")
+	private final int entrySize;
+	
+	@SuppressWarnings("javadoc")
+	private final int entriesPerChunk;
+	
+	@SuppressWarnings("javadoc")
+	private final long size;
+	
+	@SuppressWarnings("javadoc")
+	private SortedEntries(ByteBuffer[] chunks, int entrySize, int entriesPerChunk, long size) {
+		this.chunks = chunks;
+		this.entrySize = entrySize;
+		this.entriesPerChunk = entriesPerChunk;
+		this.size = size;
+	}
+	
+	/**
+	 * Maps the entries of a file. The channel may be closed afterwards.
+	 * 
+	 * @param channel The file channel.
+	 * @param offset The position of the first entry.
+	 * @param size The number of entries.
+	 * @param entrySize The size of each entry, in bytes, at least <code>8</code>.
+	 * @param chunkSize The maximum size of each mapping, in bytes, at least the entry size.
+	 * 
+	 * @return The entries.
+	 * 
+	 * @throws IOException If the file can't be mapped.
+	 */
+	public static SortedEntries map(FileChannel channel, long offset, long size, int entrySize, int chunkSize)
+			throws IOException {
+		int entriesPerChunk = chunkSize / entrySize;
+		long chunkBytes = (long) entriesPerChunk * entrySize;
+		long bytes = size * entrySize;
+		ByteBuffer[] chunks = new ByteBuffer[(int) ((bytes + chunkBytes - 1) / chunkBytes)];
+		for (int i = 0; i < chunks.length; i++) {
+			long position = i * chunkBytes;
+			chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + position, Math.min(chunkBytes, bytes - position));
+		}
+		return new SortedEntries(chunks, entrySize, entriesPerChunk, size);
+	}
+	
+	/**
+	 * Retrieves the number of entries.
+	 * 
+	 * @return The number of entries.
+	 */
+	public long size() {
+		return size;
+	}
+	
+	/**
+	 * Finds the first entry with a key not lower than the given one.
+	 * 
+	 * @param key The key.
+	 * 
+	 * @return The entry, or the number of entries if all keys are lower.
+	 */
+	public long lowerBound(long key) {
+		long low = 0;
+		long high = size;
+		while (low < high) {
+			long middle = low + high >>> 1;
+			if (Long.compareUnsigned(getKey(middle), key) < 0) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Checks whether an entry exists and has the given key, which ends the scan of the entries of a
+	 * key started at {@link #lowerBound(long)}.
+	 * 
+	 * @param entry The entry.
+	 * @param key The key.
+	 * 
+	 * @return Whether the entry has the key.
+	 */
+	public boolean hasKey(long entry, long key) {
+		return entry < size && getKey(entry) == key;
+	}
+	
+	/**
+	 * Retrieves the key of an entry.
+	 * 
+	 * @param entry The entry.
+	 * 
+	 * @return The key.
+	 */
+	public long getKey(long entry) {
+		return getLong(entry, 0);
+	}
+	
+	/**
+	 * Reads a <code>long</code> field of an entry.
+	 * 
+	 * @param entry The entry.
+	 * @param field The position of the field in the entry.
+	 * 
+	 * @return The value.
+	 */
+	public long getLong(long entry, int field) {
+		return chunk(entry).getLong(offset(entry) + field);
+	}
+	
+	/**
+	 * Reads an <code>int</code> field of an entry.
+	 * 
+	 * @param entry The entry.
+	 * @param field The position of the field in the entry.
+	 * 
+	 * @return The value.
+	 */
+	public int getInt(long entry, int field) {
+		return chunk(entry).getInt(offset(entry) + field);
+	}
+	
+	/**
+	 * Reads a <code>short</code> field of an entry.
+	 * 
+	 * @param entry The entry.
+	 * @param field The position of the field in the entry.
+	 * 
+	 * @return The value.
+	 */
+	public short getShort(long entry, int field) {
+		return chunk(entry).getShort(offset(entry) + field);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private ByteBuffer chunk(long entry) {
+		return chunks[(int) (entry / entriesPerChunk)];
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int offset(long entry) {
+		return (int) (entry % entriesPerChunk) * entrySize;
+	}
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
+/**
+ * A pool of worker threads fed through a bounded queue, shared by the batch processors. When the
+ * workers can't keep up, the thread that submits the tasks blocks, so the input is consumed at the
+ * pace of the workers and never fully loaded in memory.
+ * 
+ * <p>
+ * A task that throws doesn't stop its worker: the first failure is recorded, the remaining tasks
+ * are discarded, {@link #submit(Object)} stops accepting tasks and {@link #finish()} throws the
+ * failure once all workers are stopped. So the submitting thread never waits for a worker that is
+ * gone. Closing a pool that was not finished cancels it: the queue is cleared and the workers are
+ * interrupted.
+ * 
+ * <pre>
+ * try (WorkerPool&lt;String&gt; pool = new WorkerPool&lt;&gt;("batch", 8, 32, worker -&gt; this::analyze)) {
+ * 	while (fens.hasNext() &amp;&amp; pool.submit(fens.next())) {
+ * 	}
+ * 	pool.finish();
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ * 
+ * @param <T> The type of the tasks.
+ */
+public final class WorkerPool<T> implements AutoCloseable {
+	
+	@SuppressWarnings("javadoc")
+	private static final Object END = new Object();
+	
+	@SuppressWarnings("javadoc")
+	private final String name;
+	
+	@SuppressWarnings("javadoc")
+	private final BlockingQueue<Object> queue;
+	
+	@SuppressWarnings("javadoc")
+	private final Thread[] threads;
+	
+	@SuppressWarnings("javadoc")
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	
+	@SuppressWarnings("javadoc")
+	private volatile boolean cancelled;
+	
+	@SuppressWarnings("javadoc")
+	private boolean finished;
+	
+	/**
+	 * Creates a pool and starts its worker threads, which are daemon threads named after the pool
+	 * and their indexes.
+	 * 
+	 * @param name The name of the pool.
+	 * @param threads The number of worker threads.
+	 * @param queueCapacity The number of tasks that may wait for a worker.
+	 * @param workerFactory Creates the worker of each thread, given the thread index.
+	 */
+	public WorkerPool(String name, int threads, int queueCapacity, IntFunction<Worker<T>> workerFactory) {
+		this.name = name;
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		this.threads = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			Worker<T> worker = workerFactory.apply(i);
+			this.threads[i] = new Thread(() -> work(worker), name + "-" + i);
+			this.threads[i].setDaemon(true);
+		}
+		for (Thread thread : this.threads) {
+			thread.start();
+		}
+	}
+	
+	/**
+	 * Hands a task to the workers, blocking while the queue is full.
+	 * 
+	 * @param task The task.
+	 * 
+	 * @return A value <code>true</code> if the task was queued, or <code>false</code> if the pool
+	 *         failed or was cancelled and doesn't accept tasks anymore.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for space in the
+	 *         queue.
+	 */
+	public boolean submit(T task) throws InterruptedException {
+		if (failure.get() != null || cancelled) {
+			return false;
+		}
+		queue.put(task);
+		return true;
+	}
+	
+	/**
+	 * Waits for the workers to run the queued tasks and to {@linkplain Worker#finish() finish}.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 * @throws RuntimeException The first exception thrown by a task, if any.
+	 * @throws Error The first error thrown by a task, if any.
+	 */
+	public void finish() throws InterruptedException {
+		if (!finished) {
+			for (int i = 0; i < threads.length; i++) {
+				queue.put(END);
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			finished = true;
+		}
+		Throwable exception = failure.get();
+		if (exception instanceof Error) {
+			throw (Error) exception;
+		} else if (exception != null) {
+			throw (RuntimeException) exception;
+		}
+	}
+	
+	/**
+	 * Records a failure, unless an earlier one is recorded. The remaining tasks are discarded.
+	 * 
+	 * @param exception The failure.
+	 */
+	public void fail(RuntimeException exception) {
+		failure.compareAndSet(null, exception);
+	}
+	
+	/**
+	 * Indicates if a failure was recorded.
+	 * 
+	 * @return A value <code>true</code> if a task failed or the pool was cancelled.
+	 */
+	public boolean isFailed() {
+		return failure.get() != null;
+	}
+	
+	/**
+	 * Cancels the pool if it was not finished: the waiting tasks are discarded and the workers are
+	 * interrupted. Does nothing after {@link #finish()}.
+	 */
+	@Override
+	public void close() {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		cancelled = true;
+		failure.compareAndSet(null, new ChessException(String.format("%s cancelled", name)));
+		queue.clear();
+		for (Thread thread : threads) {
+			thread.interrupt();
+		}
+	}
+	
+	@SuppressWarnings({
+		"javadoc",
+		"unchecked"
+	})
+	private void work(Worker<T> worker) {
+		while (!cancelled) {
+			Object task;
+			try {
+				task = queue.take();
+			} catch (InterruptedException e) {
+				interrupted();
+				continue;
+			}
+			if (task == END) {
+				if (failure.get() == null) {
+					try {
+						worker.finish();
+					} catch (RuntimeException | Error e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+				return;
+			}
+			if (failure.get() != null) {
+				continue;
+			}
+			try {
+				worker.process((T) task);
+			} catch (InterruptedException e) {
+				interrupted();
+			} catch (RuntimeException | Error e) {
+				failure.compareAndSet(null, e);
+			}
+		}
+	}
+	
+	/**
+	 * Handles the interruption of a worker. A worker interrupted by something else than the
+	 * cancellation keeps draining the queue, so the submitting thread is never blocked forever.
+	 */
+	private void interrupted() {
+		if (!cancelled) {
+			failure.compareAndSet(null, new ChessException(String.format("%s interrupted", name)));
+		}
+	}
+	
+	/**
+	 * The code run by a worker thread.
+	 * 
+	 * @param <T> The type of the tasks.
+	 */
+	@FunctionalInterface
+	public interface Worker<T> {
+		
+		/**
+		 * Runs a task.
+		 * 
+		 * @param task The task.
+		 * 
+		 * @throws InterruptedException If the worker is interrupted.
+		 */
+		void process(T task) throws InterruptedException;
+		
+		/**
+		 * Called once, in the worker thread, after the last task, unless the pool failed or was
+		 * cancelled. Workers that batch their results flush them here.
+		 */
+		default void finish() {
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+/**
+ * The numbers of a book built by {@link OpeningBookBuilder}.
+ * 
+ * @author Welyab Paula
+ */
+public final class BookBuildResult {
+	
+	@SuppressWarnings("javadoc")
+	private final long games;
+	
+	@SuppressWarnings("javadoc")
+	private final long rejectedGames;
+	
+	@SuppressWarnings("javadoc")
+	private final long positions;
+	
+	@SuppressWarnings("javadoc")
+	private final long entries;
+	
+	@SuppressWarnings("javadoc")
+	private final int runs;
+	
+	@SuppressWarnings("javadoc")
+	BookBuildResult(long games, long rejectedGames, long positions, long entries, int runs) {
+		this.games = games;
+		this.rejectedGames = rejectedGames;
+		this.positions = positions;
+		this.entries = entries;
+		this.runs = runs;
+	}
+	
+	/**
+	 * Retrieves the number of games read.
+	 * 
+	 * @return The number of games.
+	 */
+	public long getGames() {
+		return games;
+	}
+	
+	/**
+	 * Retrieves the number of games without a result, or with an invalid movement. The movements
+	 * before the invalid one are still counted.
+	 * 
+	 * @return The number of rejected games.
+	 */
+	public long getRejectedGames() {
+		return rejectedGames;
+	}
+	
+	/**
+	 * Retrieves the number of distinct positions written to the book.
+	 * 
+	 * @return The number of positions.
+	 */
+	public long getPositions() {
+		return positions;
+	}
+	
+	/**
+	 * Retrieves the number of entries written to the book.
+	 * 
+	 * @return The number of entries.
+	 */
+	public long getEntries() {
+		return entries;
+	}
+	
+	/**
+	 * Retrieves the number of sorted runs spilled to disk and merged.
+	 * 
+	 * @return The number of runs.
+	 */
+	public int getRuns() {
+		return runs;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(
+			"%d games (%d rejected), %d positions, %d entries, %d runs",
+			games,
+			rejectedGames,
+			positions,
+			entries,
+			runs
+		);
+	}
+}
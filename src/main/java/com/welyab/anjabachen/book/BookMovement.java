@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+import com.welyab.anjabachen.movement.Movement;
+
+/**
+ * A movement suggested by an opening book for a position, and how often it should be played.
+ * 
+ * @author Welyab Paula
+ */
+public final class BookMovement {
+	
+	@SuppressWarnings("javadoc")
+	private final Movement movement;
+	
+	@SuppressWarnings("javadoc")
+	private final int weight;
+	
+	@SuppressWarnings("javadoc")
+	private final int learn;
+	
+	/**
+	 * Creates a book movement.
+	 * 
+	 * @param movement The movement.
+	 * @param weight The weight of the movement, relative to the other movements of the position.
+	 * @param learn The learning data stored with the movement.
+	 */
+	public BookMovement(Movement movement, int weight, int learn) {
+		this.movement = movement;
+		this.weight = weight;
+		this.learn = learn;
+	}
+	
+	/**
+	 * Retrieves the movement.
+	 * 
+	 * @return The movement.
+	 */
+	public Movement getMovement() {
+		return movement;
+	}
+	
+	/**
+	 * Retrieves the weight of the movement. The chance of playing the movement is its weight
+	 * divided by the sum of the weights of all movements of the position.
+	 * 
+	 * @return The weight.
+	 */
+	public int getWeight() {
+		return weight;
+	}
+	
+	/**
+	 * Retrieves the learning data stored with the movement. Usually not used.
+	 * 
+	 * @return The learning data.
+	 */
+	public int getLearn() {
+		return learn;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s (weight %d)", movement, weight);
+	}
+}
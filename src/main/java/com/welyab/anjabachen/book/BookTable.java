@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.welyab.anjabachen.IndexSort;
+
+/**
+ * The game statistics of each <code>(position key, movement)</code> pair, in an open addressing
+ * hash table over primitive arrays.
+ * 
+ * <p>
+ * The table has a fixed capacity. When it gets full, the entries are written to a run file sorted
+ * by key and movement, and the table is cleared, so the memory used doesn't depend on the number
+ * of games. The runs are merged at the end by {@link OpeningBookBuilder}.
+ * 
+ * @author Welyab Paula
+ */
+final class BookTable {
+	
+	/** The size of a run file record, in bytes. */
+	static final int RECORD_SIZE = 22;
+	
+	/** The movement code of the empty slots. No valid movement has code zero (a1 to a1). */
+	private static final short EMPTY = 0;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] keys;
+	
+	@SuppressWarnings("javadoc")
+	private final short[] movements;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] wins;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] draws;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] losses;
+	
+	@SuppressWarnings("javadoc")
+	private final int shift;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxSize;
+	
+	@SuppressWarnings("javadoc")
+	private int size;
+	
+	/**
+	 * Creates a table.
+	 * 
+	 * @param maxSize The number of entries kept before the table must be spilled.
+	 */
+	BookTable(int maxSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, maxSize + maxSize / 3) - 1) << 1;
+		keys = new long[capacity];
+		movements = new short[capacity];
+		wins = new int[capacity];
+		draws = new int[capacity];
+		losses = new int[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Counts a game result for a movement played in a position.
+	 * 
+	 * @param key The position key.
+	 * @param movement The movement, in the book encoding.
+	 * @param result The game result for the side that played the movement: <code>1</code>,
+	 *        <code>0</code> or <code>-1</code>.
+	 */
+	void add(long key, int movement, int result) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key ^ movement * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L >>> shift);
+		while (movements[slot] != EMPTY && (keys[slot] != key || movements[slot] != (short) movement)) {
+			slot = slot + 1 & mask;
+		}
+		if (movements[slot] == EMPTY) {
+			keys[slot] = key;
+			movements[slot] = (short) movement;
+			size++;
+		}
+		if (result > 0) {
+			wins[slot]++;
+		} else if (result < 0) {
+			losses[slot]++;
+		} else {
+			draws[slot]++;
+		}
+	}
+	
+	/**
+	 * Indicates if the table reached its maximum size and must be spilled.
+	 * 
+	 * @return A value <code>true</code> if the table is full.
+	 */
+	boolean isFull() {
+		return size >= maxSize;
+	}
+	
+	@SuppressWarnings("javadoc")
+	boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Writes the entries to a run file, sorted by key (as unsigned numbers) and movement, and
+	 * clears the table.
+	 * 
+	 * @param file The run file.
+	 * 
+	 * @throws IOException If the file can't be written.
+	 */
+	void spill(Path file) throws IOException {
+		int[] order = new int[size];
+		int count = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (movements[slot] != EMPTY) {
+				order[count++] = slot;
+			}
+		}
+		IndexSort.sort(order, new int[count], 0, count, this::compare);
+		
+		try (
+			DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)
+			)
+		) {
+			for (int slot : order) {
+				output.writeLong(keys[slot]);
+				output.writeShort(movements[slot]);
+				output.writeInt(wins[slot]);
+				output.writeInt(draws[slot]);
+				output.writeInt(losses[slot]);
+			}
+		}
+		
+		Arrays.fill(movements, EMPTY);
+		Arrays.fill(wins, 0);
+		Arrays.fill(draws, 0);
+		Arrays.fill(losses, 0);
+		size = 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int compare(int slot1, int slot2) {
+		int result = Long.compareUnsigned(keys[slot1], keys[slot2]);
+		return result != 0 ? result : Integer.compare(movements[slot1] & 0xFFFF, movements[slot2] & 0xFFFF);
+	}
+}
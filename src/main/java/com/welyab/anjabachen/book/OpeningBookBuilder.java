@@ -0,0 +1,659 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.ZobristKey;
+import com.welyab.anjabachen.movement.png.MovementsParser;
+import com.welyab.anjabachen.movement.png.PgnGame;
+import com.welyab.anjabachen.movement.png.PgnMovement;
+import com.welyab.anjabachen.movement.png.PgnReader;
+
+/**
+ * Builds <a href="http://hgm.nubati.net/book_format.html">Polyglot</a> opening books from PGN
+ * game collections.
+ * 
+ * <p>
+ * The games are read by the calling thread with {@link PgnReader} and handed to parser threads
+ * through a {@link WorkerPool}. Each parser plays the first movements of the games with
+ * {@link MovementsParser} and counts, for each position and movement, the wins, draws and losses
+ * of the side that played it. The counts live in a fixed size primitive hash table; when it gets
+ * full it is written to disk as a sorted run, so the memory used doesn't depend on the number of
+ * games. The parser that fills the table swaps in an empty one and writes the run without holding
+ * the table lock, so the other parsers keep counting meanwhile. At the end the runs are merged,
+ * the movements played less than the minimum number of games are dropped, and the book is written
+ * with weight <code>2 * wins + draws</code>. The keys are computed with
+ * {@link PolyglotBook#getDefaultRandoms()}, unless other random values are given to the builder.
+ * 
+ * <pre>
+ * OpeningBookBuilder builder = OpeningBookBuilder.builder()
+ * 	.threads(8)
+ * 	.maxPly(24)
+ * 	.minGames(5)
+ * 	.build();
+ * BookBuildResult result = builder.build(List.of(Paths.get("games.pgn")), Paths.get("book.bin"));
+ * </pre>
+ * 
+ * @author Welyab Paula
+ * 
+ * @see PolyglotBook
+ */
+public final class OpeningBookBuilder {
+	
+	/** The default number of plies of each game added to the book. */
+	public static final int DEFAULT_MAX_PLY = 30;
+	
+	/** The default number of entries kept in memory before a run is spilled. */
+	public static final int DEFAULT_MAX_ENTRIES = 1 << 21;
+	
+	@SuppressWarnings("javadoc")
+	private static final int UNKNOWN_RESULT = Integer.MIN_VALUE;
+	
+	@SuppressWarnings("javadoc")
+	private static final int BATCH_SIZE = 4096;
+	
+	@SuppressWarnings("javadoc")
+	private final int threads;
+	
+	@SuppressWarnings("javadoc")
+	private final int queueCapacity;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxPly;
+	
+	@SuppressWarnings("javadoc")
+	private final int minGames;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxEntries;
+	
+	@SuppressWarnings("javadoc")
+	private final Path tempDirectory;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] randoms;
+	
+	@SuppressWarnings("javadoc")
+	private OpeningBookBuilder(Builder builder) {
+		threads = builder.threads;
+		queueCapacity = builder.queueCapacity > 0 ? builder.queueCapacity : builder.threads * 64;
+		maxPly = builder.maxPly;
+		minGames = builder.minGames;
+		maxEntries = builder.maxEntries;
+		tempDirectory = builder.tempDirectory;
+		randoms = builder.randoms;
+	}
+	
+	/**
+	 * Builds a book from the games of the given PGN files.
+	 * 
+	 * @param inputs The PGN files, read in order.
+	 * @param output The book file.
+	 * 
+	 * @return The book numbers.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the parsers.
+	 */
+	public synchronized BookBuildResult build(List<Path> inputs, Path output) throws IOException, InterruptedException {
+		try (Session session = new Session()) {
+			for (Path input : inputs) {
+				try (PgnReader reader = PgnReader.open(input)) {
+					session.feed(reader);
+				}
+			}
+			return session.finish(output);
+		}
+	}
+	
+	/**
+	 * Builds a book from the games of the given PGN text.
+	 * 
+	 * @param input The PGN text. The stream is not closed.
+	 * @param output The book file.
+	 * 
+	 * @return The book numbers.
+	 * 
+	 * @throws IOException If the input can't be read or the book can't be written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the parsers.
+	 */
+	public synchronized BookBuildResult build(InputStream input, Path output) throws IOException, InterruptedException {
+		try (Session session = new Session()) {
+			session.feed(new PgnReader(input));
+			return session.finish(output);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int parseResult(String result) {
+		return switch (result) {
+			case "1-0" -> 1;
+			case "0-1" -> -1;
+			case "1/2-1/2" -> 0;
+			default -> UNKNOWN_RESULT;
+		};
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Builds a book with the default settings.
+	 * 
+	 * @param args The book file followed by the PGN files.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.err.println("Usage: OpeningBookBuilder <book.bin> <games.pgn>...");
+			System.exit(1);
+		}
+		List<Path> inputs = new ArrayList<>();
+		for (int i = 1; i < args.length; i++) {
+			inputs.add(Paths.get(args[i]));
+		}
+		System.out.println(builder().build().build(inputs, Paths.get(args[0])));
+	}
+	
+	/**
+	 * The parser threads, the table and the runs of one book construction.
+	 */
+	private final class Session implements Closeable {
+		
+		@SuppressWarnings("javadoc")
+		private final Object tableLock = new Object();
+		
+		/** The table being filled, guarded by <code>tableLock</code>. */
+		private BookTable table = new BookTable(maxEntries);
+		
+		/** The spilled tables, ready to be swapped in, guarded by <code>tableLock</code>. */
+		private final List<BookTable> spareTables = new ArrayList<>();
+		
+		@SuppressWarnings("javadoc")
+		private final List<Path> runs = new ArrayList<>();
+		
+		@SuppressWarnings("javadoc")
+		private final AtomicLong rejectedGames = new AtomicLong();
+		
+		@SuppressWarnings("javadoc")
+		private final WorkerPool<PgnGame> pool = new WorkerPool<>(
+			"anjabachen-book",
+			threads,
+			queueCapacity,
+			worker -> new BookWorker()
+		);
+		
+		@SuppressWarnings("javadoc")
+		private long games;
+		
+		@SuppressWarnings("javadoc")
+		private void feed(PgnReader reader) throws InterruptedException {
+			while (!pool.isFailed()) {
+				PgnGame game;
+				try {
+					if (!reader.hasNext()) {
+						return;
+					}
+					game = reader.next();
+				} catch (ChessException e) {
+					games++;
+					rejectedGames.incrementAndGet();
+					continue;
+				}
+				if (!pool.submit(game)) {
+					return;
+				}
+				games++;
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private BookBuildResult finish(Path output) throws IOException, InterruptedException {
+			try {
+				pool.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			
+			if (!table.isEmpty()) {
+				spill(table);
+			}
+			BookWriter writer;
+			try (
+				DataOutputStream stream = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(output), 1 << 16)
+				)
+			) {
+				writer = new BookWriter(stream, minGames);
+				merge(writer);
+				writer.finish();
+			}
+			return new BookBuildResult(games, rejectedGames.get(), writer.positions, writer.entries, runs.size());
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void merge(BookWriter writer) throws IOException {
+			PriorityQueue<RunReader> readers = new PriorityQueue<>(
+				Math.max(1, runs.size()),
+				Comparator.<RunReader, Long>comparing(reader -> reader.key, Long::compareUnsigned)
+					.thenComparingInt(reader -> reader.movement)
+			);
+			try {
+				for (Path run : runs) {
+					RunReader reader = new RunReader(run);
+					if (reader.next()) {
+						readers.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+				while (!readers.isEmpty()) {
+					RunReader reader = readers.poll();
+					writer.add(reader.key, reader.movement, reader.wins, reader.draws, reader.losses);
+					if (reader.next()) {
+						readers.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+			} finally {
+				for (RunReader reader : readers) {
+					reader.close();
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void process(PgnGame game, Batch batch) {
+			int result = parseResult(game.getResult());
+			if (result == UNKNOWN_RESULT) {
+				rejectedGames.incrementAndGet();
+				return;
+			}
+			List<PgnMovement> movements = game.getMovements();
+			StringBuilder movetext = new StringBuilder();
+			for (int i = 0; i < movements.size() && i < maxPly; i++) {
+				movetext.append(movements.get(i).getSan()).append(' ');
+			}
+			try {
+				MovementsParser parser = new MovementsParser(game.getFen(), movetext.toString());
+				parser.parse((board, movement) -> {
+					batch.keys[batch.size] = ZobristKey.of(board, randoms);
+					batch.movements[batch.size] = PolyglotBook.encodeMovement(board, movement);
+					batch.results[batch.size] = MovementUtil.isWhite(board.getSideToMove()) ? result : -result;
+					if (++batch.size == BATCH_SIZE) {
+						flush(batch);
+					}
+				});
+			} catch (ChessException e) {
+				rejectedGames.incrementAndGet();
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void flush(Batch batch) {
+			int i = 0;
+			while (i < batch.size) {
+				BookTable full = null;
+				synchronized (tableLock) {
+					while (i < batch.size && full == null) {
+						table.add(batch.keys[i], batch.movements[i], batch.results[i]);
+						i++;
+						if (table.isFull()) {
+							full = table;
+							table = spareTables.isEmpty()
+									? new BookTable(maxEntries)
+									: spareTables.remove(spareTables.size() - 1);
+						}
+					}
+				}
+				if (full != null) {
+					try {
+						spill(full);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					synchronized (tableLock) {
+						spareTables.add(full);
+					}
+				}
+			}
+			batch.size = 0;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void spill(BookTable full) throws IOException {
+			Path run = tempDirectory != null
+					? Files.createTempFile(tempDirectory, "anjabachen-book-", ".run")
+					: Files.createTempFile("anjabachen-book-", ".run");
+			synchronized (runs) {
+				runs.add(run);
+			}
+			full.spill(run);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			pool.close();
+			synchronized (runs) {
+				for (Path run : runs) {
+					Files.deleteIfExists(run);
+				}
+			}
+		}
+		
+		/**
+		 * A parser thread, which collects its records in a batch before adding them to the table.
+		 */
+		private final class BookWorker implements WorkerPool.Worker<PgnGame> {
+			
+			@SuppressWarnings("javadoc")
+			private final Batch batch = new Batch();
+			
+			@Override
+			public void process(PgnGame game) {
+				Session.this.process(game, batch);
+			}
+			
+			@Override
+			public void finish() {
+				flush(batch);
+			}
+		}
+	}
+	
+	/**
+	 * Groups the sorted records of the runs by position and movement, and writes the book entries.
+	 */
+	private static final class BookWriter {
+		
+		@SuppressWarnings("javadoc")
+		private final DataOutputStream output;
+		
+		@SuppressWarnings("javadoc")
+		private final int minGames;
+		
+		@SuppressWarnings("javadoc")
+		private long key;
+		
+		@SuppressWarnings("javadoc")
+		private int movement = -1;
+		
+		@SuppressWarnings("javadoc")
+		private long wins;
+		
+		@SuppressWarnings("javadoc")
+		private long draws;
+		
+		@SuppressWarnings("javadoc")
+		private long losses;
+		
+		@SuppressWarnings("javadoc")
+		private int[] positionMovements = new int[64];
+		
+		@SuppressWarnings("javadoc")
+		private long[] positionWeights = new long[64];
+		
+		@SuppressWarnings("javadoc")
+		private int positionSize;
+		
+		@SuppressWarnings("javadoc")
+		private long positions;
+		
+		@SuppressWarnings("javadoc")
+		private long entries;
+		
+		@SuppressWarnings("javadoc")
+		private BookWriter(DataOutputStream output, int minGames) {
+			this.output = output;
+			this.minGames = minGames;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void add(long recordKey, int recordMovement, long recordWins, long recordDraws, long recordLosses)
+				throws IOException {
+			if (movement >= 0 && (recordKey != key || recordMovement != movement)) {
+				endMovement();
+				if (recordKey != key) {
+					endPosition();
+				}
+			}
+			key = recordKey;
+			movement = recordMovement;
+			wins += recordWins;
+			draws += recordDraws;
+			losses += recordLosses;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void finish() throws IOException {
+			if (movement >= 0) {
+				endMovement();
+				endPosition();
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void endMovement() {
+			long weight = 2 * wins + draws;
+			if (wins + draws + losses >= minGames && weight > 0) {
+				if (positionSize == positionMovements.length) {
+					positionMovements = Arrays.copyOf(positionMovements, positionSize * 2);
+					positionWeights = Arrays.copyOf(positionWeights, positionSize * 2);
+				}
+				positionMovements[positionSize] = movement;
+				positionWeights[positionSize] = weight;
+				positionSize++;
+			}
+			wins = 0;
+			draws = 0;
+			losses = 0;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void endPosition() throws IOException {
+			if (positionSize == 0) {
+				return;
+			}
+			long maxWeight = 0;
+			for (int i = 0; i < positionSize; i++) {
+				maxWeight = Math.max(maxWeight, positionWeights[i]);
+			}
+			long divisor = (maxWeight + 0xFFFE) / 0xFFFF;
+			for (int i = 1; i < positionSize; i++) {
+				for (int j = i; j > 0 && positionWeights[j] > positionWeights[j - 1]; j--) {
+					long weight = positionWeights[j];
+					positionWeights[j] = positionWeights[j - 1];
+					positionWeights[j - 1] = weight;
+					int swap = positionMovements[j];
+					positionMovements[j] = positionMovements[j - 1];
+					positionMovements[j - 1] = swap;
+				}
+			}
+			for (int i = 0; i < positionSize; i++) {
+				output.writeLong(key);
+				output.writeShort(positionMovements[i]);
+				output.writeShort((int) Math.max(1, positionWeights[i] / divisor));
+				output.writeInt(0);
+			}
+			entries += positionSize;
+			positions++;
+			positionSize = 0;
+		}
+	}
+	
+	/**
+	 * Reads the records of a run file.
+	 */
+	private static final class RunReader implements Closeable {
+		
+		@SuppressWarnings("javadoc")
+		private final DataInputStream input;
+		
+		@SuppressWarnings("javadoc")
+		private long remaining;
+		
+		@SuppressWarnings("javadoc")
+		private long key;
+		
+		@SuppressWarnings("javadoc")
+		private int movement;
+		
+		@SuppressWarnings("javadoc")
+		private int wins;
+		
+		@SuppressWarnings("javadoc")
+		private int draws;
+		
+		@SuppressWarnings("javadoc")
+		private int losses;
+		
+		@SuppressWarnings("javadoc")
+		private RunReader(Path run) throws IOException {
+			remaining = Files.size(run) / BookTable.RECORD_SIZE;
+			input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+		}
+		
+		@SuppressWarnings("javadoc")
+		private boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			key = input.readLong();
+			movement = input.readShort() & 0xFFFF;
+			wins = input.readInt();
+			draws = input.readInt();
+			losses = input.readInt();
+			return true;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+	
+	/**
+	 * The records produced by a parser thread, added to the table in groups to reduce the
+	 * contention.
+	 */
+	private static final class Batch {
+		
+		@SuppressWarnings("javadoc")
+		private final long[] keys = new long[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] movements = new int[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] results = new int[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private int size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int queueCapacity;
+		
+		private int maxPly = DEFAULT_MAX_PLY;
+		
+		private int minGames = 1;
+		
+		private int maxEntries = DEFAULT_MAX_ENTRIES;
+		
+		private Path tempDirectory;
+		
+		private long[] randoms = PolyglotBook.getDefaultRandoms();
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder queueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+		
+		public Builder maxPly(int maxPly) {
+			this.maxPly = Math.max(1, maxPly);
+			return this;
+		}
+		
+		public Builder minGames(int minGames) {
+			this.minGames = Math.max(1, minGames);
+			return this;
+		}
+		
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = Math.max(1, maxEntries);
+			return this;
+		}
+		
+		public Builder tempDirectory(Path tempDirectory) {
+			this.tempDirectory = tempDirectory;
+			return this;
+		}
+		
+		public Builder randoms(long[] randoms) {
+			if (randoms.length != ZobristKey.RANDOM_VALUES_COUNT) {
+				throw new IllegalArgumentException(String.format("Invalid number of random values: %d", randoms.length));
+			}
+			this.randoms = randoms.clone();
+			return this;
+		}
+		
+		public OpeningBookBuilder build() {
+			return new OpeningBookBuilder(this);
+		}
+	}
+}
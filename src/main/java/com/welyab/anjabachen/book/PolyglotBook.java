@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.SortedEntries;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+import com.welyab.anjabachen.movement.Position;
+import com.welyab.anjabachen.movement.ZobristKey;
+
+/**
+ * A reader of opening books in the <a href="http://hgm.nubati.net/book_format.html">Polyglot</a>
+ * format.
+ * 
+ * <p>
+ * A book is a sequence of 16 bytes entries sorted by the position key: the key (8 bytes), the
+ * movement (2 bytes), the weight (2 bytes) and the learning data (4 bytes), all big endian. The
+ * file is memory mapped and the entries of a position are found by binary search, so the lookup
+ * doesn't depend on the book size and books bigger than the heap can be used.
+ * 
+ * <p>
+ * The keys are computed with {@link ZobristKey}, which follows the Polyglot layout, and by default
+ * with the <code>Random64</code> table published with the Polyglot format, bundled as the
+ * {@value #RANDOMS_RESOURCE} resource next to this class, so books built by other programs are
+ * read and books built by {@link OpeningBookBuilder} are read by other programs. Books keyed with
+ * other random values, like the ones of {@link ZobristKey#getRandoms()}, are opened with
+ * {@link #open(Path, long[])}.
+ * 
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class PolyglotBook {
+	
+	/** The size of each book entry, in bytes. */
+	public static final int ENTRY_SIZE = 16;
+	
+	@SuppressWarnings("javadoc")
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+	
+	/**
+	 * The name of the resource, next to this class, with the <code>Random64</code> table of the
+	 * Polyglot format, in the text format read by {@link #readRandoms(Path)}.
+	 */
+	public static final String RANDOMS_RESOURCE = "Random64.txt";
+	
+	@SuppressWarnings("javadoc")
+	private static final Pattern RANDOM_PATTERN = Pattern.compile("(?:0[xX])?([0-9A-Fa-f]{16})(?![0-9A-Fa-f])");
+	
+	@SuppressWarnings("javadoc")
+	private final SortedEntries entries;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] randoms;
+	
+	@SuppressWarnings("javadoc")
+	PolyglotBook(Path file, long[] randoms, int chunkSize) throws IOException {
+		if (randoms.length != ZobristKey.RANDOM_VALUES_COUNT) {
+			throw new IllegalArgumentException(String.format("Invalid number of random values: %d", randoms.length));
+		}
+		this.randoms = randoms.clone();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize % ENTRY_SIZE != 0) {
+				throw new ChessException(String.format("Invalid Polyglot book: %s", file));
+			}
+			entries = SortedEntries.map(channel, 0, fileSize / ENTRY_SIZE, ENTRY_SIZE, chunkSize);
+		}
+	}
+	
+	/**
+	 * Opens a book whose keys were computed with the default random values.
+	 * 
+	 * @param file The book file.
+	 * 
+	 * @return The book.
+	 * 
+	 * @throws IOException If the file can't be mapped.
+	 * @throws ChessException If the file size is not a multiple of the entry size.
+	 * 
+	 * @see #getDefaultRandoms()
+	 */
+	public static PolyglotBook open(Path file) throws IOException {
+		return open(file, DefaultRandoms.VALUES);
+	}
+	
+	/**
+	 * Opens a book whose keys were computed with the given random values.
+	 * 
+	 * @param file The book file.
+	 * @param randoms The {@value ZobristKey#RANDOM_VALUES_COUNT} random values.
+	 * 
+	 * @return The book.
+	 * 
+	 * @throws IOException If the file can't be mapped.
+	 * @throws ChessException If the file size is not a multiple of the entry size.
+	 * 
+	 * @see #readRandoms(Path)
+	 */
+	public static PolyglotBook open(Path file, long[] randoms) throws IOException {
+		return new PolyglotBook(file, randoms, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Reads the random values of a Polyglot key from a text file, like the <code>Random64</code>
+	 * array of the Polyglot format description. The values are the numbers of 16 hexadecimal
+	 * digits of the file, in order; any other text is ignored.
+	 * 
+	 * @param file The text file.
+	 * 
+	 * @return The {@value ZobristKey#RANDOM_VALUES_COUNT} random values.
+	 * 
+	 * @throws IOException If the file can't be read.
+	 * @throws ChessException If the file doesn't have exactly
+	 *         {@value ZobristKey#RANDOM_VALUES_COUNT} values.
+	 */
+	public static long[] readRandoms(Path file) throws IOException {
+		return parseRandoms(Files.readString(file, StandardCharsets.US_ASCII), file);
+	}
+	
+	/**
+	 * Retrieves the default random values of the keys: the <code>Random64</code> table of the
+	 * Polyglot format, read from the {@value #RANDOMS_RESOURCE} resource.
+	 * 
+	 * @return The {@value ZobristKey#RANDOM_VALUES_COUNT} random values.
+	 */
+	public static long[] getDefaultRandoms() {
+		return DefaultRandoms.VALUES.clone();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static long[] parseRandoms(String text, Object source) {
+		Matcher matcher = RANDOM_PATTERN.matcher(text);
+		long[] randoms = new long[ZobristKey.RANDOM_VALUES_COUNT];
+		int count = 0;
+		while (matcher.find()) {
+			if (count == randoms.length) {
+				throw new ChessException(String.format("Too many random values in %s", source));
+			}
+			randoms[count++] = Long.parseUnsignedLong(matcher.group(1), 16);
+		}
+		if (count != randoms.length) {
+			throw new ChessException(String.format("Expected %d random values in %s, found %d", randoms.length, source, count));
+		}
+		return randoms;
+	}
+	
+	/**
+	 * Retrieves the number of entries of the book.
+	 * 
+	 * @return The number of entries.
+	 */
+	public long size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Retrieves the book movements for the current position of the given board. Entries with
+	 * movements that are not legal in the position are ignored.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The movements, from the greatest weight to the smallest.
+	 */
+	public List<BookMovement> getMovements(Board board) {
+		List<BookMovement> bookMovements = new ArrayList<>();
+		long key = ZobristKey.of(board, randoms);
+		Movements movements = null;
+		for (long entry = entries.lowerBound(key); entries.hasKey(entry, key); entry++) {
+			if (movements == null) {
+				movements = board.getMovements();
+			}
+			Movement movement = decodeMovement(board, movements, entries.getShort(entry, 8) & 0xFFFF);
+			if (movement != null) {
+				bookMovements.add(
+					new BookMovement(
+						movement,
+						entries.getShort(entry, 10) & 0xFFFF,
+						entries.getInt(entry, 12)
+					)
+				);
+			}
+		}
+		bookMovements.sort(Comparator.comparingInt(BookMovement::getWeight).reversed());
+		return bookMovements;
+	}
+	
+	/**
+	 * Chooses one of the book movements for the current position of the given board, with
+	 * probability proportional to the weights. Movements with zero weight are never chosen.
+	 * 
+	 * @param board The board.
+	 * @param random The random number generator.
+	 * 
+	 * @return The movement, or an empty optional if the book has no movement for the position.
+	 */
+	public Optional<Movement> pickMovement(Board board, Random random) {
+		List<BookMovement> bookMovements = getMovements(board);
+		int total = 0;
+		for (BookMovement bookMovement : bookMovements) {
+			total += bookMovement.getWeight();
+		}
+		if (total == 0) {
+			return Optional.empty();
+		}
+		int choice = random.nextInt(total);
+		for (BookMovement bookMovement : bookMovements) {
+			choice -= bookMovement.getWeight();
+			if (choice < 0) {
+				return Optional.of(bookMovement.getMovement());
+			}
+		}
+		throw new IllegalStateException();
+	}
+	
+	/**
+	 * Encodes a movement in the book format.
+	 * 
+	 * @param board The board in the position where the movement is played.
+	 * @param movement The movement.
+	 * 
+	 * @return The encoded movement.
+	 * 
+	 * @see #decodeMovement(Board, Movements, int)
+	 */
+	static int encodeMovement(Board board, Movement movement) {
+		Position origin = movement.getOrigin();
+		MovementTarget target = movement.getTarget();
+		int targetColumn = target.getPosition().column;
+		if (MovementUtil.getPieceType(board.getSquareValue(origin)) == MovementUtil.KING
+				&& Math.abs(targetColumn - origin.column) == 2) {
+			targetColumn = targetColumn > origin.column ? 7 : 0;
+		}
+		int code = (7 - origin.row) << 9
+				| origin.column << 6
+				| (7 - target.getPosition().row) << 3
+				| targetColumn;
+		if (MovementUtil.isPromotion(target.getFlags())) {
+			code |= MovementUtil.getPieceType(target.getPieceCode()) - 1 << 12;
+		}
+		return code;
+	}
+	
+	/**
+	 * Finds the legal movement of an encoded book movement. Castling is encoded as the king
+	 * capturing its own rook, and the promotion piece as <code>1</code> (knight) to <code>4</code>
+	 * (queen).
+	 * 
+	 * @param board The board.
+	 * @param movements The legal movements of the board.
+	 * @param code The encoded movement.
+	 * 
+	 * @return The movement, or <code>null</code> if it is not legal.
+	 */
+	private static Movement decodeMovement(Board board, Movements movements, int code) {
+		int targetColumn = code & 7;
+		int targetRow = 7 - (code >>> 3 & 7);
+		int originColumn = code >>> 6 & 7;
+		int originRow = 7 - (code >>> 9 & 7);
+		int promotion = code >>> 12 & 7;
+		byte promotionType = promotion == 0 ? MovementUtil.EMPTY : (byte) (promotion + 1);
+		
+		Position origin = Position.of(originRow, originColumn);
+		if (MovementUtil.getPieceType(board.getSquareValue(origin)) == MovementUtil.KING
+				&& originColumn == 4
+				&& targetRow == originRow
+				&& (targetColumn == 0 || targetColumn == 7)) {
+			targetColumn = targetColumn == 7 ? 6 : 2;
+		}
+		
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			if (!pieceMovements.getOrigin().equals(origin)) {
+				continue;
+			}
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				MovementTarget target = pieceMovements.getTarget(j);
+				Position position = target.getPosition();
+				if (position.row != targetRow || position.column != targetColumn) {
+					continue;
+				}
+				byte targetPromotion = MovementUtil.isPromotion(target.getFlags())
+						? MovementUtil.getPieceType(target.getPieceCode())
+						: MovementUtil.EMPTY;
+				if (targetPromotion == promotionType) {
+					return new Movement(origin, target);
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Loads the default random values on first use.
+	 */
+	private static final class DefaultRandoms {
+		
+		@SuppressWarnings("javadoc")
+		private static final long[] VALUES = load();
+		
+		@SuppressWarnings("javadoc")
+		private static long[] load() {
+			try (InputStream input = PolyglotBook.class.getResourceAsStream(RANDOMS_RESOURCE)) {
+				if (input == null) {
+					throw new IllegalStateException(String.format("Missing resource: %s", RANDOMS_RESOURCE));
+				}
+				return parseRandoms(new String(input.readAllBytes(), StandardCharsets.US_ASCII), RANDOMS_RESOURCE);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
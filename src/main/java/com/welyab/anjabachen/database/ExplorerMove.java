@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import com.welyab.anjabachen.movement.Movement;
+
+/**
+ * A movement played in a position of an {@link OpeningExplorer}, with the results of the games
+ * where it was played.
+ * 
+ * @author Welyab Paula
+ */
+public final class ExplorerMove {
+	
+	@SuppressWarnings("javadoc")
+	private final Movement movement;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean white;
+	
+	@SuppressWarnings("javadoc")
+	private final int whiteWins;
+	
+	@SuppressWarnings("javadoc")
+	private final int draws;
+	
+	@SuppressWarnings("javadoc")
+	private final int blackWins;
+	
+	@SuppressWarnings("javadoc")
+	private final int averageRating;
+	
+	@SuppressWarnings("javadoc")
+	ExplorerMove(Movement movement, boolean white, int whiteWins, int draws, int blackWins, int averageRating) {
+		this.movement = movement;
+		this.white = white;
+		this.whiteWins = whiteWins;
+		this.draws = draws;
+		this.blackWins = blackWins;
+		this.averageRating = averageRating;
+	}
+	
+	/**
+	 * Retrieves the movement.
+	 * 
+	 * @return The movement.
+	 */
+	public Movement getMovement() {
+		return movement;
+	}
+	
+	/**
+	 * Retrieves the number of games where the movement was played.
+	 * 
+	 * @return The number of games.
+	 */
+	public int getGames() {
+		return whiteWins + draws + blackWins;
+	}
+	
+	/**
+	 * Retrieves the number of games won by white.
+	 * 
+	 * @return The number of games.
+	 */
+	public int getWhiteWins() {
+		return whiteWins;
+	}
+	
+	/**
+	 * Retrieves the number of drawn games.
+	 * 
+	 * @return The number of games.
+	 */
+	public int getDraws() {
+		return draws;
+	}
+	
+	/**
+	 * Retrieves the number of games won by black.
+	 * 
+	 * @return The number of games.
+	 */
+	public int getBlackWins() {
+		return blackWins;
+	}
+	
+	/**
+	 * Retrieves the percentage of the points won by the side that played the movement, counting a
+	 * draw as half a point.
+	 * 
+	 * @return The score, from <code>0</code> to <code>100</code>.
+	 */
+	public double getScore() {
+		int wins = white ? whiteWins : blackWins;
+		return 100.0 * (wins + draws / 2.0) / getGames();
+	}
+	
+	/**
+	 * Retrieves the average rating of the players that played the movement, among the games where
+	 * the rating is known.
+	 * 
+	 * @return The average rating, or <code>0</code> if no rating is known.
+	 */
+	public int getAverageRating() {
+		return averageRating;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(
+			"%s games=%d +%d =%d -%d score=%.1f%% rating=%d",
+			movement,
+			getGames(),
+			whiteWins,
+			draws,
+			blackWins,
+			getScore(),
+			averageRating
+		);
+	}
+}
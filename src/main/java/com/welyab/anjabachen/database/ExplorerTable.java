@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import com.welyab.anjabachen.IndexSort;
+
+/**
+ * The statistics of each <code>(position key, movement)</code> pair of an opening explorer, in an
+ * open addressing hash table over primitive arrays.
+ * 
+ * <p>
+ * The table has a fixed capacity. When it gets full, the pairs played in few games are pruned:
+ * first the ones played once, then twice, four times and so on, until half of the table is free.
+ * The memory used doesn't depend on the number of games, at the price of losing the counts of rare
+ * lines; a pair pruned early and played again later starts counting from zero.
+ * 
+ * @author Welyab Paula
+ */
+final class ExplorerTable {
+	
+	/** The movement code of the empty slots. No valid movement has code zero. */
+	private static final short EMPTY = 0;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] keys;
+	
+	@SuppressWarnings("javadoc")
+	private final short[] movements;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] whiteWins;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] draws;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] blackWins;
+	
+	/** The number of games where the player of the movement has a rating. */
+	private final int[] ratedGames;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] ratingSums;
+	
+	@SuppressWarnings("javadoc")
+	private final int shift;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxSize;
+	
+	@SuppressWarnings("javadoc")
+	private int size;
+	
+	@SuppressWarnings("javadoc")
+	private long prunedEntries;
+	
+	/**
+	 * Creates a table.
+	 * 
+	 * @param maxSize The number of entries kept before the table is pruned.
+	 */
+	ExplorerTable(int maxSize) {
+		int capacity = Integer.highestOneBit(Math.max(16, maxSize + maxSize / 3) - 1) << 1;
+		keys = new long[capacity];
+		movements = new short[capacity];
+		whiteWins = new int[capacity];
+		draws = new int[capacity];
+		blackWins = new int[capacity];
+		ratedGames = new int[capacity];
+		ratingSums = new long[capacity];
+		shift = 64 - Integer.numberOfTrailingZeros(capacity);
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Counts a game for a movement played in a position.
+	 * 
+	 * @param key The position key.
+	 * @param movement The movement code, as given by {@link OpeningExplorer#encodeMovement}.
+	 * @param result The game result: <code>1</code> if white won, <code>-1</code> if black won and
+	 *        <code>0</code> for a draw.
+	 * @param rating The rating of the player of the movement, or <code>0</code> if unknown.
+	 */
+	void add(long key, int movement, int result, int rating) {
+		int slot = find(key, movement);
+		if (movements[slot] == EMPTY) {
+			keys[slot] = key;
+			movements[slot] = (short) movement;
+			// the slot may keep the counts of a pruned entry
+			whiteWins[slot] = 0;
+			draws[slot] = 0;
+			blackWins[slot] = 0;
+			ratedGames[slot] = 0;
+			ratingSums[slot] = 0;
+			size++;
+		}
+		if (result > 0) {
+			whiteWins[slot]++;
+		} else if (result < 0) {
+			blackWins[slot]++;
+		} else {
+			draws[slot]++;
+		}
+		if (rating > 0) {
+			ratedGames[slot]++;
+			ratingSums[slot] += rating;
+		}
+		if (size >= maxSize) {
+			prune();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Retrieves the number of entries removed by the pruning so far.
+	 * 
+	 * @return The number of entries.
+	 */
+	long getPrunedEntries() {
+		return prunedEntries;
+	}
+	
+	/**
+	 * Writes the entries played in at least the given number of games to an explorer file, sorted
+	 * by key (as unsigned numbers) and movement.
+	 * 
+	 * @param file The explorer file.
+	 * @param minGames The minimum number of games of an entry.
+	 * 
+	 * @return The number of entries written.
+	 * 
+	 * @throws IOException If the file can't be written.
+	 */
+	long write(Path file, int minGames) throws IOException {
+		int[] order = new int[size];
+		int count = 0;
+		for (int slot = 0; slot < keys.length; slot++) {
+			if (movements[slot] != EMPTY && getGames(slot) >= minGames) {
+				order[count++] = slot;
+			}
+		}
+		IndexSort.sort(order, new int[count], 0, count, this::compare);
+		
+		try (
+			DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)
+			)
+		) {
+			output.writeInt(OpeningExplorer.MAGIC);
+			output.writeInt(OpeningExplorer.VERSION);
+			output.writeLong(count);
+			for (int i = 0; i < count; i++) {
+				int slot = order[i];
+				output.writeLong(keys[slot]);
+				output.writeInt(movements[slot]);
+				output.writeInt(whiteWins[slot]);
+				output.writeInt(draws[slot]);
+				output.writeInt(blackWins[slot]);
+				output.writeInt(ratedGames[slot]);
+				output.writeLong(ratingSums[slot]);
+			}
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int find(long key, int movement) {
+		int mask = keys.length - 1;
+		int slot = (int) ((key ^ movement * 0x9E3779B97F4A7C15L) * 0xBF58476D1CE4E5B9L >>> shift);
+		while (movements[slot] != EMPTY && (keys[slot] != key || movements[slot] != (short) movement)) {
+			slot = slot + 1 & mask;
+		}
+		return slot;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int getGames(int slot) {
+		return whiteWins[slot] + draws[slot] + blackWins[slot];
+	}
+	
+	/**
+	 * Removes the entries played in few games until at most half of the maximum size is used.
+	 */
+	private void prune() {
+		for (int threshold = 1; size > maxSize / 2; threshold *= 2) {
+			int[] survivors = new int[size];
+			int count = 0;
+			for (int slot = 0; slot < keys.length; slot++) {
+				if (movements[slot] != EMPTY && getGames(slot) > threshold) {
+					survivors[count++] = slot;
+				}
+			}
+			prunedEntries += size - count;
+			rehash(Arrays.copyOf(survivors, count));
+		}
+	}
+	
+	/**
+	 * Clears the table and adds the given entries again, which closes the gaps left in the probe
+	 * sequences by the removed entries.
+	 * 
+	 * @param slots The slots of the entries that are kept.
+	 */
+	private void rehash(int[] slots) {
+		int count = slots.length;
+		long[] oldKeys = new long[count];
+		short[] oldMovements = new short[count];
+		int[] oldWhiteWins = new int[count];
+		int[] oldDraws = new int[count];
+		int[] oldBlackWins = new int[count];
+		int[] oldRatedGames = new int[count];
+		long[] oldRatingSums = new long[count];
+		for (int i = 0; i < count; i++) {
+			int slot = slots[i];
+			oldKeys[i] = keys[slot];
+			oldMovements[i] = movements[slot];
+			oldWhiteWins[i] = whiteWins[slot];
+			oldDraws[i] = draws[slot];
+			oldBlackWins[i] = blackWins[slot];
+			oldRatedGames[i] = ratedGames[slot];
+			oldRatingSums[i] = ratingSums[slot];
+		}
+		Arrays.fill(movements, EMPTY);
+		for (int i = 0; i < count; i++) {
+			int slot = find(oldKeys[i], oldMovements[i]);
+			keys[slot] = oldKeys[i];
+			movements[slot] = oldMovements[i];
+			whiteWins[slot] = oldWhiteWins[i];
+			draws[slot] = oldDraws[i];
+			blackWins[slot] = oldBlackWins[i];
+			ratedGames[slot] = oldRatedGames[i];
+			ratingSums[slot] = oldRatingSums[i];
+		}
+		size = count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int compare(int slot1, int slot2) {
+		int result = Long.compareUnsigned(keys[slot1], keys[slot2]);
+		return result != 0 ? result : Integer.compare(movements[slot1], movements[slot2]);
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A set of 64 bits fingerprints in an open addressing hash table kept off the heap, in direct
+ * buffers, so tens of millions of fingerprints don't weigh on the garbage collector.
+ * 
+ * <p>
+ * The table is split in chunks of at most {@value #CHUNK_SLOTS} slots and doubles its capacity
+ * when it gets half full. The fingerprint zero marks the empty slots, so it is stored as one.
+ * 
+ * @author Welyab Paula
+ */
+final class FingerprintSet {
+	
+	/** The number of slots of each direct buffer: 128 MB. */
+	private static final int CHUNK_SLOTS = 1 << 24;
+	
+	@SuppressWarnings("javadoc")
+	private ByteBuffer[] chunks;
+	
+	@SuppressWarnings("javadoc")
+	private long capacity;
+	
+	@SuppressWarnings("javadoc")
+	private long size;
+	
+	/**
+	 * Creates a set.
+	 * 
+	 * @param expectedSize The number of fingerprints expected, used for the initial capacity.
+	 */
+	FingerprintSet(long expectedSize) {
+		allocate(Math.max(16, Long.highestOneBit(Math.max(1, expectedSize) * 2 - 1) << 1));
+	}
+	
+	/**
+	 * Adds a fingerprint.
+	 * 
+	 * @param fingerprint The fingerprint.
+	 * 
+	 * @return A value <code>true</code> if the fingerprint was not in the set.
+	 */
+	boolean add(long fingerprint) {
+		long value = fingerprint == 0 ? 1 : fingerprint;
+		long slot = find(value);
+		if (get(slot) == value) {
+			return false;
+		}
+		set(slot, value);
+		if (++size * 2 > capacity) {
+			grow();
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks if a fingerprint is in the set.
+	 * 
+	 * @param fingerprint The fingerprint.
+	 * 
+	 * @return A value <code>true</code> if the set has the fingerprint.
+	 */
+	boolean contains(long fingerprint) {
+		long value = fingerprint == 0 ? 1 : fingerprint;
+		return get(find(value)) == value;
+	}
+	
+	@SuppressWarnings("javadoc")
+	long size() {
+		return size;
+	}
+	
+	/**
+	 * Retrieves the number of bytes of the direct buffers.
+	 * 
+	 * @return The number of bytes.
+	 */
+	long getMemory() {
+		return capacity * Long.BYTES;
+	}
+	
+	/**
+	 * Finds the slot of a value, or the empty slot where it would be stored.
+	 * 
+	 * @param value The value, not zero.
+	 * 
+	 * @return The slot.
+	 */
+	private long find(long value) {
+		long mask = capacity - 1;
+		long slot = value * 0x9E3779B97F4A7C15L >>> 17 & mask;
+		for (long current = get(slot); current != 0 && current != value; current = get(slot)) {
+			slot = slot + 1 & mask;
+		}
+		return slot;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void grow() {
+		ByteBuffer[] oldChunks = chunks;
+		allocate(capacity * 2);
+		for (ByteBuffer chunk : oldChunks) {
+			for (int offset = 0; offset < chunk.capacity(); offset += Long.BYTES) {
+				long value = chunk.getLong(offset);
+				if (value != 0) {
+					set(find(value), value);
+				}
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void allocate(long slots) {
+		capacity = slots;
+		int chunkSlots = (int) Math.min(slots, CHUNK_SLOTS);
+		chunks = new ByteBuffer[(int) (slots / chunkSlots)];
+		for (int i = 0; i < chunks.length; i++) {
+			// direct buffers start zeroed, which is the empty slot
+			chunks[i] = ByteBuffer.allocateDirect(chunkSlots * Long.BYTES);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private long get(long slot) {
+		ByteBuffer chunk = chunks[(int) (slot / CHUNK_SLOTS)];
+		return chunk.getLong((int) (slot % CHUNK_SLOTS) * Long.BYTES);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void set(long slot, long value) {
+		ByteBuffer chunk = chunks[(int) (slot / CHUNK_SLOTS)];
+		chunk.putLong((int) (slot % CHUNK_SLOTS) * Long.BYTES, value);
+	}
+}
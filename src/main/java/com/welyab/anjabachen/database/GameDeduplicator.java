@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.util.List;
+import java.util.Map;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Detects repeated games in a single pass over a stream of games, like the ones of several PGN
+ * archives merged into a {@link GameFile}.
+ * 
+ * <p>
+ * Each game is reduced to a 64 bits fingerprint: the Zobrist key of the initial position, a
+ * rolling hash of the movements (their origin, target and promotion) and a hash of the values of
+ * some tags, by default <code>White</code>, <code>Black</code> and <code>Date</code>. By default
+ * the fingerprints are kept in an exact set, an off-heap hash table of about 16 bytes per game,
+ * which finds every duplicate and nothing else. A deduplicator built with <code>exact(false)</code>
+ * keeps them in a Bloom filter instead, which uses about {@value #BITS_PER_GAME} bits per game but
+ * reports a small fraction of the new games as duplicates.
+ * 
+ * <pre>
+ * GameDeduplicator deduplicator = GameDeduplicator.builder().expectedGames(50_000_000).build();
+ * GameFileWriter.importPgn(Paths.get("archive1.pgn"), output, deduplicator);
+ * GameFileWriter.importPgn(Paths.get("archive2.pgn"), output, deduplicator);
+ * </pre>
+ * 
+ * <p>
+ * Two different games have the same fingerprint with a probability of about
+ * <code>2<sup>-64</sup></code> per pair, so a collision in tens of millions of games is unlikely.
+ * A deduplicator is not thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class GameDeduplicator {
+	
+	/** The default tags that take part in the fingerprint. */
+	public static final List<String> DEFAULT_TAGS = List.of("White", "Black", "Date");
+	
+	/** The number of Bloom filter bits for each expected game. */
+	public static final int BITS_PER_GAME = 10;
+	
+	/** The number of bits of the Bloom filter set by each game. */
+	private static final int HASHES = 6;
+	
+	/** The key of the standard initial position, the start of most games. */
+	private static final long INITIAL_POSITION_KEY = new Board(MovementUtil.FEN_INITIAL_POSITION).getZobristKey();
+	
+	@SuppressWarnings("javadoc")
+	private final String[] tags;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] bloom;
+	
+	@SuppressWarnings("javadoc")
+	private final FingerprintSet fingerprints;
+	
+	@SuppressWarnings("javadoc")
+	private long games;
+	
+	@SuppressWarnings("javadoc")
+	private long duplicates;
+	
+	@SuppressWarnings("javadoc")
+	private GameDeduplicator(Builder builder) {
+		tags = builder.tags.toArray(new String[0]);
+		if (builder.exact) {
+			bloom = null;
+			fingerprints = new FingerprintSet(builder.expectedGames);
+		} else {
+			long bits = Long.highestOneBit(Math.max(64, builder.expectedGames * BITS_PER_GAME) - 1) << 1;
+			bloom = new long[(int) Math.min(bits >>> 6, 1 << 30)];
+			fingerprints = null;
+		}
+	}
+	
+	/**
+	 * Adds a game, if it is not a repetition of a game added before.
+	 * 
+	 * @param tags The tag pairs of the game. The <code>FEN</code> tag gives the initial position.
+	 * @param movements The movements.
+	 * 
+	 * @return A value <code>true</code> if the game is new, <code>false</code> if it is a
+	 *         duplicate.
+	 */
+	public boolean add(Map<String, String> tags, List<Movement> movements) {
+		return add(fingerprint(tags, movements));
+	}
+	
+	/**
+	 * Adds a game read from a game file, which is useful to start the deduplication with the games
+	 * already stored.
+	 * 
+	 * @param game The game.
+	 * 
+	 * @return A value <code>true</code> if the game is new.
+	 */
+	public boolean add(StoredGame game) {
+		return add(game.getTags(), game.getMovements());
+	}
+	
+	/**
+	 * Computes the fingerprint of a game.
+	 * 
+	 * @param tags The tag pairs of the game. The <code>FEN</code> tag gives the initial position.
+	 * @param movements The movements.
+	 * 
+	 * @return The fingerprint.
+	 */
+	public long fingerprint(Map<String, String> tags, List<Movement> movements) {
+		String fen = tags.get("FEN");
+		long hash = fen == null ? INITIAL_POSITION_KEY : new Board(fen).getZobristKey();
+		for (Movement movement : movements) {
+			hash = mix(hash * 0x100000001B3L + OpeningExplorer.encodeMovement(movement));
+		}
+		hash = mix(hash ^ movements.size());
+		for (String tag : this.tags) {
+			String value = tags.get(tag);
+			hash = mix(hash * 0x100000001B3L + (value == null ? 0 : hash(value)));
+		}
+		return hash;
+	}
+	
+	/**
+	 * Retrieves the number of games added, including the duplicates.
+	 * 
+	 * @return The number of games.
+	 */
+	public long getGames() {
+		return games;
+	}
+	
+	/**
+	 * Retrieves the number of games found to be duplicates.
+	 * 
+	 * @return The number of duplicates.
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+	
+	/**
+	 * Retrieves the memory used by the exact set or by the Bloom filter.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getMemory() {
+		return fingerprints != null ? fingerprints.getMemory() : (long) bloom.length * Long.BYTES;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean add(long fingerprint) {
+		games++;
+		boolean added = fingerprints != null ? fingerprints.add(fingerprint) : addToBloomFilter(fingerprint);
+		if (!added) {
+			duplicates++;
+		}
+		return added;
+	}
+	
+	/**
+	 * Sets the bits of a fingerprint in the Bloom filter.
+	 * 
+	 * @param fingerprint The fingerprint.
+	 * 
+	 * @return A value <code>true</code> if at least one bit was not set, which means that the
+	 *         fingerprint is certainly new.
+	 */
+	private boolean addToBloomFilter(long fingerprint) {
+		boolean seen = true;
+		long mask = (long) bloom.length * 64 - 1;
+		long step = mix(fingerprint) | 1;
+		long bit = fingerprint;
+		for (int i = 0; i < HASHES; i++, bit += step) {
+			int index = (int) ((bit & mask) >>> 6);
+			long flag = 1L << bit;
+			if ((bloom[index] & flag) == 0) {
+				seen = false;
+				bloom[index] |= flag;
+			}
+		}
+		return !seen;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static long hash(String value) {
+		// FNV-1a over the characters, with the surrounding spaces ignored
+		int start = 0;
+		int end = value.length();
+		while (start < end && value.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && value.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		long hash = 0xCBF29CE484222325L;
+		for (int i = start; i < end; i++) {
+			hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+		}
+		return hash;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static long mix(long value) {
+		value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+		value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+		return value ^ value >>> 31;
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private long expectedGames = 1 << 20;
+		
+		private List<String> tags = DEFAULT_TAGS;
+		
+		private boolean exact = true;
+		
+		private Builder() {
+		}
+		
+		public Builder expectedGames(long expectedGames) {
+			this.expectedGames = Math.max(1, expectedGames);
+			return this;
+		}
+		
+		public Builder tags(List<String> tags) {
+			this.tags = List.copyOf(tags);
+			return this;
+		}
+		
+		public Builder exact(boolean exact) {
+			this.exact = exact;
+			return this;
+		}
+		
+		public GameDeduplicator build() {
+			return new GameDeduplicator(this);
+		}
+	}
+}
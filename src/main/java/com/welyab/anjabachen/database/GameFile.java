@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+
+/**
+ * A memory mapped file of games in a compact binary format, written by {@link GameFileWriter}.
+ * 
+ * <p>
+ * The file starts with a header: the magic number <code>AJGF</code>, the format version and the
+ * offset of the index, all big endian. Then come the games, each one with its tag pairs (as
+ * varint sized UTF-8 strings), its result, its number of movements and the movements. A movement
+ * is its index in the legal movements of the position, as listed by
+ * {@link Board#getMovements(byte, boolean)}, written with the number of bits needed for the count
+ * of legal movements. The index at the end of the file has the number of games and the offset of
+ * each game, so a game is found by its id without scanning the file.
+ * 
+ * <p>
+ * Appending games overwrites the index with the new games and writes a new index after them, so
+ * the file never keeps dead bytes. The price is a side file, named after the game file with the
+ * {@value #SAVED_INDEX_SUFFIX} suffix, where the writer saves the old index (8 bytes per game)
+ * before overwriting it, and which is deleted once the header points to the new index. While the
+ * side file exists and the header still points to the old index, the side file is the index of
+ * the file: readers use it, and a writer opened after an interrupted append drops the games of
+ * that append and starts from it.
+ * 
+ * <p>
+ * The movements are decoded by generating the legal movements of each position again, which is
+ * the price for the size: a game takes about a byte per movement plus its tags, against 5 to 10
+ * bytes per movement in PGN.
+ * 
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class GameFile {
+	
+	/** The magic number at the start of the file: <code>AJGF</code>. */
+	static final int MAGIC = 0x414A4746;
+	
+	@SuppressWarnings("javadoc")
+	static final int VERSION = 1;
+	
+	/** The size of the file header: the magic number, the version and the index offset. */
+	static final int HEADER_SIZE = 16;
+	
+	/** The suffix of the side file with the index saved while games are appended. */
+	static final String SAVED_INDEX_SUFFIX = ".index";
+	
+	@SuppressWarnings("javadoc")
+	private static final String[] RESULTS = {
+		"*", "1-0", "0-1", "1/2-1/2"
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+	
+	/** The mapped regions of the file. Each one starts at a game and ends at a game end. */
+	private final ByteBuffer[] chunks;
+	
+	/** The id of the first game of each chunk. */
+	private final long[] chunkFirstGames;
+	
+	@SuppressWarnings("javadoc")
+	private final LongBuffer offsets;
+	
+	@SuppressWarnings("javadoc")
+	private final long count;
+	
+	@SuppressWarnings("javadoc")
+	GameFile(Path file, int chunkSize) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			LongBuffer saved = readSavedIndex(file);
+			long size = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			header.flip();
+			long indexOffset = checkHeader(header);
+			LongBuffer index = null;
+			if (saved == null) {
+				index = mapIndex(channel, indexOffset, size, file);
+				// a writer may have started to overwrite the index meanwhile
+				saved = readSavedIndex(file);
+			}
+			if (saved != null && saved.get(0) == indexOffset) {
+				index = saved.position(1).slice();
+			} else if (index == null) {
+				index = mapIndex(channel, indexOffset, size, file);
+			}
+			count = index.get(0);
+			offsets = index.position(1).slice();
+			
+			List<ByteBuffer> regions = new ArrayList<>();
+			List<Long> firstGames = new ArrayList<>();
+			long game = 0;
+			while (game < count) {
+				long start = offsets.get((int) game);
+				long end = game + 1;
+				while (end < count && offsets.get((int) end) - start <= chunkSize) {
+					end++;
+				}
+				long regionEnd = end < count ? offsets.get((int) end) : indexOffset;
+				if (regionEnd - start > Integer.MAX_VALUE) {
+					throw new ChessException(String.format("Game %d is too large", game));
+				}
+				regions.add(channel.map(FileChannel.MapMode.READ_ONLY, start, regionEnd - start));
+				firstGames.add(game);
+				game = end;
+			}
+			chunks = regions.toArray(new ByteBuffer[0]);
+			chunkFirstGames = firstGames.stream().mapToLong(Long::longValue).toArray();
+		}
+	}
+	
+	/**
+	 * Opens a game file.
+	 * 
+	 * @param file The file.
+	 * 
+	 * @return The game file.
+	 * 
+	 * @throws IOException If the file can't be mapped.
+	 * @throws ChessException If the file is not a complete game file.
+	 */
+	public static GameFile open(Path file) throws IOException {
+		return new GameFile(file, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Retrieves the number of games in the file.
+	 * 
+	 * @return The number of games.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Reads a game.
+	 * 
+	 * @param id The game id, from <code>0</code> to <code>getCount() - 1</code>.
+	 * 
+	 * @return The game.
+	 * 
+	 * @throws IndexOutOfBoundsException If there is no game with the id.
+	 */
+	public StoredGame read(long id) {
+		if (id < 0 || id >= count) {
+			throw new IndexOutOfBoundsException(String.format("Invalid game id: %d", id));
+		}
+		int chunk = findChunk(id);
+		ByteBuffer buffer = chunks[chunk].duplicate();
+		buffer.position((int) (offsets.get((int) id) - offsets.get((int) chunkFirstGames[chunk])));
+		List<Movement> movements = new ArrayList<>();
+		return decode(id, buffer, (board, movement) -> movements.add(movement), movements);
+	}
+	
+	/**
+	 * Reads all games, in the order of the file, scanning the mapped regions sequentially.
+	 * 
+	 * @param consumer Receives the games.
+	 */
+	public void forEach(Consumer<StoredGame> consumer) {
+		long id = 0;
+		for (ByteBuffer chunk : chunks) {
+			ByteBuffer buffer = chunk.duplicate();
+			while (buffer.hasRemaining()) {
+				List<Movement> movements = new ArrayList<>();
+				consumer.accept(decode(id++, buffer, (board, movement) -> movements.add(movement), movements));
+			}
+		}
+	}
+	
+	/**
+	 * Replays the movements of a game. The visitor is called before each movement is played, with
+	 * the board in the position where the movement is played, and once more with a
+	 * <code>null</code> movement and the final position of the game; the board must not be changed.
+	 * 
+	 * @param id The game id.
+	 * @param visitor Receives the board and each movement.
+	 * 
+	 * @throws IndexOutOfBoundsException If there is no game with the id.
+	 */
+	public void replay(long id, BiConsumer<Board, Movement> visitor) {
+		if (id < 0 || id >= count) {
+			throw new IndexOutOfBoundsException(String.format("Invalid game id: %d", id));
+		}
+		int chunk = findChunk(id);
+		ByteBuffer buffer = chunks[chunk].duplicate();
+		buffer.position((int) (offsets.get((int) id) - offsets.get((int) chunkFirstGames[chunk])));
+		decode(id, buffer, visitor, null);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int findChunk(long id) {
+		int low = 0;
+		int high = chunkFirstGames.length - 1;
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if (chunkFirstGames[middle] <= id) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return low;
+	}
+	
+	/**
+	 * Decodes the game at the buffer position and leaves the buffer at the next game.
+	 * 
+	 * @param id The game id.
+	 * @param buffer The buffer.
+	 * @param visitor Receives the board and each movement before it is played, and the final
+	 *        position with a <code>null</code> movement if no game is returned.
+	 * @param movements The movements list of the returned game, or <code>null</code> if no game is
+	 *        returned.
+	 * 
+	 * @return The game, or <code>null</code> if no movements list is given.
+	 */
+	private static StoredGame decode(
+		long id,
+		ByteBuffer buffer,
+		BiConsumer<Board, Movement> visitor,
+		List<Movement> movements
+	) {
+		int tagCount = getVarint(buffer);
+		Map<String, String> tags = new LinkedHashMap<>();
+		for (int i = 0; i < tagCount; i++) {
+			String name = getText(buffer);
+			tags.put(name, getText(buffer));
+		}
+		String result = decodeResult(buffer.get());
+		int plies = getVarint(buffer);
+		Board board = new Board(tags.getOrDefault("FEN", MovementUtil.FEN_INITIAL_POSITION));
+		long bits = 0;
+		int bitCount = 0;
+		for (int ply = 0; ply < plies; ply++) {
+			Movements legal = board.getMovements(board.getSideToMove(), false);
+			int total = 0;
+			for (int i = 0; i < legal.getOriginCount(); i++) {
+				total += legal.getPieceMovements(i).getTargertsCount();
+			}
+			int length = bitsFor(total);
+			while (bitCount < length) {
+				bits = bits << 8 | buffer.get() & 0xFF;
+				bitCount += 8;
+			}
+			bitCount -= length;
+			int index = (int) (bits >>> bitCount) & (1 << length) - 1;
+			Movement movement = null;
+			for (int i = 0; movement == null && i < legal.getOriginCount(); i++) {
+				PieceMovements pieceMovements = legal.getPieceMovements(i);
+				if (index < pieceMovements.getTargertsCount()) {
+					movement = new Movement(pieceMovements.getOrigin(), pieceMovements.getTarget(index));
+				}
+				index -= pieceMovements.getTargertsCount();
+			}
+			if (movement == null) {
+				throw new ChessException(String.format("Invalid movement in game %d, ply %d", id, ply));
+			}
+			visitor.accept(board, movement);
+			board.move(movement);
+		}
+		if (movements == null) {
+			visitor.accept(board, null);
+		}
+		return movements == null ? null : new StoredGame(id, tags, movements, result);
+	}
+	
+	/**
+	 * Computes the number of bits needed to write the index of a movement.
+	 * 
+	 * @param count The number of legal movements.
+	 * 
+	 * @return The number of bits, <code>0</code> when there is only one movement.
+	 */
+	static int bitsFor(int count) {
+		return count <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(count - 1);
+	}
+	
+	/**
+	 * Validates the file header.
+	 * 
+	 * @param header The header, with {@value #HEADER_SIZE} bytes.
+	 * @param size The file size.
+	 * 
+	 * @return The index offset.
+	 * 
+	 * @throws ChessException If the header is invalid or the file was not closed by its writer.
+	 */
+	static long checkHeader(ByteBuffer header) {
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+			throw new ChessException("Not a game file");
+		}
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new ChessException(String.format("Unsupported game file version: %d", version));
+		}
+		long indexOffset = header.getLong();
+		if (indexOffset < HEADER_SIZE) {
+			throw new ChessException("Incomplete game file");
+		}
+		return indexOffset;
+	}
+	
+	/**
+	 * Maps the index at the end of a game file.
+	 * 
+	 * @param channel The file channel.
+	 * @param indexOffset The index offset, from the header.
+	 * @param size The file size.
+	 * @param file The file, for the error message.
+	 * 
+	 * @return The number of games followed by the offset of each game.
+	 * 
+	 * @throws IOException If the index can't be mapped.
+	 * @throws ChessException If the index doesn't end the file.
+	 */
+	private static LongBuffer mapIndex(FileChannel channel, long indexOffset, long size, Path file) throws IOException {
+		if (indexOffset + Long.BYTES > size || (size - indexOffset) % Long.BYTES != 0) {
+			throw new ChessException(String.format("Invalid game file index: %s", file));
+		}
+		LongBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - indexOffset).asLongBuffer();
+		if (index.get(0) != index.capacity() - 1) {
+			throw new ChessException(String.format("Invalid game file index: %s", file));
+		}
+		return index;
+	}
+	
+	/**
+	 * Resolves the side file with the index saved while games are appended to a game file.
+	 * 
+	 * @param file The game file.
+	 * 
+	 * @return The side file.
+	 */
+	static Path savedIndexFile(Path file) {
+		return file.resolveSibling(file.getFileName() + SAVED_INDEX_SUFFIX);
+	}
+	
+	/**
+	 * Maps the index saved by a writer that appends games to a game file.
+	 * 
+	 * @param file The game file.
+	 * 
+	 * @return The offset of the saved index in the game file, the number of games and the offset of
+	 *         each game, or <code>null</code> if there is no complete saved index.
+	 * 
+	 * @throws IOException If the side file can't be mapped.
+	 */
+	static LongBuffer readSavedIndex(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(savedIndexFile(file), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < 2 * Long.BYTES || size % Long.BYTES != 0) {
+				return null;
+			}
+			LongBuffer saved = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).asLongBuffer();
+			return saved.get(1) == saved.capacity() - 2 ? saved : null;
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	static int encodeResult(String result) {
+		for (int i = 0; i < RESULTS.length; i++) {
+			if (RESULTS[i].equals(result)) {
+				return i;
+			}
+		}
+		return 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String decodeResult(byte code) {
+		return code >= 0 && code < RESULTS.length ? RESULTS[code] : RESULTS[0];
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String getText(ByteBuffer buffer) {
+		byte[] bytes = new byte[getVarint(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+	}
+}
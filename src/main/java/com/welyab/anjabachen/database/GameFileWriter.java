@@ -0,0 +1,412 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+import com.welyab.anjabachen.movement.png.ParallelPgnParser;
+import com.welyab.anjabachen.movement.png.ParsedGame;
+
+/**
+ * Writes games to a {@link GameFile}. Each movement is stored as its index in the legal movements
+ * of the position, with just the bits needed for the number of legal movements, so a movement
+ * takes a byte or less and a forced movement takes no bits at all.
+ * 
+ * <p>
+ * Opening an existing file appends the new games to it. Before the first new game overwrites the
+ * offsets index of the file, the index is saved to a side file and forced to disk; when the writer
+ * is closed, the new index, with all games, is written after the new games and forced to disk, the
+ * header is pointed to it, and the side file is deleted. Until the header is written the file reads
+ * as it was when the writer was opened, through the saved index, so a crash loses the games of the
+ * unfinished append but never the older ones, and the next writer starts over from the saved index.
+ * A new file is only readable after its writer is closed.
+ * 
+ * <pre>
+ * try (GameFileWriter writer = GameFileWriter.open(path)) {
+ * 	writer.write(game.getTags(), movements, "1-0");
+ * }
+ * </pre>
+ * 
+ * <p>
+ * A writer is not thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class GameFileWriter implements Closeable {
+	
+	@SuppressWarnings("javadoc")
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	@SuppressWarnings("javadoc")
+	private final Path file;
+	
+	@SuppressWarnings("javadoc")
+	private final FileChannel channel;
+	
+	@SuppressWarnings("javadoc")
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	
+	/** The file position of the first byte of the buffer. */
+	private long position;
+	
+	@SuppressWarnings("javadoc")
+	private long[] offsets;
+	
+	@SuppressWarnings("javadoc")
+	private int count;
+	
+	/** The movement indexes of the game being written, shifted left by 5, with their bit counts. */
+	private int[] codes = new int[256];
+	
+	/** The bits of the movements not yet written. */
+	private long bits;
+	
+	@SuppressWarnings("javadoc")
+	private int bitCount;
+	
+	/** Whether the file needs a new index: it was created, games were appended, or an append was interrupted. */
+	private boolean modified;
+	
+	@SuppressWarnings("javadoc")
+	private boolean closed;
+	
+	@SuppressWarnings("javadoc")
+	private GameFileWriter(Path file, FileChannel channel) throws IOException {
+		this.file = file;
+		this.channel = channel;
+		long size = channel.size();
+		if (size == 0) {
+			Files.deleteIfExists(GameFile.savedIndexFile(file));
+			offsets = new long[1024];
+			buffer.putInt(GameFile.MAGIC).putInt(GameFile.VERSION).putLong(0);
+			position = 0;
+			modified = true;
+			return;
+		}
+		ByteBuffer header = ByteBuffer.allocate(GameFile.HEADER_SIZE);
+		channel.read(header, 0);
+		header.flip();
+		long indexOffset = GameFile.checkHeader(header);
+		LongBuffer saved = GameFile.readSavedIndex(file);
+		LongBuffer index;
+		if (saved != null && saved.get(0) == indexOffset) {
+			// an append was interrupted: its games are dropped and the saved index is written back
+			index = saved.position(1).slice();
+			modified = true;
+		} else {
+			if (indexOffset + Long.BYTES > size || (size - indexOffset) % Long.BYTES != 0) {
+				throw new ChessException("Invalid game file index");
+			}
+			index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, size - indexOffset).asLongBuffer();
+		}
+		long games = index.get(0);
+		if (games != index.capacity() - 1 || games > Integer.MAX_VALUE - 8) {
+			throw new ChessException("Invalid game file index");
+		}
+		count = (int) games;
+		offsets = new long[Math.max(1024, count * 2)];
+		index.position(1);
+		index.get(offsets, 0, count);
+		// the new games overwrite the index, which is saved aside by the first write
+		position = indexOffset;
+	}
+	
+	/**
+	 * Saves the index of the file to the side file and forces it to disk, so the file stays
+	 * readable while the new games overwrite the index.
+	 * 
+	 * @throws IOException If the side file can't be written.
+	 */
+	private void saveIndex() throws IOException {
+		Path saved = GameFile.savedIndexFile(file);
+		try (FileChannel out = FileChannel.open(
+			saved,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.TRUNCATE_EXISTING,
+			StandardOpenOption.WRITE
+		)) {
+			ByteBuffer index = ByteBuffer.allocate(Long.BYTES * (count + 2));
+			index.putLong(position).putLong(count);
+			index.asLongBuffer().put(offsets, 0, count);
+			index.clear();
+			while (index.hasRemaining()) {
+				out.write(index);
+			}
+			out.force(false);
+		}
+	}
+	
+	/**
+	 * Creates a game file, or opens an existing one to append games to it.
+	 * 
+	 * @param path The file path.
+	 * 
+	 * @return The writer.
+	 * 
+	 * @throws IOException If the file can't be opened.
+	 * @throws ChessException If the existing file is not a complete game file.
+	 */
+	public static GameFileWriter open(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(
+			path,
+			StandardOpenOption.CREATE,
+			StandardOpenOption.READ,
+			StandardOpenOption.WRITE
+		);
+		try {
+			return new GameFileWriter(path, channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Converts a PGN file to a game file, parsing it with {@link ParallelPgnParser}. The games keep
+	 * the order of the PGN file; games with an invalid movement are stored up to that movement.
+	 * 
+	 * @param pgn The PGN file.
+	 * @param output The game file. Games are appended if it exists.
+	 * 
+	 * @return The number of games written.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the parser.
+	 */
+	public static long importPgn(Path pgn, Path output) throws IOException, InterruptedException {
+		return importPgn(pgn, output, null);
+	}
+	
+	/**
+	 * Converts a PGN file to a game file, skipping the games the deduplicator has already seen, in
+	 * this file or in the ones imported before with the same deduplicator.
+	 * 
+	 * @param pgn The PGN file.
+	 * @param output The game file. Games are appended if it exists.
+	 * @param deduplicator The deduplicator, or <code>null</code> to write all games.
+	 * 
+	 * @return The number of games written.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the parser.
+	 */
+	public static long importPgn(Path pgn, Path output, GameDeduplicator deduplicator)
+			throws IOException, InterruptedException {
+		try (GameFileWriter writer = open(output)) {
+			IOException[] failure = new IOException[1];
+			long[] written = new long[1];
+			ParallelPgnParser.builder().build().parse(pgn, (ParsedGame parsed) -> {
+				Map<String, String> tags = parsed.getGame().getTags();
+				if (failure[0] != null || deduplicator != null && !deduplicator.add(tags, parsed.getMovements())) {
+					return;
+				}
+				try {
+					writer.write(tags, parsed.getMovements(), parsed.getGame().getResult());
+					written[0]++;
+				} catch (IOException e) {
+					failure[0] = e;
+				}
+			});
+			if (failure[0] != null) {
+				throw failure[0];
+			}
+			return written[0];
+		}
+	}
+	
+	/**
+	 * Writes a game. The movements are played from the position of the <code>FEN</code> tag, or
+	 * from the standard initial position.
+	 * 
+	 * @param tags The tag pairs.
+	 * @param movements The movements, legal in the sequence they are played.
+	 * @param result The result: <code>1-0</code>, <code>0-1</code>, <code>1/2-1/2</code> or
+	 *        <code>*</code>.
+	 * 
+	 * @return The game id.
+	 * 
+	 * @throws IOException If the file can't be written.
+	 * @throws ChessException If a movement is not legal.
+	 */
+	public long write(Map<String, String> tags, List<Movement> movements, String result) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("The writer is closed");
+		}
+		// the movements are encoded before anything is written, so an illegal movement leaves no
+		// partial game in the file
+		Board board = new Board(tags.getOrDefault("FEN", MovementUtil.FEN_INITIAL_POSITION));
+		if (codes.length < movements.size()) {
+			codes = new int[Math.max(movements.size(), codes.length * 2)];
+		}
+		for (int ply = 0; ply < movements.size(); ply++) {
+			Movement movement = movements.get(ply);
+			Movements legal = board.getMovements(board.getSideToMove(), false);
+			int index = 0;
+			int found = -1;
+			for (int i = 0; i < legal.getOriginCount(); i++) {
+				PieceMovements pieceMovements = legal.getPieceMovements(i);
+				boolean sameOrigin = pieceMovements.getOrigin().equals(movement.getOrigin());
+				for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+					MovementTarget target = pieceMovements.getTarget(j);
+					if (sameOrigin
+							&& target.getPosition().equals(movement.getTarget().getPosition())
+							&& target.getPieceCode() == movement.getTarget().getPieceCode()) {
+						found = index;
+					}
+					index++;
+				}
+			}
+			if (found < 0) {
+				throw new ChessException(String.format("Illegal movement in game %d: %s", count, movement));
+			}
+			codes[ply] = found << 5 | GameFile.bitsFor(index);
+			board.move(movement);
+		}
+		
+		if (!modified) {
+			saveIndex();
+			modified = true;
+		}
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, count * 2);
+		}
+		offsets[count] = position + buffer.position();
+		putVarint(tags.size());
+		for (Map.Entry<String, String> tag : tags.entrySet()) {
+			putText(tag.getKey());
+			putText(tag.getValue());
+		}
+		put((byte) GameFile.encodeResult(result));
+		putVarint(movements.size());
+		for (int ply = 0; ply < movements.size(); ply++) {
+			putBits(codes[ply] >>> 5, codes[ply] & 31);
+		}
+		if (bitCount > 0) {
+			put((byte) (bits << 8 - bitCount));
+			bitCount = 0;
+		}
+		return count++;
+	}
+	
+	/**
+	 * Retrieves the number of games in the file, including the ones written before it was opened.
+	 * 
+	 * @return The number of games.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (!modified) {
+				return;
+			}
+			long indexOffset = position + buffer.position();
+			putLong(count);
+			for (int i = 0; i < count; i++) {
+				putLong(offsets[i]);
+			}
+			flush();
+			// the games of an interrupted append may lie after the new index
+			channel.truncate(position);
+			// the new index must be on disk before the header points to it
+			channel.force(false);
+			ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(indexOffset).flip();
+			channel.write(header, GameFile.HEADER_SIZE - Long.BYTES);
+			channel.force(false);
+			Files.deleteIfExists(GameFile.savedIndexFile(file));
+		} finally {
+			channel.close();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void putBits(int value, int length) throws IOException {
+		bits = bits << length | value;
+		bitCount += length;
+		while (bitCount >= 8) {
+			bitCount -= 8;
+			put((byte) (bits >>> bitCount));
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void putText(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		putVarint(bytes.length);
+		for (byte b : bytes) {
+			put(b);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void putVarint(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		put((byte) value);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void putLong(long value) throws IOException {
+		if (buffer.remaining() < Long.BYTES) {
+			flush();
+		}
+		buffer.putLong(value);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void put(byte value) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush();
+		}
+		buffer.put(value);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		buffer.clear();
+	}
+}
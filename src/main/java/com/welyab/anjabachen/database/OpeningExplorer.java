@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.SortedEntries;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+
+/**
+ * A memory mapped opening explorer file, built by {@link OpeningExplorerBuilder}: for each
+ * position, the movements played in it, with the number of games won by each side, drawn, and the
+ * average rating of the players.
+ * 
+ * <p>
+ * The file has a header with the magic number <code>AJEX</code>, the format version and the number
+ * of entries, followed by the entries, each one with the Zobrist key of the position, the movement,
+ * the results and the ratings, sorted by key (as unsigned numbers) and movement. The movements of
+ * a position are found with a binary search.
+ * 
+ * <pre>
+ * OpeningExplorer explorer = OpeningExplorer.open(Paths.get("explorer.bin"));
+ * for (ExplorerMove move : explorer.getMovements(board)) {
+ * 	System.out.println(move);
+ * }
+ * </pre>
+ * 
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class OpeningExplorer {
+	
+	/** The magic number at the start of the file: <code>AJEX</code>. */
+	static final int MAGIC = 0x414A4558;
+	
+	@SuppressWarnings("javadoc")
+	static final int VERSION = 1;
+	
+	/** The size of the header: the magic number, the version and the number of entries. */
+	static final int HEADER_SIZE = 16;
+	
+	/** The size of each entry, in bytes. */
+	static final int ENTRY_SIZE = 36;
+	
+	@SuppressWarnings("javadoc")
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+	
+	@SuppressWarnings("javadoc")
+	private final SortedEntries entries;
+	
+	@SuppressWarnings("javadoc")
+	OpeningExplorer(Path file, int chunkSize) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+				throw new ChessException(String.format("Not an opening explorer file: %s", file));
+			}
+			int version = header.getInt();
+			if (version != VERSION) {
+				throw new ChessException(String.format("Unsupported opening explorer version: %d", version));
+			}
+			long size = header.getLong();
+			if (size < 0 || HEADER_SIZE + size * ENTRY_SIZE != fileSize) {
+				throw new ChessException(String.format("Invalid opening explorer file: %s", file));
+			}
+			entries = SortedEntries.map(channel, HEADER_SIZE, size, ENTRY_SIZE, chunkSize);
+		}
+	}
+	
+	/**
+	 * Opens an opening explorer file.
+	 * 
+	 * @param file The file.
+	 * 
+	 * @return The explorer.
+	 * 
+	 * @throws IOException If the file can't be mapped.
+	 * @throws ChessException If the file is not a complete explorer file.
+	 */
+	public static OpeningExplorer open(Path file) throws IOException {
+		return new OpeningExplorer(file, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Retrieves the number of <code>(position, movement)</code> entries.
+	 * 
+	 * @return The number of entries.
+	 */
+	public long size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Retrieves the movements played in a position.
+	 * 
+	 * @param fen The position, in FEN notation.
+	 * 
+	 * @return The movements, from the most played to the least played.
+	 */
+	public List<ExplorerMove> getMovements(String fen) {
+		return getMovements(new Board(fen));
+	}
+	
+	/**
+	 * Retrieves the movements played in the current position of the given board. Entries with
+	 * movements that are not legal in the position, left by key collisions, are ignored.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The movements, from the most played to the least played.
+	 */
+	public List<ExplorerMove> getMovements(Board board) {
+		List<ExplorerMove> moves = new ArrayList<>();
+		long key = board.getZobristKey();
+		boolean white = MovementUtil.isWhite(board.getSideToMove());
+		Movements legal = null;
+		for (long entry = entries.lowerBound(key); entries.hasKey(entry, key); entry++) {
+			if (legal == null) {
+				legal = board.getMovements(board.getSideToMove(), false);
+			}
+			Movement movement = decodeMovement(legal, entries.getInt(entry, 8));
+			if (movement == null) {
+				continue;
+			}
+			int ratedGames = entries.getInt(entry, 24);
+			moves.add(
+				new ExplorerMove(
+					movement,
+					white,
+					entries.getInt(entry, 12),
+					entries.getInt(entry, 16),
+					entries.getInt(entry, 20),
+					ratedGames == 0 ? 0 : (int) (entries.getLong(entry, 28) / ratedGames)
+				)
+			);
+		}
+		moves.sort(Comparator.comparingInt(ExplorerMove::getGames).reversed());
+		return moves;
+	}
+	
+	/**
+	 * Encodes a movement as its origin square, its target square and the type of the piece after
+	 * the movement, which tells the promotions apart. No movement has code zero.
+	 * 
+	 * @param movement The movement.
+	 * 
+	 * @return The code, a positive number of 15 bits.
+	 */
+	static int encodeMovement(Movement movement) {
+		int origin = movement.getOrigin().row * 8 + movement.getOrigin().column;
+		int target = movement.getTarget().getPosition().row * 8 + movement.getTarget().getPosition().column;
+		return origin << 9 | target << 3 | MovementUtil.getPieceType(movement.getTarget().getPieceCode());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Movement decodeMovement(Movements legal, int code) {
+		for (int i = 0; i < legal.getOriginCount(); i++) {
+			PieceMovements pieceMovements = legal.getPieceMovements(i);
+			if (pieceMovements.getOrigin().row * 8 + pieceMovements.getOrigin().column != code >>> 9) {
+				continue;
+			}
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				Movement movement = new Movement(pieceMovements.getOrigin(), pieceMovements.getTarget(j));
+				if (encodeMovement(movement) == code) {
+					return movement;
+				}
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.png.ParallelPgnParser;
+import com.welyab.anjabachen.movement.png.ParsedGame;
+
+/**
+ * Builds {@link OpeningExplorer} files from the games of a {@link GameFile} or a PGN file.
+ * 
+ * <p>
+ * Worker threads play the first movements of the games and count, for each position and movement,
+ * the games won by each side and drawn, and the ratings of the players of the movement (the
+ * <code>WhiteElo</code> and <code>BlackElo</code> tags). The counts live in a fixed size primitive
+ * hash table, which is pruned of its rarest entries when it gets full, so the memory used doesn't
+ * depend on the number of games. Games without a result are ignored.
+ * 
+ * <pre>
+ * OpeningExplorerBuilder builder = OpeningExplorerBuilder.builder()
+ * 	.maxPly(30)
+ * 	.minGames(3)
+ * 	.build();
+ * builder.build(GameFile.open(Paths.get("games.ajg")), Paths.get("explorer.bin"));
+ * </pre>
+ * 
+ * @author Welyab Paula
+ * 
+ * @see OpeningExplorer
+ */
+public final class OpeningExplorerBuilder {
+	
+	/** The default number of plies of each game added to the explorer. */
+	public static final int DEFAULT_MAX_PLY = 40;
+	
+	/** The default number of entries kept in memory before the table is pruned. */
+	public static final int DEFAULT_MAX_ENTRIES = 1 << 22;
+	
+	@SuppressWarnings("javadoc")
+	private static final int BATCH_SIZE = 4096;
+	
+	/** The number of games of the game file read by a worker at a time. */
+	private static final int GAMES_PER_TASK = 64;
+	
+	@SuppressWarnings("javadoc")
+	private final int threads;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxPly;
+	
+	@SuppressWarnings("javadoc")
+	private final int minGames;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxEntries;
+	
+	@SuppressWarnings("javadoc")
+	private OpeningExplorerBuilder(Builder builder) {
+		threads = builder.threads;
+		maxPly = builder.maxPly;
+		minGames = builder.minGames;
+		maxEntries = builder.maxEntries;
+	}
+	
+	/**
+	 * Builds an explorer from the games of a game file.
+	 * 
+	 * @param games The game file.
+	 * @param output The explorer file. It is replaced only when the new one is complete.
+	 * 
+	 * @return The number of games counted.
+	 * 
+	 * @throws IOException If the explorer file can't be written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 */
+	public synchronized long build(GameFile games, Path output) throws IOException, InterruptedException {
+		try (Session session = new Session(games)) {
+			for (long id = 0; id < games.getCount(); id += GAMES_PER_TASK) {
+				if (!session.pool.submit(new Task(id, (int) Math.min(GAMES_PER_TASK, games.getCount() - id), null))) {
+					break;
+				}
+			}
+			return session.finish(output);
+		}
+	}
+	
+	/**
+	 * Builds an explorer from the games of a PGN file. Games with an invalid movement are counted up
+	 * to that movement.
+	 * 
+	 * @param pgn The PGN file.
+	 * @param output The explorer file. It is replaced only when the new one is complete.
+	 * 
+	 * @return The number of games counted.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 */
+	public synchronized long build(Path pgn, Path output) throws IOException, InterruptedException {
+		try (Session session = new Session(null)) {
+			ParallelPgnParser.builder().threads(threads).ordered(false).build().parse(pgn, (ParsedGame parsed) -> {
+				try {
+					session.pool.submit(new Task(0, 1, parsed));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					session.pool.fail(new ChessException("Explorer construction interrupted"));
+				}
+			});
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			return session.finish(output);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int parseResult(String result) {
+		return switch (result) {
+			case "1-0" -> 1;
+			case "0-1" -> -1;
+			case "1/2-1/2" -> 0;
+			default -> Integer.MIN_VALUE;
+		};
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int parseRating(String rating) {
+		if (rating == null) {
+			return 0;
+		}
+		try {
+			return Math.max(0, Integer.parseInt(rating.trim()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Builds an explorer with the default settings.
+	 * 
+	 * @param args The explorer file followed by the game file or the PGN file.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 2) {
+			System.err.println("Usage: OpeningExplorerBuilder <explorer.bin> <games.pgn | game file>");
+			System.exit(1);
+		}
+		Path output = Paths.get(args[0]);
+		Path input = Paths.get(args[1]);
+		OpeningExplorerBuilder builder = builder().build();
+		long games = input.getFileName().toString().toLowerCase().endsWith(".pgn")
+				? builder.build(input, output)
+				: builder.build(GameFile.open(input), output);
+		System.out.printf("%d games counted%n", games);
+	}
+	
+	/**
+	 * The worker threads and the table of one explorer construction.
+	 */
+	private final class Session implements AutoCloseable {
+		
+		@SuppressWarnings("javadoc")
+		private final ExplorerTable table = new ExplorerTable(maxEntries);
+		
+		@SuppressWarnings("javadoc")
+		private final AtomicLong games = new AtomicLong();
+		
+		/** The game file read by the workers, or <code>null</code> if the tasks have the games. */
+		private final GameFile gameFile;
+		
+		@SuppressWarnings("javadoc")
+		private final WorkerPool<Task> pool;
+		
+		@SuppressWarnings("javadoc")
+		private Session(GameFile gameFile) {
+			this.gameFile = gameFile;
+			pool = new WorkerPool<>("anjabachen-explorer", threads, threads * 64, worker -> new BatchWorker());
+		}
+		
+		@SuppressWarnings("javadoc")
+		private long finish(Path output) throws IOException, InterruptedException {
+			try {
+				pool.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			Path directory = output.toAbsolutePath().getParent();
+			Path temp = Files.createTempFile(directory, "anjabachen-explorer-", ".tmp");
+			try {
+				table.write(temp, minGames);
+				Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+			return games.get();
+		}
+		
+		@Override
+		public void close() {
+			pool.close();
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void process(Task task, Batch batch) {
+			if (task.game != null) {
+				process(task.game.getGame().getTags(), task.game.getGame().getResult(), task.game.getMovements(), batch);
+			} else {
+				for (long id = task.firstGame; id < task.firstGame + task.games; id++) {
+					StoredGame game = gameFile.read(id);
+					process(game.getTags(), game.getResult(), game.getMovements(), batch);
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void process(Map<String, String> tags, String gameResult, List<Movement> movements, Batch batch) {
+			int result = parseResult(gameResult);
+			if (result == Integer.MIN_VALUE) {
+				return;
+			}
+			games.incrementAndGet();
+			int whiteRating = parseRating(tags.get("WhiteElo"));
+			int blackRating = parseRating(tags.get("BlackElo"));
+			Board board = new Board(tags.getOrDefault("FEN", MovementUtil.FEN_INITIAL_POSITION));
+			for (int ply = 0; ply < movements.size() && ply < maxPly; ply++) {
+				Movement movement = movements.get(ply);
+				batch.keys[batch.size] = board.getZobristKey();
+				batch.movements[batch.size] = OpeningExplorer.encodeMovement(movement);
+				batch.results[batch.size] = result;
+				batch.ratings[batch.size] = MovementUtil.isWhite(board.getSideToMove()) ? whiteRating : blackRating;
+				if (++batch.size == BATCH_SIZE) {
+					flush(batch);
+				}
+				board.move(movement);
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void flush(Batch batch) {
+			synchronized (table) {
+				for (int i = 0; i < batch.size; i++) {
+					table.add(batch.keys[i], batch.movements[i], batch.results[i], batch.ratings[i]);
+				}
+			}
+			batch.size = 0;
+		}
+		
+		/**
+		 * A worker thread, which collects its counts in a batch before adding them to the table.
+		 */
+		private final class BatchWorker implements WorkerPool.Worker<Task> {
+			
+			@SuppressWarnings("javadoc")
+			private final Batch batch = new Batch();
+			
+			@Override
+			public void process(Task task) {
+				Session.this.process(task, batch);
+			}
+			
+			@Override
+			public void finish() {
+				flush(batch);
+			}
+		}
+	}
+	
+	/**
+	 * Games to be counted by a worker: a range of ids of the game file, or a single parsed game.
+	 */
+	private static final class Task {
+		
+		@SuppressWarnings("javadoc")
+		private final long firstGame;
+		
+		@SuppressWarnings("javadoc")
+		private final int games;
+		
+		@SuppressWarnings("javadoc")
+		private final ParsedGame game;
+		
+		@SuppressWarnings("javadoc")
+		private Task(long firstGame, int games, ParsedGame game) {
+			this.firstGame = firstGame;
+			this.games = games;
+			this.game = game;
+		}
+	}
+	
+	/**
+	 * The entries produced by a worker, added to the table in groups to reduce the contention.
+	 */
+	private static final class Batch {
+		
+		@SuppressWarnings("javadoc")
+		private final long[] keys = new long[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] movements = new int[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] results = new int[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] ratings = new int[BATCH_SIZE];
+		
+		@SuppressWarnings("javadoc")
+		private int size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int maxPly = DEFAULT_MAX_PLY;
+		
+		private int minGames = 1;
+		
+		private int maxEntries = DEFAULT_MAX_ENTRIES;
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder maxPly(int maxPly) {
+			this.maxPly = Math.max(1, maxPly);
+			return this;
+		}
+		
+		public Builder minGames(int minGames) {
+			this.minGames = Math.max(1, minGames);
+			return this;
+		}
+		
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = Math.max(2, maxEntries);
+			return this;
+		}
+		
+		public OpeningExplorerBuilder build() {
+			return new OpeningExplorerBuilder(this);
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.SortedEntries;
+import com.welyab.anjabachen.movement.Board;
+
+/**
+ * A memory mapped index of the positions reached by the games of a {@link GameFile}, built by
+ * {@link PositionIndexBuilder}. It finds the games that reach a position with a binary search, so
+ * a query reads a few pages of the index no matter how many games it has.
+ * 
+ * <p>
+ * The index is a directory of segment files. Each segment covers a range of game ids and holds,
+ * for every position of those games, a 16 bytes entry with the Zobrist key of the position, the
+ * game id and the ply, sorted by key (as unsigned numbers), game id and ply. New games go to a new
+ * segment, so the index grows without rewriting the segments that already exist; a query searches
+ * each segment. {@link PositionIndexBuilder#compact(Path)} merges the segments into one.
+ * 
+ * <pre>
+ * PositionIndex index = PositionIndex.open(Paths.get("games.index"));
+ * for (PositionMatch match : index.find(fen)) {
+ * 	StoredGame game = games.read(match.getGameId());
+ * }
+ * </pre>
+ * 
+ * <p>
+ * Positions are compared by their Zobrist keys, so a key collision may report a game that doesn't
+ * reach the position. Instances are thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class PositionIndex {
+	
+	/** The magic number at the start of each segment file: <code>AJPI</code>. */
+	static final int MAGIC = 0x414A5049;
+	
+	@SuppressWarnings("javadoc")
+	static final int VERSION = 1;
+	
+	/** The size of the segment header: the magic number, the version and the range of game ids. */
+	static final int HEADER_SIZE = 24;
+	
+	/** The size of each entry: the key, the game id and the ply. */
+	static final int ENTRY_SIZE = 16;
+	
+	@SuppressWarnings("javadoc")
+	static final String SEGMENT_PREFIX = "positions-";
+	
+	@SuppressWarnings("javadoc")
+	static final String SEGMENT_SUFFIX = ".idx";
+	
+	@SuppressWarnings("javadoc")
+	private static final int DEFAULT_CHUNK_SIZE = 1 << 30;
+	
+	/** The segments, ordered by their first game id. */
+	private final Segment[] segments;
+	
+	@SuppressWarnings("javadoc")
+	PositionIndex(Path directory, int chunkSize) throws IOException {
+		List<Segment> list = new ArrayList<>();
+		for (Path file : listSegments(directory)) {
+			list.add(new Segment(file, chunkSize));
+		}
+		list.sort(Comparator.comparingLong(segment -> segment.firstGame));
+		for (int i = 1; i < list.size(); i++) {
+			if (list.get(i).firstGame != list.get(i - 1).endGame) {
+				throw new ChessException(String.format("Position index segments are not contiguous: %s", directory));
+			}
+		}
+		segments = list.toArray(new Segment[0]);
+	}
+	
+	/**
+	 * Opens a position index. A directory without segments, or that doesn't exist, is an empty
+	 * index.
+	 * 
+	 * @param directory The index directory.
+	 * 
+	 * @return The index.
+	 * 
+	 * @throws IOException If a segment can't be mapped.
+	 * @throws ChessException If a segment file is invalid.
+	 */
+	public static PositionIndex open(Path directory) throws IOException {
+		return new PositionIndex(directory, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Retrieves the number of indexed games: the games with ids lower than this number.
+	 * 
+	 * @return The number of games.
+	 */
+	public long getGameCount() {
+		return segments.length == 0 ? 0 : segments[segments.length - 1].endGame;
+	}
+	
+	/**
+	 * Retrieves the number of indexed positions, counting each occurrence in each game.
+	 * 
+	 * @return The number of entries.
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.entries.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * Retrieves the number of segment files.
+	 * 
+	 * @return The number of segments.
+	 */
+	public int getSegmentCount() {
+		return segments.length;
+	}
+	
+	/**
+	 * Finds the games that reach a position.
+	 * 
+	 * @param fen The position, in FEN notation. The movement counters are ignored.
+	 * 
+	 * @return The matches, ordered by game id and ply. A game that reaches the position more than
+	 *         once has one match for each time.
+	 */
+	public List<PositionMatch> find(String fen) {
+		return find(new Board(fen).getZobristKey());
+	}
+	
+	/**
+	 * Finds the games that reach the position with the given key.
+	 * 
+	 * @param key The key, as computed by {@link Board#getZobristKey()}.
+	 * 
+	 * @return The matches, ordered by game id and ply.
+	 */
+	public List<PositionMatch> find(long key) {
+		List<PositionMatch> matches = new ArrayList<>();
+		for (Segment segment : segments) {
+			for (long entry = segment.entries.lowerBound(key); segment.entries.hasKey(entry, key); entry++) {
+				matches.add(new PositionMatch(segment.getGame(entry), segment.getPly(entry)));
+			}
+		}
+		return matches;
+	}
+	
+	/**
+	 * Finds the ids of the games that reach a position.
+	 * 
+	 * @param fen The position, in FEN notation. The movement counters are ignored.
+	 * 
+	 * @return The game ids, in ascending order and without repetitions.
+	 */
+	public long[] findGames(String fen) {
+		long key = new Board(fen).getZobristKey();
+		long[] games = new long[16];
+		int count = 0;
+		for (Segment segment : segments) {
+			for (long entry = segment.entries.lowerBound(key); segment.entries.hasKey(entry, key); entry++) {
+				long game = segment.getGame(entry);
+				if (count > 0 && games[count - 1] == game) {
+					continue;
+				}
+				if (count == games.length) {
+					games = Arrays.copyOf(games, count * 2);
+				}
+				games[count++] = game;
+			}
+		}
+		return Arrays.copyOf(games, count);
+	}
+	
+	/**
+	 * Lists the segment files of an index directory.
+	 * 
+	 * @param directory The directory.
+	 * 
+	 * @return The segment files, ordered by their first game id, or an empty list if the directory
+	 *         doesn't exist.
+	 * 
+	 * @throws IOException If the directory can't be read.
+	 */
+	static List<Path> listSegments(Path directory) throws IOException {
+		List<Path> files = new ArrayList<>();
+		if (!Files.isDirectory(directory)) {
+			return files;
+		}
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(files::add);
+		}
+		// the first game id is written with leading zeros, so the names sort in the order of the ids
+		files.sort(Comparator.comparing(file -> file.getFileName().toString()));
+		return files;
+	}
+	
+	/**
+	 * Resolves the segment file that starts at a game id.
+	 * 
+	 * @param directory The index directory.
+	 * @param firstGame The first game id of the segment.
+	 * 
+	 * @return The segment file.
+	 */
+	static Path segmentFile(Path directory, long firstGame) {
+		return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, firstGame, SEGMENT_SUFFIX));
+	}
+	
+	/**
+	 * A mapped segment file.
+	 */
+	private static final class Segment {
+		
+		@SuppressWarnings("javadoc")
+		private final long firstGame;
+		
+		@SuppressWarnings("javadoc")
+		private final long endGame;
+		
+		@SuppressWarnings("javadoc")
+		private final SortedEntries entries;
+		
+		@SuppressWarnings("javadoc")
+		private Segment(Path file, int chunkSize) throws IOException {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				long fileSize = channel.size();
+				ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+				channel.read(header, 0);
+				header.flip();
+				if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+					throw new ChessException(String.format("Not a position index segment: %s", file));
+				}
+				int version = header.getInt();
+				if (version != VERSION) {
+					throw new ChessException(String.format("Unsupported position index version: %d", version));
+				}
+				firstGame = header.getLong();
+				endGame = header.getLong();
+				if (endGame < firstGame || (fileSize - HEADER_SIZE) % ENTRY_SIZE != 0) {
+					throw new ChessException(String.format("Invalid position index segment: %s", file));
+				}
+				entries = SortedEntries.map(channel, HEADER_SIZE, (fileSize - HEADER_SIZE) / ENTRY_SIZE, ENTRY_SIZE, chunkSize);
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private long getGame(long entry) {
+			return entries.getInt(entry, 8) & 0xFFFFFFFFL;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private int getPly(long entry) {
+			return entries.getInt(entry, 12);
+		}
+	}
+}
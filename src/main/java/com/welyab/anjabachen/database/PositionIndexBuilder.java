@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.IndexSort;
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.BoardPool;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.png.ParallelPgnParser;
+import com.welyab.anjabachen.movement.png.ParsedGame;
+
+/**
+ * Builds and updates {@link PositionIndex} directories.
+ * 
+ * <p>
+ * The games are replayed by worker threads, which record the Zobrist key of every position with
+ * the game id and the ply. Each worker keeps its entries in primitive arrays of fixed size; when
+ * they get full the entries are sorted and written to a temporary run file, so the memory used
+ * doesn't depend on the number of games. At the end the runs are merged into a new segment of the
+ * index.
+ * 
+ * <p>
+ * An update only replays the games that are not indexed yet: the ones with ids equal or greater
+ * than {@link PositionIndex#getGameCount()}. Games appended to a {@link GameFile} are indexed
+ * without reading the older ones again.
+ * 
+ * <pre>
+ * PositionIndexBuilder builder = PositionIndexBuilder.builder().threads(8).build();
+ * try (GameFileWriter writer = GameFileWriter.open(gamesPath)) {
+ * 	writer.write(tags, movements, "1-0");
+ * }
+ * builder.update(GameFile.open(gamesPath), indexDirectory);
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class PositionIndexBuilder {
+	
+	/** The default number of entries kept in memory, shared by the workers, before runs are spilled. */
+	public static final int DEFAULT_MAX_ENTRIES = 1 << 22;
+	
+	/** The number of games of the game file replayed by a worker at a time. */
+	private static final int GAMES_PER_TASK = 64;
+	
+	@SuppressWarnings("javadoc")
+	private final int threads;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxEntries;
+	
+	@SuppressWarnings("javadoc")
+	private final Path tempDirectory;
+	
+	@SuppressWarnings("javadoc")
+	private PositionIndexBuilder(Builder builder) {
+		threads = builder.threads;
+		maxEntries = builder.maxEntries;
+		tempDirectory = builder.tempDirectory;
+	}
+	
+	/**
+	 * Indexes the games of a game file that are not in the index yet.
+	 * 
+	 * @param games The game file.
+	 * @param directory The index directory. It is created if it doesn't exist.
+	 * 
+	 * @return The number of games indexed by this update.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 * @throws ChessException If the index has more games than the file.
+	 */
+	public synchronized long update(GameFile games, Path directory) throws IOException, InterruptedException {
+		long first = PositionIndex.open(directory).getGameCount();
+		long end = games.getCount();
+		if (first > end) {
+			throw new ChessException(String.format("The index has %d games, the game file has %d", first, end));
+		}
+		if (first == end) {
+			return 0;
+		}
+		try (Session session = new Session(games)) {
+			for (long id = first; id < end; id += GAMES_PER_TASK) {
+				if (!session.pool.submit(new Task(id, (int) Math.min(GAMES_PER_TASK, end - id), null, null))) {
+					break;
+				}
+			}
+			session.finish(directory, first, end);
+		}
+		return end - first;
+	}
+	
+	/**
+	 * Indexes the games of a PGN file that are not in the index yet. The game ids are the positions
+	 * of the games in the file, the same ids given by {@link GameFileWriter#importPgn(Path, Path)};
+	 * games with an invalid movement are indexed up to that movement.
+	 * 
+	 * @param pgn The PGN file.
+	 * @param directory The index directory. It is created if it doesn't exist.
+	 * 
+	 * @return The number of games indexed by this update.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 */
+	public synchronized long update(Path pgn, Path directory) throws IOException, InterruptedException {
+		long first = PositionIndex.open(directory).getGameCount();
+		try (Session session = new Session(null)) {
+			long[] next = {0};
+			ParallelPgnParser.builder().threads(threads).ordered(true).build().parse(pgn, (ParsedGame parsed) -> {
+				long id = next[0]++;
+				if (id < first) {
+					return;
+				}
+				try {
+					session.pool.submit(new Task(id, 1, parsed.getGame().getFen(), parsed.getMovements()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					session.pool.fail(new ChessException("Index update interrupted"));
+				}
+			});
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			if (next[0] <= first) {
+				return 0;
+			}
+			session.finish(directory, first, next[0]);
+			return next[0] - first;
+		}
+	}
+	
+	/**
+	 * Merges the segments of an index into a single one, which makes the queries search one file.
+	 * The segments are replaced only after the merged one is complete.
+	 * 
+	 * @param directory The index directory.
+	 * 
+	 * @throws IOException If a segment can't be read or written.
+	 */
+	public synchronized void compact(Path directory) throws IOException {
+		PositionIndex index = PositionIndex.open(directory);
+		if (index.getSegmentCount() < 2) {
+			return;
+		}
+		List<Path> segments = PositionIndex.listSegments(directory);
+		Path target = PositionIndex.segmentFile(directory, 0);
+		Path temp = writeSegment(directory, segments, PositionIndex.HEADER_SIZE, 0, index.getGameCount());
+		// the other segments are deleted first, from the last one down: if this is interrupted, the
+		// remaining segments are still contiguous and the index just loses its last games, which the
+		// next update indexes again
+		for (int i = segments.size() - 1; i >= 0; i--) {
+			if (!segments.get(i).equals(target)) {
+				Files.delete(segments.get(i));
+			}
+		}
+		Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Merges sorted entry files into a temporary segment file.
+	 * 
+	 * @param directory The index directory.
+	 * @param inputs The files, each one sorted.
+	 * @param skip The number of bytes to skip at the start of each file.
+	 * @param firstGame The first game id of the segment.
+	 * @param endGame The game id after the last game of the segment.
+	 * 
+	 * @return The temporary file, in the index directory.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 */
+	private static Path writeSegment(Path directory, List<Path> inputs, int skip, long firstGame, long endGame)
+			throws IOException {
+		Files.createDirectories(directory);
+		Path temp = Files.createTempFile(directory, PositionIndex.SEGMENT_PREFIX, ".tmp");
+		PriorityQueue<RunReader> readers = new PriorityQueue<>(
+			Math.max(1, inputs.size()),
+			Comparator.<RunReader, Long>comparing(reader -> reader.key, Long::compareUnsigned)
+				.thenComparingLong(reader -> reader.value)
+		);
+		try (
+			DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)
+			)
+		) {
+			output.writeInt(PositionIndex.MAGIC);
+			output.writeInt(PositionIndex.VERSION);
+			output.writeLong(firstGame);
+			output.writeLong(endGame);
+			for (Path input : inputs) {
+				RunReader reader = new RunReader(input, skip);
+				if (reader.next()) {
+					readers.add(reader);
+				} else {
+					reader.close();
+				}
+			}
+			while (!readers.isEmpty()) {
+				RunReader reader = readers.poll();
+				output.writeLong(reader.key);
+				output.writeLong(reader.value);
+				if (reader.next()) {
+					readers.add(reader);
+				} else {
+					reader.close();
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		} finally {
+			for (RunReader reader : readers) {
+				reader.close();
+			}
+		}
+		return temp;
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Updates an index with the default settings.
+	 * 
+	 * @param args The index directory followed by the game file or the PGN file.
+	 * 
+	 * @throws IOException If a file can't be read or written.
+	 * @throws InterruptedException If the thread is interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length != 2) {
+			System.err.println("Usage: PositionIndexBuilder <index directory> <games.pgn | game file>");
+			System.exit(1);
+		}
+		Path directory = Paths.get(args[0]);
+		Path input = Paths.get(args[1]);
+		PositionIndexBuilder builder = builder().build();
+		long games = input.getFileName().toString().toLowerCase().endsWith(".pgn")
+				? builder.update(input, directory)
+				: builder.update(GameFile.open(input), directory);
+		System.out.printf("%d games indexed%n", games);
+	}
+	
+	/**
+	 * The worker threads and the runs of one update.
+	 */
+	private final class Session implements Closeable {
+		
+		@SuppressWarnings("javadoc")
+		private final List<Path> runs = new ArrayList<>();
+		
+		/** The game file replayed by the workers, or <code>null</code> if the tasks have the games. */
+		private final GameFile games;
+		
+		@SuppressWarnings("javadoc")
+		private final WorkerPool<Task> pool;
+		
+		@SuppressWarnings("javadoc")
+		private Session(GameFile games) {
+			this.games = games;
+			pool = new WorkerPool<>("anjabachen-positions", threads, threads * 64, worker -> new RunWorker());
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void finish(Path directory, long firstGame, long endGame) throws IOException, InterruptedException {
+			try {
+				pool.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			Path temp = writeSegment(directory, runs, 0, firstGame, endGame);
+			Files.move(
+				temp,
+				PositionIndex.segmentFile(directory, firstGame),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE
+			);
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void process(Task task, Run run) {
+			if (task.movements == null) {
+				for (long id = task.firstGame; id < task.firstGame + task.games; id++) {
+					long game = id;
+					int[] ply = new int[1];
+					games.replay(id, (board, movement) -> add(run, board.getZobristKey(), game, ply[0]++));
+				}
+				return;
+			}
+			Board board = BoardPool.acquire(task.fen);
+			try {
+				int ply = 0;
+				for (Movement movement : task.movements) {
+					add(run, board.getZobristKey(), task.firstGame, ply++);
+					board.move(movement);
+				}
+				add(run, board.getZobristKey(), task.firstGame, ply);
+			} finally {
+				BoardPool.release(board);
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void add(Run run, long key, long game, int ply) {
+			run.keys[run.size] = key;
+			run.values[run.size] = game << 32 | ply;
+			if (++run.size == run.keys.length) {
+				spill(run);
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void spill(Run run) {
+			try {
+				Path file = tempDirectory != null
+						? Files.createTempFile(tempDirectory, "anjabachen-positions-", ".run")
+						: Files.createTempFile("anjabachen-positions-", ".run");
+				synchronized (runs) {
+					runs.add(file);
+				}
+				run.spill(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			pool.close();
+			synchronized (runs) {
+				for (Path run : runs) {
+					Files.deleteIfExists(run);
+				}
+			}
+		}
+		
+		/**
+		 * A worker thread, which keeps its entries in its own run.
+		 */
+		private final class RunWorker implements WorkerPool.Worker<Task> {
+			
+			@SuppressWarnings("javadoc")
+			private final Run run = new Run(Math.max(16, maxEntries / threads));
+			
+			@Override
+			public void process(Task task) {
+				Session.this.process(task, run);
+			}
+			
+			@Override
+			public void finish() {
+				if (run.size > 0) {
+					spill(run);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Games to be replayed by a worker: a range of ids of the game file, or a single parsed game.
+	 */
+	private static final class Task {
+		
+		@SuppressWarnings("javadoc")
+		private final long firstGame;
+		
+		@SuppressWarnings("javadoc")
+		private final int games;
+		
+		@SuppressWarnings("javadoc")
+		private final String fen;
+		
+		@SuppressWarnings("javadoc")
+		private final List<Movement> movements;
+		
+		@SuppressWarnings("javadoc")
+		private Task(long firstGame, int games, String fen, List<Movement> movements) {
+			this.firstGame = firstGame;
+			this.games = games;
+			this.fen = fen != null ? fen : MovementUtil.FEN_INITIAL_POSITION;
+			this.movements = movements;
+		}
+	}
+	
+	/**
+	 * The entries recorded by a worker, kept in parallel arrays: the keys, and the game ids shifted
+	 * left by 32 with the plies.
+	 */
+	private static final class Run {
+		
+		@SuppressWarnings("javadoc")
+		private final long[] keys;
+		
+		@SuppressWarnings("javadoc")
+		private final long[] values;
+		
+		@SuppressWarnings("javadoc")
+		private final int[] order;
+		
+		@SuppressWarnings("javadoc")
+		private final int[] buffer;
+		
+		@SuppressWarnings("javadoc")
+		private int size;
+		
+		@SuppressWarnings("javadoc")
+		private Run(int capacity) {
+			keys = new long[capacity];
+			values = new long[capacity];
+			order = new int[capacity];
+			buffer = new int[capacity];
+		}
+		
+		/**
+		 * Writes the entries to a run file, sorted by key (as unsigned numbers) and value, and
+		 * clears the run.
+		 * 
+		 * @param file The run file.
+		 * 
+		 * @throws IOException If the file can't be written.
+		 */
+		private void spill(Path file) throws IOException {
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			IndexSort.sort(order, buffer, 0, size, this::compare);
+			try (
+				DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)
+				)
+			) {
+				for (int i = 0; i < size; i++) {
+					output.writeLong(keys[order[i]]);
+					output.writeLong(values[order[i]]);
+				}
+			}
+			size = 0;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private int compare(int entry1, int entry2) {
+			int result = Long.compareUnsigned(keys[entry1], keys[entry2]);
+			return result != 0 ? result : Long.compare(values[entry1], values[entry2]);
+		}
+	}
+	
+	/**
+	 * Reads the entries of a run or segment file.
+	 */
+	private static final class RunReader implements Closeable {
+		
+		@SuppressWarnings("javadoc")
+		private final DataInputStream input;
+		
+		@SuppressWarnings("javadoc")
+		private long remaining;
+		
+		@SuppressWarnings("javadoc")
+		private long key;
+		
+		@SuppressWarnings("javadoc")
+		private long value;
+		
+		@SuppressWarnings("javadoc")
+		private RunReader(Path file, int skip) throws IOException {
+			remaining = (Files.size(file) - skip) / PositionIndex.ENTRY_SIZE;
+			input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+			input.skipNBytes(skip);
+		}
+		
+		@SuppressWarnings("javadoc")
+		private boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+			remaining--;
+			key = input.readLong();
+			value = input.readLong();
+			return true;
+		}
+		
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int maxEntries = DEFAULT_MAX_ENTRIES;
+		
+		private Path tempDirectory;
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder maxEntries(int maxEntries) {
+			this.maxEntries = Math.max(1, maxEntries);
+			return this;
+		}
+		
+		public Builder tempDirectory(Path tempDirectory) {
+			this.tempDirectory = tempDirectory;
+			return this;
+		}
+		
+		public PositionIndexBuilder build() {
+			return new PositionIndexBuilder(this);
+		}
+	}
+}
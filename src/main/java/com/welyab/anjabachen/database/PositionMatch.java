@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+/**
+ * A game that reaches a searched position, found by {@link PositionIndex}.
+ * 
+ * @author Welyab Paula
+ */
+public final class PositionMatch {
+	
+	@SuppressWarnings("javadoc")
+	private final long gameId;
+	
+	@SuppressWarnings("javadoc")
+	private final int ply;
+	
+	@SuppressWarnings("javadoc")
+	PositionMatch(long gameId, int ply) {
+		this.gameId = gameId;
+		this.ply = ply;
+	}
+	
+	/**
+	 * Retrieves the id of the game in its {@link GameFile}.
+	 * 
+	 * @return The game id.
+	 */
+	public long getGameId() {
+		return gameId;
+	}
+	
+	/**
+	 * Retrieves the number of movements played in the game before the position is reached.
+	 * 
+	 * @return The ply, <code>0</code> for the initial position of the game.
+	 */
+	public int getPly() {
+		return ply;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof PositionMatch)) {
+			return false;
+		}
+		PositionMatch other = (PositionMatch) obj;
+		return gameId == other.gameId && ply == other.ply;
+	}
+	
+	@Override
+	public int hashCode() {
+		return Long.hashCode(gameId) * 31 + ply;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#%d ply %d", gameId, ply);
+	}
+}
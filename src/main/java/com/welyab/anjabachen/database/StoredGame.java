@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * A game read from a {@link GameFile}: the tag pairs, the movements and the result.
+ * 
+ * @author Welyab Paula
+ */
+public final class StoredGame {
+	
+	@SuppressWarnings("javadoc")
+	private final long id;
+	
+	@SuppressWarnings("javadoc")
+	private final Map<String, String> tags;
+	
+	@SuppressWarnings("javadoc")
+	private final List<Movement> movements;
+	
+	@SuppressWarnings("javadoc")
+	private final String result;
+	
+	@SuppressWarnings("javadoc")
+	StoredGame(long id, Map<String, String> tags, List<Movement> movements, String result) {
+		this.id = id;
+		this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+		this.movements = Collections.unmodifiableList(movements);
+		this.result = result;
+	}
+	
+	/**
+	 * Retrieves the game id: its zero based position in the file.
+	 * 
+	 * @return The game id.
+	 */
+	public long getId() {
+		return id;
+	}
+	
+	/**
+	 * Retrieves the tag pairs of the game.
+	 * 
+	 * @return The tags, in the order they were written.
+	 */
+	public Map<String, String> getTags() {
+		return tags;
+	}
+	
+	/**
+	 * Retrieves the value of a tag.
+	 * 
+	 * @param name The tag name, like <code>White</code>.
+	 * 
+	 * @return The value, or <code>null</code> if the game doesn't have the tag.
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+	
+	/**
+	 * Retrieves the initial position of the game, given by the <code>FEN</code> tag.
+	 * 
+	 * @return The FEN string, or the standard initial position if the game doesn't have the tag.
+	 */
+	public String getFen() {
+		return tags.getOrDefault("FEN", MovementUtil.FEN_INITIAL_POSITION);
+	}
+	
+	/**
+	 * Retrieves the movements of the game.
+	 * 
+	 * @return The movements, in the order they are played.
+	 */
+	public List<Movement> getMovements() {
+		return movements;
+	}
+	
+	/**
+	 * Retrieves the game result.
+	 * 
+	 * @return The result: <code>1-0</code>, <code>0-1</code>, <code>1/2-1/2</code> or
+	 *         <code>*</code>.
+	 */
+	public String getResult() {
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#%d %s %d movements %s", id, tags, movements.size(), result);
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+/**
+ * The analysis of one position of a batch.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see BatchAnalyzer
+ */
+public final class AnalysisResult {
+	
+	@SuppressWarnings("javadoc")
+	private final long index;
+	
+	@SuppressWarnings("javadoc")
+	private final String fen;
+	
+	@SuppressWarnings("javadoc")
+	private final SearchInfo info;
+	
+	@SuppressWarnings("javadoc")
+	private final String error;
+	
+	@SuppressWarnings("javadoc")
+	AnalysisResult(long index, String fen, SearchInfo info, String error) {
+		this.index = index;
+		this.fen = fen;
+		this.info = info;
+		this.error = error;
+	}
+	
+	/**
+	 * Retrieves the position of the FEN in the input. Results are delivered in the order they are
+	 * completed, so the index is the way to restore the input order.
+	 * 
+	 * @return The zero based index.
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Retrieves the analyzed position.
+	 * 
+	 * @return The FEN string.
+	 */
+	public String getFen() {
+		return fen;
+	}
+	
+	/**
+	 * Indicates if the position could not be analyzed, usually because the FEN is invalid.
+	 * 
+	 * @return A value <code>true</code> if the analysis failed.
+	 * 
+	 * @see #getError()
+	 */
+	public boolean isFailed() {
+		return error != null;
+	}
+	
+	/**
+	 * Retrieves the reason of the analysis failure.
+	 * 
+	 * @return The error message, or <code>null</code> if the analysis succeeded.
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	/**
+	 * Retrieves the search result: score, principal variation, nodes, time, etc.
+	 * 
+	 * @return The search information, or <code>null</code> if the analysis failed.
+	 */
+	public SearchInfo getInfo() {
+		return info;
+	}
+	
+	/**
+	 * Retrieves the best movement.
+	 * 
+	 * @return The movement code, or {@link MovementCode#NONE} if there is no legal movement or the
+	 *         analysis failed.
+	 */
+	public int getBestMovement() {
+		return info == null ? MovementCode.NONE : info.getBestMovement();
+	}
+	
+	@Override
+	public String toString() {
+		if (isFailed()) {
+			return String.format("%s\terror %s", fen, error);
+		}
+		return String.format("%s\tbestmove %s\t%s", fen, MovementCode.toString(getBestMovement()), info);
+	}
+}
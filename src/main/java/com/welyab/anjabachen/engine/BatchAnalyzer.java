@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.BoardPool;
+
+/**
+ * Analyzes large amounts of positions using a pool of worker threads. Each worker owns its
+ * {@link Searcher} and its own transposition table, so workers never contend with each other.
+ * 
+ * <p>
+ * Positions are handed to the workers through a bounded queue: when the workers can't keep up, the
+ * thread that feeds the positions blocks, so the input is consumed at the pace of the analysis and
+ * never fully loaded in memory.
+ * 
+ * <pre>
+ * BatchAnalyzer analyzer = BatchAnalyzer.builder()
+ * 	.threads(8)
+ * 	.limits(SearchLimits.ofDepth(6))
+ * 	.build();
+ * try (Stream&lt;String&gt; fens = Files.lines(path)) {
+ * 	analyzer.analyze(fens, System.out::println);
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class BatchAnalyzer {
+	
+	@SuppressWarnings("javadoc")
+	private final SearchLimits limits;
+	
+	@SuppressWarnings("javadoc")
+	private final int queueCapacity;
+	
+	@SuppressWarnings("javadoc")
+	private final Searcher[] searchers;
+	
+	@SuppressWarnings("javadoc")
+	private BatchAnalyzer(Builder builder) {
+		if (builder.limits.isInfinite() || builder.limits.isPonder()) {
+			throw new IllegalArgumentException("Batch analysis requires finite search limits");
+		}
+		limits = builder.limits;
+		queueCapacity = builder.queueCapacity > 0 ? builder.queueCapacity : builder.threads * 4;
+		searchers = new Searcher[builder.threads];
+		for (int i = 0; i < searchers.length; i++) {
+			searchers[i] = new Searcher(new TranspositionTable(builder.hashSize));
+		}
+	}
+	
+	/**
+	 * Analyzes the positions of the given stream.
+	 * 
+	 * @param fens The positions.
+	 * @param sink Receives the results.
+	 * 
+	 * @return The number of analyzed positions.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 * 
+	 * @see #analyze(Iterator, Consumer)
+	 */
+	public long analyze(Stream<String> fens, Consumer<AnalysisResult> sink) throws InterruptedException {
+		return analyze(fens.iterator(), sink);
+	}
+	
+	/**
+	 * Analyzes the positions provided by the given iterator, blocking until all of them are
+	 * analyzed. Positions that can't be analyzed (an invalid FEN, for example) produce a
+	 * {@linkplain AnalysisResult#isFailed() failed} result and do not stop the batch.
+	 * 
+	 * <p>
+	 * Results are delivered as soon as each position is analyzed, in completion order. The sink is
+	 * never called concurrently, so it doesn't need to be thread safe. An exception thrown by the
+	 * sink stops the batch and is rethrown by this method once all workers are stopped.
+	 * 
+	 * @param fens The positions.
+	 * @param sink Receives the results.
+	 * 
+	 * @return The number of analyzed positions.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 */
+	public synchronized long analyze(Iterator<String> fens, Consumer<AnalysisResult> sink)
+			throws InterruptedException {
+		Object sinkLock = new Object();
+		long count = 0;
+		try (WorkerPool<Task> pool = new WorkerPool<>(
+			"anjabachen-batch",
+			searchers.length,
+			queueCapacity,
+			worker -> task -> analyze(searchers[worker], task, sink, sinkLock)
+		)) {
+			while (fens.hasNext() && pool.submit(new Task(count, fens.next()))) {
+				count++;
+			}
+			pool.finish();
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void analyze(Searcher searcher, Task task, Consumer<AnalysisResult> sink, Object sinkLock) {
+		AnalysisResult result;
+		try {
+			Board board = BoardPool.acquire(task.fen);
+			try {
+				SearchInfo info = searcher.search(board, limits);
+				result = new AnalysisResult(task.index, task.fen, info, null);
+			} finally {
+				BoardPool.release(board);
+			}
+		} catch (RuntimeException e) {
+			result = new AnalysisResult(task.index, task.fen, null, String.valueOf(e.getMessage()));
+		}
+		synchronized (sinkLock) {
+			sink.accept(result);
+		}
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static final class Task {
+		
+		private final long index;
+		
+		private final String fen;
+		
+		private Task(long index, String fen) {
+			this.index = index;
+			this.fen = fen;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int hashSize = 8;
+		
+		private int queueCapacity;
+		
+		private SearchLimits limits = SearchLimits.ofDepth(6);
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder hashSizePerThread(int megabytes) {
+			hashSize = Math.max(Engine.MIN_HASH_SIZE, Math.min(megabytes, Engine.MAX_HASH_SIZE));
+			return this;
+		}
+		
+		public Builder queueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+		
+		public Builder limits(SearchLimits limits) {
+			this.limits = limits;
+			return this;
+		}
+		
+		public BatchAnalyzer build() {
+			return new BatchAnalyzer(this);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.tablebase.TablebaseProber;
+
+/**
+ * The chess engine: runs searches in a background thread, so the caller stays free to stop the
+ * search, to inform a ponder hit or to answer other requests while the engine is thinking.
+ * 
+ * <p>
+ * When more than one thread is configured, helper threads search the same position sharing the
+ * transposition table, and only the main thread reports information.
+ * 
+ * <p>
+ * The transposition table and the searchers statistics are kept from one search to the next, so
+ * the search of the next movement of a game (or the ponder search over the expected reply)
+ * starts with the knowledge collected by the previous ones. They are only cleared by
+ * {@link #newGame()}.
+ * 
+ * @author Welyab Paula
+ */
+public final class Engine {
+	
+	/** The default transposition table size, in megabytes. */
+	public static final int DEFAULT_HASH_SIZE = 16;
+	
+	/** The minimum transposition table size, in megabytes. */
+	public static final int MIN_HASH_SIZE = 1;
+	
+	/** The maximum transposition table size, in megabytes. */
+	public static final int MAX_HASH_SIZE = 4096;
+	
+	/** The default number of search threads. */
+	public static final int DEFAULT_THREADS = 1;
+	
+	/** The maximum number of search threads. */
+	public static final int MAX_THREADS = 64;
+	
+	@SuppressWarnings("javadoc")
+	private final TranspositionTable table;
+	
+	@SuppressWarnings("javadoc")
+	private final List<Searcher> searchers;
+	
+	@SuppressWarnings("javadoc")
+	private int threads;
+	
+	@SuppressWarnings("javadoc")
+	private TablebaseProber tablebases;
+	
+	@SuppressWarnings("javadoc")
+	private Thread searchThread;
+	
+	@SuppressWarnings("javadoc")
+	private volatile SearchControl control;
+	
+	/**
+	 * Creates an engine with the default hash size and number of threads.
+	 */
+	public Engine() {
+		table = new TranspositionTable(DEFAULT_HASH_SIZE);
+		searchers = new ArrayList<>();
+		threads = DEFAULT_THREADS;
+	}
+	
+	/**
+	 * Starts searching the best movement for the given position. A search already running is
+	 * stopped, and its result is reported, before the new one starts.
+	 * 
+	 * <p>
+	 * The method returns immediately. The listener receives the progress of the search and, at the
+	 * end, the best movement. Infinite and ponder searches only report the best movement after
+	 * {@link #stop()} (or {@link #ponderHit()} for ponder searches).
+	 * 
+	 * <p>
+	 * A ponder search runs without time management over the position after the expected opponent
+	 * movement. When the opponent plays it, {@link #ponderHit()} turns the search into a regular
+	 * one, and the time limits start counting from that moment.
+	 * 
+	 * @param board The position to search. The board is copied, so it may be changed while the
+	 *        search runs.
+	 * @param gameHistory The keys of the positions that happened in the game before the current
+	 *        one, used to detect repetitions.
+	 * @param limits The search limits.
+	 * @param listener The listener of the search.
+	 */
+	public synchronized void go(Board board, long[] gameHistory, SearchLimits limits, SearchListener listener) {
+		stopAndWait();
+		Board searchBoard = board.copy();
+		long[] history = gameHistory.clone();
+		SearchControl searchControl = new SearchControl(limits, board.getSideToMove());
+		while (searchers.size() < threads) {
+			Searcher searcher = new Searcher(table);
+			searcher.setTablebases(tablebases);
+			searchers.add(searcher);
+		}
+		List<Searcher> activeSearchers = new ArrayList<>(searchers.subList(0, threads));
+		table.newSearch();
+		control = searchControl;
+		searchThread = new Thread(
+			() -> runSearch(searchBoard, history, limits, searchControl, listener, activeSearchers),
+			"anjabachen-search"
+		);
+		searchThread.setDaemon(true);
+		searchThread.start();
+	}
+	
+	/**
+	 * Requests the current search to stop. The best movement found so far is reported to the
+	 * listener. This method does not block.
+	 */
+	public void stop() {
+		SearchControl searchControl = control;
+		if (searchControl != null) {
+			searchControl.stop();
+		}
+	}
+	
+	/**
+	 * Informs that the opponent played the expected movement, so the current ponder search becomes
+	 * a regular search. This method does not block.
+	 */
+	public void ponderHit() {
+		SearchControl searchControl = control;
+		if (searchControl != null) {
+			searchControl.ponderHit();
+		}
+	}
+	
+	/**
+	 * Indicates if there is a search running.
+	 * 
+	 * @return A value <code>true</code> if the engine is searching.
+	 */
+	public synchronized boolean isSearching() {
+		return searchThread != null && searchThread.isAlive();
+	}
+	
+	/**
+	 * Blocks until the current search, if any, reports its best movement.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public void waitForSearch() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			thread = searchThread;
+		}
+		if (thread != null) {
+			thread.join();
+		}
+	}
+	
+	/**
+	 * Prepares the engine for a new game, clearing the transposition table and the statistics
+	 * collected by previous searches.
+	 */
+	public synchronized void newGame() {
+		stopAndWait();
+		table.clear();
+		searchers.forEach(Searcher::clearHistory);
+	}
+	
+	/**
+	 * Changes the transposition table size. The table content is lost.
+	 * 
+	 * @param megabytes The size in megabytes.
+	 */
+	public synchronized void setHashSize(int megabytes) {
+		stopAndWait();
+		table.resize(Math.max(MIN_HASH_SIZE, Math.min(megabytes, MAX_HASH_SIZE)));
+	}
+	
+	/**
+	 * Changes the number of search threads. The change takes effect in the next search.
+	 * 
+	 * @param threads The number of threads.
+	 */
+	public synchronized void setThreads(int threads) {
+		this.threads = Math.max(1, Math.min(threads, MAX_THREADS));
+	}
+	
+	/**
+	 * Changes the endgame tablebases probed by the searchers. The change takes effect in the next
+	 * search.
+	 * 
+	 * @param tablebases The tablebases, or <code>null</code> to search without them.
+	 */
+	public synchronized void setTablebases(TablebaseProber tablebases) {
+		stopAndWait();
+		this.tablebases = tablebases;
+		searchers.forEach(searcher -> searcher.setTablebases(tablebases));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void stopAndWait() {
+		if (searchThread == null) {
+			return;
+		}
+		stop();
+		boolean interrupted = false;
+		while (searchThread.isAlive()) {
+			try {
+				searchThread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		searchThread = null;
+		control = null;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void runSearch(
+		Board board,
+		long[] gameHistory,
+		SearchLimits limits,
+		SearchControl searchControl,
+		SearchListener listener,
+		List<Searcher> activeSearchers
+	) {
+		List<Thread> helpers = new ArrayList<>();
+		for (int i = 1; i < activeSearchers.size(); i++) {
+			int helperIndex = i;
+			Searcher helperSearcher = activeSearchers.get(i);
+			Board helperBoard = board.copy();
+			Thread helper = new Thread(
+				() -> helperSearcher.search(helperBoard, gameHistory, limits, searchControl, null, helperIndex),
+				"anjabachen-helper-" + i
+			);
+			helper.setDaemon(true);
+			helper.start();
+			helpers.add(helper);
+		}
+		
+		Searcher searcher = activeSearchers.get(0);
+		SearchInfo info = searcher.search(
+			board,
+			gameHistory,
+			limits,
+			searchControl,
+			listener::onInfo,
+			0
+		);
+		searchControl.abort();
+		try {
+			for (Thread helper : helpers) {
+				helper.join();
+			}
+			searchControl.awaitRelease();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		int ponderMovement = info.getPonderMovement();
+		if (ponderMovement == MovementCode.NONE) {
+			ponderMovement = searcher.findReply(board, info.getBestMovement());
+		}
+		listener.onBestMovement(info.getBestMovement(), ponderMovement);
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import com.welyab.anjabachen.movement.fen.EpdRecord;
+
+/**
+ * The search of one position of a test suite.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see EpdSuiteRunner
+ */
+public final class EpdSuiteResult {
+	
+	@SuppressWarnings("javadoc")
+	private final EpdRecord record;
+	
+	@SuppressWarnings("javadoc")
+	private final Status status;
+	
+	@SuppressWarnings("javadoc")
+	private final String message;
+	
+	@SuppressWarnings("javadoc")
+	private final SearchInfo info;
+	
+	@SuppressWarnings("javadoc")
+	private final String bestMovement;
+	
+	@SuppressWarnings("javadoc")
+	private final long nanos;
+	
+	@SuppressWarnings("javadoc")
+	EpdSuiteResult(EpdRecord record, Status status, String message, SearchInfo info, String bestMovement, long nanos) {
+		this.record = record;
+		this.status = status;
+		this.message = message;
+		this.info = info;
+		this.bestMovement = bestMovement;
+		this.nanos = nanos;
+	}
+	
+	/**
+	 * Retrieves the searched record.
+	 * 
+	 * @return The record.
+	 */
+	public EpdRecord getRecord() {
+		return record;
+	}
+	
+	/**
+	 * Retrieves the outcome of the search.
+	 * 
+	 * @return The status.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+	
+	/**
+	 * Indicates if the engine found a best movement and avoided the movements to avoid.
+	 * 
+	 * @return A value <code>true</code> if the status is {@link Status#SOLVED}.
+	 */
+	public boolean isSolved() {
+		return status == Status.SOLVED;
+	}
+	
+	/**
+	 * Retrieves the description of the problem found in the record.
+	 * 
+	 * @return The message, or <code>null</code> if the record is valid.
+	 */
+	public String getMessage() {
+		return message;
+	}
+	
+	/**
+	 * Retrieves the search result: score, principal variation, nodes, time, etc.
+	 * 
+	 * @return The search information, or <code>null</code> if the record is invalid.
+	 */
+	public SearchInfo getInfo() {
+		return info;
+	}
+	
+	/**
+	 * Retrieves the movement chosen by the engine.
+	 * 
+	 * @return The movement in standard algebraic notation, or <code>null</code> if the record is
+	 *         invalid or the position has no legal movement.
+	 */
+	public String getBestMovement() {
+		return bestMovement;
+	}
+	
+	/**
+	 * Retrieves the time spent on the position.
+	 * 
+	 * @param unit The time unit.
+	 * 
+	 * @return The time in the given unit.
+	 */
+	public long getTime(TimeUnit unit) {
+		return unit.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder()
+			.append(record)
+			.append('\t')
+			.append(status);
+		if (bestMovement != null) {
+			builder.append('\t').append(bestMovement);
+		}
+		builder.append('\t').append(String.format("%.3f ms", nanos / 1_000_000.0));
+		if (message != null) {
+			builder.append('\t').append(message);
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * The outcomes of the search of a test position.
+	 */
+	public enum Status {
+		
+		/**
+		 * The engine played one of the <code>bm</code> movements and none of the <code>am</code>
+		 * movements.
+		 */
+		SOLVED,
+		
+		/** The engine played a different movement. */
+		FAILED,
+		
+		/**
+		 * The position can't be searched, or the record has no <code>bm</code> nor <code>am</code>
+		 * operation, or one of their movements is not legal.
+		 */
+		INVALID
+	}
+}
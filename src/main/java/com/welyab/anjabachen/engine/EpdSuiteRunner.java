@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.BoardPool;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.fen.EpdReader;
+import com.welyab.anjabachen.movement.fen.EpdRecord;
+import com.welyab.anjabachen.movement.png.MovementFormatter;
+import com.welyab.anjabachen.movement.png.MovementParser;
+
+/**
+ * Runs test suites of EPD positions, like <i>WAC</i>, <i>STS</i> or <i>Arasan</i>, using a pool of
+ * worker threads. Each position is searched with the same fixed limits, usually a time or a node
+ * budget, and is solved when the engine plays one of the movements of the <code>bm</code>
+ * operation and none of the movements of the <code>am</code> operation. The solve rate at a fixed
+ * budget is a quick way to compare engine versions.
+ * 
+ * <p>
+ * Each worker owns its {@link Searcher} and its transposition table, which are cleared before each
+ * position, so the result of a position doesn't depend on the positions searched before it by the
+ * same worker. Positions are handed to the workers through a {@link WorkerPool}, so suites of any
+ * size are run in constant memory when they are read with {@link EpdReader}.
+ * 
+ * <pre>
+ * EpdSuiteRunner runner = EpdSuiteRunner.builder()
+ * 	.threads(8)
+ * 	.limits(SearchLimits.builder().moveTime(1000).build())
+ * 	.build();
+ * try (EpdReader reader = EpdReader.open(path)) {
+ * 	runner.run(reader, System.out::println);
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class EpdSuiteRunner {
+	
+	@SuppressWarnings("javadoc")
+	private final SearchLimits limits;
+	
+	@SuppressWarnings("javadoc")
+	private final int queueCapacity;
+	
+	@SuppressWarnings("javadoc")
+	private final TranspositionTable[] tables;
+	
+	@SuppressWarnings("javadoc")
+	private final Searcher[] searchers;
+	
+	@SuppressWarnings("javadoc")
+	private EpdSuiteRunner(Builder builder) {
+		if (builder.limits.isInfinite() || builder.limits.isPonder()) {
+			throw new IllegalArgumentException("Test suites require finite search limits");
+		}
+		limits = builder.limits;
+		queueCapacity = builder.queueCapacity > 0 ? builder.queueCapacity : builder.threads * 4;
+		tables = new TranspositionTable[builder.threads];
+		searchers = new Searcher[builder.threads];
+		for (int i = 0; i < searchers.length; i++) {
+			tables[i] = new TranspositionTable(builder.hashSize);
+			searchers[i] = new Searcher(tables[i]);
+		}
+	}
+	
+	/**
+	 * Searches the positions provided by the given iterator, blocking until all of them are
+	 * searched. Invalid records produce an {@linkplain EpdSuiteResult.Status#INVALID invalid}
+	 * result and do not stop the run.
+	 * 
+	 * <p>
+	 * Results are delivered as soon as each position is searched, in completion order. The sink is
+	 * never called concurrently, so it doesn't need to be thread safe. An exception thrown by the
+	 * sink stops the run and is rethrown by this method once all workers are stopped.
+	 * 
+	 * @param records The positions.
+	 * @param sink Receives the results.
+	 * 
+	 * @return The number of searched positions.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 */
+	public synchronized long run(Iterator<EpdRecord> records, Consumer<EpdSuiteResult> sink)
+			throws InterruptedException {
+		Object sinkLock = new Object();
+		long count = 0;
+		try (WorkerPool<EpdRecord> pool = new WorkerPool<>(
+			"anjabachen-epd",
+			searchers.length,
+			queueCapacity,
+			worker -> record -> work(worker, record, sink, sinkLock)
+		)) {
+			while (records.hasNext() && pool.submit(records.next())) {
+				count++;
+			}
+			pool.finish();
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void work(int worker, EpdRecord record, Consumer<EpdSuiteResult> sink, Object sinkLock) {
+		long start = System.nanoTime();
+		EpdSuiteResult result;
+		try {
+			tables[worker].clear();
+			searchers[worker].clearHistory();
+			result = search(searchers[worker], record);
+		} catch (RuntimeException e) {
+			result = invalid(record, String.valueOf(e.getMessage()), start);
+		}
+		synchronized (sinkLock) {
+			sink.accept(result);
+		}
+	}
+	
+	/**
+	 * Searches a single position and scores the chosen movement.
+	 * 
+	 * @param searcher The searcher of the current worker.
+	 * @param record The position.
+	 * 
+	 * @return The result.
+	 */
+	EpdSuiteResult search(Searcher searcher, EpdRecord record) {
+		long start = System.nanoTime();
+		if (record.getError() != null) {
+			return invalid(record, record.getError(), start);
+		}
+		Board board;
+		try {
+			board = BoardPool.acquire(record.getFen());
+		} catch (ChessException e) {
+			return invalid(record, e.getMessage(), start);
+		}
+		try {
+			return search(searcher, record, board, start);
+		} finally {
+			BoardPool.release(board);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private EpdSuiteResult search(Searcher searcher, EpdRecord record, Board board, long start) {
+		int[] best;
+		int[] avoid;
+		try {
+			best = parseMovements(board, record.getOperands("bm"));
+			avoid = parseMovements(board, record.getOperands("am"));
+		} catch (ChessException | IllegalArgumentException e) {
+			return invalid(record, e.getMessage(), start);
+		}
+		if (best.length == 0 && avoid.length == 0) {
+			return invalid(record, "No bm or am operation", start);
+		}
+		
+		SearchInfo info = searcher.search(board, limits);
+		int movement = info.getBestMovement();
+		boolean solved = movement != MovementCode.NONE
+				&& (best.length == 0 || contains(best, movement))
+				&& !contains(avoid, movement);
+		return new EpdSuiteResult(
+			record,
+			solved ? EpdSuiteResult.Status.SOLVED : EpdSuiteResult.Status.FAILED,
+			null,
+			info,
+			toSan(board, movement),
+			elapsed(start)
+		);
+	}
+	
+	/**
+	 * Parses the movements of a <code>bm</code> or <code>am</code> operation, written in standard
+	 * algebraic notation or, as some suites do, in coordinate notation.
+	 * 
+	 * @param board The position.
+	 * @param operands The movements.
+	 * 
+	 * @return The movement codes.
+	 * 
+	 * @throws ChessException If a movement is not legal in the position.
+	 */
+	private static int[] parseMovements(Board board, List<String> operands) {
+		int[] codes = new int[operands.size()];
+		for (int i = 0; i < codes.length; i++) {
+			String operand = operands.get(i);
+			try {
+				Movement movement = MovementParser.parseMovement(operand, board.getSideToMove(), board);
+				codes[i] = MovementCode.of(movement.getOrigin(), movement.getTarget());
+			} catch (ChessException e) {
+				int code = parseCoordinates(operand);
+				if (code == MovementCode.NONE || findMovement(board, code) == null) {
+					throw e;
+				}
+				codes[i] = code;
+			}
+		}
+		return codes;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int parseCoordinates(String operand) {
+		try {
+			return MovementCode.parse(operand);
+		} catch (IllegalArgumentException e) {
+			return MovementCode.NONE;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Movement findMovement(Board board, int code) {
+		return board.getMovements()
+			.streamMovements()
+			.filter(movement -> MovementCode.of(movement.getOrigin(), movement.getTarget()) == code)
+			.findFirst()
+			.orElse(null);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String toSan(Board board, int code) {
+		Movement movement = code == MovementCode.NONE ? null : findMovement(board, code);
+		return movement == null ? null : MovementFormatter.toSan(board, movement);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean contains(int[] codes, int code) {
+		for (int value : codes) {
+			if (value == code) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static EpdSuiteResult invalid(EpdRecord record, String message, long start) {
+		return new EpdSuiteResult(record, EpdSuiteResult.Status.INVALID, message, null, null, elapsed(start));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static long elapsed(long start) {
+		return System.nanoTime() - start;
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Runs a test suite, printing the result of each position and a summary.
+	 * 
+	 * @param args The file path and, optionally, the time per position in milliseconds (default
+	 *        1000), the number of threads and the maximum number of nodes per position.
+	 * 
+	 * @throws IOException If the file can't be read.
+	 * @throws InterruptedException If the thread is interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: EpdSuiteRunner <file> [time ms] [threads] [nodes]");
+			return;
+		}
+		SearchLimits.Builder limits = SearchLimits.builder()
+			.moveTime(args.length > 1 ? Long.parseLong(args[1]) : 1000);
+		Builder builder = builder();
+		if (args.length > 2) {
+			builder.threads(Integer.parseInt(args[2]));
+		}
+		if (args.length > 3) {
+			limits.nodes(Long.parseLong(args[3]));
+		}
+		EpdSuiteRunner runner = builder.limits(limits.build()).build();
+		Map<EpdSuiteResult.Status, Long> counts = new EnumMap<>(EpdSuiteResult.Status.class);
+		long start = System.nanoTime();
+		long total;
+		try (EpdReader reader = EpdReader.open(Paths.get(args[0]))) {
+			total = runner.run(reader, result -> {
+				counts.merge(result.getStatus(), 1L, Long::sum);
+				System.out.println(result);
+			});
+		}
+		long solved = counts.getOrDefault(EpdSuiteResult.Status.SOLVED, 0L);
+		System.out.printf(
+			"positions %d solved %d (%.1f%%) failed %d invalid %d time %d ms%n",
+			total,
+			solved,
+			total == 0 ? 0.0 : solved * 100.0 / total,
+			counts.getOrDefault(EpdSuiteResult.Status.FAILED, 0L),
+			counts.getOrDefault(EpdSuiteResult.Status.INVALID, 0L),
+			(System.nanoTime() - start) / 1_000_000
+		);
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int hashSize = 16;
+		
+		private int queueCapacity;
+		
+		private SearchLimits limits = SearchLimits.builder().moveTime(1000).build();
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder hashSizePerThread(int megabytes) {
+			hashSize = Math.max(Engine.MIN_HASH_SIZE, Math.min(megabytes, Engine.MAX_HASH_SIZE));
+			return this;
+		}
+		
+		public Builder queueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+		
+		public Builder limits(SearchLimits limits) {
+			this.limits = limits;
+			return this;
+		}
+		
+		public EpdSuiteRunner build() {
+			return new EpdSuiteRunner(this);
+		}
+	}
+}
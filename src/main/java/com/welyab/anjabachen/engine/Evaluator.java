@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Static position evaluation: material plus piece-square tables, based on the
+ * <a href="https://www.chessprogramming.org/Simplified_Evaluation_Function">Simplified
+ * Evaluation Function</a>. The king table is interpolated between middle game and end game
+ * according the remaining material.
+ * 
+ * <p>
+ * Tables are written from the white point of view, with the first row being the eighth rank,
+ * same as the board grid.
+ * 
+ * @author Welyab Paula
+ */
+final class Evaluator {
+	
+	/** Piece values indexed by piece type. */
+	static final int[] PIECE_VALUES = {
+		0, 100, 320, 330, 500, 900, 0
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PHASE_WEIGHTS = {
+		0, 0, 1, 1, 2, 4, 0
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int MAX_PHASE = 24;
+	
+	// @formatter:off
+	@SuppressWarnings("javadoc")
+	private static final int[] PAWN_TABLE = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		 50,  50,  50,  50,  50,  50,  50,  50,
+		 10,  10,  20,  30,  30,  20,  10,  10,
+		  5,   5,  10,  25,  25,  10,   5,   5,
+		  0,   0,   0,  20,  20,   0,   0,   0,
+		  5,  -5, -10,   0,   0, -10,  -5,   5,
+		  5,  10,  10, -20, -20,  10,  10,   5,
+		  0,   0,   0,   0,   0,   0,   0,   0
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] KNIGHT_TABLE = {
+		-50, -40, -30, -30, -30, -30, -40, -50,
+		-40, -20,   0,   0,   0,   0, -20, -40,
+		-30,   0,  10,  15,  15,  10,   0, -30,
+		-30,   5,  15,  20,  20,  15,   5, -30,
+		-30,   0,  15,  20,  20,  15,   0, -30,
+		-30,   5,  10,  15,  15,  10,   5, -30,
+		-40, -20,   0,   5,   5,   0, -20, -40,
+		-50, -40, -30, -30, -30, -30, -40, -50
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] BISHOP_TABLE = {
+		-20, -10, -10, -10, -10, -10, -10, -20,
+		-10,   0,   0,   0,   0,   0,   0, -10,
+		-10,   0,   5,  10,  10,   5,   0, -10,
+		-10,   5,   5,  10,  10,   5,   5, -10,
+		-10,   0,  10,  10,  10,  10,   0, -10,
+		-10,  10,  10,  10,  10,  10,  10, -10,
+		-10,   5,   0,   0,   0,   0,   5, -10,
+		-20, -10, -10, -10, -10, -10, -10, -20
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] ROOK_TABLE = {
+		  0,   0,   0,   0,   0,   0,   0,   0,
+		  5,  10,  10,  10,  10,  10,  10,   5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		 -5,   0,   0,   0,   0,   0,   0,  -5,
+		  0,   0,   0,   5,   5,   0,   0,   0
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] QUEEN_TABLE = {
+		-20, -10, -10,  -5,  -5, -10, -10, -20,
+		-10,   0,   0,   0,   0,   0,   0, -10,
+		-10,   0,   5,   5,   5,   5,   0, -10,
+		 -5,   0,   5,   5,   5,   5,   0,  -5,
+		  0,   0,   5,   5,   5,   5,   0,  -5,
+		-10,   5,   5,   5,   5,   5,   0, -10,
+		-10,   0,   5,   0,   0,   0,   0, -10,
+		-20, -10, -10,  -5,  -5, -10, -10, -20
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] KING_MIDDLE_GAME_TABLE = {
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-30, -40, -40, -50, -50, -40, -40, -30,
+		-20, -30, -30, -40, -40, -30, -30, -20,
+		-10, -20, -20, -20, -20, -20, -20, -10,
+		 20,  20,   0,   0,   0,   0,  20,  20,
+		 20,  30,  10,   0,   0,  10,  30,  20
+	};
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] KING_END_GAME_TABLE = {
+		-50, -40, -30, -20, -20, -30, -40, -50,
+		-30, -20, -10,   0,   0, -10, -20, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  30,  40,  40,  30, -10, -30,
+		-30, -10,  20,  30,  30,  20, -10, -30,
+		-30, -30,   0,   0,   0,   0, -30, -30,
+		-50, -30, -30, -30, -30, -30, -30, -50
+	};
+	// @formatter:on
+	
+	@SuppressWarnings("javadoc")
+	private static final int[][] TABLES = {
+		null,
+		PAWN_TABLE,
+		KNIGHT_TABLE,
+		BISHOP_TABLE,
+		ROOK_TABLE,
+		QUEEN_TABLE
+	};
+	
+	@SuppressWarnings("javadoc")
+	private Evaluator() {
+	}
+	
+	/**
+	 * Evaluates the position from the point of view of the side that has the turn to move.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The score in centipawns.
+	 */
+	static int evaluate(Board board) {
+		int score = 0;
+		int phase = 0;
+		int whiteKingSquare = -1;
+		int blackKingSquare = -1;
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				byte pieceCode = board.getSquareValue(Position.of(row, column));
+				if (pieceCode == MovementUtil.EMPTY) {
+					continue;
+				}
+				byte pieceType = MovementUtil.getPieceType(pieceCode);
+				boolean white = MovementUtil.isWhite(pieceCode);
+				int square = white ? row * 8 + column : (7 - row) * 8 + column;
+				if (pieceType == MovementUtil.KING) {
+					if (white) {
+						whiteKingSquare = square;
+					} else {
+						blackKingSquare = square;
+					}
+					continue;
+				}
+				int value = PIECE_VALUES[pieceType] + TABLES[pieceType][square];
+				score += white ? value : -value;
+				phase += PHASE_WEIGHTS[pieceType];
+			}
+		}
+		phase = Math.min(phase, MAX_PHASE);
+		if (whiteKingSquare >= 0) {
+			score += kingScore(whiteKingSquare, phase);
+		}
+		if (blackKingSquare >= 0) {
+			score -= kingScore(blackKingSquare, phase);
+		}
+		return MovementUtil.isWhiteColor(board.getSideToMove()) ? score : -score;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int kingScore(int square, int phase) {
+		return (KING_MIDDLE_GAME_TABLE[square] * phase + KING_END_GAME_TABLE[square] * (MAX_PHASE - phase)) / MAX_PHASE;
+	}
+}
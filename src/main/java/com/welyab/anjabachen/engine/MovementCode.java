@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Encodes movements as <code>int</code> values, so the search can keep them in primitive arrays
+ * and transposition table entries.
+ * 
+ * <pre>
+ * bits  0 -  5: origin square (row * 8 + column)
+ * bits  6 - 11: target square (row * 8 + column)
+ * bits 12 - 14: promotion piece type, or zero
+ * </pre>
+ * 
+ * The value {@link #NONE} represents the absence of a movement.
+ * 
+ * @author Welyab Paula
+ */
+public final class MovementCode {
+	
+	/** The code for no movement. */
+	public static final int NONE = 0;
+	
+	@SuppressWarnings("javadoc")
+	private static final char[] PROMOTION_LETTERS = {
+		' ', ' ', 'n', 'b', 'r', 'q', ' '
+	};
+	
+	@SuppressWarnings("javadoc")
+	private MovementCode() {
+	}
+	
+	/**
+	 * Encodes the movement from given origin to given target.
+	 * 
+	 * @param origin The origin square.
+	 * @param target The movement target.
+	 * 
+	 * @return The movement code.
+	 */
+	public static int of(Position origin, MovementTarget target) {
+		int promotion = MovementUtil.isPromotion(target.getFlags())
+				? MovementUtil.getPieceType(target.getPieceCode())
+				: 0;
+		return of(origin, target.getPosition(), promotion);
+	}
+	
+	/**
+	 * Encodes the movement from given origin to given target.
+	 * 
+	 * @param origin The origin square.
+	 * @param target The target square.
+	 * @param promotionType The piece type the pawn is promoted to, or <code>0</code>.
+	 * 
+	 * @return The movement code.
+	 */
+	public static int of(Position origin, Position target, int promotionType) {
+		return (origin.row * 8 + origin.column)
+				| (target.row * 8 + target.column) << 6
+				| promotionType << 12;
+	}
+	
+	/**
+	 * Retrieves the origin square of the movement.
+	 * 
+	 * @param code The movement code.
+	 * 
+	 * @return The origin square.
+	 */
+	public static Position getOrigin(int code) {
+		int square = code & 0x3F;
+		return Position.of(square >> 3, square & 7);
+	}
+	
+	/**
+	 * Retrieves the target square of the movement.
+	 * 
+	 * @param code The movement code.
+	 * 
+	 * @return The target square.
+	 */
+	public static Position getTarget(int code) {
+		int square = code >> 6 & 0x3F;
+		return Position.of(square >> 3, square & 7);
+	}
+	
+	/**
+	 * Retrieves the piece type the pawn is promoted to.
+	 * 
+	 * @param code The movement code.
+	 * 
+	 * @return The piece type, or <code>0</code> if the movement is not a promotion.
+	 */
+	public static byte getPromotion(int code) {
+		return (byte) (code >> 12 & 7);
+	}
+	
+	/**
+	 * Appends the movement in the coordinate notation used by the UCI protocol, like
+	 * <code>e2e4</code> or <code>e7e8q</code>. The code {@link #NONE} is written as
+	 * <code>0000</code>.
+	 * 
+	 * @param code The movement code.
+	 * @param builder The destination.
+	 * 
+	 * @return The given builder.
+	 */
+	public static StringBuilder appendTo(int code, StringBuilder builder) {
+		if (code == NONE) {
+			return builder.append("0000");
+		}
+		builder.append(getOrigin(code).getNotation()).append(getTarget(code).getNotation());
+		byte promotion = getPromotion(code);
+		if (promotion != 0) {
+			builder.append(PROMOTION_LETTERS[promotion]);
+		}
+		return builder;
+	}
+	
+	/**
+	 * Converts the movement to the coordinate notation, like <code>e2e4</code>.
+	 * 
+	 * @param code The movement code.
+	 * 
+	 * @return The notation.
+	 * 
+	 * @see #appendTo(int, StringBuilder)
+	 */
+	public static String toString(int code) {
+		return appendTo(code, new StringBuilder(5)).toString();
+	}
+	
+	/**
+	 * Parses a movement written in the coordinate notation, like <code>e2e4</code> or
+	 * <code>a7a8n</code>.
+	 * 
+	 * @param notation The movement notation.
+	 * 
+	 * @return The movement code.
+	 * 
+	 * @throws IllegalArgumentException If the notation is malformed.
+	 */
+	public static int parse(CharSequence notation) {
+		if (notation.length() != 4 && notation.length() != 5) {
+			throw new IllegalArgumentException(String.format("Invalid movement notation: %s", notation));
+		}
+		for (int i = 0; i < 4; i += 2) {
+			char file = notation.charAt(i);
+			char rank = notation.charAt(i + 1);
+			if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+				throw new IllegalArgumentException(String.format("Invalid movement notation: %s", notation));
+			}
+		}
+		int promotion = 0;
+		if (notation.length() == 5) {
+			promotion = MovementUtil.getPieceType(Character.toUpperCase(notation.charAt(4)));
+			if (promotion == MovementUtil.KING || promotion == MovementUtil.PAWN) {
+				throw new IllegalArgumentException(String.format("Invalid promotion piece: %s", notation));
+			}
+		}
+		return of(
+			Position.of(notation.charAt(0), notation.charAt(1) - '0'),
+			Position.of(notation.charAt(2), notation.charAt(3) - '0'),
+			promotion
+		);
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state shared by all threads working in the same search: stop requests, pondering mode,
+ * time management and node counting.
+ * 
+ * @author Welyab Paula
+ */
+final class SearchControl {
+	
+	/** Time reserved, in milliseconds, for communication with the GUI. */
+	private static final long MOVE_OVERHEAD = 30;
+	
+	/** Movements until the next time control when the GUI does not inform it. */
+	private static final int DEFAULT_MOVES_TO_GO = 30;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean infinite;
+	
+	@SuppressWarnings("javadoc")
+	private final long nodeLimit;
+	
+	@SuppressWarnings("javadoc")
+	private final long softLimit;
+	
+	@SuppressWarnings("javadoc")
+	private final long hardLimit;
+	
+	@SuppressWarnings("javadoc")
+	private final long creationTime;
+	
+	@SuppressWarnings("javadoc")
+	private final AtomicLong nodes;
+	
+	@SuppressWarnings("javadoc")
+	private volatile long startTime;
+	
+	@SuppressWarnings("javadoc")
+	private volatile boolean pondering;
+	
+	@SuppressWarnings("javadoc")
+	private volatile boolean stopRequested;
+	
+	@SuppressWarnings("javadoc")
+	private volatile boolean aborted;
+	
+	/**
+	 * Creates the control for a search with the given limits.
+	 * 
+	 * @param limits The search limits.
+	 * @param sideToMove The color of the side the search is looking a movement for.
+	 */
+	SearchControl(SearchLimits limits, byte sideToMove) {
+		infinite = limits.isInfinite();
+		pondering = limits.isPonder();
+		nodeLimit = limits.getNodes() > 0 ? limits.getNodes() : Long.MAX_VALUE;
+		if (limits.getMoveTime() > 0) {
+			hardLimit = Math.max(1, limits.getMoveTime() - MOVE_OVERHEAD);
+			softLimit = hardLimit;
+		} else if (limits.hasClock()) {
+			long time = limits.getTime(sideToMove);
+			long increment = limits.getIncrement(sideToMove);
+			int movesToGo = limits.getMovesToGo() > 0
+					? Math.min(limits.getMovesToGo(), 50)
+					: DEFAULT_MOVES_TO_GO;
+			long available = Math.max(1, time - MOVE_OVERHEAD);
+			long base = time / movesToGo + increment * 3 / 4;
+			hardLimit = Math.max(1, Math.min(base * 3, available / 3 + increment / 2));
+			softLimit = Math.max(1, Math.min(base / 2, hardLimit));
+		} else {
+			hardLimit = Long.MAX_VALUE;
+			softLimit = Long.MAX_VALUE;
+		}
+		nodes = new AtomicLong();
+		creationTime = System.nanoTime();
+		startTime = creationTime;
+	}
+	
+	/**
+	 * Requests the search to stop as soon as possible. Called on behalf of the user.
+	 */
+	synchronized void stop() {
+		stopRequested = true;
+		notifyAll();
+	}
+	
+	/**
+	 * Stops the search because a limit was reached or the main thread finished its work.
+	 */
+	void abort() {
+		aborted = true;
+	}
+	
+	/**
+	 * The opponent played the expected movement: the ponder search becomes a regular search and
+	 * the time management starts counting from now.
+	 */
+	synchronized void ponderHit() {
+		startTime = System.nanoTime();
+		pondering = false;
+		notifyAll();
+	}
+	
+	/**
+	 * Evaluates if the search must stop.
+	 * 
+	 * @return A value <code>true</code> if the search should stop.
+	 */
+	boolean isStopped() {
+		return stopRequested || aborted;
+	}
+	
+	/**
+	 * Indicates if the search is running on the opponent's time.
+	 * 
+	 * @return A value <code>true</code> if the search is a ponder search.
+	 */
+	boolean isPondering() {
+		return pondering;
+	}
+	
+	/**
+	 * Adds searched nodes to the shared counter.
+	 * 
+	 * @param count The number of nodes.
+	 * 
+	 * @return The total of nodes searched by all threads.
+	 */
+	long addNodes(long count) {
+		return nodes.addAndGet(count);
+	}
+	
+	/**
+	 * Retrieves the total of nodes searched by all threads.
+	 * 
+	 * @return The number of nodes.
+	 */
+	long getNodes() {
+		return nodes.get();
+	}
+	
+	/**
+	 * Evaluates if the search consumed all the time or nodes it may use. The search must stop
+	 * immediately when this method returns <code>true</code>.
+	 * 
+	 * @return A value <code>true</code> if a hard limit was reached.
+	 */
+	boolean isHardLimitReached() {
+		if (nodes.get() >= nodeLimit) {
+			return true;
+		}
+		return isTimeManaged() && getManagedTime() >= hardLimit;
+	}
+	
+	/**
+	 * Evaluates if a new iteration should not be started, because it would probably not be
+	 * completed in the available time.
+	 * 
+	 * @return A value <code>true</code> if the soft time limit was reached.
+	 */
+	boolean isSoftLimitReached() {
+		return isTimeManaged() && getManagedTime() >= softLimit;
+	}
+	
+	/**
+	 * Retrieves the time elapsed since the search started.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	long getElapsedTime() {
+		return (System.nanoTime() - creationTime) / 1_000_000;
+	}
+	
+	/**
+	 * Blocks until the result of the search can be reported. Infinite searches and ponder searches
+	 * only finish when the user stops them (or when a ponder search is converted in a regular
+	 * search).
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	synchronized void awaitRelease() throws InterruptedException {
+		while (!stopRequested && (infinite || pondering)) {
+			wait();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean isTimeManaged() {
+		return !infinite && !pondering;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private long getManagedTime() {
+		return (System.nanoTime() - startTime) / 1_000_000;
+	}
+}
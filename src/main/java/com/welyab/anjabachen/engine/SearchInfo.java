@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.Arrays;
+
+/**
+ * The information about a completed search iteration: depth, score, nodes, principal variation,
+ * etc.
+ * 
+ * @author Welyab Paula
+ */
+public final class SearchInfo {
+	
+	@SuppressWarnings("javadoc")
+	private final int depth;
+	
+	@SuppressWarnings("javadoc")
+	private final int selectiveDepth;
+	
+	@SuppressWarnings("javadoc")
+	private final int multiPv;
+	
+	@SuppressWarnings("javadoc")
+	private final int score;
+	
+	@SuppressWarnings("javadoc")
+	private final long nodes;
+	
+	@SuppressWarnings("javadoc")
+	private final long time;
+	
+	@SuppressWarnings("javadoc")
+	private final int hashfull;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] principalVariation;
+	
+	@SuppressWarnings("javadoc")
+	public SearchInfo(
+		int depth,
+		int selectiveDepth,
+		int multiPv,
+		int score,
+		long nodes,
+		long time,
+		int hashfull,
+		int[] principalVariation
+	) {
+		this.depth = depth;
+		this.selectiveDepth = selectiveDepth;
+		this.multiPv = multiPv;
+		this.score = score;
+		this.nodes = nodes;
+		this.time = time;
+		this.hashfull = hashfull;
+		this.principalVariation = principalVariation;
+	}
+	
+	/**
+	 * Retrieves the depth of the iteration.
+	 * 
+	 * @return The depth.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Retrieves the deepest ply reached, including extensions and quiescence search.
+	 * 
+	 * @return The selective depth.
+	 */
+	public int getSelectiveDepth() {
+		return selectiveDepth;
+	}
+	
+	/**
+	 * Retrieves the rank of the principal variation among the variations reported by a multi-PV
+	 * search.
+	 * 
+	 * @return The rank, <code>1</code> for the best variation.
+	 * 
+	 * @see SearchLimits#getMultiPv()
+	 */
+	public int getMultiPv() {
+		return multiPv;
+	}
+	
+	/**
+	 * Retrieves the score, in centipawns, from the point of view of the side to move.
+	 * 
+	 * @return The score.
+	 * 
+	 * @see #isMateScore()
+	 */
+	public int getScore() {
+		return score;
+	}
+	
+	/**
+	 * Indicates if the score announces a forced checkmate.
+	 * 
+	 * @return A value <code>true</code> if the score is a mate score.
+	 */
+	public boolean isMateScore() {
+		return Searcher.isMateScore(score);
+	}
+	
+	/**
+	 * Retrieves the number of movements until the checkmate. Positive values mean the side to move
+	 * gives the checkmate; negative values mean the side to move is checkmated.
+	 * 
+	 * @return The number of movements, or <code>0</code> if the score is not a mate score.
+	 */
+	public int getMateDistance() {
+		if (!isMateScore()) {
+			return 0;
+		}
+		return score > 0
+				? (Searcher.MATE - score + 1) / 2
+				: -(Searcher.MATE + score) / 2;
+	}
+	
+	/**
+	 * Retrieves the total of visited nodes.
+	 * 
+	 * @return The number of nodes.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Retrieves the time spent by the search, in milliseconds.
+	 * 
+	 * @return The time.
+	 */
+	public long getTime() {
+		return time;
+	}
+	
+	/**
+	 * Retrieves the search speed.
+	 * 
+	 * @return The number of nodes per second.
+	 */
+	public long getNodesPerSecond() {
+		return time <= 0 ? nodes : nodes * 1000 / time;
+	}
+	
+	/**
+	 * Retrieves the usage of the transposition table, in permille.
+	 * 
+	 * @return The table usage.
+	 */
+	public int getHashfull() {
+		return hashfull;
+	}
+	
+	/**
+	 * Retrieves the principal variation.
+	 * 
+	 * @return The movements codes of the principal variation.
+	 * 
+	 * @see MovementCode
+	 */
+	public int[] getPrincipalVariation() {
+		return Arrays.copyOf(principalVariation, principalVariation.length);
+	}
+	
+	/**
+	 * Retrieves the best movement.
+	 * 
+	 * @return The movement code, or {@link MovementCode#NONE} if there is no legal movement.
+	 */
+	public int getBestMovement() {
+		return principalVariation.length > 0 ? principalVariation[0] : MovementCode.NONE;
+	}
+	
+	/**
+	 * Retrieves the expected reply to the best movement.
+	 * 
+	 * @return The movement code, or {@link MovementCode#NONE} if unknown.
+	 */
+	public int getPonderMovement() {
+		return principalVariation.length > 1 ? principalVariation[1] : MovementCode.NONE;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("depth ").append(depth)
+			.append(" seldepth ").append(selectiveDepth)
+			.append(" multipv ").append(multiPv)
+			.append(" score ");
+		if (isMateScore()) {
+			builder.append("mate ").append(getMateDistance());
+		} else {
+			builder.append("cp ").append(score);
+		}
+		builder.append(" nodes ").append(nodes)
+			.append(" nps ").append(getNodesPerSecond())
+			.append(" hashfull ").append(hashfull)
+			.append(" time ").append(time)
+			.append(" pv");
+		for (int movement : principalVariation) {
+			MovementCode.appendTo(movement, builder.append(' '));
+		}
+		return builder.toString();
+	}
+}
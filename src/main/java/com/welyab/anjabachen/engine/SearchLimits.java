@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+/**
+ * The limits of a search: maximum depth, nodes, time, clock information, etc. Instances are
+ * created through the {@linkplain #builder() builder}:
+ * 
+ * <pre>
+ * SearchLimits limits = SearchLimits.builder()
+ * 	.depth(8)
+ * 	.moveTime(5000)
+ * 	.build();
+ * </pre>
+ * 
+ * A search without any limit runs until the maximum depth is reached or it is explicitly stopped.
+ * 
+ * @author Welyab Paula
+ */
+public final class SearchLimits {
+	
+	/** The deepest iteration the search may perform. */
+	public static final int MAX_DEPTH = 64;
+	
+	/** The maximum number of principal variations a search may report. */
+	public static final int MAX_MULTI_PV = 256;
+	
+	@SuppressWarnings("javadoc")
+	private final int depth;
+	
+	@SuppressWarnings("javadoc")
+	private final long nodes;
+	
+	@SuppressWarnings("javadoc")
+	private final long moveTime;
+	
+	@SuppressWarnings("javadoc")
+	private final long whiteTime;
+	
+	@SuppressWarnings("javadoc")
+	private final long blackTime;
+	
+	@SuppressWarnings("javadoc")
+	private final long whiteIncrement;
+	
+	@SuppressWarnings("javadoc")
+	private final long blackIncrement;
+	
+	@SuppressWarnings("javadoc")
+	private final int movesToGo;
+	
+	@SuppressWarnings("javadoc")
+	private final int multiPv;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean infinite;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean ponder;
+	
+	@SuppressWarnings("javadoc")
+	private SearchLimits(Builder builder) {
+		depth = builder.depth;
+		nodes = builder.nodes;
+		moveTime = builder.moveTime;
+		whiteTime = builder.whiteTime;
+		blackTime = builder.blackTime;
+		whiteIncrement = builder.whiteIncrement;
+		blackIncrement = builder.blackIncrement;
+		movesToGo = builder.movesToGo;
+		multiPv = builder.multiPv;
+		infinite = builder.infinite;
+		ponder = builder.ponder;
+	}
+	
+	/**
+	 * Retrieves the maximum search depth.
+	 * 
+	 * @return The depth, never greater than {@link #MAX_DEPTH}.
+	 */
+	public int getDepth() {
+		return depth;
+	}
+	
+	/**
+	 * Retrieves the maximum number of nodes to search.
+	 * 
+	 * @return The node limit, or <code>0</code> if there is no limit.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Retrieves the exact time, in milliseconds, to search.
+	 * 
+	 * @return The time, or <code>0</code> if there is no limit.
+	 */
+	public long getMoveTime() {
+		return moveTime;
+	}
+	
+	/**
+	 * Retrieves the remaining clock time, in milliseconds, of the given side.
+	 * 
+	 * @param color The side color.
+	 * 
+	 * @return The remaining time, or <code>0</code> if the game is not played with a clock.
+	 */
+	public long getTime(byte color) {
+		return color > 0 ? whiteTime : blackTime;
+	}
+	
+	/**
+	 * Retrieves the clock increment, in milliseconds, of the given side.
+	 * 
+	 * @param color The side color.
+	 * 
+	 * @return The increment.
+	 */
+	public long getIncrement(byte color) {
+		return color > 0 ? whiteIncrement : blackIncrement;
+	}
+	
+	/**
+	 * Retrieves the number of movements until the next time control.
+	 * 
+	 * @return The number of movements, or <code>0</code> if unknown.
+	 */
+	public int getMovesToGo() {
+		return movesToGo;
+	}
+	
+	/**
+	 * Retrieves the number of principal variations to search. Each variation starts with a
+	 * different root movement, so the search reports the best <code>N</code> movements of the
+	 * position.
+	 * 
+	 * @return The number of variations, <code>1</code> by default.
+	 */
+	public int getMultiPv() {
+		return multiPv;
+	}
+	
+	/**
+	 * Indicates if the search should run until explicitly stopped.
+	 * 
+	 * @return A value <code>true</code> if the search is infinite.
+	 */
+	public boolean isInfinite() {
+		return infinite;
+	}
+	
+	/**
+	 * Indicates if the search is performed on the opponent's time, over the position reached by
+	 * the expected opponent movement.
+	 * 
+	 * @return A value <code>true</code> if the search is a ponder search.
+	 */
+	public boolean isPonder() {
+		return ponder;
+	}
+	
+	/**
+	 * Indicates if the limits carry clock information, so the engine must decide by itself how
+	 * much time to spend.
+	 * 
+	 * @return A value <code>true</code> if there is clock information.
+	 */
+	public boolean hasClock() {
+		return whiteTime > 0 || blackTime > 0;
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Creates limits for a search that stops only at the given depth.
+	 * 
+	 * @param depth The depth.
+	 * 
+	 * @return The limits.
+	 */
+	public static SearchLimits ofDepth(int depth) {
+		return builder().depth(depth).build();
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int depth = MAX_DEPTH;
+		
+		private long nodes;
+		
+		private long moveTime;
+		
+		private long whiteTime;
+		
+		private long blackTime;
+		
+		private long whiteIncrement;
+		
+		private long blackIncrement;
+		
+		private int movesToGo;
+		
+		private int multiPv = 1;
+		
+		private boolean infinite;
+		
+		private boolean ponder;
+		
+		private Builder() {
+		}
+		
+		public Builder depth(int depth) {
+			this.depth = Math.max(1, Math.min(depth, MAX_DEPTH));
+			return this;
+		}
+		
+		public Builder nodes(long nodes) {
+			this.nodes = nodes;
+			return this;
+		}
+		
+		public Builder moveTime(long moveTime) {
+			this.moveTime = moveTime;
+			return this;
+		}
+		
+		public Builder whiteTime(long whiteTime) {
+			this.whiteTime = whiteTime;
+			return this;
+		}
+		
+		public Builder blackTime(long blackTime) {
+			this.blackTime = blackTime;
+			return this;
+		}
+		
+		public Builder whiteIncrement(long whiteIncrement) {
+			this.whiteIncrement = whiteIncrement;
+			return this;
+		}
+		
+		public Builder blackIncrement(long blackIncrement) {
+			this.blackIncrement = blackIncrement;
+			return this;
+		}
+		
+		public Builder movesToGo(int movesToGo) {
+			this.movesToGo = movesToGo;
+			return this;
+		}
+		
+		public Builder multiPv(int multiPv) {
+			this.multiPv = Math.max(1, Math.min(multiPv, MAX_MULTI_PV));
+			return this;
+		}
+		
+		public Builder infinite(boolean infinite) {
+			this.infinite = infinite;
+			return this;
+		}
+		
+		public Builder ponder(boolean ponder) {
+			this.ponder = ponder;
+			return this;
+		}
+		
+		public SearchLimits build() {
+			return new SearchLimits(this);
+		}
+	}
+}
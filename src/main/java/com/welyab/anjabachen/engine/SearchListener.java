@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+/**
+ * Receives the progress and the result of a search started by the {@link Engine}. The methods are
+ * called from the search thread.
+ * 
+ * @author Welyab Paula
+ */
+public interface SearchListener {
+	
+	/**
+	 * Called after each completed iteration of the search.
+	 * 
+	 * @param info The iteration information.
+	 */
+	void onInfo(SearchInfo info);
+	
+	/**
+	 * Called once, when the search is over.
+	 * 
+	 * @param bestMovement The best movement, or {@link MovementCode#NONE} if there is no legal
+	 *        movement.
+	 * @param ponderMovement The expected reply, or {@link MovementCode#NONE}.
+	 */
+	void onBestMovement(int bestMovement, int ponderMovement);
+}
@@ -0,0 +1,810 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+import com.welyab.anjabachen.movement.Position;
+import com.welyab.anjabachen.tablebase.TablebaseProber;
+
+/**
+ * An alpha-beta searcher: iterative deepening, principal variation search, quiescence search,
+ * transposition table, killer movements and history heuristic. When endgame tablebases are
+ * available, positions with few pieces get their exact score from the tables.
+ * 
+ * <p>
+ * The searcher works directly over the board given to it. All movements made during the search are
+ * undone before the search returns, so the board is left in the same position.
+ * 
+ * <p>
+ * An instance is not thread safe, but several instances may share the same
+ * {@link TranspositionTable}.
+ * 
+ * @author Welyab Paula
+ */
+public final class Searcher {
+	
+	/** The score of a checkmate in the root position. */
+	public static final int MATE = 32000;
+	
+	/** The deepest ply the search may reach, including extensions and quiescence search. */
+	static final int MAX_PLY = 128;
+	
+	@SuppressWarnings("javadoc")
+	private static final int MATE_BOUND = MATE - MAX_PLY;
+	
+	@SuppressWarnings("javadoc")
+	private static final int INFINITY = MATE + 1;
+	
+	@SuppressWarnings("javadoc")
+	private static final int MAX_MOVEMENTS = 256;
+	
+	@SuppressWarnings("javadoc")
+	private static final int CHECK_INTERVAL = 1024;
+	
+	@SuppressWarnings("javadoc")
+	private static final int TT_MOVE_SCORE = 10_000_000;
+	
+	@SuppressWarnings("javadoc")
+	private static final int CAPTURE_SCORE = 1_000_000;
+	
+	@SuppressWarnings("javadoc")
+	private static final int PROMOTION_SCORE = 900_000;
+	
+	@SuppressWarnings("javadoc")
+	private static final int KILLER_SCORE = 800_000;
+	
+	@SuppressWarnings("javadoc")
+	private static final int HISTORY_LIMIT = 400_000;
+	
+	@SuppressWarnings("javadoc")
+	private final TranspositionTable table;
+	
+	@SuppressWarnings("javadoc")
+	private final MovementList[] movementLists;
+	
+	@SuppressWarnings("javadoc")
+	private final int[][] principalVariations;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] principalVariationLengths;
+	
+	@SuppressWarnings("javadoc")
+	private final int[][] killers;
+	
+	@SuppressWarnings("javadoc")
+	private final int[][] history;
+	
+	@SuppressWarnings("javadoc")
+	private TablebaseProber tablebases;
+	
+	@SuppressWarnings("javadoc")
+	private long[] keys;
+	
+	@SuppressWarnings("javadoc")
+	private int rootIndex;
+	
+	@SuppressWarnings("javadoc")
+	private Board board;
+	
+	@SuppressWarnings("javadoc")
+	private SearchControl control;
+	
+	@SuppressWarnings("javadoc")
+	private boolean mainThread;
+	
+	@SuppressWarnings("javadoc")
+	private int rootDepth;
+	
+	@SuppressWarnings("javadoc")
+	private int selectiveDepth;
+	
+	@SuppressWarnings("javadoc")
+	private long nodes;
+	
+	@SuppressWarnings("javadoc")
+	private int pendingNodes;
+	
+	@SuppressWarnings("javadoc")
+	private boolean aborted;
+	
+	@SuppressWarnings("javadoc")
+	private boolean hasResult;
+	
+	/**
+	 * Creates a searcher that uses the given transposition table.
+	 * 
+	 * @param table The transposition table.
+	 */
+	public Searcher(TranspositionTable table) {
+		this.table = table;
+		movementLists = new MovementList[MAX_PLY + 1];
+		for (int i = 0; i < movementLists.length; i++) {
+			movementLists[i] = new MovementList();
+		}
+		principalVariations = new int[MAX_PLY + 1][MAX_PLY + 1];
+		principalVariationLengths = new int[MAX_PLY + 1];
+		killers = new int[MAX_PLY + 1][2];
+		history = new int[13][64];
+		keys = new long[256];
+	}
+	
+	/**
+	 * Searches the best movement for the side to move, blocking until one of the limits is reached.
+	 * The limits must not be infinite nor ponder.
+	 * 
+	 * @param board The board.
+	 * @param limits The search limits.
+	 * 
+	 * @return The result of the deepest completed iteration.
+	 */
+	public SearchInfo search(Board board, SearchLimits limits) {
+		return search(board, limits, null);
+	}
+	
+	/**
+	 * Searches the best movements for the side to move, blocking until one of the limits is reached.
+	 * The limits must not be infinite nor ponder.
+	 * 
+	 * @param board The board.
+	 * @param limits The search limits.
+	 * @param infoConsumer Receives each principal variation of each completed iteration, may be
+	 *        <code>null</code>.
+	 * 
+	 * @return The best variation of the deepest completed iteration.
+	 */
+	public SearchInfo search(Board board, SearchLimits limits, Consumer<SearchInfo> infoConsumer) {
+		table.newSearch();
+		return search(
+			board,
+			new long[0],
+			limits,
+			new SearchControl(limits, board.getSideToMove()),
+			infoConsumer,
+			0
+		);
+	}
+	
+	/**
+	 * Searches the best movement for the side to move.
+	 * 
+	 * @param board The board.
+	 * @param gameHistory The keys of the positions that happened in the game before the current
+	 *        one, used to detect repetitions.
+	 * @param limits The search limits.
+	 * @param control The control shared by the threads of this search.
+	 * @param infoConsumer Receives each principal variation of each completed iteration, may be
+	 *        <code>null</code>.
+	 * @param helperIndex <code>0</code> for the main thread; helper threads use different values
+	 *        so they do not search exactly the same tree.
+	 * 
+	 * @return The best variation of the deepest completed iteration.
+	 */
+	SearchInfo search(
+		Board board,
+		long[] gameHistory,
+		SearchLimits limits,
+		SearchControl control,
+		Consumer<SearchInfo> infoConsumer,
+		int helperIndex
+	) {
+		this.board = board;
+		this.control = control;
+		mainThread = helperIndex == 0;
+		nodes = 0;
+		pendingNodes = 0;
+		aborted = false;
+		hasResult = false;
+		prepareKeys(gameHistory);
+		ageStatistics();
+		
+		MovementList rootMovements = movementLists[0];
+		generateMovements(rootMovements);
+		if (rootMovements.size == 0) {
+			int score = board.isKingInCheck() ? -MATE : 0;
+			return new SearchInfo(0, 0, 1, score, 0, control.getElapsedTime(), table.getHashfull(), new int[0]);
+		}
+		long rootEntry = table.probe(keys[rootIndex]);
+		scoreMovements(rootMovements, 0, TranspositionTable.getMovement(rootEntry));
+		rootMovements.sort(0);
+		
+		SearchInfo result = null;
+		int lines = Math.min(limits.getMultiPv(), rootMovements.size);
+		int firstDepth = 1 + helperIndex % 2;
+		for (rootDepth = firstDepth; rootDepth <= limits.getDepth(); rootDepth++) {
+			selectiveDepth = 0;
+			for (int line = 0; line < lines && !aborted; line++) {
+				int score = searchRoot(rootDepth, line);
+				flushNodes();
+				if (aborted) {
+					break;
+				}
+				SearchInfo info = new SearchInfo(
+					rootDepth,
+					selectiveDepth,
+					line + 1,
+					score,
+					control.getNodes(),
+					control.getElapsedTime(),
+					table.getHashfull(),
+					Arrays.copyOf(principalVariations[0], principalVariationLengths[0])
+				);
+				if (line == 0) {
+					result = info;
+					hasResult = true;
+				}
+				if (infoConsumer != null) {
+					infoConsumer.accept(info);
+				}
+			}
+			if (aborted || control.isStopped()) {
+				break;
+			}
+			if (mainThread && control.isSoftLimitReached()) {
+				break;
+			}
+			int score = result.getScore();
+			if (lines == 1 && isMateScore(score) && MATE - Math.abs(score) <= rootDepth) {
+				break;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Forgets the statistics collected by previous searches.
+	 */
+	public void clearHistory() {
+		for (int[] pieceHistory : history) {
+			Arrays.fill(pieceHistory, 0);
+		}
+	}
+	
+	/**
+	 * Changes the endgame tablebases probed during the search.
+	 * 
+	 * @param tablebases The tablebases, or <code>null</code> to search without them.
+	 */
+	public void setTablebases(TablebaseProber tablebases) {
+		this.tablebases = tablebases;
+	}
+	
+	/**
+	 * Looks in the transposition table for the expected reply to the given movement, to be used as
+	 * ponder movement when the principal variation is too short.
+	 * 
+	 * @param board The board in the position where the movement is played.
+	 * @param movement The movement code.
+	 * 
+	 * @return The reply, or {@link MovementCode#NONE} if the table doesn't have a legal one.
+	 */
+	int findReply(Board board, int movement) {
+		if (movement == MovementCode.NONE) {
+			return MovementCode.NONE;
+		}
+		Board previousBoard = this.board;
+		this.board = board;
+		byte promotion = MovementCode.getPromotion(movement);
+		board.move(
+			MovementCode.getOrigin(movement),
+			MovementCode.getTarget(movement),
+			promotion == MovementUtil.EMPTY ? MovementUtil.QUEEN : promotion
+		);
+		try {
+			long entry = table.probe(board.getZobristKey());
+			int reply = TranspositionTable.getMovement(entry);
+			if (TranspositionTable.getBound(entry) == 0 || reply == MovementCode.NONE) {
+				return MovementCode.NONE;
+			}
+			MovementList list = movementLists[1];
+			generateMovements(list);
+			for (int i = 0; i < list.size; i++) {
+				if (list.codes[i] == reply) {
+					return reply;
+				}
+			}
+			return MovementCode.NONE;
+		} finally {
+			board.undo();
+			this.board = previousBoard;
+		}
+	}
+	
+	/**
+	 * Indicates if the score announces a forced checkmate.
+	 * 
+	 * @param score The score.
+	 * 
+	 * @return A value <code>true</code> if the score is a mate score.
+	 */
+	public static boolean isMateScore(int score) {
+		return Math.abs(score) >= MATE_BOUND;
+	}
+	
+	/**
+	 * Searches the root movements starting at the given index. In multi-PV searches the movements
+	 * before that index are the first movements of the variations already found in the current
+	 * iteration, so they are excluded. The best movement is moved to <code>first</code>.
+	 * 
+	 * @param depth The iteration depth.
+	 * @param first The index of the first root movement to search.
+	 * 
+	 * @return The score of the best movement.
+	 */
+	private int searchRoot(int depth, int first) {
+		MovementList list = movementLists[0];
+		principalVariationLengths[0] = 0;
+		int alpha = -INFINITY;
+		int beta = INFINITY;
+		int bestScore = -INFINITY;
+		int bestIndex = first;
+		for (int i = first; i < list.size; i++) {
+			makeMovement(list, i, 0);
+			int score;
+			if (i == first) {
+				score = -search(depth - 1, 1, -beta, -alpha);
+			} else {
+				score = -search(depth - 1, 1, -alpha - 1, -alpha);
+				if (score > alpha && score < beta) {
+					score = -search(depth - 1, 1, -beta, -alpha);
+				}
+			}
+			board.undo();
+			if (aborted) {
+				break;
+			}
+			list.scores[i] = score;
+			if (score > bestScore) {
+				bestScore = score;
+				bestIndex = i;
+				if (score > alpha) {
+					alpha = score;
+					updatePrincipalVariation(0, list.codes[i]);
+				}
+			}
+		}
+		if (!aborted) {
+			if (first == 0) {
+				table.store(keys[rootIndex], list.codes[bestIndex], bestScore, depth, TranspositionTable.EXACT);
+			}
+			for (int i = first; i < list.size; i++) {
+				if (i != bestIndex) {
+					list.scores[i] = Math.min(list.scores[i], bestScore - 1);
+				}
+			}
+			list.sort(first);
+		}
+		return bestScore;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int search(int depth, int ply, int alpha, int beta) {
+		principalVariationLengths[ply] = ply;
+		if (checkAbort()) {
+			return 0;
+		}
+		if (isRepetition(ply) || board.getHalfMoveClock() >= 100) {
+			return 0;
+		}
+		
+		// mate distance pruning
+		alpha = Math.max(alpha, -MATE + ply);
+		beta = Math.min(beta, MATE - ply - 1);
+		if (alpha >= beta) {
+			return alpha;
+		}
+		
+		if (tablebases != null) {
+			int distance = tablebases.probeDtm(board);
+			if (distance != TablebaseProber.UNAVAILABLE) {
+				return tablebaseScore(distance, ply);
+			}
+		}
+		
+		boolean inCheck = board.isKingInCheck();
+		if (inCheck) {
+			depth++;
+		}
+		if (depth <= 0 || ply >= MAX_PLY - 1) {
+			return quiescence(ply, alpha, beta);
+		}
+		
+		boolean pvNode = beta - alpha > 1;
+		long key = keys[rootIndex + ply];
+		long entry = table.probe(key);
+		int ttMovement = MovementCode.NONE;
+		if (TranspositionTable.getBound(entry) != 0) {
+			ttMovement = TranspositionTable.getMovement(entry);
+			if (!pvNode && TranspositionTable.getDepth(entry) >= depth) {
+				int score = fromTableScore(TranspositionTable.getScore(entry), ply);
+				int bound = TranspositionTable.getBound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| bound == TranspositionTable.LOWER_BOUND && score >= beta
+						|| bound == TranspositionTable.UPPER_BOUND && score <= alpha) {
+					return score;
+				}
+			}
+		}
+		
+		MovementList list = movementLists[ply];
+		generateMovements(list);
+		if (list.size == 0) {
+			return inCheck ? -MATE + ply : 0;
+		}
+		scoreMovements(list, ply, ttMovement);
+		
+		int originalAlpha = alpha;
+		int bestScore = -INFINITY;
+		int bestMovement = MovementCode.NONE;
+		for (int i = 0; i < list.size; i++) {
+			list.pick(i);
+			int code = list.codes[i];
+			boolean quiet = isQuiet(list.targets[i]);
+			makeMovement(list, i, ply);
+			boolean givesCheck = board.isKingInCheck();
+			
+			int reduction = 0;
+			if (quiet && !inCheck && !givesCheck && depth >= 3 && i >= 3 && list.scores[i] < KILLER_SCORE) {
+				reduction = i >= 10 && depth >= 6 ? 2 : 1;
+			}
+			
+			int score;
+			if (i == 0) {
+				score = -search(depth - 1, ply + 1, -beta, -alpha);
+			} else {
+				score = -search(depth - 1 - reduction, ply + 1, -alpha - 1, -alpha);
+				if (score > alpha && reduction > 0) {
+					score = -search(depth - 1, ply + 1, -alpha - 1, -alpha);
+				}
+				if (score > alpha && score < beta) {
+					score = -search(depth - 1, ply + 1, -beta, -alpha);
+				}
+			}
+			board.undo();
+			if (aborted) {
+				return 0;
+			}
+			
+			if (score > bestScore) {
+				bestScore = score;
+				bestMovement = code;
+				if (score > alpha) {
+					alpha = score;
+					updatePrincipalVariation(ply, code);
+					if (score >= beta) {
+						if (quiet) {
+							updateQuietStatistics(ply, list.pieces[i], list.targets[i], code, depth);
+						}
+						break;
+					}
+				}
+			}
+		}
+		
+		int bound = bestScore >= beta
+				? TranspositionTable.LOWER_BOUND
+				: bestScore > originalAlpha ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND;
+		table.store(
+			key,
+			bound == TranspositionTable.UPPER_BOUND ? MovementCode.NONE : bestMovement,
+			toTableScore(bestScore, ply),
+			depth,
+			bound
+		);
+		return bestScore;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int quiescence(int ply, int alpha, int beta) {
+		principalVariationLengths[ply] = ply;
+		if (checkAbort()) {
+			return 0;
+		}
+		if (ply > selectiveDepth) {
+			selectiveDepth = ply;
+		}
+		int standPat = Evaluator.evaluate(board);
+		if (ply >= MAX_PLY - 1 || standPat >= beta) {
+			return standPat;
+		}
+		if (standPat > alpha) {
+			alpha = standPat;
+		}
+		
+		MovementList list = movementLists[ply];
+		generateMovements(list);
+		scoreMovements(list, ply, MovementCode.NONE);
+		for (int i = 0; i < list.size; i++) {
+			list.pick(i);
+			if (list.scores[i] < PROMOTION_SCORE) {
+				break;
+			}
+			makeMovement(list, i, ply);
+			int score = -quiescence(ply + 1, -beta, -alpha);
+			board.undo();
+			if (aborted) {
+				return 0;
+			}
+			if (score > alpha) {
+				alpha = score;
+				updatePrincipalVariation(ply, list.codes[i]);
+				if (score >= beta) {
+					break;
+				}
+			}
+		}
+		return alpha;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean checkAbort() {
+		nodes++;
+		if (++pendingNodes >= CHECK_INTERVAL) {
+			flushNodes();
+			if (control.isStopped() || mainThread && control.isHardLimitReached()) {
+				if (mainThread) {
+					control.abort();
+				}
+				aborted = hasResult;
+			}
+		}
+		return aborted;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void flushNodes() {
+		control.addNodes(pendingNodes);
+		pendingNodes = 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void prepareKeys(long[] gameHistory) {
+		int required = gameHistory.length + MAX_PLY + 2;
+		if (keys.length < required) {
+			keys = new long[required];
+		}
+		System.arraycopy(gameHistory, 0, keys, 0, gameHistory.length);
+		rootIndex = gameHistory.length;
+		keys[rootIndex] = board.getZobristKey();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean isRepetition(int ply) {
+		int index = rootIndex + ply;
+		long key = keys[index];
+		int limit = Math.max(0, index - board.getHalfMoveClock());
+		for (int i = index - 4; i >= limit; i -= 2) {
+			if (keys[i] == key) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void makeMovement(MovementList list, int index, int ply) {
+		board.move(list.origins[index], list.targets[index]);
+		keys[rootIndex + ply + 1] = board.getZobristKey();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void generateMovements(MovementList list) {
+		list.size = 0;
+		Movements movements = board.getMovements(false);
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			Position origin = pieceMovements.getOrigin();
+			byte pieceCode = pieceMovements.getPieceCode();
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				list.add(origin, pieceCode, pieceMovements.getTarget(j));
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void scoreMovements(MovementList list, int ply, int ttMovement) {
+		for (int i = 0; i < list.size; i++) {
+			int code = list.codes[i];
+			MovementTarget target = list.targets[i];
+			short flags = target.getFlags();
+			int score;
+			if (code == ttMovement) {
+				score = TT_MOVE_SCORE;
+			} else if (MovementUtil.isCapture(flags)) {
+				int victim = MovementUtil.isEnPassant(flags)
+						? MovementUtil.PAWN
+						: MovementUtil.getPieceType(board.getSquareValue(target.getPosition()));
+				score = CAPTURE_SCORE
+						+ Evaluator.PIECE_VALUES[victim] * 10
+						- MovementUtil.getPieceType(list.pieces[i]);
+				if (MovementUtil.isPromotion(flags)) {
+					score += Evaluator.PIECE_VALUES[MovementUtil.getPieceType(target.getPieceCode())];
+				}
+			} else if (MovementUtil.isPromotion(flags)) {
+				score = PROMOTION_SCORE + Evaluator.PIECE_VALUES[MovementUtil.getPieceType(target.getPieceCode())];
+			} else if (code == killers[ply][0]) {
+				score = KILLER_SCORE + 1;
+			} else if (code == killers[ply][1]) {
+				score = KILLER_SCORE;
+			} else {
+				score = history[list.pieces[i] + 6][squareOf(target.getPosition())];
+			}
+			list.scores[i] = score;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void ageStatistics() {
+		for (int[] plyKillers : killers) {
+			Arrays.fill(plyKillers, MovementCode.NONE);
+		}
+		for (int[] pieceHistory : history) {
+			for (int i = 0; i < pieceHistory.length; i++) {
+				pieceHistory[i] /= 4;
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void updateQuietStatistics(int ply, byte pieceCode, MovementTarget target, int code, int depth) {
+		if (killers[ply][0] != code) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = code;
+		}
+		int[] pieceHistory = history[pieceCode + 6];
+		int square = squareOf(target.getPosition());
+		pieceHistory[square] += depth * depth;
+		if (pieceHistory[square] > HISTORY_LIMIT) {
+			for (int[] values : history) {
+				for (int i = 0; i < values.length; i++) {
+					values[i] /= 2;
+				}
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void updatePrincipalVariation(int ply, int code) {
+		int[] variation = principalVariations[ply];
+		int[] childVariation = principalVariations[ply + 1];
+		int childLength = Math.max(principalVariationLengths[ply + 1], ply + 1);
+		variation[ply] = code;
+		for (int i = ply + 1; i < childLength; i++) {
+			variation[i] = childVariation[i];
+		}
+		principalVariationLengths[ply] = childLength;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isQuiet(MovementTarget target) {
+		short flags = target.getFlags();
+		return !MovementUtil.isCapture(flags) && !MovementUtil.isPromotion(flags);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int squareOf(Position position) {
+		return position.row * 8 + position.column;
+	}
+	
+	/**
+	 * Converts a tablebase distance to mate into a search score.
+	 * 
+	 * @param distance The distance to mate in plies, or <code>-1</code> for draws.
+	 * @param ply The ply of the probed position.
+	 * 
+	 * @return The score, from the point of view of the side to move.
+	 */
+	private static int tablebaseScore(int distance, int ply) {
+		if (distance < 0) {
+			return 0;
+		}
+		return (distance & 1) != 0 ? MATE - ply - distance : -MATE + ply + distance;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int toTableScore(int score, int ply) {
+		if (score >= MATE_BOUND) {
+			return score + ply;
+		}
+		if (score <= -MATE_BOUND) {
+			return score - ply;
+		}
+		return score;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int fromTableScore(int score, int ply) {
+		if (score >= MATE_BOUND) {
+			return score - ply;
+		}
+		if (score <= -MATE_BOUND) {
+			return score + ply;
+		}
+		return score;
+	}
+	
+	/**
+	 * The movements generated for one ply of the search. The arrays are reused through the whole
+	 * search, so no list is allocated while searching.
+	 */
+	@SuppressWarnings("javadoc")
+	private static final class MovementList {
+		
+		private final Position[] origins = new Position[MAX_MOVEMENTS];
+		
+		private final byte[] pieces = new byte[MAX_MOVEMENTS];
+		
+		private final MovementTarget[] targets = new MovementTarget[MAX_MOVEMENTS];
+		
+		private final int[] codes = new int[MAX_MOVEMENTS];
+		
+		private final int[] scores = new int[MAX_MOVEMENTS];
+		
+		private int size;
+		
+		private void add(Position origin, byte pieceCode, MovementTarget target) {
+			origins[size] = origin;
+			pieces[size] = pieceCode;
+			targets[size] = target;
+			codes[size] = MovementCode.of(origin, target);
+			size++;
+		}
+		
+		private void pick(int from) {
+			int best = from;
+			for (int i = from + 1; i < size; i++) {
+				if (scores[i] > scores[best]) {
+					best = i;
+				}
+			}
+			if (best != from) {
+				swap(from, best);
+			}
+		}
+		
+		private void sort(int from) {
+			for (int i = from + 1; i < size; i++) {
+				for (int j = i; j > from && scores[j] > scores[j - 1]; j--) {
+					swap(j, j - 1);
+				}
+			}
+		}
+		
+		private void swap(int i, int j) {
+			Position origin = origins[i];
+			origins[i] = origins[j];
+			origins[j] = origin;
+			byte piece = pieces[i];
+			pieces[i] = pieces[j];
+			pieces[j] = piece;
+			MovementTarget target = targets[i];
+			targets[i] = targets[j];
+			targets[j] = target;
+			int code = codes[i];
+			codes[i] = codes[j];
+			codes[j] = code;
+			int score = scores[i];
+			scores[i] = scores[j];
+			scores[j] = score;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import java.util.Arrays;
+
+/**
+ * A <a href="https://www.chessprogramming.org/Transposition_Table">transposition table</a>
+ * that keeps search results indexed by position key. Each entry is packed in a single
+ * <code>long</code>:
+ * 
+ * <pre>
+ * bits  0 - 14: best movement (see {@link MovementCode})
+ * bits 15 - 16: bound type
+ * bits 17 - 24: depth
+ * bits 25 - 40: score
+ * bits 41 - 48: generation
+ * </pre>
+ * 
+ * The generation is advanced at the start of every search (see {@link #newSearch()}), so the
+ * entries of previous searches are kept to warm-start the next one, but are the first to be
+ * replaced when the table is full.
+ * 
+ * <p>
+ * The table may be shared by several search threads without locking: the stored key is
+ * <code>key ^ data</code>, so an entry torn by concurrent writes is simply not found.
+ * 
+ * @author Welyab Paula
+ */
+public final class TranspositionTable {
+	
+	/** The stored score is an upper bound (the search failed low). */
+	public static final int UPPER_BOUND = 1;
+	
+	/** The stored score is a lower bound (the search failed high). */
+	public static final int LOWER_BOUND = 2;
+	
+	/** The stored score is exact. */
+	public static final int EXACT = 3;
+	
+	@SuppressWarnings("javadoc")
+	private static final int ENTRY_SIZE = 16;
+	
+	@SuppressWarnings("javadoc")
+	private long[] keys;
+	
+	@SuppressWarnings("javadoc")
+	private long[] data;
+	
+	@SuppressWarnings("javadoc")
+	private int mask;
+	
+	@SuppressWarnings("javadoc")
+	private int generation;
+	
+	/**
+	 * Creates a table using approximately the given amount of memory.
+	 * 
+	 * @param megabytes The table size in megabytes.
+	 */
+	public TranspositionTable(int megabytes) {
+		resize(megabytes);
+	}
+	
+	/**
+	 * Reallocates the table using approximately the given amount of memory. All entries are lost.
+	 * This method must not be called while a search is using the table.
+	 * 
+	 * @param megabytes The table size in megabytes.
+	 */
+	public void resize(int megabytes) {
+		if (megabytes < 1) {
+			throw new IllegalArgumentException(String.format("Invalid table size: %d", megabytes));
+		}
+		long entries = Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_SIZE);
+		int size = (int) Math.min(entries, 1 << 30);
+		keys = new long[size];
+		data = new long[size];
+		mask = size - 1;
+	}
+	
+	/**
+	 * Removes all entries.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(data, 0);
+		generation = 0;
+	}
+	
+	/**
+	 * Advances the table generation. Must be called before a new search starts, not by each thread
+	 * of the search.
+	 */
+	public void newSearch() {
+		generation = generation + 1 & 0xFF;
+	}
+	
+	/**
+	 * Retrieves the number of entries of the table.
+	 * 
+	 * @return The capacity.
+	 */
+	public int getCapacity() {
+		return data.length;
+	}
+	
+	/**
+	 * Retrieves the entry stored for given key.
+	 * 
+	 * @param key The position key.
+	 * 
+	 * @return The entry, or <code>0</code> if there is no entry for the key.
+	 */
+	public long probe(long key) {
+		int index = (int) key & mask;
+		long entry = data[index];
+		if ((keys[index] ^ entry) != key) {
+			return 0;
+		}
+		return entry;
+	}
+	
+	/**
+	 * Stores a search result. Entries of the current search that were searched with greater depth
+	 * are preserved unless the new result is exact.
+	 * 
+	 * @param key The position key.
+	 * @param movement The best movement found, or {@link MovementCode#NONE}.
+	 * @param score The score.
+	 * @param depth The search depth.
+	 * @param bound The bound type ({@link #UPPER_BOUND}, {@link #LOWER_BOUND} or {@link #EXACT}).
+	 */
+	public void store(long key, int movement, int score, int depth, int bound) {
+		int index = (int) key & mask;
+		long current = data[index];
+		boolean sameKey = (keys[index] ^ current) == key;
+		boolean sameGeneration = getGeneration(current) == generation;
+		if (sameGeneration && bound != EXACT && getDepth(current) > (sameKey ? depth : depth + 2)) {
+			return;
+		}
+		if (sameKey && movement == MovementCode.NONE) {
+			movement = getMovement(current);
+		}
+		long entry = movement & 0x7FFFL
+				| (long) bound << 15
+				| (long) Math.max(0, Math.min(depth, 255)) << 17
+				| (score & 0xFFFFL) << 25
+				| (long) generation << 41;
+		data[index] = entry;
+		keys[index] = key ^ entry;
+	}
+	
+	/**
+	 * Estimates how full the table is, in permille, by sampling the first entries. Only entries
+	 * written by the current search are counted.
+	 * 
+	 * @return The usage in permille.
+	 */
+	public int getHashfull() {
+		int sample = Math.min(1000, data.length);
+		int used = 0;
+		for (int i = 0; i < sample; i++) {
+			if (data[i] != 0 && getGeneration(data[i]) == generation) {
+				used++;
+			}
+		}
+		return used * 1000 / sample;
+	}
+	
+	/**
+	 * Retrieves the movement of an entry.
+	 * 
+	 * @param entry The entry.
+	 * 
+	 * @return The movement code.
+	 */
+	public static int getMovement(long entry) {
+		return (int) (entry & 0x7FFF);
+	}
+	
+	/**
+	 * Retrieves the bound type of an entry.
+	 * 
+	 * @param entry The entry.
+	 * 
+	 * @return The bound type.
+	 */
+	public static int getBound(long entry) {
+		return (int) (entry >>> 15 & 3);
+	}
+	
+	/**
+	 * Retrieves the depth of an entry.
+	 * 
+	 * @param entry The entry.
+	 * 
+	 * @return The depth.
+	 */
+	public static int getDepth(long entry) {
+		return (int) (entry >>> 17 & 0xFF);
+	}
+	
+	/**
+	 * Retrieves the score of an entry.
+	 * 
+	 * @param entry The entry.
+	 * 
+	 * @return The score.
+	 */
+	public static int getScore(long entry) {
+		return (short) (entry >>> 25 & 0xFFFF);
+	}
+	
+	/**
+	 * Retrieves the generation of the search that wrote an entry.
+	 * 
+	 * @param entry The entry.
+	 * 
+	 * @return The generation.
+	 */
+	public static int getGeneration(long entry) {
+		return (int) (entry >>> 41 & 0xFF);
+	}
+}
@@ -15,14 +15,16 @@
  */
 package com.welyab.anjabachen.movement;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.ObjIntConsumer;
 
 import com.welyab.anjabachen.ChessException;
-import com.welyab.anjabachen.movement.fen.FenParser;
-import com.welyab.anjabachen.movement.fen.FenPositionInfo;
 
 /**
  * The <code>Board</code> class is the main component for movement generation in
@@ -224,6 +226,12 @@ public final class Board implements Copyable<Board> {
 	/** The movement log, for undo purpose, etc. */
 	private final List<MovementLogEntry> movementLog;
 	
+	/** The FEN string of the current position, or <code>null</code> when not computed yet. */
+	private String fen;
+	
+	/** The Zobrist key of the current position, updated by each movement. */
+	private long zobristKey;
+	
 	/**
 	 * Creates a board with initial piece disposition.
 	 * 
@@ -257,11 +265,114 @@ public final class Board implements Copyable<Board> {
 	 * @param fen The FEN string.
 	 */
 	public Board(String fen) {
-		FenParser parser = new FenParser(fen);
-		grid = createGrid(parser.getLocalizedPieces());
-		state = createBoardState(grid, parser.getFenPositionInfo());
-		setKingsPositions(state, parser.getLocalizedPieces());
+		grid = createGrid();
+		state = new BoardState();
+		FenLoader.load(fen, 0, fen.length(), grid, state);
+		movementLog = new ArrayList<>();
+		zobristKey = ZobristKey.compute(grid, state);
+	}
+	
+	/**
+	 * Replaces the position of this board with the one of the FEN string. The string is parsed
+	 * straight into the board, without allocating, which makes a single board reusable for any
+	 * number of positions. The movement history is discarded.
+	 * 
+	 * @param fen The FEN string.
+	 * 
+	 * @throws com.welyab.anjabachen.movement.fen.FenParserException If the FEN string is invalid.
+	 *         The board is not changed in this case.
+	 */
+	public void loadFen(CharSequence fen) {
+		loadFen(fen, 0, fen.length());
+	}
+	
+	/**
+	 * Replaces the position of this board with the one of the FEN string found in a region of the
+	 * given text, like a line of a bigger buffer. The movement history is discarded.
+	 * 
+	 * @param text The text.
+	 * @param start The index of the first character of the FEN string.
+	 * @param end The index after the last character of the FEN string.
+	 * 
+	 * @throws com.welyab.anjabachen.movement.fen.FenParserException If the FEN string is invalid.
+	 *         The board is not changed in this case.
+	 */
+	public void loadFen(CharSequence text, int start, int end) {
+		FenLoader.load(text, start, end, grid, state);
+		movementLog.clear();
+		fen = null;
+		zobristKey = ZobristKey.compute(grid, state);
+	}
+	
+	/**
+	 * Replaces the position of this board with the one of the FEN string, encoded in ASCII, found
+	 * in a region of the given array. The movement history is discarded.
+	 * 
+	 * @param bytes The array.
+	 * @param offset The index of the first byte of the FEN string.
+	 * @param length The number of bytes of the FEN string.
+	 * 
+	 * @throws com.welyab.anjabachen.movement.fen.FenParserException If the FEN string is invalid.
+	 *         The board is not changed in this case.
+	 */
+	public void loadFen(byte[] bytes, int offset, int length) {
+		FenLoader.load(bytes, offset, offset + length, grid, state);
+		movementLog.clear();
+		fen = null;
+		zobristKey = ZobristKey.compute(grid, state);
+	}
+	
+	/**
+	 * Replaces the position of this board, and its movement history, with the ones of the given
+	 * board. The squares, the state and the log of this board are reused, so no storage is
+	 * allocated once the log is big enough. The boards remain independent.
+	 * 
+	 * @param other The board to be copied.
+	 */
+	public void set(Board other) {
+		if (other == this) {
+			return;
+		}
+		for (int row = 0; row < 8; row++) {
+			System.arraycopy(other.grid[row], 0, grid[row], 0, 8);
+		}
+		state.set(other.state);
+		movementLog.clear();
+		movementLog.addAll(other.movementLog);
+		fen = other.fen;
+		zobristKey = other.zobristKey;
+	}
+	
+	/**
+	 * Creates a board with the position encoded at the buffer position, without any text parsing.
+	 * 
+	 * @param buffer The buffer with the position.
+	 * 
+	 * @throws ChessException If the buffer doesn't have a valid position.
+	 * 
+	 * @see PositionCodec
+	 */
+	public Board(ByteBuffer buffer) {
+		grid = createGrid();
+		state = new BoardState();
+		PositionCodec.decode(buffer, grid, state);
 		movementLog = new ArrayList<>();
+		zobristKey = ZobristKey.compute(grid, state);
+	}
+	
+	/**
+	 * Creates a board with the position and the movement history of another board. The storage is
+	 * allocated empty and filled by {@link #set(Board)}, so no FEN string is parsed.
+	 * 
+	 * @param other The board to be copied.
+	 * 
+	 * @see BoardPool#acquire(Board)
+	 */
+	Board(Board other) {
+		grid = createGrid();
+		state = new BoardState();
+		movementLog = new ArrayList<>(other.movementLog.size());
+		set(other);
 	}
 	
 	@SuppressWarnings("javadoc")
@@ -270,26 +381,7 @@ public final class Board implements Copyable<Board> {
 		addPiecesToGrid(grid, pieces);
 		this.state = state;
 		movementLog = new ArrayList<>();
-	}
-	
-	@SuppressWarnings("javadoc")
-	private static void setKingsPositions(BoardState state, List<LocalizedPiece> pieces) {
-		for (int i = 0; i < pieces.size(); i++) {
-			LocalizedPiece localizedPiece = pieces.get(i);
-			if (MovementUtil.isKing(localizedPiece.getPieceCode())) {
-				byte color = MovementUtil.getPieceColor(localizedPiece.getPieceCode());
-				if (state.isKingPresent(color)) {
-					throw new ChessException(
-						String.format(
-							"Can't create boar with two kings of same color: %c",
-							MovementUtil.colorCodeToLetter(color)
-						)
-					);
-				}
-				
-				state.setKingPosition(localizedPiece.getPosition(), color);
-			}
-		}
+		zobristKey = ZobristKey.compute(grid, state);
 	}
 	
 	@SuppressWarnings("javadoc")
@@ -443,21 +535,24 @@ public final class Board implements Copyable<Board> {
 	}
 	
 	public void move(Position origin, MovementTarget movementTarget) {
+		fen = null;
 		Position target = movementTarget.getPosition();
 		byte originPiece = grid[origin.row][origin.column];
 		byte color = MovementUtil.getPieceColor(originPiece);
 		byte capturedPiece = grid[target.row][target.column];
 		BoardState stateCopy = state.copy();
+		long previousKey = zobristKey;
+		zobristKey ^= ZobristKey.computeStateKey(grid, state);
 		
 		// moves the piece from origin to target
-		grid[target.row][target.column] = movementTarget.getPieceCode();
-		grid[origin.row][origin.column] = MovementUtil.EMPTY;
+		putPiece(target.row, target.column, movementTarget.getPieceCode());
+		putPiece(origin.row, origin.column, MovementUtil.EMPTY);
 		
 		// remove the captured pawn if the movement is a en passant
 		Position epTarget = state.getEnPassantTargetSquare();
 		if (MovementUtil.isEnPassant(movementTarget.getFlags())) {
 			capturedPiece = grid[origin.row][target.column];
-			grid[origin.row][epTarget.column] = MovementUtil.EMPTY;
+			putPiece(origin.row, epTarget.column, MovementUtil.EMPTY);
 		}
 		
 		// update the king position cache
@@ -469,8 +564,8 @@ public final class Board implements Copyable<Board> {
 		if (MovementUtil.isCastling(movementTarget.getFlags())) {
 			int rookOriginCol = MovementUtil.getCastlingRookOriginColumn(target.column);
 			int rookTargetCol = MovementUtil.getCastlingRookTargetColumn(target.column);
-			grid[origin.row][rookTargetCol] = grid[origin.row][rookOriginCol];
-			grid[origin.row][rookOriginCol] = MovementUtil.EMPTY;
+			putPiece(origin.row, rookTargetCol, grid[origin.row][rookOriginCol]);
+			putPiece(origin.row, rookOriginCol, MovementUtil.EMPTY);
 		}
 		
 		// update castling flags
@@ -537,6 +632,7 @@ public final class Board implements Copyable<Board> {
 		
 		// increment game movement counter
 		state.incrementMovementCounter();
+		zobristKey ^= ZobristKey.computeStateKey(grid, state);
 		
 		movementLog.add(
 			new MovementLogEntry(
@@ -544,11 +640,30 @@ public final class Board implements Copyable<Board> {
 				originPiece,
 				origin,
 				target,
-				capturedPiece
+				capturedPiece,
+				previousKey
 			)
 		);
 	}
 	
+	/**
+	 * Puts a piece in a square, or empties it, keeping the Zobrist key up to date.
+	 * 
+	 * @param row The square row.
+	 * @param column The square column.
+	 * @param pieceCode The piece code, or {@link MovementUtil#EMPTY}.
+	 */
+	private void putPiece(int row, int column, byte pieceCode) {
+		byte previous = grid[row][column];
+		if (previous != MovementUtil.EMPTY) {
+			zobristKey ^= ZobristKey.getPieceKey(previous, row, column);
+		}
+		if (pieceCode != MovementUtil.EMPTY) {
+			zobristKey ^= ZobristKey.getPieceKey(pieceCode, row, column);
+		}
+		grid[row][column] = pieceCode;
+	}
+	
 	public boolean hasPreviousMovement() {
 		return !movementLog.isEmpty();
 	}
@@ -558,6 +673,7 @@ public final class Board implements Copyable<Board> {
 			throw new ChessException("No previous movement to undo");
 		}
 		
+		fen = null;
 		MovementLogEntry log = movementLog.remove(movementLog.size() - 1);
 		BoardState logState = log.getBoardState();
 		Position enPassTarget = logState.getEnPassantTargetSquare();
@@ -580,6 +696,7 @@ public final class Board implements Copyable<Board> {
 		}
 		
 		this.state.set(logState);
+		zobristKey = log.getZobristKey();
 	}
 	
 	/**
@@ -594,6 +711,115 @@ public final class Board implements Copyable<Board> {
 		return state.getSideToMove();
 	}
 	
+	/**
+	 * Retrieves the number of half movements since the last capture or pawn advance, without
+	 * copying the board state.
+	 * 
+	 * @return The half move clock.
+	 */
+	public byte getHalfMoveClock() {
+		return state.getHalfMoveClock();
+	}
+	
+	/**
+	 * Retrieves the number of the current full movement, without copying the board state. It starts
+	 * at 1 and is incremented after each black movement.
+	 * 
+	 * @return The full move counter.
+	 */
+	public short getFullMoveCounter() {
+		return state.getFullMoveCounter();
+	}
+	
+	/**
+	 * Retrieves the castling flags, without copying the board state.
+	 * 
+	 * @return The castling flags.
+	 * 
+	 * @see MovementUtil#muxCastlingFlags(boolean, boolean, boolean, boolean)
+	 */
+	public byte getCastlingFlags() {
+		return state.getCastlingFlags();
+	}
+	
+	/**
+	 * Retrieves the square behind the pawn that made a double square advance in the last movement,
+	 * without copying the board state.
+	 * 
+	 * @return The en passant target square, or <code>null</code> if the last movement was not a
+	 *         pawn double square advance.
+	 */
+	public Position getEnPassantTargetSquare() {
+		return state.getEnPassantTargetSquare();
+	}
+	
+	/**
+	 * Evaluates if the king of the side that has the turn to move is under attack.
+	 * 
+	 * @return A value <code>true</code> if the king is in check, or <code>false</code> if not
+	 *         (also when there is no king of that color in the board).
+	 */
+	public boolean isKingInCheck() {
+		byte color = getSideToMove();
+		Position kingPosition = state.getKingPosition(color);
+		return kingPosition != null && isUnderAttack(kingPosition, MovementUtil.getOppositeColor(color));
+	}
+	
+	/**
+	 * Retrieves the Zobrist key of the current position. The key is updated by each movement and
+	 * each undo, so this method doesn't scan the board.
+	 * 
+	 * @return The key.
+	 * 
+	 * @see ZobristKey
+	 */
+	public long getZobristKey() {
+		return zobristKey;
+	}
+	
+	/**
+	 * Writes the current position in the binary format of {@link PositionCodec} at the buffer
+	 * position. Nothing is allocated.
+	 * 
+	 * @param buffer The buffer, with at least {@link PositionCodec#MAX_SIZE} bytes remaining.
+	 * 
+	 * @return The number of bytes written.
+	 * 
+	 * @throws java.nio.BufferOverflowException If the buffer doesn't have enough space for the
+	 *         position. Nothing is written in this case.
+	 */
+	public int writeTo(ByteBuffer buffer) {
+		return PositionCodec.encode(grid, state, buffer);
+	}
+	
+	/**
+	 * Replaces the position of this board with the one encoded at the buffer position, in the
+	 * binary format of {@link PositionCodec}. The movement history is discarded, so the movements
+	 * made before can't be undone.
+	 * 
+	 * @param buffer The buffer with the position.
+	 * 
+	 * @throws ChessException If the buffer doesn't have a valid position. The board is not
+	 *         changed in this case.
+	 */
+	public void loadFrom(ByteBuffer buffer) {
+		PositionCodec.decode(buffer, grid, state);
+		movementLog.clear();
+		fen = null;
+		zobristKey = ZobristKey.compute(grid, state);
+	}
+	
+	/**
+	 * Computes the Zobrist key of the current position with other random values.
+	 * 
+	 * @param randoms The random values, in the layout described by {@link ZobristKey}.
+	 * 
+	 * @return The key.
+	 */
+	long getZobristKey(long[] randoms) {
+		return ZobristKey.compute(grid, state, randoms);
+	}
+	
 	/**
 	 * Retrieves the movements for the piece localized in the given position.
 	 * 
@@ -1434,7 +1660,342 @@ public final class Board implements Copyable<Board> {
 	 *         <code>false</code> if not.
 	 */
 	public boolean isUnderAttack(Position position, byte attackerColor) {
-		return !getAttackers(position, attackerColor, true).isEmpty();
+		return isUnderAttack(position.row, position.column, attackerColor);
+	}
+	
+	/**
+	 * Evaluates if a square is attacked by any piece of the specified color, looking from the
+	 * square to the places where each kind of attacker could be, without creating objects.
+	 * 
+	 * @param row The square row.
+	 * @param column The square column.
+	 * @param attackerColor The attacker color.
+	 * 
+	 * @return A value <code>true</code> if the square is attacked.
+	 */
+	private boolean isUnderAttack(int row, int column, byte attackerColor) {
+		int pawnRow = row + (MovementUtil.isWhiteColor(attackerColor) ? 1 : -1);
+		byte pawn = MovementUtil.getPiece(MovementUtil.PAWN, attackerColor);
+		if (pawnRow >= 0 && pawnRow < 8
+				&& (column > 0 && grid[pawnRow][column - 1] == pawn || column < 7 && grid[pawnRow][column + 1] == pawn)) {
+			return true;
+		}
+		byte knight = MovementUtil.getPiece(MovementUtil.KNIGHT, attackerColor);
+		for (Direction direction : KNIGHT_DIRECTIONS) {
+			int targetRow = row + direction.rowDirection;
+			int targetColumn = column + direction.columnDirection;
+			if (isInsideBoardBound(targetRow, targetColumn) && grid[targetRow][targetColumn] == knight) {
+				return true;
+			}
+		}
+		for (Direction direction : QUEEN_DIRECTIONS) {
+			boolean straight = direction.rowDirection == 0 || direction.columnDirection == 0;
+			for (int d = 1; d <= 7; d++) {
+				int targetRow = row + d * direction.rowDirection;
+				int targetColumn = column + d * direction.columnDirection;
+				if (!isInsideBoardBound(targetRow, targetColumn)) {
+					break;
+				}
+				byte value = grid[targetRow][targetColumn];
+				if (value == MovementUtil.EMPTY) {
+					continue;
+				}
+				if (MovementUtil.getPieceColor(value) == attackerColor) {
+					byte type = MovementUtil.getPieceType(value);
+					if (type == MovementUtil.QUEEN
+							|| type == MovementUtil.ROOK && straight
+							|| type == MovementUtil.BISHOP && !straight
+							|| type == MovementUtil.KING && d == 1) {
+						return true;
+					}
+				}
+				break;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Finds the legal movement described by a piece type and a target square, with optional origin
+	 * row and column, like the standard algebraic notation does. The candidate origins are found by
+	 * looking from the target square in the directions the piece moves, and each candidate is
+	 * checked for pins and checks by playing it on the grid, so the legal movements of the side are
+	 * not generated.
+	 * 
+	 * <p>
+	 * A pawn movement is a capture when the origin column differs from the target column, and a
+	 * push otherwise. A king movement of two columns is a castling. Only the capture, en passant,
+	 * castling and promotion flags are set in the movement; the check flags would require playing
+	 * the movement and generating the replies.
+	 * 
+	 * @param color The color of the side that makes the movement.
+	 * @param pieceType The type of the moved piece.
+	 * @param originRow The origin row, or <code>-1</code> if any row.
+	 * @param originColumn The origin column, or <code>-1</code> if any column.
+	 * @param targetRow The target row.
+	 * @param targetColumn The target column.
+	 * @param promotionType The promotion piece type, or {@link MovementUtil#EMPTY} for a queen when
+	 *        the movement is a promotion.
+	 * 
+	 * @return The movement, or <code>null</code> if no legal movement matches.
+	 * 
+	 * @throws ChessException If more than one legal movement matches.
+	 */
+	public Movement resolveMovement(
+		byte color,
+		byte pieceType,
+		int originRow,
+		int originColumn,
+		int targetRow,
+		int targetColumn,
+		byte promotionType
+	) {
+		boolean promotionRow = pieceType == MovementUtil.PAWN && (targetRow == 0 || targetRow == 7);
+		if (promotionType != MovementUtil.EMPTY
+				&& (!promotionRow || promotionType == MovementUtil.KING || promotionType == MovementUtil.PAWN)) {
+			return null;
+		}
+		int found = findOrigins(color, pieceType, originRow, originColumn, targetRow, targetColumn);
+		int count = found >>> 6;
+		if (count == 0) {
+			return null;
+		}
+		if (count > 1) {
+			throw new ChessException("Ambiguous movement");
+		}
+		
+		byte piece = MovementUtil.getPiece(pieceType, color);
+		int square = found & 63;
+		Position origin = Position.of(square / 8, square % 8);
+		Position target = Position.of(targetRow, targetColumn);
+		byte targetPiece = promotionRow
+				? MovementUtil.getPiece(promotionType == MovementUtil.EMPTY ? MovementUtil.QUEEN : promotionType, color)
+				: piece;
+		short flags = extractMovementFlags(origin, target, targetPiece, false);
+		return new Movement(origin, new MovementTarget(target, targetPiece, flags));
+	}
+	
+	/**
+	 * Counts the legal movements of a piece type to a target square, with optional origin row and
+	 * column. A count greater than one means that the standard algebraic notation must disambiguate
+	 * the origin.
+	 * 
+	 * @param color The color of the side that makes the movement.
+	 * @param pieceType The type of the moved piece.
+	 * @param originRow The origin row, or <code>-1</code> if any row.
+	 * @param originColumn The origin column, or <code>-1</code> if any column.
+	 * @param targetRow The target row.
+	 * @param targetColumn The target column.
+	 * 
+	 * @return The number of legal origins.
+	 * 
+	 * @see #resolveMovement(byte, byte, int, int, int, int, byte)
+	 */
+	public int countOrigins(
+		byte color,
+		byte pieceType,
+		int originRow,
+		int originColumn,
+		int targetRow,
+		int targetColumn
+	) {
+		return findOrigins(color, pieceType, originRow, originColumn, targetRow, targetColumn) >>> 6;
+	}
+	
+	/**
+	 * Looks for the legal origins of a movement from its target square.
+	 * 
+	 * @param color The side color.
+	 * @param pieceType The moved piece type.
+	 * @param originRow The required origin row, or <code>-1</code>.
+	 * @param originColumn The required origin column, or <code>-1</code>.
+	 * @param targetRow The target row.
+	 * @param targetColumn The target column.
+	 * 
+	 * @return The number of origins found, shifted left by 6 bits, with the last origin found as
+	 *         <code>row * 8 + column</code> in the lower bits.
+	 */
+	private int findOrigins(
+		byte color,
+		byte pieceType,
+		int originRow,
+		int originColumn,
+		int targetRow,
+		int targetColumn
+	) {
+		if (!isInsideBoardBound(targetRow, targetColumn)) {
+			return 0;
+		}
+		byte targetValue = grid[targetRow][targetColumn];
+		if (targetValue != MovementUtil.EMPTY && MovementUtil.getPieceColor(targetValue) == color) {
+			return 0;
+		}
+		byte piece = MovementUtil.getPiece(pieceType, color);
+		int found = 0;
+		switch (pieceType) {
+			case MovementUtil.PAWN -> {
+				int back = MovementUtil.isWhiteColor(color) ? 1 : -1;
+				int row = targetRow + back;
+				if (row < 0 || row > 7) {
+					return 0;
+				}
+				if (originColumn < 0 || originColumn == targetColumn) {
+					if (targetValue != MovementUtil.EMPTY) {
+						return 0;
+					}
+					if (grid[row][targetColumn] == piece) {
+						found = matchOrigin(found, color, piece, row, targetColumn, originRow, -1, targetRow, targetColumn);
+					} else if (grid[row][targetColumn] == MovementUtil.EMPTY
+							&& row + back == getInitialPawnRow(color)
+							&& grid[row + back][targetColumn] == piece) {
+						found = matchOrigin(found, color, piece, row + back, targetColumn, originRow, -1, targetRow, targetColumn);
+					}
+				} else {
+					Position enPassant = state.getEnPassantTargetSquare();
+					boolean capture = targetValue != MovementUtil.EMPTY
+							|| enPassant != null && enPassant.equals(targetRow, targetColumn);
+					if (capture && Math.abs(originColumn - targetColumn) == 1 && grid[row][originColumn] == piece) {
+						found = matchOrigin(found, color, piece, row, originColumn, originRow, -1, targetRow, targetColumn);
+					}
+				}
+			}
+			case MovementUtil.KING -> {
+				Position king = state.getKingPosition(color);
+				if (king == null || grid[king.row][king.column] != piece
+						|| originRow >= 0 && king.row != originRow
+						|| originColumn >= 0 && king.column != originColumn) {
+					return 0;
+				}
+				int rowDistance = Math.abs(king.row - targetRow);
+				int columnDistance = Math.abs(king.column - targetColumn);
+				if (rowDistance <= 1 && columnDistance <= 1) {
+					found = matchOrigin(found, color, piece, king.row, king.column, -1, -1, targetRow, targetColumn);
+				} else if (rowDistance == 0 && columnDistance == 2 && isCastlingAvailable(king, targetColumn, color)) {
+					found = 1 << 6 | king.row * 8 + king.column;
+				}
+			}
+			case MovementUtil.KNIGHT -> {
+				for (Direction direction : KNIGHT_DIRECTIONS) {
+					int row = targetRow + direction.rowDirection;
+					int column = targetColumn + direction.columnDirection;
+					if (isInsideBoardBound(row, column) && grid[row][column] == piece) {
+						found = matchOrigin(found, color, piece, row, column, originRow, originColumn, targetRow, targetColumn);
+					}
+				}
+			}
+			default -> {
+				Direction[] directions = switch (pieceType) {
+					case MovementUtil.QUEEN -> QUEEN_DIRECTIONS;
+					case MovementUtil.ROOK -> ROOK_DIRECTIONS;
+					case MovementUtil.BISHOP -> BISHOP_DIRECTIONS;
+					default -> throw new IllegalArgumentException(String.format("Invalid piece type: %d", pieceType));
+				};
+				for (Direction direction : directions) {
+					for (int d = 1; d <= 7; d++) {
+						int row = targetRow + d * direction.rowDirection;
+						int column = targetColumn + d * direction.columnDirection;
+						if (!isInsideBoardBound(row, column)) {
+							break;
+						}
+						if (grid[row][column] == MovementUtil.EMPTY) {
+							continue;
+						}
+						if (grid[row][column] == piece) {
+							found = matchOrigin(found, color, piece, row, column, originRow, originColumn, targetRow, targetColumn);
+						}
+						break;
+					}
+				}
+			}
+		}
+		return found;
+	}
+	
+	/**
+	 * Checks a candidate origin of {@link #findOrigins(byte, byte, int, int, int, int)}
+	 * against the disambiguation and against leaving the king in check.
+	 * 
+	 * @param found The origins found so far, as returned by
+	 *        {@link #findOrigins(byte, byte, int, int, int, int)}.
+	 * @param color The side color.
+	 * @param piece The moved piece.
+	 * @param row The candidate row.
+	 * @param column The candidate column.
+	 * @param originRow The required origin row, or <code>-1</code>.
+	 * @param originColumn The required origin column, or <code>-1</code>.
+	 * @param targetRow The target row.
+	 * @param targetColumn The target column.
+	 * 
+	 * @return The origins found, including the candidate if it is legal.
+	 */
+	private int matchOrigin(
+		int found,
+		byte color,
+		byte piece,
+		int row, int column,
+		int originRow, int originColumn,
+		int targetRow, int targetColumn
+	) {
+		if (originRow >= 0 && row != originRow || originColumn >= 0 && column != originColumn) {
+			return found;
+		}
+		Position king = state.getKingPosition(color);
+		if (king != null) {
+			int kingRow = MovementUtil.isKing(piece) ? targetRow : king.row;
+			int kingColumn = MovementUtil.isKing(piece) ? targetColumn : king.column;
+			Position enPassant = state.getEnPassantTargetSquare();
+			boolean enPassantCapture = MovementUtil.isPawn(piece)
+					&& column != targetColumn
+					&& enPassant != null
+					&& enPassant.equals(targetRow, targetColumn);
+			byte targetBackup = grid[targetRow][targetColumn];
+			byte capturedPawn = enPassantCapture ? grid[row][targetColumn] : MovementUtil.EMPTY;
+			grid[row][column] = MovementUtil.EMPTY;
+			grid[targetRow][targetColumn] = piece;
+			if (enPassantCapture) {
+				grid[row][targetColumn] = MovementUtil.EMPTY;
+			}
+			boolean check = isUnderAttack(kingRow, kingColumn, MovementUtil.getOppositeColor(color));
+			grid[row][column] = piece;
+			grid[targetRow][targetColumn] = targetBackup;
+			if (enPassantCapture) {
+				grid[row][targetColumn] = capturedPawn;
+			}
+			if (check) {
+				return found;
+			}
+		}
+		return ((found >>> 6) + 1) << 6 | row * 8 + column;
+	}
+	
+	/**
+	 * Evaluates if the king can castle to the given column: the castling is still available, the
+	 * squares between the king and the rook are empty, and the king doesn't start, pass or end
+	 * under attack.
+	 * 
+	 * @param king The king position.
+	 * @param targetColumn The king target column.
+	 * @param color The king color.
+	 * 
+	 * @return A value <code>true</code> if the castling is legal.
+	 */
+	private boolean isCastlingAvailable(Position king, int targetColumn, byte color) {
+		int direction = targetColumn > king.column ? 1 : -1;
+		if (direction < 0 ? !state.isQueenSideCastlingAvaiable(color) : !state.isKingSideCastlingAvaiable(color)) {
+			return false;
+		}
+		byte opponent = MovementUtil.getOppositeColor(color);
+		int limitColumn = direction < 0 ? 3 : 2;
+		for (int i = 0; i <= limitColumn; i++) {
+			int column = king.column + direction * i;
+			if (i <= 2 && isUnderAttack(king.row, column, opponent)) {
+				return false;
+			}
+			if (i > 0 && grid[king.row][column] != MovementUtil.EMPTY) {
+				return false;
+			}
+		}
+		return true;
 	}
 	
 	/**
@@ -1462,7 +2023,7 @@ public final class Board implements Copyable<Board> {
 	 * Retrieves a list of pieces that are attacking the given position. This method return all
 	 * pieces that can reach an specific position by made a movement. A pinned piece will be
 	 * considered in this method.
-	 *
+	 * 
 	 * <pre>
 	 * ┌───┬───┬───┬───┬───┬───┬───┬───┐
 	 * │   │   │   │   │   │   │   │   │
@@ -1726,21 +2287,87 @@ public final class Board implements Copyable<Board> {
 	
 	/**
 	 * Retrieves the FEN string representative for this board in its current
-	 * state.
+	 * state. The string is kept until the position changes, so repeated calls
+	 * for the same position don't build it again.
 	 * 
 	 * @return The FEN string.
 	 */
+	public String getFen() {
+		if (fen == null) {
+			StringBuilder builder = new StringBuilder(92);
+			writeFen(builder);
+			fen = builder.toString();
+		}
+		return fen;
+	}
+	
+	/**
+	 * Appends the FEN string of the current position to the given destination,
+	 * character by character, without building intermediate strings.
+	 * 
+	 * @param out The destination, like a <code>StringBuilder</code> or a
+	 *        <code>Writer</code>.
+	 * 
+	 * @throws UncheckedIOException If the destination fails to append.
+	 */
+	public void writeFen(Appendable out) {
+		try {
+			if (fen != null) {
+				out.append(fen);
+			} else {
+				writeFen(out, null);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Writes the FEN string of the current position in ASCII at the buffer
+	 * position. Nothing is allocated.
+	 * 
+	 * @param buffer The buffer.
+	 * 
+	 * @return The number of bytes written.
+	 * 
+	 * @throws BufferOverflowException If the buffer doesn't have enough space
+	 *         for the string. The buffer position is not changed in this case.
+	 */
+	public int writeFen(ByteBuffer buffer) {
+		int start = buffer.position();
+		try {
+			if (fen != null) {
+				for (int i = 0; i < fen.length(); i++) {
+					buffer.put((byte) fen.charAt(i));
+				}
+			} else {
+				writeFen(null, buffer);
+			}
+		} catch (BufferOverflowException e) {
+			buffer.position(start);
+			throw e;
+		} catch (IOException e) {
+			// only the appendable can fail
+			throw new UncheckedIOException(e);
+		}
+		return buffer.position() - start;
+	}
+	
+	/**
+	 * Writes the FEN string to the appendable or, when it is
+	 * <code>null</code>, to the buffer.
+	 */
 	@SuppressWarnings(
 		{
+			"javadoc",
 			"squid:S134",
 			"squid:S3776"
 		}
 	)
-	public String getFen() {
-		StringBuilder builder = new StringBuilder();
+	private void writeFen(Appendable out, ByteBuffer buffer) throws IOException {
 		for (int row = 0; row < 8; row++) {
 			if (row > 0) {
-				builder.append('/');
+				put(out, buffer, '/');
 			}
 			int emptyCount = 0;
 			for (int column = 0; column < 8; column++) {
@@ -1748,71 +2375,72 @@ public final class Board implements Copyable<Board> {
 					emptyCount++;
 				} else {
 					if (emptyCount > 0) {
-						builder.append(emptyCount);
+						put(out, buffer, (char) ('0' + emptyCount));
 					}
 					emptyCount = 0;
-					builder.append(MovementUtil.pieceCodeToLetter(grid[row][column]));
+					put(out, buffer, MovementUtil.pieceCodeToLetter(grid[row][column]));
 				}
 			}
 			if (emptyCount > 0) {
-				builder.append(emptyCount);
+				put(out, buffer, (char) ('0' + emptyCount));
 			}
 		}
 		
-		builder.append(' ');
-		
-		builder.append(MovementUtil.colorCodeToLetter(state.getSideToMove())).append(' ');
-		builder.append(encodeFenCastlingFlags()).append(' ');
-		if (state.getEnPassantTargetSquare() != null) {
-			builder.append(state.getEnPassantTargetSquare().getNotation());
-		} else {
-			builder.append('-');
+		put(out, buffer, ' ');
+		put(out, buffer, MovementUtil.colorCodeToLetter(state.getSideToMove()));
+		put(out, buffer, ' ');
+		byte castlingFlags = state.getCastlingFlags();
+		if (castlingFlags == 0) {
+			put(out, buffer, '-');
 		}
-		builder.append(' ');
-		builder.append(state.getHalfMoveClock()).append(' ');
-		builder.append(state.getFullMoveCounter());
-		
-		return builder.toString();
-	}
-	
-	@SuppressWarnings("javadoc")
-	private Object encodeFenCastlingFlags() {
-		StringBuilder builder = new StringBuilder();
-		if (MovementUtil.isWhiteKingCaslting(state.getCastlingFlags())) {
-			builder.append(MovementUtil.WHITE_KING_LETTER);
+		if (MovementUtil.isWhiteKingCaslting(castlingFlags)) {
+			put(out, buffer, MovementUtil.WHITE_KING_LETTER);
 		}
-		if (MovementUtil.isWhiteQueenCaslting(state.getCastlingFlags())) {
-			builder.append(MovementUtil.WHITE_QUEEN_LETTER);
+		if (MovementUtil.isWhiteQueenCaslting(castlingFlags)) {
+			put(out, buffer, MovementUtil.WHITE_QUEEN_LETTER);
 		}
-		if (MovementUtil.isBlackKingCaslting(state.getCastlingFlags())) {
-			builder.append(MovementUtil.BLACK_KING_LETTER);
+		if (MovementUtil.isBlackKingCaslting(castlingFlags)) {
+			put(out, buffer, MovementUtil.BLACK_KING_LETTER);
 		}
-		if (MovementUtil.isBlackQueenCaslting(state.getCastlingFlags())) {
-			builder.append(MovementUtil.BLACK_QUEEN_LETTER);
+		if (MovementUtil.isBlackQueenCaslting(castlingFlags)) {
+			put(out, buffer, MovementUtil.BLACK_QUEEN_LETTER);
+		}
+		put(out, buffer, ' ');
+		Position enPassantTarget = state.getEnPassantTargetSquare();
+		if (enPassantTarget != null) {
+			put(out, buffer, Position.columnToFile(enPassantTarget.column));
+			put(out, buffer, (char) ('0' + Position.rowToRank(enPassantTarget.row)));
+		} else {
+			put(out, buffer, '-');
 		}
-		return builder.length() == 0 ? "-" : builder.toString();
+		put(out, buffer, ' ');
+		putNumber(out, buffer, state.getHalfMoveClock());
+		put(out, buffer, ' ');
+		putNumber(out, buffer, state.getFullMoveCounter());
 	}
 	
 	@SuppressWarnings("javadoc")
-	private static BoardState createBoardState(byte[][] grid, FenPositionInfo fenInfo) {
-		BoardState state = new BoardState();
-		state.setEnPassantTargetSquare(fenInfo.getEnPassantTargetSquare());
-		state.setFullMoveCounter(fenInfo.getFullMoveCounter());
-		state.setHalfMoveClock(fenInfo.getHalfMoveClock());
-		state.setSideToMove(fenInfo.getSideToMove());
-		if (fenInfo.isWhiteQueenCastlingAvaiable() && MovementUtil.isWhiteRook(grid[7][0])) {
-			state.setQueenRookPosition(Position.of(7, 0), MovementUtil.WHITE);
+	private static void put(Appendable out, ByteBuffer buffer, char c) throws IOException {
+		if (out != null) {
+			out.append(c);
+		} else {
+			buffer.put((byte) c);
 		}
-		if (fenInfo.isWhiteKingCastlingAvaiable() && MovementUtil.isWhiteRook(grid[7][7])) {
-			state.setKingRookPosition(Position.of(7, 7), MovementUtil.WHITE);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void putNumber(Appendable out, ByteBuffer buffer, int number) throws IOException {
+		if (number < 0) {
+			put(out, buffer, '-');
 		}
-		if (fenInfo.isBlackQueenCastlingAvaiable() && MovementUtil.isBlackRook(grid[0][0])) {
-			state.setQueenRookPosition(Position.of(0, 0), MovementUtil.BLACK);
+		int value = Math.abs(number);
+		int divisor = 1;
+		while (divisor <= value / 10) {
+			divisor *= 10;
 		}
-		if (fenInfo.isBlackKingCastlingAvaiable() && MovementUtil.isBlackRook(grid[0][7])) {
-			state.setKingRookPosition(Position.of(0, 7), MovementUtil.BLACK);
+		for (; divisor > 0; divisor /= 10) {
+			put(out, buffer, (char) ('0' + value / divisor % 10));
 		}
-		return state;
 	}
 	
 	@SuppressWarnings("javadoc")
@@ -1845,10 +2473,12 @@ public final class Board implements Copyable<Board> {
 	
 	@Override
 	public Board copy() {
-		return new Board(
+		Board copy = new Board(
 			getLocalizedPieces(),
 			state.copy()
 		);
+		copy.fen = fen;
+		return copy;
 	}
 	
 	@Override
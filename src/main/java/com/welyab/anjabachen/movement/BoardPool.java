@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import java.util.ArrayDeque;
+
+/**
+ * Per thread pool of {@link Board} instances for batch processors, which set up thousands of
+ * positions and search or replay each one for a short time. A board taken from the pool is loaded
+ * with {@link Board#loadFen(CharSequence)} or {@link Board#set(Board)}, which reuse its grid, state
+ * and movement log, so setting up a position doesn't allocate once the pool is warm.
+ * 
+ * <pre>
+ * Board board = BoardPool.acquire(fen);
+ * try {
+ * 	searcher.search(board, limits);
+ * } finally {
+ * 	BoardPool.release(board);
+ * }
+ * </pre>
+ * 
+ * <p>
+ * Each thread has its own idle boards, so acquiring and releasing need no synchronization. A board
+ * must be released by the thread that acquired it, and must not be used after being released.
+ * 
+ * @author Welyab Paula
+ */
+public final class BoardPool {
+	
+	/** The maximum number of idle boards kept by each thread. */
+	private static final int MAX_IDLE_BOARDS = 8;
+	
+	@SuppressWarnings("javadoc")
+	private static final ThreadLocal<ArrayDeque<Board>> IDLE_BOARDS = ThreadLocal.withInitial(ArrayDeque::new);
+	
+	@SuppressWarnings("javadoc")
+	private BoardPool() {
+	}
+	
+	/**
+	 * Takes a board from the pool of the current thread, or creates one if the pool is empty, and
+	 * loads the position of the FEN string into it.
+	 * 
+	 * @param fen The FEN string.
+	 * 
+	 * @return The board.
+	 * 
+	 * @throws com.welyab.anjabachen.movement.fen.FenParserException If the FEN string is invalid.
+	 */
+	public static Board acquire(CharSequence fen) {
+		Board board = IDLE_BOARDS.get().pollFirst();
+		if (board == null) {
+			return new Board(fen.toString());
+		}
+		try {
+			board.loadFen(fen);
+		} catch (RuntimeException e) {
+			release(board);
+			throw e;
+		}
+		return board;
+	}
+	
+	/**
+	 * Takes a board from the pool of the current thread, or creates one if the pool is empty, and
+	 * sets it to the position and movement history of the given board.
+	 * 
+	 * @param other The board to be copied.
+	 * 
+	 * @return The board.
+	 */
+	public static Board acquire(Board other) {
+		Board board = IDLE_BOARDS.get().pollFirst();
+		if (board == null) {
+			return new Board(other);
+		}
+		board.set(other);
+		return board;
+	}
+	
+	/**
+	 * Returns a board to the pool of the current thread. The board is discarded if the pool is full.
+	 * 
+	 * @param board The board.
+	 */
+	public static void release(Board board) {
+		ArrayDeque<Board> idle = IDLE_BOARDS.get();
+		if (idle.size() < MAX_IDLE_BOARDS) {
+			idle.addFirst(board);
+		}
+	}
+}
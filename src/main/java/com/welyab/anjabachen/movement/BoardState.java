@@ -288,6 +288,28 @@ public final class BoardState implements Copyable<BoardState> {
 		}
 	}
 	
+	/**
+	 * Sets the rooks available for castling from the castling flags. As in a FEN string, a flag
+	 * only counts when the rook is in its corner of the board.
+	 * 
+	 * @param grid The board squares.
+	 * @param castlingFlags The castling flags.
+	 * 
+	 * @see MovementUtil#muxCastlingFlags(boolean, boolean, boolean, boolean)
+	 */
+	void setCastlingRooks(byte[][] grid, int castlingFlags) {
+		whiteKingRookPosition = castlingRook(grid, castlingFlags, MovementUtil.WHITE_KING_CASTLING_MASK, 7, 7);
+		whiteQueenRookPosition = castlingRook(grid, castlingFlags, MovementUtil.WHITE_QUEEN_CASTLING_MASK, 7, 0);
+		blackKingRookPosition = castlingRook(grid, castlingFlags, MovementUtil.BLACK_KING_CASTLING_MASK, 0, 7);
+		blackQueenRookPosition = castlingRook(grid, castlingFlags, MovementUtil.BLACK_QUEEN_CASTLING_MASK, 0, 0);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Position castlingRook(byte[][] grid, int castlingFlags, int mask, int row, int column) {
+		byte rook = row == 7 ? MovementUtil.WHITE_ROOK : MovementUtil.BLACK_ROOK;
+		return (castlingFlags & mask) != 0 && grid[row][column] == rook ? Position.of(row, column) : null;
+	}
+	
 	@SuppressWarnings("javadoc")
 	private static IllegalArgumentException createInvalidColorException(int color) {
 		return new IllegalArgumentException(String.format("Invalid color code: %d", color));
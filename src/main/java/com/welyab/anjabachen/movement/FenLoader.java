@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import java.nio.charset.StandardCharsets;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.fen.FenParser;
+import com.welyab.anjabachen.movement.fen.FenParserException;
+
+/**
+ * Parses <a href="https://www.chessprogramming.org/Forsyth-Edwards_Notation">FEN</a> strings
+ * straight into the grid and state of a board, in a single pass over the characters and without
+ * allocating: no splitting, no boxed square values and no {@link LocalizedPiece} lists, as
+ * {@link FenParser} does.
+ * 
+ * <p>
+ * The text can be any {@link CharSequence} or a slice of an ASCII <code>byte</code> array, so a
+ * FEN can be parsed from a line of a bigger buffer without being copied into a string. The same
+ * FEN strings are accepted and rejected as by {@link FenParser}, with a
+ * {@link FenParserException} for the invalid ones. Everything is validated before the board is
+ * changed, so an invalid FEN leaves the board as it was.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see Board#loadFen(CharSequence)
+ */
+final class FenLoader {
+	
+	@SuppressWarnings("javadoc")
+	private static final String CANT_PARSE_CASTLING_FLAGS_MSG = "Can't parse castling flags";
+	
+	/** The value returned by {@link #parseNumber} when the number is not valid. */
+	private static final long INVALID_NUMBER = Long.MIN_VALUE;
+	
+	@SuppressWarnings("javadoc")
+	private FenLoader() {
+	}
+	
+	/**
+	 * Loads the position of a FEN string.
+	 * 
+	 * @param text The text with the FEN string.
+	 * @param start The index of the first character of the FEN string.
+	 * @param end The index after the last character of the FEN string.
+	 * @param grid The board squares.
+	 * @param state The board state.
+	 * 
+	 * @throws FenParserException If the FEN string is invalid.
+	 * @throws ChessException If the position has two kings of same color.
+	 */
+	static void load(CharSequence text, int start, int end, byte[][] grid, BoardState state) {
+		load(text, null, start, end, grid, state);
+	}
+	
+	/**
+	 * Loads the position of a FEN string encoded in ASCII.
+	 * 
+	 * @param bytes The bytes with the FEN string.
+	 * @param start The index of the first byte of the FEN string.
+	 * @param end The index after the last byte of the FEN string.
+	 * @param grid The board squares.
+	 * @param state The board state.
+	 * 
+	 * @throws FenParserException If the FEN string is invalid.
+	 * @throws ChessException If the position has two kings of same color.
+	 */
+	static void load(byte[] bytes, int start, int end, byte[][] grid, BoardState state) {
+		load(null, bytes, start, end, grid, state);
+	}
+	
+	/**
+	 * Loads the position of a FEN string, read from the text or, when it is <code>null</code>, from
+	 * the bytes. The fields are separated by single spaces, as {@link FenParser} does; a field
+	 * that is missing or blank is handled as absent.
+	 */
+	@SuppressWarnings(
+		{
+			"javadoc",
+			"squid:MethodCyclomaticComplexity"
+		}
+	)
+	private static void load(
+		CharSequence text,
+		byte[] bytes,
+		int start,
+		int end,
+		byte[][] grid,
+		BoardState state
+	) {
+		// pieces disposition
+		int piecesEnd = fieldEnd(text, bytes, start, end);
+		if (isBlank(text, bytes, start, piecesEnd)) {
+			throw exception(text, bytes, start, end, "Inavlid pieces disposition", null);
+		}
+		int rowsEnd = piecesEnd;
+		while (rowsEnd > start && charAt(text, bytes, rowsEnd - 1) == '/') {
+			// like the split of the FEN parser, which discards the trailing empty rows
+			rowsEnd--;
+		}
+		int rows = 1;
+		for (int i = start; i < rowsEnd; i++) {
+			if (charAt(text, bytes, i) == '/') {
+				rows++;
+			}
+		}
+		if (rows != 8) {
+			throw exception(text, bytes, start, end, "Invalid pieces disposition", null);
+		}
+		int row = 0;
+		int column = 0;
+		int whiteKing = -1;
+		int blackKing = -1;
+		boolean repeatedKing = false;
+		byte repeatedKingColor = 0;
+		for (int i = start; i <= rowsEnd; i++) {
+			char c = i < rowsEnd ? charAt(text, bytes, i) : '/';
+			if (c == '/') {
+				if (column != 8) {
+					throw exception(
+						text,
+						bytes,
+						start,
+						end,
+						String.format("Inavlid pieces disposition to row %d", row),
+						null
+					);
+				}
+				row++;
+				column = 0;
+			} else if (c >= '0' && c <= '9') {
+				column += c - '0';
+			} else {
+				byte piece = pieceCode(text, bytes, start, end, c);
+				if (piece == MovementUtil.WHITE_KING || piece == MovementUtil.BLACK_KING) {
+					int square = row * 8 + column;
+					if (piece == MovementUtil.WHITE_KING ? whiteKing != -1 : blackKing != -1) {
+						repeatedKing = true;
+						repeatedKingColor = MovementUtil.getPieceColor(piece);
+					} else if (piece == MovementUtil.WHITE_KING) {
+						whiteKing = square;
+					} else {
+						blackKing = square;
+					}
+				}
+				column++;
+			}
+		}
+		
+		// side to move
+		int fieldStart = piecesEnd + 1;
+		int fieldEnd = fieldEnd(text, bytes, fieldStart, end);
+		if (isBlank(text, bytes, fieldStart, fieldEnd)) {
+			throw exception(text, bytes, start, end, "Can't parse side to move", null);
+		}
+		byte sideToMove;
+		try {
+			sideToMove = MovementUtil.colorLetterToCode(charAt(text, bytes, fieldStart));
+		} catch (IllegalArgumentException e) {
+			throw exception(text, bytes, start, end, "Can't parse side to move", e);
+		}
+		
+		// castling flags
+		fieldStart = fieldEnd + 1;
+		fieldEnd = fieldEnd(text, bytes, fieldStart, end);
+		if (isBlank(text, bytes, fieldStart, fieldEnd) || fieldEnd - fieldStart > 4) {
+			throw exception(text, bytes, start, end, CANT_PARSE_CASTLING_FLAGS_MSG, null);
+		}
+		int castlingFlags = 0;
+		if (fieldEnd - fieldStart != 1 || charAt(text, bytes, fieldStart) != '-') {
+			int index = fieldStart;
+			if (charAt(text, bytes, index) == 'K') {
+				castlingFlags |= MovementUtil.WHITE_KING_CASTLING_MASK;
+				index++;
+			}
+			if (index < fieldEnd && charAt(text, bytes, index) == 'Q') {
+				castlingFlags |= MovementUtil.WHITE_QUEEN_CASTLING_MASK;
+				index++;
+			}
+			if (index < fieldEnd && charAt(text, bytes, index) == 'k') {
+				castlingFlags |= MovementUtil.BLACK_KING_CASTLING_MASK;
+				index++;
+			}
+			if (index < fieldEnd && charAt(text, bytes, index) == 'q') {
+				castlingFlags |= MovementUtil.BLACK_QUEEN_CASTLING_MASK;
+				index++;
+			}
+			if (index != fieldEnd) {
+				throw exception(text, bytes, start, end, CANT_PARSE_CASTLING_FLAGS_MSG, null);
+			}
+		}
+		
+		// en passant target square
+		fieldStart = fieldEnd + 1;
+		fieldEnd = fieldEnd(text, bytes, fieldStart, end);
+		if (isBlank(text, bytes, fieldStart, fieldEnd)) {
+			throw exception(text, bytes, start, end, CANT_PARSE_CASTLING_FLAGS_MSG, null);
+		}
+		Position enPassantTarget = null;
+		if (fieldEnd - fieldStart != 1 || charAt(text, bytes, fieldStart) != '-') {
+			if (fieldEnd - fieldStart != 2) {
+				throw exception(text, bytes, start, end, CANT_PARSE_CASTLING_FLAGS_MSG, null);
+			}
+			char file = charAt(text, bytes, fieldStart);
+			char rank = charAt(text, bytes, fieldStart + 1);
+			if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+				throw exception(text, bytes, start, end, "Can't parse en passant target square", null);
+			}
+			enPassantTarget = Position.of(file, rank - '0');
+		}
+		
+		// half move clock and full move counter, both optional
+		fieldStart = fieldEnd + 1;
+		fieldEnd = fieldEnd(text, bytes, fieldStart, end);
+		long halfMoveClock = 0;
+		if (!isAbsentNumber(text, bytes, fieldStart, fieldEnd)) {
+			halfMoveClock = parseNumber(text, bytes, fieldStart, fieldEnd, Byte.MIN_VALUE, Byte.MAX_VALUE);
+			if (halfMoveClock == INVALID_NUMBER) {
+				throw exception(text, bytes, start, end, "Can't parse half move clock", null);
+			}
+		}
+		fieldStart = fieldEnd + 1;
+		fieldEnd = fieldEnd(text, bytes, fieldStart, end);
+		long fullMoveCounter = 1;
+		if (!isAbsentNumber(text, bytes, fieldStart, fieldEnd)) {
+			fullMoveCounter = parseNumber(
+				text,
+				bytes,
+				fieldStart,
+				fieldEnd,
+				Short.MIN_VALUE,
+				Short.MAX_VALUE
+			);
+			if (fullMoveCounter == INVALID_NUMBER) {
+				throw exception(text, bytes, start, end, "Can't parse full move counter", null);
+			}
+		}
+		
+		if (repeatedKing) {
+			throw new ChessException(
+				String.format(
+					"Can't create boar with two kings of same color: %c",
+					MovementUtil.colorCodeToLetter(repeatedKingColor)
+				)
+			);
+		}
+		
+		// the FEN string is valid, so the board can be changed
+		row = 0;
+		column = 0;
+		for (int i = start; i < rowsEnd; i++) {
+			char c = charAt(text, bytes, i);
+			if (c == '/') {
+				row++;
+				column = 0;
+			} else if (c >= '0' && c <= '9') {
+				for (int emptyEnd = column + c - '0'; column < emptyEnd; column++) {
+					grid[row][column] = MovementUtil.EMPTY;
+				}
+			} else {
+				grid[row][column++] = MovementUtil.pieceLetterToCode(c);
+			}
+		}
+		state.setKingPosition(toPosition(whiteKing), MovementUtil.WHITE);
+		state.setKingPosition(toPosition(blackKing), MovementUtil.BLACK);
+		state.setSideToMove(sideToMove);
+		state.setEnPassantTargetSquare(enPassantTarget);
+		state.setHalfMoveClock((int) halfMoveClock);
+		state.setFullMoveCounter((int) fullMoveCounter);
+		state.setCastlingRooks(grid, castlingFlags);
+		state.setMovementCounter((short) 0);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Position toPosition(int square) {
+		return square == -1 ? null : Position.of(square >>> 3, square & 7);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static char charAt(CharSequence text, byte[] bytes, int index) {
+		return text != null ? text.charAt(index) : (char) (bytes[index] & 0xFF);
+	}
+	
+	/**
+	 * Finds the end of a field.
+	 * 
+	 * @return The index of the next space, or <code>end</code>.
+	 */
+	@SuppressWarnings("javadoc")
+	private static int fieldEnd(CharSequence text, byte[] bytes, int fieldStart, int end) {
+		int index = fieldStart;
+		while (index < end && charAt(text, bytes, index) != ' ') {
+			index++;
+		}
+		return Math.max(index, fieldStart);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isBlank(CharSequence text, byte[] bytes, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (charAt(text, bytes, i) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isAbsentNumber(CharSequence text, byte[] bytes, int start, int end) {
+		return isBlank(text, bytes, start, end) || end - start == 1 && charAt(text, bytes, start) == '-';
+	}
+	
+	/**
+	 * Parses a decimal number with an optional sign, like {@link Short#parseShort(String)}.
+	 * 
+	 * @return The number, or {@link #INVALID_NUMBER} if it is not valid or not in the range.
+	 */
+	@SuppressWarnings("javadoc")
+	private static long parseNumber(CharSequence text, byte[] bytes, int start, int end, int min, int max) {
+		int index = start;
+		boolean negative = false;
+		char sign = charAt(text, bytes, index);
+		if (sign == '-' || sign == '+') {
+			negative = sign == '-';
+			index++;
+		}
+		if (index == end) {
+			return INVALID_NUMBER;
+		}
+		long value = 0;
+		for (; index < end; index++) {
+			char c = charAt(text, bytes, index);
+			if (c < '0' || c > '9' || value > max + 1L) {
+				return INVALID_NUMBER;
+			}
+			value = value * 10 + (c - '0');
+		}
+		value = negative ? -value : value;
+		return value < min || value > max ? INVALID_NUMBER : value;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static byte pieceCode(CharSequence text, byte[] bytes, int start, int end, char letter) {
+		try {
+			return MovementUtil.pieceLetterToCode(letter);
+		} catch (IllegalArgumentException e) {
+			throw exception(text, bytes, start, end, "Can't parse piece disposition", e);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static FenParserException exception(
+		CharSequence text,
+		byte[] bytes,
+		int start,
+		int end,
+		String message,
+		Throwable cause
+	) {
+		String fen = text != null
+				? text.subSequence(start, end).toString()
+				: new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+		return new FenParserException(fen, message, cause);
+	}
+}
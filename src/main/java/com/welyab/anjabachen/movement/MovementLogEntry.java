@@ -27,18 +27,22 @@ public class MovementLogEntry {
 	
 	private final byte capturedPiece;
 	
+	private final long zobristKey;
+	
 	public MovementLogEntry(
 		BoardState boardState,
 		byte originPiece,
 		Position origin,
 		Position target,
-		byte capturedPiece
+		byte capturedPiece,
+		long zobristKey
 	) {
 		this.boardState = boardState;
 		this.originPiece = originPiece;
 		this.origin = origin;
 		this.target = target;
 		this.capturedPiece = capturedPiece;
+		this.zobristKey = zobristKey;
 	}
 	
 	public BoardState getBoardState() {
@@ -60,4 +64,8 @@ public class MovementLogEntry {
 	public byte getCapturedPiece() {
 		return capturedPiece;
 	}
+	
+	public long getZobristKey() {
+		return zobristKey;
+	}
 }
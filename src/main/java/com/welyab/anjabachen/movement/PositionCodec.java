@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Encodes positions in a compact binary format, of at most {@value #MAX_SIZE} bytes, against the
+ * 60 or so characters of a FEN string.
+ * 
+ * <p>
+ * The format, big endian, is:
+ * <ul>
+ * <li>8 bytes: the occupancy of the board, where bit <code>row * 8 + column</code> is set when the
+ * square has a piece (row zero is the rank 8, as in {@link Position});</li>
+ * <li>one nibble for each occupied square, in the order of the bits, two per byte with the high
+ * nibble first: <code>0</code> to <code>5</code> for the white pawn, knight, bishop, rook, queen and
+ * king, and <code>6</code> to <code>11</code> for the black pieces;</li>
+ * <li>2 bytes of state: the side to move in bit 8 (set for black), the castling flags of
+ * {@link MovementUtil#muxCastlingFlags} in bits 4 to 7, and the <i>en passant</i> target file in
+ * bits 0 to 2, with bit 3 set when there is a target;</li>
+ * <li>1 byte with the half move clock and 2 bytes with the full move counter.</li>
+ * </ul>
+ * 
+ * <p>
+ * Encoding writes straight from the board into the buffer, without allocating, and decoding fills
+ * a board without any text parsing, so the format suits files with billions of positions.
+ * 
+ * <pre>
+ * ByteBuffer buffer = ByteBuffer.allocate(PositionCodec.MAX_SIZE);
+ * board.writeTo(buffer);
+ * buffer.flip();
+ * reusedBoard.loadFrom(buffer);
+ * </pre>
+ * 
+ * @author Welyab Paula
+ * 
+ * @see Board#writeTo(ByteBuffer)
+ * @see Board#loadFrom(ByteBuffer)
+ */
+public final class PositionCodec {
+	
+	/** The maximum size of an encoded position: 32 pieces. */
+	public static final int MAX_SIZE = 8 + 16 + 5;
+	
+	/** The piece codes of the nibbles. */
+	private static final byte[] PIECES = {
+		MovementUtil.WHITE_PAWN,
+		MovementUtil.WHITE_KNIGHT,
+		MovementUtil.WHITE_BISHOP,
+		MovementUtil.WHITE_ROOK,
+		MovementUtil.WHITE_QUEEN,
+		MovementUtil.WHITE_KING,
+		MovementUtil.BLACK_PAWN,
+		MovementUtil.BLACK_KNIGHT,
+		MovementUtil.BLACK_BISHOP,
+		MovementUtil.BLACK_ROOK,
+		MovementUtil.BLACK_QUEEN,
+		MovementUtil.BLACK_KING
+	};
+	
+	@SuppressWarnings("javadoc")
+	private PositionCodec() {
+	}
+	
+	/**
+	 * Writes the current position of a board at the buffer position.
+	 * 
+	 * @param board The board.
+	 * @param buffer The buffer, with at least {@link #getSize(Board)} bytes remaining.
+	 * 
+	 * @return The number of bytes written.
+	 * 
+	 * @throws BufferOverflowException If the buffer doesn't have enough space.
+	 */
+	public static int encode(Board board, ByteBuffer buffer) {
+		return board.writeTo(buffer);
+	}
+	
+	/**
+	 * Reads a position from the buffer position into a new board.
+	 * 
+	 * @param buffer The buffer.
+	 * 
+	 * @return The board.
+	 * 
+	 * @throws ChessException If the buffer doesn't have a valid position.
+	 */
+	public static Board decode(ByteBuffer buffer) {
+		return new Board(buffer);
+	}
+	
+	/**
+	 * Computes the number of bytes of the encoded position of a board.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public static int getSize(Board board) {
+		int pieces = 0;
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				if (board.getSquareValue(Position.of(row, column)) != MovementUtil.EMPTY) {
+					pieces++;
+				}
+			}
+		}
+		return getSize(pieces);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int getSize(int pieces) {
+		return 8 + (pieces + 1) / 2 + 5;
+	}
+	
+	/**
+	 * Writes a position.
+	 * 
+	 * @param grid The board squares.
+	 * @param state The board state.
+	 * @param buffer The buffer.
+	 * 
+	 * @return The number of bytes written.
+	 */
+	static int encode(byte[][] grid, BoardState state, ByteBuffer buffer) {
+		long occupancy = 0;
+		int pieces = 0;
+		for (int square = 0; square < 64; square++) {
+			if (grid[square >>> 3][square & 7] != MovementUtil.EMPTY) {
+				occupancy |= 1L << square;
+				pieces++;
+			}
+		}
+		if (buffer.remaining() < getSize(pieces)) {
+			throw new BufferOverflowException();
+		}
+		buffer.putLong(occupancy);
+		int pending = -1;
+		for (long bits = occupancy; bits != 0; bits &= bits - 1) {
+			int square = Long.numberOfTrailingZeros(bits);
+			int nibble = toNibble(grid[square >>> 3][square & 7]);
+			if (pending < 0) {
+				pending = nibble;
+			} else {
+				buffer.put((byte) (pending << 4 | nibble));
+				pending = -1;
+			}
+		}
+		if (pending >= 0) {
+			buffer.put((byte) (pending << 4));
+		}
+		Position enPassant = state.getEnPassantTargetSquare();
+		int flags = (MovementUtil.isBlackColor(state.getSideToMove()) ? 1 << 8 : 0)
+				| state.getCastlingFlags() << 4
+				| (enPassant != null ? 8 | enPassant.column : 0);
+		buffer.putShort((short) flags);
+		buffer.put(state.getHalfMoveClock());
+		buffer.putShort(state.getFullMoveCounter());
+		return getSize(pieces);
+	}
+	
+	/**
+	 * Reads a position into the given grid and state, replacing their contents. The data is
+	 * validated before anything is changed, so an invalid position leaves them as they were.
+	 * 
+	 * @param buffer The buffer. Its position is moved past the position only if it is valid.
+	 * @param grid The board squares.
+	 * @param state The board state.
+	 * 
+	 * @throws ChessException If the buffer doesn't have a valid position.
+	 */
+	static void decode(ByteBuffer buffer, byte[][] grid, BoardState state) {
+		int start = buffer.position();
+		if (buffer.remaining() < 8) {
+			throw new ChessException("Incomplete position data");
+		}
+		long occupancy = buffer.getLong(start);
+		int pieces = Long.bitCount(occupancy);
+		if (pieces > 32 || buffer.remaining() < getSize(pieces)) {
+			throw new ChessException("Incomplete position data");
+		}
+		int nibbles = start + 8;
+		int kings = 0;
+		for (int i = 0; i < pieces; i++) {
+			int nibble = getNibble(buffer, nibbles, i);
+			if (nibble >= PIECES.length) {
+				throw new ChessException(String.format("Invalid piece in position data: %d", nibble));
+			}
+			if (PIECES[nibble] == MovementUtil.WHITE_KING) {
+				kings += 1;
+			} else if (PIECES[nibble] == MovementUtil.BLACK_KING) {
+				kings += 1 << 4;
+			}
+		}
+		if ((kings & 0xF) > 1 || kings >>> 4 > 1) {
+			throw new ChessException("Can't create board with two kings of same color");
+		}
+		int statePosition = nibbles + (pieces + 1) / 2;
+		int flags = buffer.getShort(statePosition);
+		
+		state.setKingPosition(null, MovementUtil.WHITE);
+		state.setKingPosition(null, MovementUtil.BLACK);
+		int index = 0;
+		for (int square = 0; square < 64; square++) {
+			byte piece = MovementUtil.EMPTY;
+			if ((occupancy & 1L << square) != 0) {
+				piece = PIECES[getNibble(buffer, nibbles, index++)];
+				if (MovementUtil.isKing(piece)) {
+					state.setKingPosition(
+						Position.of(square >>> 3, square & 7),
+						MovementUtil.getPieceColor(piece)
+					);
+				}
+			}
+			grid[square >>> 3][square & 7] = piece;
+		}
+		
+		byte side = (flags & 1 << 8) != 0 ? MovementUtil.BLACK : MovementUtil.WHITE;
+		int castling = flags >>> 4 & 0xF;
+		state.setSideToMove(side);
+		state.setEnPassantTargetSquare(
+			(flags & 8) != 0
+					? Position.of(MovementUtil.isWhiteColor(side) ? 2 : 5, flags & 7)
+					: null
+		);
+		state.setCastlingRooks(grid, castling);
+		state.setHalfMoveClock(buffer.get(statePosition + 2));
+		state.setFullMoveCounter(buffer.getShort(statePosition + 3));
+		state.setMovementCounter((short) 0);
+		buffer.position(statePosition + 5);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int getNibble(ByteBuffer buffer, int offset, int index) {
+		int value = buffer.get(offset + (index >>> 1));
+		return (index & 1) == 0 ? value >>> 4 & 0xF : value & 0xF;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int toNibble(byte piece) {
+		int nibble = MovementUtil.getPieceType(piece) - 1;
+		return MovementUtil.isBlack(piece) ? nibble + 6 : nibble;
+	}
+}
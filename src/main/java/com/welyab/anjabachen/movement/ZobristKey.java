@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+/**
+ * Computes <a href="https://www.chessprogramming.org/Zobrist_Hashing">Zobrist</a> keys for board
+ * positions. Two boards with same piece disposition, side to move, castling flags and
+ * <i>en passant</i> capture availability will produce the same key.
+ * 
+ * <p>
+ * The random values are laid out like the <i>Polyglot</i> opening book format: 768 values for
+ * the pieces (12 piece kinds times 64 squares), 4 values for the castling flags, 8 values for the
+ * <i>en passant</i> file and 1 value for the side to move. The <i>en passant</i> file is only
+ * considered when a pawn of the side to move is able to capture.
+ * 
+ * @author Welyab Paula
+ */
+public final class ZobristKey {
+	
+	/** Total of random values used by the key computation. */
+	public static final int RANDOM_VALUES_COUNT = 781;
+	
+	@SuppressWarnings("javadoc")
+	private static final int CASTLING_OFFSET = 768;
+	
+	@SuppressWarnings("javadoc")
+	private static final int EN_PASSANT_OFFSET = 772;
+	
+	@SuppressWarnings("javadoc")
+	private static final int TURN_OFFSET = 780;
+	
+	@SuppressWarnings("javadoc")
+	private static final long SEED = 0x414E4A4142414348L;
+	
+	@SuppressWarnings("javadoc")
+	private static final long[] RANDOMS = createRandoms(SEED);
+	
+	@SuppressWarnings("javadoc")
+	private ZobristKey() {
+	}
+	
+	/**
+	 * Computes the key of the current position of the given board.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The key.
+	 */
+	public static long of(Board board) {
+		return board.getZobristKey();
+	}
+	
+	/**
+	 * Computes the key of the current position of the given board with other random values, like
+	 * the ones of the <i>Polyglot</i> opening books.
+	 * 
+	 * @param board The board.
+	 * @param randoms The {@value #RANDOM_VALUES_COUNT} random values.
+	 * 
+	 * @return The key.
+	 * 
+	 * @throws IllegalArgumentException If the number of random values is not
+	 *         {@value #RANDOM_VALUES_COUNT}.
+	 */
+	public static long of(Board board, long[] randoms) {
+		if (randoms.length != RANDOM_VALUES_COUNT) {
+			throw new IllegalArgumentException(String.format("Invalid number of random values: %d", randoms.length));
+		}
+		return board.getZobristKey(randoms);
+	}
+	
+	/**
+	 * Retrieves a copy of the random values used by {@link Board#getZobristKey()}.
+	 * 
+	 * @return The random values.
+	 */
+	public static long[] getRandoms() {
+		return RANDOMS.clone();
+	}
+	
+	@SuppressWarnings("javadoc")
+	static long compute(byte[][] grid, BoardState state) {
+		return compute(grid, state, RANDOMS);
+	}
+	
+	@SuppressWarnings("javadoc")
+	static long compute(byte[][] grid, BoardState state, long[] randoms) {
+		long key = 0;
+		for (int row = 0; row < 8; row++) {
+			for (int column = 0; column < 8; column++) {
+				byte pieceCode = grid[row][column];
+				if (pieceCode != MovementUtil.EMPTY) {
+					key ^= randoms[getPieceIndex(pieceCode, row, column)];
+				}
+			}
+		}
+		return key ^ computeStateKey(grid, state, randoms);
+	}
+	
+	/**
+	 * Retrieves the random value of a piece in a square, which is XORed in and out of the key as
+	 * the piece is put in and taken out of the square.
+	 * 
+	 * @param pieceCode The piece code.
+	 * @param row The square row.
+	 * @param column The square column.
+	 * 
+	 * @return The random value.
+	 */
+	static long getPieceKey(int pieceCode, int row, int column) {
+		return RANDOMS[getPieceIndex(pieceCode, row, column)];
+	}
+	
+	/**
+	 * Computes the part of the key that doesn't come from the pieces: the castling flags, the
+	 * <i>en passant</i> file and the side to move. A movement XORs out the part of the position
+	 * before it and XORs in the part of the position after it.
+	 * 
+	 * @param grid The board squares.
+	 * @param state The board state.
+	 * 
+	 * @return The key of the state.
+	 */
+	static long computeStateKey(byte[][] grid, BoardState state) {
+		return computeStateKey(grid, state, RANDOMS);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static long computeStateKey(byte[][] grid, BoardState state, long[] randoms) {
+		long key = 0;
+		byte castlingFlags = state.getCastlingFlags();
+		if (MovementUtil.isWhiteKingCaslting(castlingFlags)) {
+			key ^= randoms[CASTLING_OFFSET];
+		}
+		if (MovementUtil.isWhiteQueenCaslting(castlingFlags)) {
+			key ^= randoms[CASTLING_OFFSET + 1];
+		}
+		if (MovementUtil.isBlackKingCaslting(castlingFlags)) {
+			key ^= randoms[CASTLING_OFFSET + 2];
+		}
+		if (MovementUtil.isBlackQueenCaslting(castlingFlags)) {
+			key ^= randoms[CASTLING_OFFSET + 3];
+		}
+		
+		byte sideToMove = state.getSideToMove();
+		Position enPassantTarget = state.getEnPassantTargetSquare();
+		if (enPassantTarget != null && isEnPassantCapturable(grid, enPassantTarget, sideToMove)) {
+			key ^= randoms[EN_PASSANT_OFFSET + enPassantTarget.column];
+		}
+		
+		if (MovementUtil.isWhiteColor(sideToMove)) {
+			key ^= randoms[TURN_OFFSET];
+		}
+		
+		return key;
+	}
+	
+	/**
+	 * Retrieves the index of the random value associated with given piece and square. Pieces are
+	 * ordered as <code>black pawn, white pawn, black knight, white knight, ...</code> and squares
+	 * are counted from <code>a1</code> to <code>h8</code>.
+	 * 
+	 * @param pieceCode The piece code.
+	 * @param row The square row.
+	 * @param column The square column.
+	 * 
+	 * @return The index.
+	 */
+	static int getPieceIndex(int pieceCode, int row, int column) {
+		int kind = 2 * (Math.abs(pieceCode) - 1) + (MovementUtil.isWhite(pieceCode) ? 1 : 0);
+		return 64 * kind + 8 * (7 - row) + column;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isEnPassantCapturable(byte[][] grid, Position enPassantTarget, byte sideToMove) {
+		int pawnRow = MovementUtil.isWhiteColor(sideToMove)
+				? enPassantTarget.row + 1
+				: enPassantTarget.row - 1;
+		if (pawnRow < 0 || pawnRow > 7) {
+			return false;
+		}
+		byte capturer = MovementUtil.getPiece(MovementUtil.PAWN, sideToMove);
+		int column = enPassantTarget.column;
+		return column > 0 && grid[pawnRow][column - 1] == capturer
+				|| column < 7 && grid[pawnRow][column + 1] == capturer;
+	}
+	
+	/**
+	 * Creates the random values using a <i>SplitMix64</i> sequence started by given seed. The
+	 * sequence is fixed, so keys are stable between executions and may be persisted.
+	 * 
+	 * @param seed The seed.
+	 * 
+	 * @return The random values.
+	 */
+	private static long[] createRandoms(long seed) {
+		long[] randoms = new long[RANDOM_VALUES_COUNT];
+		long state = seed;
+		for (int i = 0; i < randoms.length; i++) {
+			state += 0x9E3779B97F4A7C15L;
+			long z = state;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			randoms[i] = z ^ (z >>> 31);
+		}
+		return randoms;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * A forced checkmate found by a solver: the number of movements until the mate and the mating
+ * line, where the defender always plays the reply that resists the longest.
+ * 
+ * @author Welyab Paula
+ */
+public final class MateSolution {
+	
+	@SuppressWarnings("javadoc")
+	private final int mateIn;
+	
+	@SuppressWarnings("javadoc")
+	private final List<Movement> movements;
+	
+	@SuppressWarnings("javadoc")
+	private final long nodes;
+	
+	@SuppressWarnings("javadoc")
+	public MateSolution(int mateIn, List<Movement> movements, long nodes) {
+		this.mateIn = mateIn;
+		this.movements = Collections.unmodifiableList(movements);
+		this.nodes = nodes;
+	}
+	
+	/**
+	 * Retrieves the number of movements of the attacking side until the checkmate.
+	 * 
+	 * @return The mate distance.
+	 */
+	public int getMateIn() {
+		return mateIn;
+	}
+	
+	/**
+	 * Retrieves the mating line, alternating attacker and defender movements, ending with the
+	 * mating movement.
+	 * 
+	 * @return The movements.
+	 */
+	public List<Movement> getMovements() {
+		return movements;
+	}
+	
+	/**
+	 * Retrieves the first movement of the mating line.
+	 * 
+	 * @return The key movement.
+	 */
+	public Movement getKeyMovement() {
+		return movements.get(0);
+	}
+	
+	/**
+	 * Retrieves the number of positions visited to find and prove the solution.
+	 * 
+	 * @return The number of nodes.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("mate in ").append(mateIn).append(':');
+		for (Movement movement : movements) {
+			builder.append(' ')
+				.append(movement.getOrigin().getNotation())
+				.append(movement.getTarget().getPosition().getNotation());
+			if (MovementUtil.isPromotion(movement.getTarget().getFlags())) {
+				builder.append(
+					Character.toLowerCase(MovementUtil.pieceCodeToLetter(movement.getTarget().getPieceCode()))
+				);
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Searches forced checkmates for the side to move. Unlike a regular engine search, there is no
+ * evaluation: a position is either a mate in <code>N</code> or it isn't, so the search stops as
+ * soon as one attacker movement forces the mate, or as soon as one defender reply escapes it.
+ * 
+ * <ul>
+ * <li>The attacker tries the mating movements, then the checks, then the remaining movements.
+ * <li>The defender tries first the reply that refuted the previous attacker movement at the same
+ * depth.
+ * <li>Proven and refuted positions are kept in a transposition cache that lives across
+ * {@link #solve(Board, int)} calls, so solving many related problems becomes cheaper.
+ * </ul>
+ * 
+ * <p>
+ * Instances are not thread safe.
+ * 
+ * @author Welyab Paula
+ */
+public final class MateSolver {
+	
+	/** The default number of entries of the transposition cache. */
+	public static final int DEFAULT_CACHE_SIZE = 1 << 18;
+	
+	/** The longest mate the solver accepts to search. */
+	public static final int MAX_MATE_IN = 32;
+	
+	@SuppressWarnings("javadoc")
+	private static final long DEFENDER_KEY = 0x5DEECE66DL * 0x9E3779B97F4A7C15L;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] cacheKeys;
+	
+	@SuppressWarnings("javadoc")
+	private final byte[] cacheValues;
+	
+	@SuppressWarnings("javadoc")
+	private final int cacheMask;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] refutations;
+	
+	@SuppressWarnings("javadoc")
+	private Board board;
+	
+	@SuppressWarnings("javadoc")
+	private long nodes;
+	
+	/**
+	 * Creates a solver with the default cache size.
+	 */
+	public MateSolver() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Creates a solver with the given cache size.
+	 * 
+	 * @param cacheSize The number of entries of the transposition cache. Rounded down to a power
+	 *        of two.
+	 */
+	public MateSolver(int cacheSize) {
+		int size = Integer.highestOneBit(Math.max(cacheSize, 1024));
+		cacheKeys = new long[size];
+		cacheValues = new byte[size];
+		cacheMask = size - 1;
+		refutations = new int[MAX_MATE_IN * 2 + 2];
+	}
+	
+	/**
+	 * Searches the shortest forced checkmate, given by the side to move, in at most the given
+	 * number of movements. All movements made during the search are undone before the method
+	 * returns.
+	 * 
+	 * @param board The board.
+	 * @param maxMateIn The maximum mate distance, in movements of the side to move.
+	 * 
+	 * @return The solution, or an empty optional if there is no forced mate in the given number of
+	 *         movements.
+	 */
+	public Optional<MateSolution> solve(Board board, int maxMateIn) {
+		if (maxMateIn < 1 || maxMateIn > MAX_MATE_IN) {
+			throw new IllegalArgumentException(String.format("Invalid mate distance: %d", maxMateIn));
+		}
+		this.board = board;
+		nodes = 0;
+		for (int mateIn = 1; mateIn <= maxMateIn; mateIn++) {
+			if (attack(mateIn, 0)) {
+				return Optional.of(new MateSolution(mateIn, buildLine(mateIn), nodes));
+			}
+		}
+		return Optional.empty();
+	}
+	
+	/**
+	 * Evaluates if the side to move mates in at most the given number of movements.
+	 * 
+	 * @param board The board.
+	 * @param mateIn The mate distance.
+	 * 
+	 * @return A value <code>true</code> if the side to move forces a mate.
+	 */
+	public boolean isMate(Board board, int mateIn) {
+		this.board = board;
+		return attack(mateIn, 0);
+	}
+	
+	/**
+	 * Evaluates if the given movement of the side to move forces a mate in at most the given number
+	 * of movements, whatever the opponent replies. It is the way to verify the key movement of a
+	 * problem, since problems may have more than one solution.
+	 * 
+	 * @param board The board.
+	 * @param movement The key movement candidate.
+	 * @param mateIn The mate distance, counting the key movement.
+	 * 
+	 * @return A value <code>true</code> if the movement forces a mate.
+	 */
+	public boolean isKeyMovement(Board board, Movement movement, int mateIn) {
+		if (mateIn < 1 || mateIn > MAX_MATE_IN) {
+			throw new IllegalArgumentException(String.format("Invalid mate distance: %d", mateIn));
+		}
+		this.board = board;
+		board.move(movement.getOrigin(), movement.getTarget());
+		try {
+			if (mateIn == 1) {
+				return board.getMovements(false).isEmpty() && board.isKingInCheck();
+			}
+			return defend(mateIn - 1, 1);
+		} finally {
+			board.undo();
+		}
+	}
+	
+	/**
+	 * Retrieves the number of positions visited by the last call to {@link #solve(Board, int)}.
+	 * 
+	 * @return The number of nodes.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean attack(int mateIn, int ply) {
+		nodes++;
+		long key = board.getZobristKey();
+		int cached = probe(key);
+		if (cached > 0 && cached <= mateIn) {
+			return true;
+		}
+		if (cached < 0 && -cached >= mateIn) {
+			return false;
+		}
+		
+		Movements movements = board.getMovements(true);
+		boolean mate = findMatingMovement(movements) != null;
+		// pass 0 tries the checks, pass 1 the quiet movements
+		for (int pass = 0; pass < 2 && !mate && mateIn > 1; pass++) {
+			for (int i = 0; i < movements.getOriginCount() && !mate; i++) {
+				PieceMovements pieceMovements = movements.getPieceMovements(i);
+				for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+					MovementTarget target = pieceMovements.getTarget(j);
+					short flags = target.getFlags();
+					if (MovementUtil.isCheck(flags) != (pass == 0) || MovementUtil.isStalemate(flags)) {
+						continue;
+					}
+					board.move(pieceMovements.getOrigin(), target);
+					mate = defend(mateIn - 1, ply + 1);
+					board.undo();
+					if (mate) {
+						break;
+					}
+				}
+			}
+		}
+		store(key, mate ? mateIn : -mateIn);
+		return mate;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean defend(int mateIn, int ply) {
+		nodes++;
+		long key = board.getZobristKey() ^ DEFENDER_KEY;
+		int cached = probe(key);
+		if (cached > 0 && cached <= mateIn) {
+			return true;
+		}
+		if (cached < 0 && -cached >= mateIn) {
+			return false;
+		}
+		
+		Movements movements = board.getMovements(false);
+		if (movements.isEmpty()) {
+			return board.isKingInCheck();
+		}
+		
+		boolean mate = true;
+		int refutation = refutations[ply];
+		// pass 0 tries the last known refutation, pass 1 the remaining replies
+		for (int pass = 0; pass < 2 && mate; pass++) {
+			for (int i = 0; i < movements.getOriginCount() && mate; i++) {
+				PieceMovements pieceMovements = movements.getPieceMovements(i);
+				Position origin = pieceMovements.getOrigin();
+				for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+					MovementTarget target = pieceMovements.getTarget(j);
+					int code = encode(origin, target);
+					if (code == refutation != (pass == 0)) {
+						continue;
+					}
+					board.move(origin, target);
+					mate = attack(mateIn, ply + 1);
+					board.undo();
+					if (!mate) {
+						refutations[ply] = code;
+						break;
+					}
+				}
+			}
+		}
+		store(key, mate ? mateIn : -mateIn);
+		return mate;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private List<Movement> buildLine(int mateIn) {
+		List<Movement> line = new ArrayList<>();
+		int madeMovements = 0;
+		try {
+			for (int remaining = mateIn; remaining > 0;) {
+				Movement key = findKeyMovement(remaining);
+				line.add(key);
+				board.move(key.getOrigin(), key.getTarget());
+				madeMovements++;
+				if (remaining == 1) {
+					break;
+				}
+				
+				Movement longestReply = null;
+				int longestDistance = 0;
+				Movements replies = board.getMovements(false);
+				for (int i = 0; i < replies.getOriginCount(); i++) {
+					PieceMovements pieceMovements = replies.getPieceMovements(i);
+					for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+						MovementTarget target = pieceMovements.getTarget(j);
+						board.move(pieceMovements.getOrigin(), target);
+						int distance = 1;
+						while (!attack(distance, 0)) {
+							distance++;
+						}
+						board.undo();
+						if (distance > longestDistance) {
+							longestDistance = distance;
+							longestReply = new Movement(pieceMovements.getOrigin(), target);
+						}
+					}
+				}
+				line.add(longestReply);
+				board.move(longestReply.getOrigin(), longestReply.getTarget());
+				madeMovements++;
+				remaining = longestDistance;
+			}
+		} finally {
+			for (int i = 0; i < madeMovements; i++) {
+				board.undo();
+			}
+		}
+		return line;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private Movement findKeyMovement(int mateIn) {
+		Movements movements = board.getMovements(true);
+		if (mateIn == 1) {
+			return findMatingMovement(movements);
+		}
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				MovementTarget target = pieceMovements.getTarget(j);
+				board.move(pieceMovements.getOrigin(), target);
+				boolean mate = defend(mateIn - 1, 1);
+				board.undo();
+				if (mate) {
+					return new Movement(pieceMovements.getOrigin(), target);
+				}
+			}
+		}
+		throw new IllegalStateException("Proven mate without key movement");
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Movement findMatingMovement(Movements movements) {
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				MovementTarget target = pieceMovements.getTarget(j);
+				if (MovementUtil.isCheckMate(target.getFlags())) {
+					return new Movement(pieceMovements.getOrigin(), target);
+				}
+			}
+		}
+		return null;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int encode(Position origin, MovementTarget target) {
+		Position position = target.getPosition();
+		return 1 + (origin.row * 8 + origin.column) * 64 * 16
+				+ (position.row * 8 + position.column) * 16
+				+ MovementUtil.getPieceType(target.getPieceCode());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int probe(long key) {
+		int index = (int) key & cacheMask;
+		return cacheKeys[index] == key ? cacheValues[index] : 0;
+	}
+	
+	/**
+	 * Stores a result: a positive value <code>n</code> means the attacker mates in at most
+	 * <code>n</code> movements; a negative value <code>-n</code> means there is no mate in
+	 * <code>n</code> movements.
+	 * 
+	 * @param key The position key.
+	 * @param value The result.
+	 */
+	private void store(long key, int value) {
+		int index = (int) key & cacheMask;
+		if (cacheKeys[index] == key) {
+			int current = cacheValues[index];
+			if (value > 0 && current > 0) {
+				value = Math.min(value, current);
+			} else if (value < 0 && current < 0) {
+				value = Math.min(value, current);
+			}
+		}
+		cacheKeys[index] = key;
+		cacheValues[index] = (byte) value;
+	}
+}
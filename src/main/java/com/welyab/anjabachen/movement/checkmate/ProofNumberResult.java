@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+/**
+ * The outcome of a {@link ProofNumberSearch}: the proof and disproof numbers of the root, the
+ * search effort and, for proven positions, the mating tree.
+ * 
+ * @author Welyab Paula
+ */
+public final class ProofNumberResult {
+	
+	@SuppressWarnings("javadoc")
+	private final int proofNumber;
+	
+	@SuppressWarnings("javadoc")
+	private final int disproofNumber;
+	
+	@SuppressWarnings("javadoc")
+	private final long nodes;
+	
+	@SuppressWarnings("javadoc")
+	private final long time;
+	
+	@SuppressWarnings("javadoc")
+	private final ProofTree tree;
+	
+	@SuppressWarnings("javadoc")
+	ProofNumberResult(int proofNumber, int disproofNumber, long nodes, long time, ProofTree tree) {
+		this.proofNumber = proofNumber;
+		this.disproofNumber = disproofNumber;
+		this.nodes = nodes;
+		this.time = time;
+		this.tree = tree;
+	}
+	
+	/**
+	 * Indicates if the forced mate was proven.
+	 * 
+	 * @return A value <code>true</code> if the root proof number is zero.
+	 */
+	public boolean isProven() {
+		return proofNumber == 0;
+	}
+	
+	/**
+	 * Indicates if it was proven that there is no forced mate in the searched number of movements.
+	 * 
+	 * @return A value <code>true</code> if the root disproof number is zero.
+	 */
+	public boolean isDisproven() {
+		return disproofNumber == 0;
+	}
+	
+	/**
+	 * Retrieves the root proof number: the minimum number of leaves that still must be proven to
+	 * prove the mate.
+	 * 
+	 * @return The proof number.
+	 */
+	public int getProofNumber() {
+		return proofNumber;
+	}
+	
+	/**
+	 * Retrieves the root disproof number: the minimum number of leaves that still must be disproven
+	 * to disprove the mate.
+	 * 
+	 * @return The disproof number.
+	 */
+	public int getDisproofNumber() {
+		return disproofNumber;
+	}
+	
+	/**
+	 * Retrieves the number of visited nodes.
+	 * 
+	 * @return The number of nodes.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+	
+	/**
+	 * Retrieves the time spent by the search, in milliseconds.
+	 * 
+	 * @return The time.
+	 */
+	public long getTime() {
+		return time;
+	}
+	
+	/**
+	 * Retrieves the proven mating tree.
+	 * 
+	 * @return The tree, or <code>null</code> if the mate was not proven.
+	 */
+	public ProofTree getTree() {
+		return tree;
+	}
+	
+	/**
+	 * Retrieves the number of attacker movements of the longest line of the proven tree.
+	 * 
+	 * @return The mate distance, or <code>0</code> if the mate was not proven.
+	 */
+	public int getMateIn() {
+		return tree == null ? 0 : (tree.getHeight() + 1) / 2;
+	}
+	
+	@Override
+	public String toString() {
+		String status = isProven() ? "proven" : isDisproven() ? "disproven" : "unknown";
+		return String.format(
+			"%s pn=%d dn=%d nodes=%d time=%dms",
+			status,
+			proofNumber,
+			disproofNumber,
+			nodes,
+			time
+		);
+	}
+}
@@ -0,0 +1,612 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.BoardPool;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * A depth-first <a href="https://www.chessprogramming.org/Proof-Number_Search">proof-number
+ * search</a> (df-pn) for forced checkmates. The search always expands the most proving node, so
+ * it handles long forced mates, where the attacker has few forcing movements and the defender few
+ * replies, much better than an alpha-beta search of the same depth.
+ * 
+ * <p>
+ * Proof and disproof numbers are kept in a table of fixed capacity, so the memory stays bounded no
+ * matter how long the search runs. Each entry records the root movement it was searched under.
+ * When the table gets full, the solved subtrees below disproven root movements are collected
+ * first, except for the root movements themselves: they are never searched again. Then the
+ * entries whose subtrees took less work are collected. Among these, solved entries are kept
+ * longer, because each one stands for a subtree that doesn't have to be searched again. The
+ * subtree of a proven root movement is not collected, because it proves the root, which ends the
+ * search, and the mating tree is built from it.
+ * 
+ * <p>
+ * Nodes are identified by the position and the number of attacker movements still available,
+ * so the searched graph has no cycles. Instances are not thread safe; use
+ * {@link #solveAll(List, int, int, Supplier)} to solve independent problems in parallel.
+ * 
+ * @author Welyab Paula
+ */
+public final class ProofNumberSearch {
+	
+	/** The default number of entries of the node table. */
+	public static final int DEFAULT_TABLE_SIZE = 1 << 20;
+	
+	/** The value used as infinite proof or disproof number. */
+	public static final int INFINITY = 1 << 28;
+	
+	@SuppressWarnings("javadoc")
+	private static final int BUCKET_SIZE = 4;
+	
+	@SuppressWarnings("javadoc")
+	private static final long DEPTH_KEY = 0x9E3779B97F4A7C15L;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] keys;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] proofNumbers;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] disproofNumbers;
+	
+	@SuppressWarnings("javadoc")
+	private final int[] works;
+	
+	/** The index of the root movement each entry was stored under, or <code>-1</code>. */
+	private final short[] owners;
+	
+	/** Whether each root movement is disproven, so the entries stored under it can be collected. */
+	private boolean[] refuted = new boolean[256];
+	
+	@SuppressWarnings("javadoc")
+	private final long nodeLimit;
+	
+	@SuppressWarnings("javadoc")
+	private int used;
+	
+	@SuppressWarnings("javadoc")
+	private Board board;
+	
+	@SuppressWarnings("javadoc")
+	private long nodes;
+	
+	@SuppressWarnings("javadoc")
+	private boolean aborted;
+	
+	@SuppressWarnings("javadoc")
+	private int resultProof;
+	
+	@SuppressWarnings("javadoc")
+	private int resultDisproof;
+	
+	@SuppressWarnings("javadoc")
+	private long rootKey;
+	
+	/** The index of the root movement being searched, or <code>-1</code>. */
+	private int rootMove;
+	
+	/**
+	 * Creates a search with the default table size and no node limit.
+	 */
+	public ProofNumberSearch() {
+		this(DEFAULT_TABLE_SIZE, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Creates a search.
+	 * 
+	 * @param tableSize The number of entries of the node table. Rounded down to a power of two.
+	 * @param nodeLimit The maximum number of nodes of each search.
+	 */
+	public ProofNumberSearch(int tableSize, long nodeLimit) {
+		int size = Integer.highestOneBit(Math.max(tableSize, 1024));
+		keys = new long[size];
+		proofNumbers = new int[size];
+		disproofNumbers = new int[size];
+		works = new int[size];
+		owners = new short[size];
+		this.nodeLimit = nodeLimit;
+	}
+	
+	/**
+	 * Searches a forced checkmate, given by the side to move, in at most the given number of
+	 * movements. The mate found is not necessarily the shortest one. All movements made during the
+	 * search are undone before the method returns.
+	 * 
+	 * @param board The board.
+	 * @param maxMateIn The maximum number of movements of the side to move.
+	 * 
+	 * @return The search result.
+	 */
+	public ProofNumberResult solve(Board board, int maxMateIn) {
+		if (maxMateIn < 1 || maxMateIn > MateSolver.MAX_MATE_IN) {
+			throw new IllegalArgumentException(String.format("Invalid mate distance: %d", maxMateIn));
+		}
+		long start = System.nanoTime();
+		this.board = board;
+		nodes = 0;
+		aborted = false;
+		clear();
+		rootKey = keyOf(maxMateIn);
+		search(true, maxMateIn, rootKey, INFINITY, INFINITY);
+		int proof = resultProof;
+		int disproof = resultDisproof;
+		ProofTree tree = proof == 0 ? buildTree(true, maxMateIn, null) : null;
+		return new ProofNumberResult(proof, disproof, nodes, (System.nanoTime() - start) / 1_000_000, tree);
+	}
+	
+	/**
+	 * Solves independent problems in parallel. Each worker thread uses its own search instance.
+	 * Problems with an invalid FEN produce a <code>null</code> result. Any other failure stops the
+	 * workers and is rethrown once all of them are stopped.
+	 * 
+	 * @param fens The problem positions.
+	 * @param maxMateIn The maximum number of movements of the side to move.
+	 * @param threads The number of worker threads.
+	 * @param searchFactory Creates the search instance of each worker.
+	 * 
+	 * @return The results, in the same order of the positions.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 * @throws RuntimeException The first exception thrown by a search, or by the search factory.
+	 */
+	public static List<ProofNumberResult> solveAll(
+		List<String> fens,
+		int maxMateIn,
+		int threads,
+		Supplier<ProofNumberSearch> searchFactory
+	) throws InterruptedException {
+		ProofNumberResult[] results = new ProofNumberResult[fens.size()];
+		AtomicInteger next = new AtomicInteger();
+		AtomicReference<RuntimeException> failure = new AtomicReference<>();
+		Thread[] workers = new Thread[Math.max(1, Math.min(threads, fens.size()))];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(() -> {
+				try {
+					ProofNumberSearch search = searchFactory.get();
+					int index;
+					while (failure.get() == null && (index = next.getAndIncrement()) < results.length) {
+						results[index] = solve(search, fens.get(index), maxMateIn);
+					}
+				} catch (RuntimeException e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "anjabachen-pns-" + i);
+			workers[i].start();
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		RuntimeException exception = failure.get();
+		if (exception != null) {
+			throw exception;
+		}
+		return Arrays.asList(results);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static ProofNumberResult solve(ProofNumberSearch search, String fen, int maxMateIn) {
+		Board board;
+		try {
+			board = BoardPool.acquire(fen);
+		} catch (ChessException e) {
+			return null;
+		}
+		try {
+			return search.solve(board, maxMateIn);
+		} finally {
+			BoardPool.release(board);
+		}
+	}
+	
+	/**
+	 * The multiple iterative deepening step of df-pn: searches the node until its proof number
+	 * reaches <code>proofThreshold</code> or its disproof number reaches
+	 * <code>disproofThreshold</code>. The final numbers are left in <code>resultProof</code> and
+	 * <code>resultDisproof</code>.
+	 * 
+	 * @param attacker Whether the side to move is the attacker (OR node) or the defender (AND
+	 *        node).
+	 * @param mateIn The number of attacker movements still available.
+	 * @param key The node key.
+	 * @param proofThreshold The proof number threshold.
+	 * @param disproofThreshold The disproof number threshold.
+	 */
+	private void search(boolean attacker, int mateIn, long key, int proofThreshold, int disproofThreshold) {
+		nodes++;
+		int index = probe(key);
+		if (index >= 0 && (proofNumbers[index] >= proofThreshold || disproofNumbers[index] >= disproofThreshold)) {
+			setResult(proofNumbers[index], disproofNumbers[index]);
+			return;
+		}
+		if (nodes > nodeLimit) {
+			aborted = true;
+		}
+		if (aborted) {
+			setResult(index >= 0 ? proofNumbers[index] : 1, index >= 0 ? disproofNumbers[index] : 1);
+			return;
+		}
+		
+		long startNodes = nodes;
+		boolean root = key == rootKey;
+		Children children = attacker ? expandAttacker(mateIn) : expandDefender(mateIn);
+		if (root && refuted.length < children.size) {
+			refuted = new boolean[children.size];
+		}
+		if (children.size == 0) {
+			// solved at expansion: mate, stalemate or no mating movement at the last attacker movement
+			store(key, resultProof, resultDisproof, 1);
+			return;
+		}
+		
+		int proof;
+		int disproof;
+		while (true) {
+			proof = attacker ? INFINITY : 0;
+			disproof = attacker ? 0 : INFINITY;
+			int best = 0;
+			int second = INFINITY;
+			for (int i = 0; i < children.size; i++) {
+				int childProof = children.proofNumbers[i];
+				int childDisproof = children.disproofNumbers[i];
+				if (attacker) {
+					disproof = add(disproof, childDisproof);
+					if (childProof < proof) {
+						second = proof;
+						proof = childProof;
+						best = i;
+					} else if (childProof < second) {
+						second = childProof;
+					}
+				} else {
+					proof = add(proof, childProof);
+					if (childDisproof < disproof) {
+						second = disproof;
+						disproof = childDisproof;
+						best = i;
+					} else if (childDisproof < second) {
+						second = childDisproof;
+					}
+				}
+			}
+			if (proof >= proofThreshold || disproof >= disproofThreshold || aborted) {
+				break;
+			}
+			
+			int childProofThreshold;
+			int childDisproofThreshold;
+			if (attacker) {
+				childProofThreshold = Math.min(proofThreshold, add(second, 1));
+				childDisproofThreshold = add(disproofThreshold - disproof, children.disproofNumbers[best]);
+			} else {
+				childProofThreshold = add(proofThreshold - proof, children.proofNumbers[best]);
+				childDisproofThreshold = Math.min(disproofThreshold, add(second, 1));
+			}
+			if (root) {
+				rootMove = best;
+			}
+			board.move(children.movements[best].getOrigin(), children.movements[best].getTarget());
+			search(!attacker, attacker ? mateIn - 1 : mateIn, children.keys[best], childProofThreshold, childDisproofThreshold);
+			board.undo();
+			children.proofNumbers[best] = resultProof;
+			children.disproofNumbers[best] = resultDisproof;
+			if (root && resultDisproof == 0) {
+				refute(best, children.keys[best]);
+			}
+		}
+		if (root) {
+			rootMove = -1;
+		}
+		store(key, proof, disproof, (int) Math.min(Integer.MAX_VALUE, nodes - startNodes));
+		setResult(proof, disproof);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private Children expandAttacker(int mateIn) {
+		Movements movements = board.getMovements(true);
+		Children children = new Children(countMovements(movements));
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				MovementTarget target = pieceMovements.getTarget(j);
+				short flags = target.getFlags();
+				if (MovementUtil.isCheckMate(flags)) {
+					setResult(0, INFINITY);
+					children.size = 0;
+					return children;
+				}
+				if (mateIn == 1 || MovementUtil.isStalemate(flags)) {
+					continue;
+				}
+				// checks usually leave the defender with few replies, so they look easier to prove
+				children.add(pieceMovements.getOrigin(), target, mateIn - 1, MovementUtil.isCheck(flags) ? 1 : 2);
+			}
+		}
+		if (children.size == 0) {
+			setResult(INFINITY, 0);
+		}
+		return children;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private Children expandDefender(int mateIn) {
+		Movements movements = board.getMovements(false);
+		Children children = new Children(countMovements(movements));
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				children.add(pieceMovements.getOrigin(), pieceMovements.getTarget(j), mateIn, 1);
+			}
+		}
+		if (children.size == 0) {
+			if (board.isKingInCheck()) {
+				setResult(0, INFINITY);
+			} else {
+				setResult(INFINITY, 0);
+			}
+		}
+		return children;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private ProofTree buildTree(boolean attacker, int mateIn, Movement movement) {
+		List<ProofTree> children = new ArrayList<>();
+		if (attacker) {
+			Movements movements = board.getMovements(true);
+			Movement proving = null;
+			for (int i = 0; i < movements.getOriginCount() && proving == null; i++) {
+				PieceMovements pieceMovements = movements.getPieceMovements(i);
+				for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+					MovementTarget target = pieceMovements.getTarget(j);
+					if (MovementUtil.isCheckMate(target.getFlags())) {
+						proving = new Movement(pieceMovements.getOrigin(), target);
+						break;
+					}
+				}
+			}
+			if (proving != null) {
+				children.add(new ProofTree(proving, List.of()));
+			}
+			// pass 0 looks for a proven child in the table, pass 1 searches again collected children
+			for (int pass = 0; pass < 2 && children.isEmpty(); pass++) {
+				for (int i = 0; i < movements.getOriginCount() && children.isEmpty(); i++) {
+					PieceMovements pieceMovements = movements.getPieceMovements(i);
+					for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+						Movement candidate = new Movement(pieceMovements.getOrigin(), pieceMovements.getTarget(j));
+						board.move(candidate.getOrigin(), candidate.getTarget());
+						if (pass == 0 ? isProvenInTable(mateIn - 1) : isProven(false, mateIn - 1)) {
+							children.add(buildTree(false, mateIn - 1, candidate));
+						}
+						board.undo();
+						if (!children.isEmpty()) {
+							break;
+						}
+					}
+				}
+			}
+		} else {
+			Movements movements = board.getMovements(false);
+			for (int i = 0; i < movements.getOriginCount(); i++) {
+				PieceMovements pieceMovements = movements.getPieceMovements(i);
+				for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+					Movement reply = new Movement(pieceMovements.getOrigin(), pieceMovements.getTarget(j));
+					board.move(reply.getOrigin(), reply.getTarget());
+					children.add(buildTree(true, mateIn, reply));
+					board.undo();
+				}
+			}
+		}
+		return new ProofTree(movement, children);
+	}
+	
+	/**
+	 * Evaluates if the current node is proven, searching it again if its entry was collected.
+	 * 
+	 * @param attacker Whether the side to move is the attacker.
+	 * @param mateIn The number of attacker movements still available.
+	 * 
+	 * @return A value <code>true</code> if the node is proven.
+	 */
+	private boolean isProven(boolean attacker, int mateIn) {
+		long key = keyOf(mateIn);
+		int index = probe(key);
+		if (index >= 0 && (proofNumbers[index] == 0 || disproofNumbers[index] == 0)) {
+			return proofNumbers[index] == 0;
+		}
+		search(attacker, mateIn, key, INFINITY, INFINITY);
+		return resultProof == 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean isProvenInTable(int mateIn) {
+		int index = probe(keyOf(mateIn));
+		return index >= 0 && proofNumbers[index] == 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private long keyOf(int mateIn) {
+		return board.getZobristKey() ^ DEPTH_KEY * (mateIn + 1);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void setResult(int proof, int disproof) {
+		resultProof = proof;
+		resultDisproof = disproof;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int add(int a, int b) {
+		return (int) Math.min(INFINITY, (long) a + b);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int countMovements(Movements movements) {
+		int count = 0;
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			count += movements.getPieceMovements(i).getTargertsCount();
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void clear() {
+		Arrays.fill(keys, 0);
+		Arrays.fill(works, 0);
+		Arrays.fill(refuted, false);
+		rootMove = -1;
+		used = 0;
+	}
+	
+	/**
+	 * Marks a root movement as disproven. The entry of the movement itself is detached from it, so
+	 * it is not collected with the subtree below it.
+	 * 
+	 * @param move The index of the root movement.
+	 * @param key The key of the node after the movement.
+	 */
+	private void refute(int move, long key) {
+		refuted[move] = true;
+		int index = probe(key);
+		if (index >= 0) {
+			owners[index] = -1;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int probe(long key) {
+		int bucket = (int) key & (keys.length - 1) & -BUCKET_SIZE;
+		for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+			if (keys[i] == key && works[i] > 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void store(long key, int proof, int disproof, int work) {
+		int bucket = (int) key & (keys.length - 1) & -BUCKET_SIZE;
+		int slot = -1;
+		for (int i = bucket; i < bucket + BUCKET_SIZE; i++) {
+			if (works[i] == 0 || keys[i] == key) {
+				slot = i;
+				break;
+			}
+			if (slot < 0 || retention(i) < retention(slot)) {
+				slot = i;
+			}
+		}
+		if (works[slot] == 0) {
+			used++;
+		} else if (keys[slot] == key) {
+			work = (int) Math.min(Integer.MAX_VALUE, (long) work + works[slot]);
+		}
+		keys[slot] = key;
+		owners[slot] = (short) rootMove;
+		proofNumbers[slot] = proof;
+		disproofNumbers[slot] = disproof;
+		works[slot] = Math.max(1, work);
+		if (used > keys.length - keys.length / 8) {
+			collectGarbage();
+		}
+	}
+	
+	/**
+	 * Estimates the value of keeping an entry: the work spent in its subtree, doubled for solved
+	 * nodes, which never need to be searched again.
+	 * 
+	 * @param index The entry index.
+	 * 
+	 * @return The retention value.
+	 */
+	private long retention(int index) {
+		boolean solved = proofNumbers[index] == 0 || disproofNumbers[index] == 0;
+		return solved ? (long) works[index] * 2 : works[index];
+	}
+	
+	/**
+	 * Frees at least half of the table, removing the entries below disproven root movements, and
+	 * then the entries with the smallest retention value.
+	 */
+	private void collectGarbage() {
+		for (int i = 0; i < keys.length; i++) {
+			if (works[i] > 0 && owners[i] >= 0 && refuted[owners[i]]) {
+				works[i] = 0;
+				used--;
+			}
+		}
+		for (long threshold = 1; used > keys.length / 2; threshold *= 2) {
+			for (int i = 0; i < keys.length; i++) {
+				if (works[i] > 0 && retention(i) <= threshold) {
+					works[i] = 0;
+					used--;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The children of a node being searched, with their proof and disproof numbers.
+	 */
+	@SuppressWarnings("javadoc")
+	private final class Children {
+		
+		private final Movement[] movements;
+		
+		private final long[] keys;
+		
+		private final int[] proofNumbers;
+		
+		private final int[] disproofNumbers;
+		
+		private int size;
+		
+		private Children(int capacity) {
+			movements = new Movement[capacity];
+			keys = new long[capacity];
+			proofNumbers = new int[capacity];
+			disproofNumbers = new int[capacity];
+		}
+		
+		private void add(Position origin, MovementTarget target, int mateIn, int initialProof) {
+			board.move(origin, target);
+			long key = keyOf(mateIn);
+			board.undo();
+			int index = probe(key);
+			movements[size] = new Movement(origin, target);
+			keys[size] = key;
+			proofNumbers[size] = index >= 0 ? ProofNumberSearch.this.proofNumbers[index] : initialProof;
+			disproofNumbers[size] = index >= 0 ? ProofNumberSearch.this.disproofNumbers[index] : 1;
+			size++;
+		}
+	}
+}
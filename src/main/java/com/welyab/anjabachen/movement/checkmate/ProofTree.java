@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.welyab.anjabachen.movement.Movement;
+
+/**
+ * A node of a proven mating tree. Nodes where the attacker moves have a single child, the
+ * movement that keeps the mate forced; nodes where the defender moves have one child for each legal
+ * reply. Leaves are checkmated positions.
+ * 
+ * @author Welyab Paula
+ */
+public final class ProofTree {
+	
+	@SuppressWarnings("javadoc")
+	private final Movement movement;
+	
+	@SuppressWarnings("javadoc")
+	private final List<ProofTree> children;
+	
+	@SuppressWarnings("javadoc")
+	ProofTree(Movement movement, List<ProofTree> children) {
+		this.movement = movement;
+		this.children = Collections.unmodifiableList(children);
+	}
+	
+	/**
+	 * Retrieves the movement that leads to this node.
+	 * 
+	 * @return The movement, or <code>null</code> for the root node.
+	 */
+	public Movement getMovement() {
+		return movement;
+	}
+	
+	/**
+	 * Retrieves the children of this node.
+	 * 
+	 * @return The children, empty for leaves.
+	 */
+	public List<ProofTree> getChildren() {
+		return children;
+	}
+	
+	/**
+	 * Retrieves the number of nodes of the tree.
+	 * 
+	 * @return The tree size.
+	 */
+	public int size() {
+		int size = 1;
+		for (ProofTree child : children) {
+			size += child.size();
+		}
+		return size;
+	}
+	
+	/**
+	 * Retrieves the number of plies of the longest line of the tree.
+	 * 
+	 * @return The tree height.
+	 */
+	public int getHeight() {
+		int height = 0;
+		for (ProofTree child : children) {
+			height = Math.max(height, child.getHeight() + 1);
+		}
+		return height;
+	}
+}
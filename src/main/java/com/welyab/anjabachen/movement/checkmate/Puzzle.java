@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+/**
+ * A checkmate problem: a title, the initial position and the stated solution, like the entries of
+ * the <code>checkmate_in_N.txt</code> files.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see PuzzleReader
+ */
+public final class Puzzle {
+	
+	@SuppressWarnings("javadoc")
+	private final long index;
+	
+	@SuppressWarnings("javadoc")
+	private final String title;
+	
+	@SuppressWarnings("javadoc")
+	private final String fen;
+	
+	@SuppressWarnings("javadoc")
+	private final String solution;
+	
+	@SuppressWarnings("javadoc")
+	private final String error;
+	
+	/**
+	 * Creates a problem.
+	 * 
+	 * @param index The zero based position of the problem in its source.
+	 * @param title The title, usually the players and the event of the game.
+	 * @param fen The initial position.
+	 * @param solution The solution, as a PGN movement list.
+	 */
+	public Puzzle(long index, String title, String fen, String solution) {
+		this(index, title, fen, solution, null);
+	}
+	
+	/**
+	 * Creates a problem that could not be read completely.
+	 * 
+	 * @param index The zero based position of the problem in its source.
+	 * @param title The title, usually the players and the event of the game.
+	 * @param fen The initial position, or <code>null</code> if it's missing.
+	 * @param solution The solution, or <code>null</code> if it's missing.
+	 * @param error Why the problem could not be read, or <code>null</code> if it's complete.
+	 */
+	Puzzle(long index, String title, String fen, String solution, String error) {
+		this.index = index;
+		this.title = title;
+		this.fen = fen;
+		this.solution = solution;
+		this.error = error;
+	}
+	
+	/**
+	 * Retrieves the position of the problem in its source.
+	 * 
+	 * @return The zero based index.
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Retrieves the problem title.
+	 * 
+	 * @return The title.
+	 */
+	public String getTitle() {
+		return title;
+	}
+	
+	/**
+	 * Retrieves the initial position.
+	 * 
+	 * @return The FEN string.
+	 */
+	public String getFen() {
+		return fen;
+	}
+	
+	/**
+	 * Retrieves the stated solution.
+	 * 
+	 * @return The solution, as a PGN movement list.
+	 */
+	public String getSolution() {
+		return solution;
+	}
+	
+	/**
+	 * Retrieves the reason this problem could not be read, like a missing solution line.
+	 * {@link PuzzleRunner} reports such problems as {@linkplain PuzzleResult.Status#INVALID
+	 * invalid}.
+	 * 
+	 * @return The error message, or <code>null</code> if the problem is complete.
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("#%d %s", index, title);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads checkmate problems in the format of the <code>checkmate_in_N.txt</code> files: each
+ * problem has a title line, a FEN line and a solution line, and problems are separated by blank
+ * lines.
+ * 
+ * <p>
+ * The problems are read one at a time, so files of any size are read in constant memory. A problem
+ * cut short by a blank line or by the end of the input doesn't stop the reading: it's returned with
+ * an {@linkplain Puzzle#getError() error} and the reading resumes at the next problem.
+ * 
+ * <pre>
+ * try (PuzzleReader reader = PuzzleReader.open(path)) {
+ * 	while (reader.hasNext()) {
+ * 		Puzzle puzzle = reader.next();
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class PuzzleReader implements Iterator<Puzzle>, Closeable {
+	
+	@SuppressWarnings("javadoc")
+	private final BufferedReader reader;
+	
+	@SuppressWarnings("javadoc")
+	private long lineNumber;
+	
+	@SuppressWarnings("javadoc")
+	private long count;
+	
+	@SuppressWarnings("javadoc")
+	private Puzzle next;
+	
+	/**
+	 * Creates a reader over the given character stream.
+	 * 
+	 * @param reader The character stream.
+	 */
+	public PuzzleReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader
+				? (BufferedReader) reader
+				: new BufferedReader(reader);
+	}
+	
+	/**
+	 * Opens a problems file.
+	 * 
+	 * @param path The file path.
+	 * 
+	 * @return The reader.
+	 * 
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static PuzzleReader open(Path path) throws IOException {
+		return new PuzzleReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException If the input can't be read.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = read();
+		}
+		return next != null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException If the input can't be read.
+	 */
+	@Override
+	public Puzzle next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Puzzle puzzle = next;
+		next = null;
+		return puzzle;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private Puzzle read() {
+		String title = readLine(true);
+		if (title == null) {
+			return null;
+		}
+		long titleLine = lineNumber;
+		String fen = readLine(false);
+		String solution = fen == null ? null : readLine(false);
+		if (solution == null) {
+			String error = String.format("Incomplete problem at line %d", titleLine);
+			return new Puzzle(count++, title, fen, null, error);
+		}
+		return new Puzzle(count++, title, fen, solution);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private String readLine(boolean first) {
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (!line.isEmpty()) {
+					return line;
+				}
+				if (!first) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return null;
+	}
+}
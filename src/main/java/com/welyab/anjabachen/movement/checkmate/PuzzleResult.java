@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The verification of one checkmate problem.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see PuzzleRunner
+ */
+public final class PuzzleResult {
+	
+	@SuppressWarnings("javadoc")
+	private final Puzzle puzzle;
+	
+	@SuppressWarnings("javadoc")
+	private final Status status;
+	
+	@SuppressWarnings("javadoc")
+	private final String message;
+	
+	@SuppressWarnings("javadoc")
+	private final MateSolution engineSolution;
+	
+	@SuppressWarnings("javadoc")
+	private final long nanos;
+	
+	@SuppressWarnings("javadoc")
+	PuzzleResult(Puzzle puzzle, Status status, String message, MateSolution engineSolution, long nanos) {
+		this.puzzle = puzzle;
+		this.status = status;
+		this.message = message;
+		this.engineSolution = engineSolution;
+		this.nanos = nanos;
+	}
+	
+	/**
+	 * Retrieves the verified problem.
+	 * 
+	 * @return The problem.
+	 */
+	public Puzzle getPuzzle() {
+		return puzzle;
+	}
+	
+	/**
+	 * Retrieves the verification outcome.
+	 * 
+	 * @return The status.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+	
+	/**
+	 * Indicates if the stated solution was confirmed by the engine.
+	 * 
+	 * @return A value <code>true</code> if the status is {@link Status#SOLVED}.
+	 */
+	public boolean isSolved() {
+		return status == Status.SOLVED;
+	}
+	
+	/**
+	 * Retrieves the description of the problem found in the stated solution.
+	 * 
+	 * @return The message, or <code>null</code> if the problem is solved.
+	 */
+	public String getMessage() {
+		return message;
+	}
+	
+	/**
+	 * Retrieves the solution found by the engine.
+	 * 
+	 * @return The solution, or <code>null</code> if the engine found no mate in the stated number
+	 *         of movements, or if the problem is invalid.
+	 */
+	public MateSolution getEngineSolution() {
+		return engineSolution;
+	}
+	
+	/**
+	 * Retrieves the time spent verifying the problem.
+	 * 
+	 * @param unit The time unit.
+	 * 
+	 * @return The time in the given unit.
+	 */
+	public long getTime(TimeUnit unit) {
+		return unit.convert(nanos, TimeUnit.NANOSECONDS);
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder()
+			.append(puzzle)
+			.append('\t')
+			.append(status)
+			.append('\t')
+			.append(String.format("%.3f ms", nanos / 1_000_000.0));
+		if (message != null) {
+			builder.append('\t').append(message);
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * The outcomes of a problem verification.
+	 */
+	public enum Status {
+		
+		/** The stated solution is a forced mate in the stated number of movements. */
+		SOLVED,
+		
+		/**
+		 * The stated solution is legal, but the engine disagrees: the line doesn't end in mate, the
+		 * key movement doesn't force the mate or there is a shorter mate.
+		 */
+		MISMATCH,
+		
+		/** The position or the solution can't be parsed, or a movement is illegal. */
+		INVALID
+	}
+}
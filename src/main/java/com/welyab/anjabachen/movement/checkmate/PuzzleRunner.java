@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.BoardPool;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.png.MovementsParser;
+
+/**
+ * Verifies the stated solutions of checkmate problems using a pool of worker threads.
+ * 
+ * <p>
+ * Each solution is parsed with {@link MovementsParser}, played over the problem position and
+ * checked with {@link MateSolver}: the line must end in checkmate, its key movement must force the
+ * mate against any defense, and there must be no shorter mate. Each worker owns its solver, so
+ * workers never contend with each other.
+ * 
+ * <p>
+ * Problems are handed to the workers through a {@link WorkerPool}, so the input is consumed at the
+ * pace of the verification, and libraries of any size are verified in constant memory when they are
+ * read with {@link PuzzleReader}.
+ * 
+ * <pre>
+ * PuzzleRunner runner = PuzzleRunner.builder().threads(8).build();
+ * try (PuzzleReader reader = PuzzleReader.open(path)) {
+ * 	runner.run(reader, System.out::println);
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class PuzzleRunner {
+	
+	@SuppressWarnings("javadoc")
+	private final int queueCapacity;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxMateIn;
+	
+	@SuppressWarnings("javadoc")
+	private final MateSolver[] solvers;
+	
+	@SuppressWarnings("javadoc")
+	private PuzzleRunner(Builder builder) {
+		queueCapacity = builder.queueCapacity > 0 ? builder.queueCapacity : builder.threads * 4;
+		maxMateIn = builder.maxMateIn;
+		solvers = new MateSolver[builder.threads];
+		for (int i = 0; i < solvers.length; i++) {
+			solvers[i] = new MateSolver(builder.cacheSize);
+		}
+	}
+	
+	/**
+	 * Verifies the problems provided by the given iterator, blocking until all of them are
+	 * verified. Invalid problems produce an {@linkplain PuzzleResult.Status#INVALID invalid} result
+	 * and do not stop the run.
+	 * 
+	 * <p>
+	 * Results are delivered as soon as each problem is verified, in completion order. The sink is
+	 * never called concurrently, so it doesn't need to be thread safe. An exception thrown by the
+	 * sink stops the run and is rethrown by this method once all workers are stopped.
+	 * 
+	 * @param puzzles The problems.
+	 * @param sink Receives the results.
+	 * 
+	 * @return The number of verified problems.
+	 * 
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 */
+	public synchronized long run(Iterator<Puzzle> puzzles, Consumer<PuzzleResult> sink)
+			throws InterruptedException {
+		Object sinkLock = new Object();
+		long count = 0;
+		try (WorkerPool<Puzzle> pool = new WorkerPool<>(
+			"anjabachen-puzzle",
+			solvers.length,
+			queueCapacity,
+			worker -> puzzle -> work(solvers[worker], puzzle, sink, sinkLock)
+		)) {
+			while (puzzles.hasNext() && pool.submit(puzzles.next())) {
+				count++;
+			}
+			pool.finish();
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void work(MateSolver solver, Puzzle puzzle, Consumer<PuzzleResult> sink, Object sinkLock) {
+		long start = System.nanoTime();
+		PuzzleResult result;
+		try {
+			result = verify(solver, puzzle);
+		} catch (RuntimeException e) {
+			result = invalid(puzzle, String.valueOf(e.getMessage()), start);
+		}
+		synchronized (sinkLock) {
+			sink.accept(result);
+		}
+	}
+	
+	/**
+	 * Verifies the stated solution of a single problem.
+	 * 
+	 * @param solver The solver of the current worker.
+	 * @param puzzle The problem.
+	 * 
+	 * @return The verification result.
+	 */
+	PuzzleResult verify(MateSolver solver, Puzzle puzzle) {
+		long start = System.nanoTime();
+		if (puzzle.getError() != null) {
+			return invalid(puzzle, puzzle.getError(), start);
+		}
+		List<Movement> line;
+		try {
+			MovementsParser parser = new MovementsParser(puzzle.getFen(), puzzle.getSolution());
+			line = parser.getMovements();
+			if (line.isEmpty()) {
+				return invalid(puzzle, "Empty solution", start);
+			}
+			Board end = parser.getBoard();
+			if (!end.isKingInCheck() || !end.getMovements(false).isEmpty()) {
+				return result(
+					puzzle,
+					PuzzleResult.Status.MISMATCH,
+					"The solution doesn't end in checkmate",
+					null,
+					start
+				);
+			}
+		} catch (ChessException e) {
+			return invalid(puzzle, e.getMessage(), start);
+		}
+		
+		int mateIn = (line.size() + 1) / 2;
+		if (mateIn > maxMateIn) {
+			String message = String.format("Mate in %d exceeds the limit of %d", mateIn, maxMateIn);
+			return invalid(puzzle, message, start);
+		}
+		Board board = BoardPool.acquire(puzzle.getFen());
+		try {
+			Optional<MateSolution> found = solver.solve(board, mateIn);
+			if (found.isEmpty()) {
+				return result(
+					puzzle,
+					PuzzleResult.Status.MISMATCH,
+					String.format("No forced mate in %d", mateIn),
+					null,
+					start
+				);
+			}
+			MateSolution solution = found.get();
+			if (solution.getMateIn() < mateIn) {
+				return result(
+					puzzle,
+					PuzzleResult.Status.MISMATCH,
+					String.format("Shorter mate found: %s", solution),
+					solution,
+					start
+				);
+			}
+			if (!solver.isKeyMovement(board, line.get(0), mateIn)) {
+				return result(
+					puzzle,
+					PuzzleResult.Status.MISMATCH,
+					String.format("The key movement doesn't force the mate, engine found %s", solution),
+					solution,
+					start
+				);
+			}
+			return result(puzzle, PuzzleResult.Status.SOLVED, null, solution, start);
+		} finally {
+			BoardPool.release(board);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static PuzzleResult invalid(Puzzle puzzle, String message, long start) {
+		return result(puzzle, PuzzleResult.Status.INVALID, message, null, start);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static PuzzleResult result(
+		Puzzle puzzle,
+		PuzzleResult.Status status,
+		String message,
+		MateSolution solution,
+		long start
+	) {
+		return new PuzzleResult(puzzle, status, message, solution, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Verifies a problems file, printing the result of each problem and a summary.
+	 * 
+	 * @param args The file path and, optionally, the number of threads.
+	 * 
+	 * @throws IOException If the file can't be read.
+	 * @throws InterruptedException If the thread is interrupted.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 1) {
+			System.err.println("Usage: PuzzleRunner <file> [threads]");
+			return;
+		}
+		Builder builder = builder();
+		if (args.length > 1) {
+			builder.threads(Integer.parseInt(args[1]));
+		}
+		PuzzleRunner runner = builder.build();
+		Map<PuzzleResult.Status, Long> counts = new EnumMap<>(PuzzleResult.Status.class);
+		long start = System.nanoTime();
+		long total;
+		try (PuzzleReader reader = PuzzleReader.open(Paths.get(args[0]))) {
+			total = runner.run(reader, result -> {
+				counts.merge(result.getStatus(), 1L, Long::sum);
+				System.out.println(result);
+			});
+		}
+		System.out.printf(
+			"puzzles %d solved %d mismatches %d invalid %d time %d ms%n",
+			total,
+			counts.getOrDefault(PuzzleResult.Status.SOLVED, 0L),
+			counts.getOrDefault(PuzzleResult.Status.MISMATCH, 0L),
+			counts.getOrDefault(PuzzleResult.Status.INVALID, 0L),
+			(System.nanoTime() - start) / 1_000_000
+		);
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int queueCapacity;
+		
+		private int maxMateIn = 8;
+		
+		private int cacheSize = MateSolver.DEFAULT_CACHE_SIZE;
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder queueCapacity(int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+		
+		public Builder maxMateIn(int maxMateIn) {
+			this.maxMateIn = Math.max(1, Math.min(maxMateIn, MateSolver.MAX_MATE_IN));
+			return this;
+		}
+		
+		public Builder cacheSizePerThread(int cacheSize) {
+			this.cacheSize = cacheSize;
+			return this;
+		}
+		
+		public PuzzleRunner build() {
+			return new PuzzleRunner(this);
+		}
+	}
+}
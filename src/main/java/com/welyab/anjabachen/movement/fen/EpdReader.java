@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.fen;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Reads <a href="https://www.chessprogramming.org/Extended_Position_Description">EPD</a> files,
+ * like the positions of the test suites (<i>WAC</i>, <i>STS</i>, <i>Arasan</i>), one line per
+ * position:
+ * 
+ * <pre>
+ * 2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - bm Qg6; id "WAC.001";
+ * </pre>
+ * 
+ * <p>
+ * The first four fields are the ones of a FEN string. Lines that also have the half move clock and
+ * the full move counter, as written by some tools, are accepted. The operations follow, each one
+ * an opcode and its operands ended by a semicolon; string operands are quoted. The position is
+ * validated with {@link FenParser}.
+ * 
+ * <p>
+ * The records are read one at a time, so files of any size are read in constant memory. Blank
+ * lines are ignored. A line that is not valid EPD doesn't stop the reading: it produces a record
+ * with an {@linkplain EpdRecord#getError() error} that tells the line number and the problem.
+ * 
+ * <pre>
+ * try (EpdReader reader = EpdReader.open(path)) {
+ * 	while (reader.hasNext()) {
+ * 		EpdRecord record = reader.next();
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class EpdReader implements Iterator<EpdRecord>, Closeable {
+	
+	@SuppressWarnings("javadoc")
+	private final BufferedReader reader;
+	
+	@SuppressWarnings("javadoc")
+	private long lineNumber;
+	
+	@SuppressWarnings("javadoc")
+	private long count;
+	
+	@SuppressWarnings("javadoc")
+	private EpdRecord next;
+	
+	/**
+	 * Creates a reader over the given character stream.
+	 * 
+	 * @param reader The character stream.
+	 */
+	public EpdReader(Reader reader) {
+		this.reader = reader instanceof BufferedReader
+				? (BufferedReader) reader
+				: new BufferedReader(reader);
+	}
+	
+	/**
+	 * Opens an EPD file.
+	 * 
+	 * @param path The file path.
+	 * 
+	 * @return The reader.
+	 * 
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static EpdReader open(Path path) throws IOException {
+		return new EpdReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException If the input can't be read.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = read();
+		}
+		return next != null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException If the input can't be read.
+	 */
+	@Override
+	public EpdRecord next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		EpdRecord record = next;
+		next = null;
+		return record;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private EpdRecord read() {
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (!line.isBlank()) {
+					long index = count++;
+					try {
+						return parse(index, line);
+					} catch (ChessException e) {
+						return new EpdRecord(index, String.format("Invalid EPD at line %d: %s", lineNumber, e.getMessage()));
+					}
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return null;
+	}
+	
+	/**
+	 * Parses a single EPD line.
+	 * 
+	 * @param line The line.
+	 * 
+	 * @return The record, with the index zero.
+	 * 
+	 * @throws ChessException If the line is not a valid EPD record.
+	 */
+	public static EpdRecord parse(String line) {
+		return parse(0, line);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static EpdRecord parse(long index, String line) {
+		Tokenizer tokenizer = new Tokenizer(line);
+		StringBuilder fen = new StringBuilder();
+		for (int i = 0; i < 4; i++) {
+			String field = tokenizer.nextWord();
+			if (field == null) {
+				throw new ChessException("The position must have four fields");
+			}
+			fen.append(field).append(' ');
+		}
+		
+		// the half move clock and the full move counter of a complete FEN string
+		String halfMoveClock = null;
+		String fullMoveCounter = null;
+		int mark = tokenizer.position;
+		String first = tokenizer.nextWord();
+		String second = tokenizer.nextWord();
+		if (isNumber(first) && isNumber(second)) {
+			halfMoveClock = first;
+			fullMoveCounter = second;
+		} else {
+			tokenizer.position = mark;
+		}
+		
+		Map<String, List<String>> operations = new LinkedHashMap<>();
+		for (String opcode = tokenizer.nextWord(); opcode != null; opcode = tokenizer.nextWord()) {
+			if (!Character.isLetter(opcode.charAt(0))) {
+				throw new ChessException(String.format("Invalid opcode: %s", opcode));
+			}
+			List<String> operands = new ArrayList<>();
+			for (String operand = tokenizer.nextOperand(); operand != null; operand = tokenizer.nextOperand()) {
+				operands.add(operand);
+			}
+			operations.put(opcode, operands);
+		}
+		
+		fen.append(firstOperand(operations, "hmvc", halfMoveClock, "0")).append(' ');
+		fen.append(firstOperand(operations, "fmvn", fullMoveCounter, "1"));
+		String position = fen.toString();
+		// throws FenParserException, a ChessException, for invalid positions
+		FenParser.of(position).parse();
+		return new EpdRecord(index, position, operations);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String firstOperand(
+		Map<String, List<String>> operations,
+		String opcode,
+		String fromLine,
+		String defaultValue
+	) {
+		List<String> operands = operations.get(opcode);
+		if (operands != null && !operands.isEmpty()) {
+			return operands.get(0);
+		}
+		return fromLine != null ? fromLine : defaultValue;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isNumber(String word) {
+		if (word == null || word.isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < word.length(); i++) {
+			if (!Character.isDigit(word.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Splits an EPD line in words, operands and semicolons.
+	 */
+	@SuppressWarnings("javadoc")
+	private static final class Tokenizer {
+		
+		private final String line;
+		
+		private int position;
+		
+		private Tokenizer(String line) {
+			this.line = line;
+		}
+		
+		/**
+		 * Reads the next word, skipping the semicolons before it.
+		 * 
+		 * @return The word, or <code>null</code> at the end of the line.
+		 */
+		private String nextWord() {
+			while (position < line.length() && (line.charAt(position) <= ' ' || line.charAt(position) == ';')) {
+				position++;
+			}
+			if (position == line.length()) {
+				return null;
+			}
+			int start = position;
+			while (position < line.length() && line.charAt(position) > ' ' && line.charAt(position) != ';') {
+				position++;
+			}
+			return line.substring(start, position);
+		}
+		
+		/**
+		 * Reads the next operand of the current operation.
+		 * 
+		 * @return The operand, without quotes, or <code>null</code> at the semicolon that ends the
+		 *         operation or at the end of the line.
+		 */
+		private String nextOperand() {
+			while (position < line.length() && line.charAt(position) <= ' ') {
+				position++;
+			}
+			if (position == line.length()) {
+				return null;
+			}
+			if (line.charAt(position) == ';') {
+				position++;
+				return null;
+			}
+			if (line.charAt(position) == '"') {
+				int end = line.indexOf('"', position + 1);
+				if (end < 0) {
+					throw new ChessException("Unterminated string operand");
+				}
+				String operand = line.substring(position + 1, end);
+				position = end + 1;
+				return operand;
+			}
+			int start = position;
+			while (position < line.length() && line.charAt(position) > ' ' && line.charAt(position) != ';') {
+				position++;
+			}
+			return line.substring(start, position);
+		}
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.fen;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A line of an <a href="https://www.chessprogramming.org/Extended_Position_Description">EPD</a>
+ * file: a position and its operations, like <code>bm</code> (best movements), <code>am</code>
+ * (avoid movements), <code>id</code> or <code>acd</code> (analysis depth).
+ * 
+ * <p>
+ * The operations keep the order of the line, and each one has a list of operands, with the quotes
+ * of the string operands removed.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see EpdReader
+ * @see EpdWriter
+ */
+public final class EpdRecord {
+	
+	@SuppressWarnings("javadoc")
+	private final long index;
+	
+	@SuppressWarnings("javadoc")
+	private final String fen;
+	
+	@SuppressWarnings("javadoc")
+	private final Map<String, List<String>> operations;
+	
+	@SuppressWarnings("javadoc")
+	private final String error;
+	
+	/**
+	 * Creates a record.
+	 * 
+	 * @param index The zero based position of the record in its source.
+	 * @param fen The position, as a complete FEN string.
+	 * @param operations The operations, by opcode.
+	 */
+	public EpdRecord(long index, String fen, Map<String, List<String>> operations) {
+		this.index = index;
+		this.fen = fen;
+		Map<String, List<String>> copy = new LinkedHashMap<>();
+		operations.forEach((opcode, operands) -> copy.put(opcode, List.copyOf(operands)));
+		this.operations = Collections.unmodifiableMap(copy);
+		error = null;
+	}
+	
+	/**
+	 * Creates a record for a line that is not valid EPD.
+	 * 
+	 * @param index The zero based position of the record in its source.
+	 * @param error Why the line is not valid.
+	 */
+	EpdRecord(long index, String error) {
+		this.index = index;
+		fen = null;
+		operations = Map.of();
+		this.error = error;
+	}
+	
+	/**
+	 * Retrieves the position of the record in its source.
+	 * 
+	 * @return The zero based index.
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Retrieves the position. The half move clock and the full move counter come from the
+	 * <code>hmvc</code> and <code>fmvn</code> operations, or from the line when it has the six
+	 * fields of a FEN string, and are <code>0</code> and <code>1</code> otherwise.
+	 * 
+	 * @return The FEN string, or <code>null</code> if the record is not valid.
+	 */
+	public String getFen() {
+		return fen;
+	}
+	
+	/**
+	 * Retrieves all operations, in the order of the line.
+	 * 
+	 * @return The operands of each opcode.
+	 */
+	public Map<String, List<String>> getOperations() {
+		return operations;
+	}
+	
+	/**
+	 * Retrieves the operands of an operation.
+	 * 
+	 * @param opcode The opcode, like <code>bm</code>.
+	 * 
+	 * @return The operands, or an empty list if the record doesn't have the operation.
+	 */
+	public List<String> getOperands(String opcode) {
+		return operations.getOrDefault(opcode, List.of());
+	}
+	
+	/**
+	 * Retrieves the first operand of an operation.
+	 * 
+	 * @param opcode The opcode, like <code>id</code>.
+	 * 
+	 * @return The operand, or <code>null</code> if the record doesn't have the operation or the
+	 *         operation has no operands.
+	 */
+	public String getOperand(String opcode) {
+		List<String> operands = getOperands(opcode);
+		return operands.isEmpty() ? null : operands.get(0);
+	}
+	
+	/**
+	 * Retrieves the identification of the record, the <code>id</code> operation.
+	 * 
+	 * @return The identification, or <code>null</code> if the record doesn't have one.
+	 */
+	public String getId() {
+		return getOperand("id");
+	}
+	
+	/**
+	 * Retrieves the reason the line of this record is not valid EPD. {@link EpdReader} returns such
+	 * records instead of stopping at the line, and they have no position and no operations.
+	 * 
+	 * @return The error message, or <code>null</code> if the record is valid.
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	@Override
+	public String toString() {
+		String id = getId();
+		return id == null ? String.format("#%d", index) : String.format("#%d %s", index, id);
+	}
+}
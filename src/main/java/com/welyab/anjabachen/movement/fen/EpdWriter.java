@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.fen;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Writes <a href="https://www.chessprogramming.org/Extended_Position_Description">EPD</a> files,
+ * one record per line: the first four fields of the FEN string, then the operations in their
+ * order.
+ * 
+ * <p>
+ * The half move clock and the full move counter of the FEN string are left out, as the EPD
+ * standard defines; they are kept only if the record has the <code>hmvc</code> and
+ * <code>fmvn</code> operations. The operands of the string opcodes (<code>id</code> and the
+ * comments <code>c0</code> to <code>c9</code>) and the operands with spaces or semicolons are
+ * quoted.
+ * 
+ * <pre>
+ * try (EpdWriter writer = EpdWriter.open(path)) {
+ * 	writer.write(board.getFen(), Map.of("bm", List.of("Qg6"), "id", List.of("WAC.001")));
+ * }
+ * </pre>
+ * 
+ * <p>
+ * A writer is not thread safe.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see EpdReader
+ */
+public final class EpdWriter implements Closeable, Flushable {
+	
+	/** The opcodes with string operands. */
+	private static final Set<String> STRING_OPCODES = Set.of(
+		"id",
+		"c0",
+		"c1",
+		"c2",
+		"c3",
+		"c4",
+		"c5",
+		"c6",
+		"c7",
+		"c8",
+		"c9"
+	);
+	
+	@SuppressWarnings("javadoc")
+	private final Writer writer;
+	
+	@SuppressWarnings("javadoc")
+	private final StringBuilder line = new StringBuilder(128);
+	
+	@SuppressWarnings("javadoc")
+	private long count;
+	
+	/**
+	 * Creates a writer over the given character stream.
+	 * 
+	 * @param writer The character stream.
+	 */
+	public EpdWriter(Writer writer) {
+		this.writer = writer instanceof BufferedWriter
+				? writer
+				: new BufferedWriter(writer);
+	}
+	
+	/**
+	 * Creates an EPD file, or truncates it if it exists.
+	 * 
+	 * @param path The file path.
+	 * 
+	 * @return The writer.
+	 * 
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static EpdWriter open(Path path) throws IOException {
+		return new EpdWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+	}
+	
+	/**
+	 * Writes a record.
+	 * 
+	 * @param record The record.
+	 * 
+	 * @throws IOException If the line can't be written.
+	 * @throws ChessException If the record is not valid.
+	 */
+	public void write(EpdRecord record) throws IOException {
+		checkValid(record);
+		write(record.getFen(), record.getOperations());
+	}
+	
+	/**
+	 * Writes a position and its operations.
+	 * 
+	 * @param fen The position, a FEN string or the first four fields of one.
+	 * @param operations The operands of each opcode. A map with predictable iteration order keeps
+	 *        the operations in that order.
+	 * 
+	 * @throws IOException If the line can't be written.
+	 */
+	public void write(String fen, Map<String, List<String>> operations) throws IOException {
+		line.setLength(0);
+		format(fen, operations, line);
+		line.append(System.lineSeparator());
+		writer.append(line);
+		count++;
+	}
+	
+	/**
+	 * Retrieves the number of records written.
+	 * 
+	 * @return The number of records.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+	
+	/**
+	 * Formats a record as an EPD line, without the line separator.
+	 * 
+	 * @param record The record.
+	 * 
+	 * @return The line.
+	 * 
+	 * @throws ChessException If the record is not valid.
+	 */
+	public static String format(EpdRecord record) {
+		checkValid(record);
+		StringBuilder builder = new StringBuilder();
+		format(record.getFen(), record.getOperations(), builder);
+		return builder.toString();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void checkValid(EpdRecord record) {
+		if (record.getError() != null) {
+			throw new ChessException(record.getError());
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void format(String fen, Map<String, List<String>> operations, StringBuilder builder) {
+		int fields = 0;
+		for (int i = 0; i < fen.length() && fields < 4; i++) {
+			char c = fen.charAt(i);
+			if (c == ' ') {
+				fields++;
+			}
+			if (fields < 4) {
+				builder.append(c);
+			}
+		}
+		operations.forEach((opcode, operands) -> {
+			builder.append(' ').append(opcode);
+			boolean quoted = STRING_OPCODES.contains(opcode);
+			for (String operand : operands) {
+				builder.append(' ');
+				if (quoted || operand.isEmpty() || needsQuotes(operand)) {
+					builder.append('"').append(operand).append('"');
+				} else {
+					builder.append(operand);
+				}
+			}
+			builder.append(';');
+		});
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean needsQuotes(String operand) {
+		for (int i = 0; i < operand.length(); i++) {
+			char c = operand.charAt(i);
+			if (c <= ' ' || c == ';') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Writes movements in standard algebraic notation (SAN), like <code>Nbd7</code>,
+ * <code>exd5</code> or <code>e8=Q#</code>, and in long algebraic notation (LAN), like
+ * <code>Nb8-d7</code> or <code>e4xd5</code>.
+ * 
+ * <p>
+ * The movement must be legal in the given board, where it has not been played yet. The
+ * disambiguation is the shortest one the notation allows: the origin file, else the origin rank,
+ * else both. The check and checkmate suffixes are found by playing the movement on the board and
+ * undoing it, so the board is left as it was. The text is appended character by character, without
+ * intermediate strings, so one builder can be reused for many movements.
+ * 
+ * <pre>
+ * StringBuilder line = new StringBuilder();
+ * MovementFormatter.appendSan(board, movement, line);
+ * </pre>
+ * 
+ * @author Welyab Paula
+ * 
+ * @see MovementParser
+ */
+public final class MovementFormatter {
+	
+	@SuppressWarnings("javadoc")
+	private MovementFormatter() {
+	}
+	
+	/**
+	 * Converts a movement to the standard algebraic notation.
+	 * 
+	 * @param board The board where the movement is going to be played.
+	 * @param movement The movement.
+	 * 
+	 * @return The movement notation.
+	 */
+	public static String toSan(Board board, Movement movement) {
+		return appendSan(board, movement, new StringBuilder(8)).toString();
+	}
+	
+	/**
+	 * Appends a movement in standard algebraic notation.
+	 * 
+	 * @param board The board where the movement is going to be played.
+	 * @param movement The movement.
+	 * @param builder The destination.
+	 * 
+	 * @return The given builder.
+	 */
+	public static StringBuilder appendSan(Board board, Movement movement, StringBuilder builder) {
+		try {
+			appendSan(board, movement, (Appendable) builder);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return builder;
+	}
+	
+	/**
+	 * Appends a movement in standard algebraic notation.
+	 * 
+	 * @param board The board where the movement is going to be played.
+	 * @param movement The movement.
+	 * @param out The destination.
+	 * 
+	 * @throws IOException If the destination can't be written.
+	 */
+	public static void appendSan(Board board, Movement movement, Appendable out) throws IOException {
+		append(board, movement, out, false);
+	}
+	
+	/**
+	 * Converts a movement to the long algebraic notation.
+	 * 
+	 * @param board The board where the movement is going to be played.
+	 * @param movement The movement.
+	 * 
+	 * @return The movement notation.
+	 */
+	public static String toLan(Board board, Movement movement) {
+		return appendLan(board, movement, new StringBuilder(8)).toString();
+	}
+	
+	/**
+	 * Appends a movement in long algebraic notation.
+	 * 
+	 * @param board The board where the movement is going to be played.
+	 * @param movement The movement.
+	 * @param builder The destination.
+	 * 
+	 * @return The given builder.
+	 */
+	public static StringBuilder appendLan(Board board, Movement movement, StringBuilder builder) {
+		try {
+			appendLan(board, movement, (Appendable) builder);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return builder;
+	}
+	
+	/**
+	 * Appends a movement in long algebraic notation.
+	 * 
+	 * @param board The board where the movement is going to be played.
+	 * @param movement The movement.
+	 * @param out The destination.
+	 * 
+	 * @throws IOException If the destination can't be written.
+	 */
+	public static void appendLan(Board board, Movement movement, Appendable out) throws IOException {
+		append(board, movement, out, true);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void append(Board board, Movement movement, Appendable out, boolean longNotation) throws IOException {
+		Position origin = movement.getOrigin();
+		Position target = movement.getTarget().getPosition();
+		byte piece = board.getSquareValue(origin);
+		byte color = MovementUtil.getPieceColor(piece);
+		byte pieceType = MovementUtil.getPieceType(piece);
+		boolean capture = !board.isEmpty(target)
+				|| pieceType == MovementUtil.PAWN && origin.column != target.column;
+		
+		if (pieceType == MovementUtil.KING && Math.abs(origin.column - target.column) == 2) {
+			out.append(target.column > origin.column ? "O-O" : "O-O-O");
+		} else {
+			if (pieceType != MovementUtil.PAWN) {
+				out.append(getLetter(pieceType));
+			}
+			if (longNotation) {
+				appendSquare(origin, out);
+				out.append(capture ? 'x' : '-');
+			} else {
+				if (pieceType == MovementUtil.PAWN) {
+					if (capture) {
+						out.append(Position.columnToFile(origin.column));
+					}
+				} else {
+					appendDisambiguation(board, color, pieceType, origin, target, out);
+				}
+				if (capture) {
+					out.append('x');
+				}
+			}
+			appendSquare(target, out);
+			if (pieceType == MovementUtil.PAWN && (target.row == 0 || target.row == 7)) {
+				out.append('=').append(getLetter(MovementUtil.getPieceType(movement.getTarget().getPieceCode())));
+			}
+		}
+		
+		board.move(movement);
+		try {
+			if (board.isKingInCheck()) {
+				boolean checkmate = board.getMovements(board.getSideToMove(), false, true).isEmpty();
+				out.append(checkmate ? '#' : '+');
+			}
+		} finally {
+			board.undo();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void appendDisambiguation(
+		Board board,
+		byte color,
+		byte pieceType,
+		Position origin,
+		Position target,
+		Appendable out
+	) throws IOException {
+		if (board.countOrigins(color, pieceType, -1, -1, target.row, target.column) <= 1) {
+			return;
+		}
+		if (board.countOrigins(color, pieceType, -1, origin.column, target.row, target.column) == 1) {
+			out.append(Position.columnToFile(origin.column));
+		} else if (board.countOrigins(color, pieceType, origin.row, -1, target.row, target.column) == 1) {
+			out.append((char) ('0' + Position.rowToRank(origin.row)));
+		} else {
+			appendSquare(origin, out);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void appendSquare(Position position, Appendable out) throws IOException {
+		out.append(Position.columnToFile(position.column)).append((char) ('0' + Position.rowToRank(position.row)));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static char getLetter(byte pieceType) {
+		return MovementUtil.pieceCodeToLetter(MovementUtil.getPiece(pieceType, MovementUtil.WHITE));
+	}
+}
@@ -1,131 +1,157 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
 package com.welyab.anjabachen.movement.png;
 
+import com.welyab.anjabachen.ChessException;
 import com.welyab.anjabachen.movement.Board;
-import com.welyab.anjabachen.movement.LocalizedPiece;
 import com.welyab.anjabachen.movement.Movement;
-import com.welyab.anjabachen.movement.MovementTarget;
 import com.welyab.anjabachen.movement.MovementUtil;
 import com.welyab.anjabachen.movement.Position;
 
+/**
+ * A parser for a single movement in standard algebraic notation (SAN), like <code>Nf3</code>,
+ * <code>exd5</code>, <code>R1e2+</code>, <code>e8=Q#</code> or <code>O-O</code>.
+ * 
+ * <p>
+ * The movement is resolved with {@link Board#resolveMovement(byte, byte, int, int, int, int, byte)},
+ * which looks for the origin square from the target square instead of generating all legal
+ * movements, so pawn pushes, pinned pieces and the disambiguation characters are handled like the
+ * notation defines.
+ * 
+ * @author Welyab Paula
+ */
 public class MovementParser {
 	
+	/**
+	 * Parses a movement in standard algebraic notation.
+	 * 
+	 * @param token The movement, as written in the PGN text. Check, checkmate and annotation
+	 *        suffixes (<code>+</code>, <code>#</code>, <code>!</code>, <code>?</code>) are
+	 *        ignored.
+	 * @param color The color of the side that makes the movement.
+	 * @param board The board where the movement is played. The board is not changed.
+	 * 
+	 * @return The movement.
+	 * 
+	 * @throws ChessException If the notation is invalid, or if it doesn't match exactly one legal
+	 *         movement.
+	 */
 	public static Movement parseMovement(
 		String token,
 		byte color,
 		Board board
 	) {
-		byte originRow = -1;
-		byte originColumn = -1;
-		byte originPieceType = MovementUtil.EMPTY;
-		byte targetRow = -1;
-		byte targetColumn = -1;
-		byte targetPieceType = MovementUtil.EMPTY;
-		if ("O-O".equals(token)) {
-			originRow = MovementUtil.isWhite(color) ? 7 : (byte) 0;
-			originColumn = 4;
-			originPieceType = MovementUtil.KING;
-			targetRow = originRow;
-			targetColumn = 6;
-			targetPieceType = MovementUtil.KING;
-		} else if ("O-O-O".equals(token)) {
-			originRow = MovementUtil.isWhite(color) ? 7 : (byte) 0;
-			originColumn = 4;
+		int end = token.length();
+		while (end > 0 && "+#!?".indexOf(token.charAt(end - 1)) >= 0) {
+			end--;
+		}
+		if (end > 4 && token.startsWith("e.p.", end - 4)) {
+			end -= 4;
+		}
+		
+		int originRow = -1;
+		int originColumn = -1;
+		byte originPieceType;
+		int targetRow;
+		int targetColumn;
+		byte promotionType = MovementUtil.EMPTY;
+		int castling = getCastlingSide(token, end);
+		if (castling != 0) {
 			originPieceType = MovementUtil.KING;
-			targetRow = originRow;
-			targetColumn = 2;
-			targetPieceType = MovementUtil.KING;
+			targetRow = MovementUtil.isWhite(color) ? 7 : 0;
+			targetColumn = castling > 0 ? 6 : 2;
 		} else {
-			int index = token.length() - 1;
-			boolean checkmate = false;
-			if (token.charAt(index) == '#') {
-				checkmate = true;
-				index--;
-			}
-			boolean check = false;
-			if (token.charAt(index) == '+') {
-				check = true;
-				index--;
-			}
-			if (Character.isLetter(token.charAt(index)) && Character.isUpperCase(token.charAt(index))) {
-				targetPieceType = MovementUtil.getPieceType(token.charAt(index));
-				index -= 2; // skip "="
-			}
-			targetRow = Position.rankToRow(token.charAt(index) - '0');
-			index--;
-			targetColumn = Position.fileToColumn(token.charAt(index));
-			index--;
-			boolean capture = false;
-			if (token.charAt(index) == 'x') {
-				capture = true;
-				index--;
-			}
-			if (index >= 0 && Character.isDigit(token.charAt(index))) {
-				originRow = Position.rankToRow(token.charAt(index) - '0');
+			try {
+				int index = end - 1;
+				if (Character.isUpperCase(token.charAt(index))) {
+					promotionType = MovementUtil.getPieceType(token.charAt(index));
+					index--;
+					if (token.charAt(index) == '=') {
+						index--;
+					}
+				}
+				targetRow = Position.rankToRow(token.charAt(index) - '0');
 				index--;
-			}
-			if (index >= 0 && Character.isLowerCase(token.charAt(index))) {
-				originColumn = Position.fileToColumn(token.charAt(index));
+				targetColumn = Position.fileToColumn(token.charAt(index));
 				index--;
-			}
-			if (index >= 0) {
-				originPieceType = MovementUtil.getPieceType(token.charAt(index));
-				if (targetPieceType == MovementUtil.EMPTY) {
-					targetPieceType = originPieceType;
+				if (index >= 0 && (token.charAt(index) == 'x' || token.charAt(index) == ':')) {
+					index--;
+				}
+				if (index >= 0 && Character.isDigit(token.charAt(index))) {
+					originRow = Position.rankToRow(token.charAt(index) - '0');
+					index--;
 				}
+				if (index >= 0 && Character.isLowerCase(token.charAt(index))) {
+					originColumn = Position.fileToColumn(token.charAt(index));
+					index--;
+				}
+				originPieceType = MovementUtil.PAWN;
+				if (index == 0) {
+					originPieceType = MovementUtil.getPieceType(token.charAt(index));
+				} else if (index > 0) {
+					throw new ChessException(String.format("Invalid movement notation: %s", token));
+				}
+			} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+				throw new ChessException(String.format("Invalid movement notation: %s", token), e);
 			}
 		}
 		
-		return createSimpleMovement(
-			board,
-			originRow,
-			originColumn,
-			originPieceType,
-			targetRow,
-			targetColumn,
-			targetPieceType,
-			color
-		);
+		Movement movement;
+		try {
+			movement = board.resolveMovement(
+				color,
+				originPieceType,
+				originRow,
+				originColumn,
+				targetRow,
+				targetColumn,
+				promotionType
+			);
+		} catch (ChessException e) {
+			throw new ChessException(String.format("Ambiguous movement: %s", token), e);
+		}
+		if (movement == null) {
+			throw new ChessException(String.format("Illegal movement: %s", token));
+		}
+		return movement;
 	}
 	
-	private static Movement createSimpleMovement(
-		Board board,
-		int originRow, int originColumn,
-		byte originPieceType,
-		int targetRow, int targetColumn,
-		byte targetPieceType,
-		byte color
-	) {
-		Position target = Position.of(targetRow, targetColumn);
-		Position origin = board
-			.getAttackers(target, color)
-			.stream()
-			.filter(p -> MovementUtil.getPieceType(p.getPieceCode()) == originPieceType)
-			.filter(p -> originRow < 0 || p.getPosition().row == originRow)
-			.filter(p -> originColumn < 0 || p.getPosition().column == originColumn)
-			.findFirst()
-			.map(LocalizedPiece::getPosition)
-			.orElse(null);
-		
-		short flags = 0;
-		if (board.getSquareValue(target) != MovementUtil.EMPTY) {
-			flags |= MovementUtil.CAPTURE_MASK;
+	/**
+	 * Evaluates if the first characters of the token are a castling, with the letter
+	 * <code>O</code> or the digit <code>0</code>.
+	 * 
+	 * @param token The token.
+	 * @param end The length of the movement in the token, without suffixes.
+	 * 
+	 * @return <code>1</code> for a king side castling, <code>-1</code> for a queen side castling,
+	 *         or <code>0</code> if the movement is not a castling.
+	 */
+	private static int getCastlingSide(String token, int end) {
+		if (end != 3 && end != 5) {
+			return 0;
 		}
-		byte pieceCode = board.getSquareValue(origin);
-		Position enpTarget = board.getState().getEnPassantTargetSquare();
-		if (MovementUtil.isPawn(pieceCode) && enpTarget != null && enpTarget.equals(target)) {
-			flags |= MovementUtil.EN_PASSANT_MASK;
-			flags |= MovementUtil.CAPTURE_MASK;
+		char letter = token.charAt(0);
+		if (letter != 'O' && letter != '0') {
+			return 0;
 		}
-		if (MovementUtil.isKing(pieceCode) && Math.abs(origin.column - target.column) == 2) {
-			flags |= MovementUtil.CASTLING_MASK;
-		}
-		if (MovementUtil.isPawn(pieceCode) && (target.row == 0 || target.row == 7)) {
-			flags |= MovementUtil.PROMOTION_MASK;
+		for (int i = 1; i < end; i++) {
+			if (token.charAt(i) != (i % 2 == 0 ? letter : '-')) {
+				return 0;
+			}
 		}
-		
-		return new Movement(
-			origin,
-			new MovementTarget(target, targetPieceType, flags)
-		);
+		return end == 3 ? 1 : -1;
 	}
 }
@@ -16,73 +16,134 @@
 package com.welyab.anjabachen.movement.png;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.StringTokenizer;
+import java.util.function.BiConsumer;
 
+import com.welyab.anjabachen.ChessException;
 import com.welyab.anjabachen.movement.Board;
 import com.welyab.anjabachen.movement.Movement;
-import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.fen.FenParserException;
 
 /**
- * A parser for PGN style movement list.
+ * A parser for PGN style movement list, like <code>1. e4 e5 2. Nf3 Nc6</code> or
+ * <code>1... Qc3+ 2. Rb3 Ra7#</code>.
+ * 
+ * <p>
+ * Each movement is resolved and played on a board that starts in the given position, so the
+ * movements are parsed in the position where they happen. Move numbers, with or without a space
+ * before the movement, and game termination markers are skipped.
  * 
  * @author Welyab Paula
  */
 public class MovementsParser {
 	
+	@SuppressWarnings("javadoc")
 	private final Board board;
 	
+	@SuppressWarnings("javadoc")
 	private final String movementsSan;
 	
-	private boolean parsed = false;
-	
-	private StringTokenizer tokenizer;
-	
+	@SuppressWarnings("javadoc")
 	private List<Movement> movements;
 	
-	private State state = State.MOVEMENT_NUMBER;
-	
+	/**
+	 * Creates a parser for the movements played from the given position.
+	 * 
+	 * @param fen The initial position.
+	 * @param movementsSan The movements list.
+	 * 
+	 * @throws FenParserException If the FEN is invalid.
+	 */
 	public MovementsParser(String fen, String movementsSan) {
 		this.board = new Board(fen);
 		this.movementsSan = movementsSan;
 	}
 	
+	/**
+	 * Parses the movements. Calling this method more than once has no effect.
+	 * 
+	 * @throws ChessException If a movement is invalid or illegal in the position it is played.
+	 */
 	public void parse() {
-		if (parsed) {
+		parse(null);
+	}
+	
+	/**
+	 * Parses the movements, informing each one of them, with the board in the position where it
+	 * is played, before it is played. Calling this method more than once has no effect.
+	 * 
+	 * <p>
+	 * If a movement can't be parsed, the movements before it are still played and informed.
+	 * 
+	 * @param observer Receives the board and each movement, may be <code>null</code>. The board
+	 *        must not be changed.
+	 * 
+	 * @throws ChessException If a movement is invalid or illegal in the position it is played.
+	 */
+	public void parse(BiConsumer<Board, Movement> observer) {
+		if (movements != null) {
 			return;
 		}
 		
-		movements = new ArrayList<>();
-		tokenizer = new StringTokenizer(movementsSan, " ");
-		
-		while (tokenizer.hasMoreElements()) {
-			state = switch (state) {
-				case MOVEMENT_NUMBER -> parseMovementNumber(tokenizer.nextToken());
-				case WHITE_MOVEMENT -> parseMovement(tokenizer.nextToken(), MovementUtil.WHITE);
-				case BLACK_MOVEMENT -> parseMovement(tokenizer.nextToken(), MovementUtil.BLACK);
-			};
+		List<Movement> parsed = new ArrayList<>();
+		StringTokenizer tokenizer = new StringTokenizer(movementsSan, " \t\r\n");
+		while (tokenizer.hasMoreTokens()) {
+			String token = skipMovementNumber(tokenizer.nextToken());
+			if (token.isEmpty() || isTermination(token)) {
+				continue;
+			}
+			Movement movement = MovementParser.parseMovement(token, board.getSideToMove(), board);
+			if (observer != null) {
+				observer.accept(board, movement);
+			}
+			board.move(movement);
+			parsed.add(movement);
 		}
-		
-		parsed = true;
+		movements = Collections.unmodifiableList(parsed);
 	}
 	
-	private State parseMovementNumber(String token) {
-		if (token.contains("...")) {
-			return State.BLACK_MOVEMENT;
-		}
-		return State.WHITE_MOVEMENT;
+	/**
+	 * Retrieves the parsed movements, in the order they are played.
+	 * 
+	 * @return The movements.
+	 */
+	public List<Movement> getMovements() {
+		parse();
+		return movements;
+	}
+	
+	/**
+	 * Retrieves the board with the position reached after the last movement.
+	 * 
+	 * @return The board.
+	 */
+	public Board getBoard() {
+		parse();
+		return board;
 	}
 	
-	private State parseMovement(String token, byte color) {
-		movements.add(MovementParser.parseMovement(token, color, board));
-		return MovementUtil.isWhite(color)
-				? State.BLACK_MOVEMENT
-				: State.MOVEMENT_NUMBER;
+	@SuppressWarnings("javadoc")
+	private static String skipMovementNumber(String token) {
+		int index = 0;
+		while (index < token.length() && Character.isDigit(token.charAt(index))) {
+			index++;
+		}
+		if (index == 0 || index == token.length() || token.charAt(index) != '.') {
+			return token;
+		}
+		while (index < token.length() && token.charAt(index) == '.') {
+			index++;
+		}
+		return token.substring(index);
 	}
 	
-	private enum State {
-		MOVEMENT_NUMBER,
-		BLACK_MOVEMENT,
-		WHITE_MOVEMENT
+	@SuppressWarnings("javadoc")
+	private static boolean isTermination(String token) {
+		return switch (token) {
+			case "1-0", "0-1", "1/2-1/2", "*" -> true;
+			default -> false;
+		};
 	}
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.WorkerPool;
+import com.welyab.anjabachen.movement.Movement;
+
+/**
+ * Parses the games of a PGN file with a pool of worker threads.
+ * 
+ * <p>
+ * The file is split in chunks of about the configured size. A chunk ends where a game starts: a
+ * <code>[Event</code> tag after a blank line. Each worker memory maps a chunk, reads its games with
+ * {@link PgnReader} and plays their main lines with {@link MovementsParser}, so the boards are
+ * confined to the worker threads. Files that don't separate games with blank lines can't be split
+ * and are parsed by a single worker.
+ * 
+ * <p>
+ * In ordered mode the games are delivered in the order of the file, and their indexes are their
+ * positions in the file; to bound the memory, a worker doesn't start a chunk while there are too
+ * many finished chunks waiting for an earlier one. In unordered mode each game is delivered as soon
+ * as it is parsed, and numbered in the order of delivery.
+ * 
+ * <pre>
+ * ParallelPgnParser parser = ParallelPgnParser.builder()
+ * 	.threads(8)
+ * 	.ordered(false)
+ * 	.build();
+ * parser.parse(path, game -&gt; index.add(game));
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class ParallelPgnParser {
+	
+	/** The default chunk size, in bytes. */
+	public static final int DEFAULT_CHUNK_SIZE = 4 << 20;
+	
+	@SuppressWarnings("javadoc")
+	private static final byte[] GAME_START = "[Event".getBytes(StandardCharsets.US_ASCII);
+	
+	@SuppressWarnings("javadoc")
+	private static final int BOUNDARY_WINDOW = 1 << 16;
+	
+	@SuppressWarnings("javadoc")
+	private final int threads;
+	
+	@SuppressWarnings("javadoc")
+	private final int chunkSize;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean ordered;
+	
+	@SuppressWarnings("javadoc")
+	private final Charset charset;
+	
+	@SuppressWarnings("javadoc")
+	private ParallelPgnParser(Builder builder) {
+		threads = builder.threads;
+		chunkSize = builder.chunkSize;
+		ordered = builder.ordered;
+		charset = builder.charset;
+	}
+	
+	/**
+	 * Parses the games of a file, blocking until all of them are delivered. Games with invalid
+	 * movements are delivered as {@linkplain ParsedGame#isFailed() failed} and do not stop the
+	 * parsing. The sink is never called concurrently, so it doesn't need to be thread safe.
+	 * 
+	 * @param file The PGN file.
+	 * @param sink Receives the games.
+	 * 
+	 * @return The number of games.
+	 * 
+	 * @throws IOException If the file can't be read.
+	 * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+	 * @throws ChessException If a chunk larger than 2 GB has no game boundary.
+	 */
+	public synchronized long parse(Path file, Consumer<ParsedGame> sink) throws IOException, InterruptedException {
+		try (
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+			Session session = new Session(channel, sink)
+		) {
+			long size = channel.size();
+			long start = 0;
+			long sequence = 0;
+			while (start < size) {
+				long end = start + chunkSize < size ? findGameStart(channel, start + chunkSize, size) : size;
+				if (end - start > Integer.MAX_VALUE) {
+					throw new ChessException(String.format("No game boundary found after offset %d", start));
+				}
+				if (!session.pool.submit(new Chunk(sequence++, start, (int) (end - start)))) {
+					break;
+				}
+				start = end;
+			}
+			try {
+				session.pool.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			return session.delivered;
+		}
+	}
+	
+	/**
+	 * Finds the first game start at or after the given offset.
+	 * 
+	 * @param channel The file.
+	 * @param from The offset.
+	 * @param size The file size.
+	 * 
+	 * @return The offset of the game start, or the file size if there is none.
+	 * 
+	 * @throws IOException If the file can't be mapped.
+	 */
+	static long findGameStart(FileChannel channel, long from, long size) throws IOException {
+		// the window starts a few bytes earlier, to see the blank line before the tag
+		long position = Math.max(0, from - 3);
+		while (position < size) {
+			int length = (int) Math.min(BOUNDARY_WINDOW, size - position);
+			ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int first = (int) Math.max(0, from - position);
+			for (int i = first; i + GAME_START.length <= length; i++) {
+				if (window.get(i) == '[' && isGameStart(window, i)) {
+					return position + i;
+				}
+			}
+			if (position + length == size) {
+				break;
+			}
+			position += length - GAME_START.length - 3;
+		}
+		return size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isGameStart(ByteBuffer window, int index) {
+		for (int i = 1; i < GAME_START.length; i++) {
+			if (window.get(index + i) != GAME_START[i]) {
+				return false;
+			}
+		}
+		if (index < 2 || window.get(index - 1) != '\n') {
+			return false;
+		}
+		byte before = window.get(index - 2);
+		return before == '\n' || before == '\r' && index >= 3 && window.get(index - 3) == '\n';
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * The worker threads and the delivery state of one file.
+	 */
+	private final class Session implements Closeable {
+		
+		@SuppressWarnings("javadoc")
+		private final FileChannel channel;
+		
+		@SuppressWarnings("javadoc")
+		private final Consumer<ParsedGame> sink;
+		
+		/** The finished chunks waiting for an earlier one, in ordered mode. */
+		private final Map<Long, List<ParsedGame>> pending = new HashMap<>();
+		
+		@SuppressWarnings("javadoc")
+		private final Object lock = new Object();
+		
+		@SuppressWarnings("javadoc")
+		private long nextSequence;
+		
+		@SuppressWarnings("javadoc")
+		private long delivered;
+		
+		@SuppressWarnings("javadoc")
+		private final WorkerPool<Chunk> pool;
+		
+		@SuppressWarnings("javadoc")
+		private Session(FileChannel channel, Consumer<ParsedGame> sink) {
+			this.channel = channel;
+			this.sink = sink;
+			pool = new WorkerPool<>("anjabachen-pgn", threads, threads * 2, worker -> this::work);
+		}
+		
+		@Override
+		public void close() {
+			pool.close();
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void work(Chunk chunk) throws InterruptedException {
+			try {
+				process(chunk);
+			} catch (RuntimeException e) {
+				pool.fail(e);
+				// wakes the workers waiting for this chunk in ordered mode
+				synchronized (lock) {
+					lock.notifyAll();
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void process(Chunk chunk) throws InterruptedException {
+			if (ordered) {
+				synchronized (lock) {
+					while (chunk.sequence >= nextSequence + threads * 2 && !pool.isFailed()) {
+						lock.wait();
+					}
+				}
+			}
+			ByteBuffer content;
+			try {
+				content = channel.map(FileChannel.MapMode.READ_ONLY, chunk.start, chunk.length);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			PgnReader reader = new PgnReader(content, charset);
+			List<ParsedGame> games = new ArrayList<>();
+			while (true) {
+				PgnGame game;
+				try {
+					if (!reader.hasNext()) {
+						break;
+					}
+					game = reader.next();
+				} catch (ChessException e) {
+					// the reader resumes after the malformed tag
+					continue;
+				}
+				ParsedGame parsed = play(game);
+				if (ordered) {
+					games.add(parsed);
+				} else {
+					synchronized (lock) {
+						deliver(parsed);
+					}
+				}
+			}
+			if (ordered) {
+				synchronized (lock) {
+					pending.put(chunk.sequence, games);
+					List<ParsedGame> next;
+					while ((next = pending.remove(nextSequence)) != null) {
+						for (ParsedGame parsed : next) {
+							deliver(parsed);
+						}
+						nextSequence++;
+					}
+					lock.notifyAll();
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private ParsedGame play(PgnGame game) {
+			List<Movement> movements = new ArrayList<>(game.getMovements().size());
+			String error = null;
+			try {
+				new MovementsParser(game.getFen(), game.getMovetext()).parse((board, movement) -> movements.add(movement));
+			} catch (ChessException e) {
+				error = e.getMessage();
+			}
+			return new ParsedGame(game, movements, error);
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void deliver(ParsedGame parsed) {
+			sink.accept(new ParsedGame(parsed.getGame().withIndex(delivered++), parsed.getMovements(), parsed.getError()));
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static final class Chunk {
+		
+		private final long sequence;
+		
+		private final long start;
+		
+		private final int length;
+		
+		private Chunk(long sequence, long start, int length) {
+			this.sequence = sequence;
+			this.start = start;
+			this.length = length;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private int chunkSize = DEFAULT_CHUNK_SIZE;
+		
+		private boolean ordered = true;
+		
+		private Charset charset = StandardCharsets.UTF_8;
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder chunkSize(int chunkSize) {
+			this.chunkSize = Math.max(1, chunkSize);
+			return this;
+		}
+		
+		public Builder ordered(boolean ordered) {
+			this.ordered = ordered;
+			return this;
+		}
+		
+		public Builder charset(Charset charset) {
+			this.charset = charset;
+			return this;
+		}
+		
+		public ParallelPgnParser build() {
+			return new ParallelPgnParser(this);
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.util.List;
+
+import com.welyab.anjabachen.movement.Movement;
+
+/**
+ * A PGN game whose main line movements were played on a board.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see ParallelPgnParser
+ */
+public final class ParsedGame {
+	
+	@SuppressWarnings("javadoc")
+	private final PgnGame game;
+	
+	@SuppressWarnings("javadoc")
+	private final List<Movement> movements;
+	
+	@SuppressWarnings("javadoc")
+	private final String error;
+	
+	@SuppressWarnings("javadoc")
+	ParsedGame(PgnGame game, List<Movement> movements, String error) {
+		this.game = game;
+		this.movements = movements;
+		this.error = error;
+	}
+	
+	/**
+	 * Retrieves the game, as read from the file.
+	 * 
+	 * @return The game.
+	 */
+	public PgnGame getGame() {
+		return game;
+	}
+	
+	/**
+	 * Retrieves the main line movements. If a movement is invalid, the list ends before it.
+	 * 
+	 * @return The movements, in the order they are played.
+	 */
+	public List<Movement> getMovements() {
+		return movements;
+	}
+	
+	/**
+	 * Indicates if the initial position or a main line movement is invalid.
+	 * 
+	 * @return A value <code>true</code> if the game could not be played to the end.
+	 * 
+	 * @see #getError()
+	 */
+	public boolean isFailed() {
+		return error != null;
+	}
+	
+	/**
+	 * Retrieves the reason the game could not be played to the end.
+	 * 
+	 * @return The error message, or <code>null</code> if all movements are valid.
+	 */
+	public String getError() {
+		return error;
+	}
+	
+	@Override
+	public String toString() {
+		return isFailed() ? String.format("%s error %s", game, error) : game.toString();
+	}
+}
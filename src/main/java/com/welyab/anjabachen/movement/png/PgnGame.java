@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * A game read from a PGN file: the tag pairs, the main line movements and the result.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see PgnReader
+ */
+public final class PgnGame {
+	
+	/** The result of games not finished, or with an unknown result. */
+	public static final String UNKNOWN_RESULT = "*";
+	
+	@SuppressWarnings("javadoc")
+	private final long index;
+	
+	@SuppressWarnings("javadoc")
+	private final Map<String, String> tags;
+	
+	@SuppressWarnings("javadoc")
+	private final String comment;
+	
+	@SuppressWarnings("javadoc")
+	private final List<PgnMovement> movements;
+	
+	@SuppressWarnings("javadoc")
+	private final String result;
+	
+	/**
+	 * Creates a game.
+	 * 
+	 * @param index The zero based position of the game in its source.
+	 * @param tags The tag pairs, in the order they are written.
+	 * @param comment The comment before the first movement, or <code>null</code>.
+	 * @param movements The main line movements.
+	 * @param result The game result: <code>1-0</code>, <code>0-1</code>, <code>1/2-1/2</code> or
+	 *        <code>*</code>.
+	 */
+	public PgnGame(long index, Map<String, String> tags, String comment, List<PgnMovement> movements, String result) {
+		this.index = index;
+		this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+		this.comment = comment;
+		this.movements = List.copyOf(movements);
+		this.result = result;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private PgnGame(long index, PgnGame game) {
+		this.index = index;
+		tags = game.tags;
+		comment = game.comment;
+		movements = game.movements;
+		result = game.result;
+	}
+	
+	/**
+	 * Creates a copy of this game with another index.
+	 * 
+	 * @param index The zero based position of the game in its source.
+	 * 
+	 * @return The game.
+	 */
+	PgnGame withIndex(long index) {
+		return new PgnGame(index, this);
+	}
+	
+	/**
+	 * Retrieves the position of the game in its source.
+	 * 
+	 * @return The zero based index.
+	 */
+	public long getIndex() {
+		return index;
+	}
+	
+	/**
+	 * Retrieves the tag pairs of the game.
+	 * 
+	 * @return The tags, in the order they are written.
+	 */
+	public Map<String, String> getTags() {
+		return tags;
+	}
+	
+	/**
+	 * Retrieves the value of a tag.
+	 * 
+	 * @param name The tag name, like <code>White</code>.
+	 * 
+	 * @return The value, or <code>null</code> if the game doesn't have the tag.
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+	
+	/**
+	 * Retrieves the initial position of the game, given by the <code>FEN</code> tag.
+	 * 
+	 * @return The FEN string, or the standard initial position if the game doesn't have the tag.
+	 */
+	public String getFen() {
+		return tags.getOrDefault("FEN", MovementUtil.FEN_INITIAL_POSITION);
+	}
+	
+	/**
+	 * Retrieves the comment written before the first movement.
+	 * 
+	 * @return The comment, or <code>null</code> if there is none.
+	 */
+	public String getComment() {
+		return comment;
+	}
+	
+	/**
+	 * Retrieves the main line movements.
+	 * 
+	 * @return The movements, in the order they are played.
+	 */
+	public List<PgnMovement> getMovements() {
+		return movements;
+	}
+	
+	/**
+	 * Retrieves the main line as a movement list that can be given to {@link MovementsParser}.
+	 * 
+	 * @return The movements in SAN, separated by spaces.
+	 */
+	public String getMovetext() {
+		StringBuilder movetext = new StringBuilder();
+		for (PgnMovement movement : movements) {
+			if (movetext.length() > 0) {
+				movetext.append(' ');
+			}
+			movetext.append(movement.getSan());
+		}
+		return movetext.toString();
+	}
+	
+	/**
+	 * Retrieves the game result. The game termination marker is used when present, otherwise the
+	 * <code>Result</code> tag.
+	 * 
+	 * @return The result: <code>1-0</code>, <code>0-1</code>, <code>1/2-1/2</code> or
+	 *         {@value #UNKNOWN_RESULT}.
+	 */
+	public String getResult() {
+		return result;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format(
+			"#%d %s - %s %s",
+			index,
+			tags.getOrDefault("White", "?"),
+			tags.getOrDefault("Black", "?"),
+			result
+		);
+	}
+}
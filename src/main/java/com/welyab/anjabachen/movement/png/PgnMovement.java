@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.util.List;
+
+/**
+ * A movement of a PGN game, as written in the movetext: the SAN text, the numeric annotation
+ * glyphs, the comment that follows it and the variations that replace it.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see PgnGame
+ */
+public final class PgnMovement {
+	
+	@SuppressWarnings("javadoc")
+	private final String san;
+	
+	@SuppressWarnings("javadoc")
+	private final List<Integer> nags;
+	
+	@SuppressWarnings("javadoc")
+	private final String comment;
+	
+	@SuppressWarnings("javadoc")
+	private final List<List<PgnMovement>> variations;
+	
+	/**
+	 * Creates a movement.
+	 * 
+	 * @param san The movement in SAN, without suffix annotations.
+	 * @param nags The numeric annotation glyphs.
+	 * @param comment The comment after the movement, or <code>null</code>.
+	 * @param variations The alternatives to this movement.
+	 */
+	public PgnMovement(String san, List<Integer> nags, String comment, List<List<PgnMovement>> variations) {
+		this.san = san;
+		this.nags = List.copyOf(nags);
+		this.comment = comment;
+		this.variations = List.copyOf(variations);
+	}
+	
+	/**
+	 * Retrieves the movement text. Suffix annotations like <code>!?</code> are reported as numeric
+	 * annotation glyphs and are not part of the text.
+	 * 
+	 * @return The movement in SAN.
+	 */
+	public String getSan() {
+		return san;
+	}
+	
+	/**
+	 * Retrieves the numeric annotation glyphs of the movement, like <code>1</code> for a good move
+	 * (<code>$1</code> or <code>!</code>).
+	 * 
+	 * @return The glyphs, in the order they are written.
+	 */
+	public List<Integer> getNags() {
+		return nags;
+	}
+	
+	/**
+	 * Retrieves the comment written after the movement. Consecutive comments are joined with a
+	 * space.
+	 * 
+	 * @return The comment, or <code>null</code> if there is none.
+	 */
+	public String getComment() {
+		return comment;
+	}
+	
+	/**
+	 * Retrieves the variations of this movement. Each variation is a sequence of movements played
+	 * instead of this one.
+	 * 
+	 * @return The variations.
+	 */
+	public List<List<PgnMovement>> getVariations() {
+		return variations;
+	}
+	
+	@Override
+	public String toString() {
+		return san;
+	}
+}
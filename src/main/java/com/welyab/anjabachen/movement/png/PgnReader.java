@@ -0,0 +1,550 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Reads the games of a PGN file, one at a time.
+ * 
+ * <p>
+ * The input is read through a fixed size buffer and only the game being read is kept in memory, so
+ * files of any size are read in constant memory. The reader understands tag pairs, movement
+ * numbers, comments (<code>{...}</code> and <code>;</code>), numeric annotation glyphs and suffix
+ * annotations, nested variations, game termination markers and <code>%</code> escape lines. The
+ * movements are not validated; use {@link MovementsParser} with {@link PgnGame#getFen()} and
+ * {@link PgnGame#getMovetext()} to play them.
+ * 
+ * <p>
+ * A malformed game makes {@link #hasNext()} throw a {@link ChessException}, and the reader resumes
+ * with the next game. A <code>{</code> comment that is not closed before a blank line followed by
+ * a tag pair, or before the end of the input, is malformed; comments are also truncated at
+ * {@value #MAX_COMMENT_LENGTH} bytes, so a broken game never loads the rest of the file.
+ * 
+ * <pre>
+ * try (PgnReader reader = PgnReader.open(path)) {
+ * 	while (reader.hasNext()) {
+ * 		PgnGame game = reader.next();
+ * 		...
+ * 	}
+ * }
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class PgnReader implements Iterator<PgnGame>, Closeable {
+	
+	@SuppressWarnings("javadoc")
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	
+	/** The maximum number of bytes kept of each comment. */
+	static final int MAX_COMMENT_LENGTH = 1 << 16;
+	
+	/** The suffix annotations, indexed by their numeric annotation glyph. */
+	private static final List<String> SUFFIX_ANNOTATIONS = List.of("", "!", "?", "!!", "??", "!?", "?!");
+	
+	@SuppressWarnings("javadoc")
+	private final ReadableByteChannel channel;
+	
+	@SuppressWarnings("javadoc")
+	private final Charset charset;
+	
+	@SuppressWarnings("javadoc")
+	private final ByteBuffer buffer;
+	
+	@SuppressWarnings("javadoc")
+	private byte[] text = new byte[256];
+	
+	@SuppressWarnings("javadoc")
+	private int textLength;
+	
+	@SuppressWarnings("javadoc")
+	private long lineNumber = 1;
+	
+	@SuppressWarnings("javadoc")
+	private boolean lineStart = true;
+	
+	@SuppressWarnings("javadoc")
+	private long count;
+	
+	@SuppressWarnings("javadoc")
+	private PgnGame next;
+	
+	/**
+	 * Creates a reader over the given stream. The text is decoded as UTF-8.
+	 * 
+	 * @param input The stream.
+	 */
+	public PgnReader(InputStream input) {
+		this(Channels.newChannel(input), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Creates a reader over the given channel.
+	 * 
+	 * @param channel The channel.
+	 * @param charset The charset of tag values and comments. Movements are always ASCII.
+	 */
+	public PgnReader(ReadableByteChannel channel, Charset charset) {
+		this(channel, charset, DEFAULT_BUFFER_SIZE);
+	}
+	
+	@SuppressWarnings("javadoc")
+	PgnReader(ReadableByteChannel channel, Charset charset, int bufferSize) {
+		this.channel = channel;
+		this.charset = charset;
+		buffer = ByteBuffer.allocate(bufferSize);
+		buffer.flip();
+	}
+	
+	/**
+	 * Creates a reader over the remaining bytes of a buffer, like a memory mapped region of a file.
+	 * The bytes are read in place.
+	 * 
+	 * @param content The PGN text.
+	 * @param charset The charset of tag values and comments.
+	 */
+	PgnReader(ByteBuffer content, Charset charset) {
+		channel = null;
+		this.charset = charset;
+		buffer = content;
+	}
+	
+	/**
+	 * Opens a PGN file. The text is decoded as UTF-8.
+	 * 
+	 * @param path The file path.
+	 * 
+	 * @return The reader.
+	 * 
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static PgnReader open(Path path) throws IOException {
+		return new PgnReader(FileChannel.open(path, StandardOpenOption.READ), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException If the input can't be read.
+	 * @throws ChessException If a tag pair is malformed or a comment is not closed.
+	 */
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			next = readGame();
+		}
+		return next != null;
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @throws UncheckedIOException If the input can't be read.
+	 * @throws ChessException If a tag pair is malformed or a comment is not closed.
+	 */
+	@Override
+	public PgnGame next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PgnGame game = next;
+		next = null;
+		return game;
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private PgnGame readGame() {
+		skipWhitespace();
+		if (peek() < 0) {
+			return null;
+		}
+		Map<String, String> tags = new LinkedHashMap<>();
+		while (peek() == '[') {
+			readTag(tags);
+			skipWhitespace();
+		}
+		StringBuilder comment = new StringBuilder();
+		List<MovementBuilder> movements = new ArrayList<>();
+		String termination = readLine(movements, 0, comment);
+		String result = termination != null ? termination : tags.getOrDefault("Result", PgnGame.UNKNOWN_RESULT);
+		return new PgnGame(
+			count++,
+			tags,
+			comment.length() > 0 ? comment.toString() : null,
+			build(movements),
+			result
+		);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void readTag(Map<String, String> tags) {
+		read();
+		skipSpaces();
+		textLength = 0;
+		while (isSymbolCharacter(peek())) {
+			append(read());
+		}
+		String name = new String(text, 0, textLength, StandardCharsets.US_ASCII);
+		skipSpaces();
+		if (name.isEmpty() || peek() != '"') {
+			throw invalidTag();
+		}
+		read();
+		textLength = 0;
+		int c;
+		while ((c = peek()) != '"') {
+			if (c < 0 || c == '\n') {
+				throw invalidTag();
+			}
+			read();
+			if (c == '\\' && (peek() == '"' || peek() == '\\')) {
+				c = read();
+			}
+			append(c);
+		}
+		read();
+		String value = new String(text, 0, textLength, charset);
+		skipSpaces();
+		if (peek() != ']') {
+			throw invalidTag();
+		}
+		read();
+		tags.put(name, value);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private ChessException invalidTag() {
+		long line = lineNumber;
+		int c;
+		while ((c = peek()) >= 0 && c != '\n') {
+			read();
+		}
+		return new ChessException(String.format("Invalid PGN tag at line %d", line));
+	}
+	
+	/**
+	 * Reads the movements of a line, until the end of the game or of the variation.
+	 * 
+	 * @param line Receives the movements.
+	 * @param depth The variation depth, zero for the main line.
+	 * @param leadingComment Receives the comments before the first movement, may be
+	 *        <code>null</code>.
+	 * 
+	 * @return The game termination marker, or <code>null</code> if the line ended without one.
+	 */
+	private String readLine(List<MovementBuilder> line, int depth, StringBuilder leadingComment) {
+		while (true) {
+			skipWhitespace();
+			int c = peek();
+			MovementBuilder last = line.isEmpty() ? null : line.get(line.size() - 1);
+			switch (c) {
+				case -1, '[' -> {
+					return null;
+				}
+				case '{' -> {
+					read();
+					addComment(last, leadingComment, readComment('}'));
+				}
+				case ';' -> {
+					read();
+					addComment(last, leadingComment, readComment('\n'));
+				}
+				case '(' -> {
+					read();
+					List<MovementBuilder> variation = new ArrayList<>();
+					readLine(variation, depth + 1, null);
+					if (peek() == ')') {
+						read();
+					}
+					if (last != null && !variation.isEmpty()) {
+						last.variations.add(variation);
+					}
+				}
+				case ')' -> {
+					if (depth > 0) {
+						return null;
+					}
+					read();
+				}
+				case '$' -> {
+					read();
+					int nag = 0;
+					while (peek() >= '0' && peek() <= '9') {
+						nag = nag * 10 + read() - '0';
+					}
+					if (last != null) {
+						last.nags.add(nag);
+					}
+				}
+				case '!', '?' -> {
+					textLength = 0;
+					while (peek() == '!' || peek() == '?') {
+						append(read());
+					}
+					int nag = SUFFIX_ANNOTATIONS.indexOf(new String(text, 0, textLength, StandardCharsets.US_ASCII));
+					if (last != null && nag > 0) {
+						last.nags.add(nag);
+					}
+				}
+				case '*' -> {
+					read();
+					if (depth == 0) {
+						return PgnGame.UNKNOWN_RESULT;
+					}
+				}
+				default -> {
+					if (!isSymbolStart(c)) {
+						read();
+						continue;
+					}
+					textLength = 0;
+					while (isSymbolCharacter(peek())) {
+						append(read());
+					}
+					String token = new String(text, 0, textLength, StandardCharsets.US_ASCII);
+					if (isResult(token)) {
+						if (depth == 0) {
+							return token;
+						}
+					} else if (!isMovementNumber(token)) {
+						line.add(new MovementBuilder(token));
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reads a comment, keeping up to {@value #MAX_COMMENT_LENGTH} bytes of it.
+	 * 
+	 * @param terminator The character that closes the comment.
+	 * 
+	 * @return The comment.
+	 * 
+	 * @throws ChessException If a <code>{</code> comment reaches a blank line followed by a tag
+	 *         pair, where the reader resumes, or the end of the input.
+	 */
+	private String readComment(int terminator) {
+		long line = lineNumber;
+		textLength = 0;
+		int newlines = 0;
+		int c;
+		while ((c = peek()) != terminator) {
+			if (c < 0) {
+				if (terminator == '\n') {
+					break;
+				}
+				throw new ChessException(String.format("Unterminated PGN comment at line %d", line));
+			}
+			if (c == '[' && lineStart && newlines > 1) {
+				// the next game starts, so the comment was never closed
+				throw new ChessException(String.format("Unterminated PGN comment at line %d", line));
+			}
+			read();
+			if (c == '\n') {
+				newlines++;
+			} else if (c != ' ' && c != '\t' && c != '\r') {
+				newlines = 0;
+			}
+			if (c != '\r' && textLength < MAX_COMMENT_LENGTH) {
+				append(c);
+			}
+		}
+		read();
+		return new String(text, 0, textLength, charset).trim();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void addComment(MovementBuilder last, StringBuilder leadingComment, String comment) {
+		if (comment.isEmpty()) {
+			return;
+		}
+		StringBuilder target = last != null ? last.comment : leadingComment;
+		if (target == null) {
+			return;
+		}
+		if (target.length() > 0) {
+			target.append(' ');
+		}
+		target.append(comment);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<PgnMovement> build(List<MovementBuilder> line) {
+		List<PgnMovement> movements = new ArrayList<>(line.size());
+		for (MovementBuilder builder : line) {
+			List<List<PgnMovement>> variations = new ArrayList<>(builder.variations.size());
+			for (List<MovementBuilder> variation : builder.variations) {
+				variations.add(build(variation));
+			}
+			movements.add(
+				new PgnMovement(
+					builder.san,
+					builder.nags,
+					builder.comment.length() > 0 ? builder.comment.toString() : null,
+					variations
+				)
+			);
+		}
+		return movements;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isResult(String token) {
+		return token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2");
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isMovementNumber(String token) {
+		for (int i = 0; i < token.length(); i++) {
+			if (token.charAt(i) < '0' || token.charAt(i) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isSymbolStart(int c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-';
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isSymbolCharacter(int c) {
+		return isSymbolStart(c) || c == '_' || c == '+' || c == '#' || c == '=' || c == ':' || c == '/';
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void skipWhitespace() {
+		int c;
+		while ((c = peek()) >= 0) {
+			if (c == '%' && lineStart) {
+				while ((c = peek()) >= 0 && c != '\n') {
+					read();
+				}
+			} else if (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '.') {
+				read();
+			} else {
+				return;
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void skipSpaces() {
+		while (peek() == ' ' || peek() == '\t') {
+			read();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void append(int c) {
+		if (textLength == text.length) {
+			text = Arrays.copyOf(text, textLength * 2);
+		}
+		text[textLength++] = (byte) c;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int peek() {
+		if (!buffer.hasRemaining() && !fill()) {
+			return -1;
+		}
+		return buffer.get(buffer.position()) & 0xFF;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int read() {
+		int c = peek();
+		if (c >= 0) {
+			buffer.position(buffer.position() + 1);
+			if (c == '\n') {
+				lineNumber++;
+			}
+			lineStart = c == '\n';
+		}
+		return c;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private boolean fill() {
+		if (channel == null) {
+			return false;
+		}
+		try {
+			buffer.clear();
+			int read;
+			do {
+				read = channel.read(buffer);
+			} while (read == 0);
+			buffer.flip();
+			return read > 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * A movement being read, which still receives annotations, comments and variations.
+	 */
+	private static final class MovementBuilder {
+		
+		@SuppressWarnings("javadoc")
+		private final String san;
+		
+		@SuppressWarnings("javadoc")
+		private final List<Integer> nags = new ArrayList<>(0);
+		
+		@SuppressWarnings("javadoc")
+		private final StringBuilder comment = new StringBuilder(0);
+		
+		@SuppressWarnings("javadoc")
+		private final List<List<MovementBuilder>> variations = new ArrayList<>(0);
+		
+		@SuppressWarnings("javadoc")
+		private MovementBuilder(String san) {
+			this.san = san;
+		}
+	}
+}
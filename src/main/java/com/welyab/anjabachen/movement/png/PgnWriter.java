@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Writes games in PGN export format: tag pairs, then the movetext wrapped at
+ * {@value #LINE_WIDTH} columns, then a blank line.
+ * 
+ * <p>
+ * The text is encoded as UTF-8 straight into a direct buffer, which is written to the channel when
+ * it is full. Movements are formatted into a reused builder, so writing a game doesn't create a
+ * string per movement. The buffers of closed writers are kept in a small pool and reused by the
+ * next writers.
+ * 
+ * <pre>
+ * try (PgnWriter writer = PgnWriter.open(path)) {
+ * 	writer.writeTag("Event", "Analysis");
+ * 	for (Movement movement : movements) {
+ * 		writer.writeMovement(board, movement);
+ * 		writer.writeComment(evaluation);
+ * 	}
+ * 	writer.endGame("1-0");
+ * }
+ * </pre>
+ * 
+ * <p>
+ * A writer is not thread safe.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see PgnReader
+ */
+public final class PgnWriter implements Closeable, Flushable {
+	
+	/** The maximum length of a movetext line. */
+	public static final int LINE_WIDTH = 80;
+	
+	@SuppressWarnings("javadoc")
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	
+	/** The buffers of closed writers. */
+	private static final BlockingQueue<ByteBuffer> BUFFER_POOL = new ArrayBlockingQueue<>(8);
+	
+	@SuppressWarnings("javadoc")
+	private final WritableByteChannel channel;
+	
+	@SuppressWarnings("javadoc")
+	private ByteBuffer buffer;
+	
+	/** The movement being written. */
+	private final StringBuilder token = new StringBuilder(16);
+	
+	@SuppressWarnings("javadoc")
+	private int column;
+	
+	/** Indicates that tag pairs were written and the movetext didn't start yet. */
+	private boolean tagSection;
+	
+	/** Indicates that a variation starts before the next token. */
+	private boolean variationStart;
+	
+	/** Indicates that the next black movement needs its movement number. */
+	private boolean numberNeeded = true;
+	
+	@SuppressWarnings("javadoc")
+	private long count;
+	
+	/** The high surrogate of a character being written. */
+	private char highSurrogate;
+	
+	/**
+	 * Creates a writer over the given channel.
+	 * 
+	 * @param channel The channel.
+	 */
+	public PgnWriter(WritableByteChannel channel) {
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+	
+	@SuppressWarnings("javadoc")
+	PgnWriter(WritableByteChannel channel, int bufferSize) {
+		this.channel = channel;
+		ByteBuffer pooled = bufferSize == DEFAULT_BUFFER_SIZE ? BUFFER_POOL.poll() : null;
+		buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(Math.max(16, bufferSize));
+	}
+	
+	/**
+	 * Creates a PGN file, or truncates it if it exists.
+	 * 
+	 * @param path The file path.
+	 * 
+	 * @return The writer.
+	 * 
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static PgnWriter open(Path path) throws IOException {
+		return new PgnWriter(
+			FileChannel.open(
+				path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE
+			)
+		);
+	}
+	
+	/**
+	 * Writes a whole game, like it was read by {@link PgnReader}: the tags, the comments, the
+	 * numeric annotation glyphs and the variations. The movements are written as they are in the
+	 * game, without being validated.
+	 * 
+	 * @param game The game.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	public void write(PgnGame game) throws IOException {
+		for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+			writeTag(tag.getKey(), tag.getValue());
+		}
+		int ply = initialPly(game.getFen());
+		if (game.getComment() != null) {
+			writeComment(game.getComment());
+		}
+		writeLine(game.getMovements(), ply);
+		endGame(game.getResult());
+	}
+	
+	/**
+	 * Computes the ply of the first movement from the side to move and the full move counter of a
+	 * FEN string, without splitting it. Missing or malformed fields, like in the four field FEN
+	 * tags written by some tools, default to white and move <code>1</code>.
+	 * 
+	 * @param fen The FEN string.
+	 * 
+	 * @return The zero based ply.
+	 */
+	static int initialPly(String fen) {
+		int field = 0;
+		boolean black = false;
+		int moveNumber = 0;
+		for (int i = 0; i < fen.length(); i++) {
+			char c = fen.charAt(i);
+			if (c == ' ') {
+				if (i > 0 && fen.charAt(i - 1) != ' ') {
+					field++;
+				}
+			} else if (field == 1) {
+				black = c == 'b';
+			} else if (field == 5) {
+				if (c < '0' || c > '9' || moveNumber > 100_000) {
+					moveNumber = 0;
+					break;
+				}
+				moveNumber = moveNumber * 10 + c - '0';
+			}
+		}
+		return (Math.max(moveNumber, 1) - 1) * 2 + (black ? 1 : 0);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void writeLine(List<PgnMovement> movements, int ply) throws IOException {
+		for (PgnMovement movement : movements) {
+			token.setLength(0);
+			token.append(movement.getSan());
+			writeMovementToken(ply / 2 + 1, ply % 2 == 0);
+			for (int nag : movement.getNags()) {
+				writeNag(nag);
+			}
+			if (movement.getComment() != null) {
+				writeComment(movement.getComment());
+			}
+			for (List<PgnMovement> variation : movement.getVariations()) {
+				variationStart = true;
+				numberNeeded = true;
+				writeLine(variation, ply);
+				if (column >= LINE_WIDTH) {
+					newLine();
+				}
+				put(')');
+				numberNeeded = true;
+			}
+			ply++;
+		}
+	}
+	
+	/**
+	 * Writes a tag pair. Tags must be written before the movetext of the game.
+	 * 
+	 * @param name The tag name, like <code>White</code>.
+	 * @param value The tag value. Quotes and backslashes are escaped.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	public void writeTag(String name, CharSequence value) throws IOException {
+		put('[');
+		putText(name);
+		put(' ');
+		put('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				put('\\');
+			}
+			put(c);
+		}
+		put('"');
+		put(']');
+		put('\n');
+		column = 0;
+		tagSection = true;
+	}
+	
+	/**
+	 * Writes a movement, with its movement number when needed, and plays it on the board.
+	 * 
+	 * @param board The board where the movement is played. The movement number is given by the
+	 *        board.
+	 * @param movement The movement, legal in the board.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	public void writeMovement(Board board, Movement movement) throws IOException {
+		token.setLength(0);
+		MovementFormatter.appendSan(board, movement, token);
+		writeMovementToken(board.getFullMoveCounter(), MovementUtil.isWhiteColor(board.getSideToMove()));
+		board.move(movement);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void writeMovementToken(int number, boolean white) throws IOException {
+		if (white || numberNeeded) {
+			startToken(digits(number) + (white ? 1 : 3));
+			putNumber(number);
+			put('.');
+			if (!white) {
+				put('.');
+				put('.');
+			}
+		}
+		startToken(token.length());
+		for (int i = 0; i < token.length(); i++) {
+			put(token.charAt(i));
+		}
+		numberNeeded = false;
+	}
+	
+	/**
+	 * Writes a numeric annotation glyph, like <code>$1</code>, after the last movement.
+	 * 
+	 * @param nag The glyph number.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	public void writeNag(int nag) throws IOException {
+		startToken(digits(nag) + 1);
+		put('$');
+		putNumber(nag);
+	}
+	
+	/**
+	 * Writes a comment, like an engine evaluation, after the last movement. The comment is wrapped
+	 * at the spaces between its words, and closing braces are removed from it.
+	 * 
+	 * @param comment The comment text.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	public void writeComment(CharSequence comment) throws IOException {
+		int length = comment.length();
+		int start = 0;
+		boolean first = true;
+		while (true) {
+			while (start < length && Character.isWhitespace(comment.charAt(start))) {
+				start++;
+			}
+			int end = start;
+			while (end < length && !Character.isWhitespace(comment.charAt(end))) {
+				end++;
+			}
+			int next = end;
+			while (next < length && Character.isWhitespace(comment.charAt(next))) {
+				next++;
+			}
+			boolean last = next == length;
+			startToken(end - start + (first ? 1 : 0) + (last ? 1 : 0));
+			if (first) {
+				put('{');
+			}
+			for (int i = start; i < end; i++) {
+				if (comment.charAt(i) != '}') {
+					put(comment.charAt(i));
+				}
+			}
+			if (last) {
+				put('}');
+				break;
+			}
+			first = false;
+			start = next;
+		}
+		numberNeeded = true;
+	}
+	
+	/**
+	 * Writes the game termination marker and the blank line that ends the game.
+	 * 
+	 * @param result The game result: <code>1-0</code>, <code>0-1</code>, <code>1/2-1/2</code> or
+	 *        <code>*</code>.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	public void endGame(String result) throws IOException {
+		startToken(result.length());
+		putText(result);
+		put('\n');
+		put('\n');
+		column = 0;
+		tagSection = false;
+		variationStart = false;
+		numberNeeded = true;
+		count++;
+	}
+	
+	/**
+	 * Retrieves the number of games written.
+	 * 
+	 * @return The number of games ended with {@link #endGame(String)}.
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	@Override
+	public void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		if (buffer == null) {
+			return;
+		}
+		try {
+			flush();
+			channel.close();
+		} finally {
+			if (buffer.capacity() == DEFAULT_BUFFER_SIZE) {
+				buffer.clear();
+				BUFFER_POOL.offer(buffer);
+			}
+			buffer = null;
+		}
+	}
+	
+	/**
+	 * Starts a movetext token: ends the tag section, writes the space or the line break before the
+	 * token and opens the variation that starts with the token.
+	 * 
+	 * @param length The token length, in characters.
+	 * 
+	 * @throws IOException If the output can't be written.
+	 */
+	private void startToken(int length) throws IOException {
+		if (tagSection) {
+			newLine();
+			tagSection = false;
+		}
+		if (variationStart) {
+			length++;
+		}
+		if (column > 0) {
+			if (column + 1 + length > LINE_WIDTH) {
+				newLine();
+			} else {
+				put(' ');
+			}
+		}
+		if (variationStart) {
+			put('(');
+			variationStart = false;
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void newLine() throws IOException {
+		put('\n');
+		column = 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void putText(String text) throws IOException {
+		for (int i = 0; i < text.length(); i++) {
+			put(text.charAt(i));
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void putNumber(int number) throws IOException {
+		for (int divisor = pow10(digits(number) - 1); divisor > 0; divisor /= 10) {
+			put((char) ('0' + number / divisor % 10));
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int digits(int number) {
+		int digits = 1;
+		while (number >= 10) {
+			number /= 10;
+			digits++;
+		}
+		return digits;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int pow10(int exponent) {
+		int value = 1;
+		for (int i = 0; i < exponent; i++) {
+			value *= 10;
+		}
+		return value;
+	}
+	
+	/**
+	 * Writes a character encoded as UTF-8. A surrogate pair is encoded when its low surrogate is
+	 * written.
+	 * 
+	 * @param c The character.
+	 * 
+	 * @throws IOException If the buffer is full and can't be flushed.
+	 */
+	private void put(char c) throws IOException {
+		if (buffer.remaining() < 4) {
+			flush();
+		}
+		if (c < 0x80) {
+			buffer.put((byte) c);
+		} else if (c < 0x800) {
+			buffer.put((byte) (0xC0 | c >> 6));
+			buffer.put((byte) (0x80 | c & 0x3F));
+		} else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+			return;
+		} else if (Character.isLowSurrogate(c)) {
+			int codePoint = Character.toCodePoint(highSurrogate, c);
+			buffer.put((byte) (0xF0 | codePoint >> 18));
+			buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+			buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+			buffer.put((byte) (0x80 | codePoint & 0x3F));
+		} else {
+			buffer.put((byte) (0xE0 | c >> 12));
+			buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+			buffer.put((byte) (0x80 | c & 0x3F));
+		}
+		column++;
+	}
+}
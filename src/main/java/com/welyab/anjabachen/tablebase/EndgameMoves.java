@@ -0,0 +1,475 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import java.util.Arrays;
+
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Movement generation for the few pieces of a tablebase position, forward and backward.
+ * 
+ * <p>
+ * Positions are a list of piece codes and a list of squares, where the square is
+ * <code>row * 8 + column</code> with the {@link com.welyab.anjabachen.movement.Position} rows
+ * (row 0 is the 8th rank). A negative square means the piece was captured. Endgame positions have
+ * no castling rights and en passant captures are not considered, like in the usual tablebases.
+ * 
+ * <p>
+ * Movements are encoded in an <code>int</code>: the piece index (bits 0-2), the target square (bits
+ * 3-8), the promotion piece type (bits 9-11) and the index of the captured piece plus one (bits
+ * 12-14). Unmovements use only the piece index and the square the piece came from.
+ * 
+ * @author Welyab Paula
+ */
+final class EndgameMoves {
+	
+	/** The maximum number of movements of a position with five pieces. */
+	static final int MAX_MOVEMENTS = 256;
+	
+	@SuppressWarnings("javadoc")
+	private static final int[][] KING_STEPS = steps(new int[][] {
+		{ -1, -1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 }
+	});
+	
+	@SuppressWarnings("javadoc")
+	private static final int[][] KNIGHT_STEPS = steps(new int[][] {
+		{ -2, -1 }, { -2, 1 }, { -1, -2 }, { -1, 2 }, { 1, -2 }, { 1, 2 }, { 2, -1 }, { 2, 1 }
+	});
+	
+	@SuppressWarnings("javadoc")
+	private static final int[][][] RAYS = rays(new int[][] {
+		{ -1, 0 }, { 1, 0 }, { 0, -1 }, { 0, 1 }, { -1, -1 }, { -1, 1 }, { 1, -1 }, { 1, 1 }
+	});
+	
+	@SuppressWarnings("javadoc")
+	private static final byte[] PROMOTIONS = {
+		MovementUtil.QUEEN,
+		MovementUtil.ROOK,
+		MovementUtil.BISHOP,
+		MovementUtil.KNIGHT
+	};
+	
+	@SuppressWarnings("javadoc")
+	private EndgameMoves() {
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int[][] steps(int[][] directions) {
+		int[][] steps = new int[64][];
+		for (int square = 0; square < 64; square++) {
+			int[] targets = new int[directions.length];
+			int count = 0;
+			for (int[] direction : directions) {
+				int row = square / 8 + direction[0];
+				int column = square % 8 + direction[1];
+				if (row >= 0 && row < 8 && column >= 0 && column < 8) {
+					targets[count++] = row * 8 + column;
+				}
+			}
+			steps[square] = Arrays.copyOf(targets, count);
+		}
+		return steps;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int[][][] rays(int[][] directions) {
+		int[][][] rays = new int[64][directions.length][];
+		for (int square = 0; square < 64; square++) {
+			for (int d = 0; d < directions.length; d++) {
+				int[] ray = new int[7];
+				int count = 0;
+				int row = square / 8 + directions[d][0];
+				int column = square % 8 + directions[d][1];
+				while (row >= 0 && row < 8 && column >= 0 && column < 8) {
+					ray[count++] = row * 8 + column;
+					row += directions[d][0];
+					column += directions[d][1];
+				}
+				rays[square][d] = Arrays.copyOf(ray, count);
+			}
+		}
+		return rays;
+	}
+	
+	/**
+	 * Computes the occupied squares.
+	 * 
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * 
+	 * @return The occupancy bit mask.
+	 */
+	static long occupancy(int[] squares, int count) {
+		long occupancy = 0;
+		for (int i = 0; i < count; i++) {
+			if (squares[i] >= 0) {
+				occupancy |= 1L << squares[i];
+			}
+		}
+		return occupancy;
+	}
+	
+	/**
+	 * Retrieves the index of the piece in the given square.
+	 * 
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * @param square The square.
+	 * 
+	 * @return The piece index, or <code>-1</code> if the square is empty.
+	 */
+	static int pieceAt(int[] squares, int count, int square) {
+		for (int i = 0; i < count; i++) {
+			if (squares[i] == square) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Evaluates if a square is attacked by the pieces of the given color.
+	 * 
+	 * @param square The square.
+	 * @param color The color of the attacker.
+	 * @param pieces The piece codes.
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * @param occupancy The occupied squares.
+	 * 
+	 * @return A value <code>true</code> if the square is attacked.
+	 */
+	static boolean isAttacked(int square, byte color, byte[] pieces, int[] squares, int count, long occupancy) {
+		for (int i = 0; i < count; i++) {
+			int from = squares[i];
+			if (from < 0 || MovementUtil.getPieceColor(pieces[i]) != color) {
+				continue;
+			}
+			int rowDistance = square / 8 - from / 8;
+			int columnDistance = square % 8 - from % 8;
+			switch (MovementUtil.getPieceType(pieces[i])) {
+				case MovementUtil.KING -> {
+					if (Math.abs(rowDistance) <= 1 && Math.abs(columnDistance) <= 1 && from != square) {
+						return true;
+					}
+				}
+				case MovementUtil.KNIGHT -> {
+					int product = Math.abs(rowDistance * columnDistance);
+					if (product == 2) {
+						return true;
+					}
+				}
+				case MovementUtil.PAWN -> {
+					int forward = color == MovementUtil.WHITE ? -1 : 1;
+					if (rowDistance == forward && Math.abs(columnDistance) == 1) {
+						return true;
+					}
+				}
+				case MovementUtil.ROOK -> {
+					if ((rowDistance == 0 || columnDistance == 0) && isPathClear(from, square, occupancy)) {
+						return true;
+					}
+				}
+				case MovementUtil.BISHOP -> {
+					if (Math.abs(rowDistance) == Math.abs(columnDistance) && isPathClear(from, square, occupancy)) {
+						return true;
+					}
+				}
+				case MovementUtil.QUEEN -> {
+					boolean aligned = rowDistance == 0
+							|| columnDistance == 0
+							|| Math.abs(rowDistance) == Math.abs(columnDistance);
+					if (aligned && isPathClear(from, square, occupancy)) {
+						return true;
+					}
+				}
+				default -> {
+				}
+			}
+		}
+		return false;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isPathClear(int from, int to, long occupancy) {
+		if (from == to) {
+			return false;
+		}
+		int rowStep = Integer.signum(to / 8 - from / 8);
+		int columnStep = Integer.signum(to % 8 - from % 8);
+		int step = rowStep * 8 + columnStep;
+		for (int square = from + step; square != to; square += step) {
+			if ((occupancy & 1L << square) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Evaluates if the king of the given color is attacked.
+	 * 
+	 * @param color The king color.
+	 * @param pieces The piece codes.
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * 
+	 * @return A value <code>true</code> if the king is in check.
+	 */
+	static boolean isInCheck(byte color, byte[] pieces, int[] squares, int count) {
+		int king = color == MovementUtil.WHITE ? squares[0] : squares[1];
+		return isAttacked(
+			king,
+			MovementUtil.getOppositeColor(color),
+			pieces,
+			squares,
+			count,
+			occupancy(squares, count)
+		);
+	}
+	
+	/**
+	 * Evaluates if the position is legal: no two pieces in the same square, no pawns in the first
+	 * or last ranks, and the side that is not to move is not in check.
+	 * 
+	 * @param pieces The piece codes.
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * @param sideToMove The side to move.
+	 * 
+	 * @return A value <code>true</code> if the position is legal.
+	 */
+	static boolean isLegal(byte[] pieces, int[] squares, int count, byte sideToMove) {
+		long occupancy = 0;
+		for (int i = 0; i < count; i++) {
+			long bit = 1L << squares[i];
+			if ((occupancy & bit) != 0) {
+				return false;
+			}
+			occupancy |= bit;
+			if (MovementUtil.isPawn(pieces[i]) && (squares[i] < 8 || squares[i] >= 56)) {
+				return false;
+			}
+		}
+		return !isInCheck(MovementUtil.getOppositeColor(sideToMove), pieces, squares, count);
+	}
+	
+	/**
+	 * Generates the pseudo legal movements of the side to move. The caller must check if the
+	 * movement leaves the king in check.
+	 * 
+	 * @param pieces The piece codes.
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * @param sideToMove The side to move.
+	 * @param movements Receives the encoded movements.
+	 * 
+	 * @return The number of movements.
+	 */
+	static int generateMovements(byte[] pieces, int[] squares, int count, byte sideToMove, int[] movements) {
+		long occupancy = occupancy(squares, count);
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			int from = squares[i];
+			if (from < 0 || MovementUtil.getPieceColor(pieces[i]) != sideToMove) {
+				continue;
+			}
+			byte type = MovementUtil.getPieceType(pieces[i]);
+			if (type == MovementUtil.PAWN) {
+				size = addPawnMovements(i, pieces, squares, count, occupancy, movements, size);
+			} else if (type == MovementUtil.KING || type == MovementUtil.KNIGHT) {
+				for (int target : type == MovementUtil.KING ? KING_STEPS[from] : KNIGHT_STEPS[from]) {
+					size = addTarget(i, target, pieces, squares, count, occupancy, movements, size);
+				}
+			} else {
+				for (int d = firstRay(type); d < lastRay(type); d++) {
+					for (int target : RAYS[from][d]) {
+						size = addTarget(i, target, pieces, squares, count, occupancy, movements, size);
+						if ((occupancy & 1L << target) != 0) {
+							break;
+						}
+					}
+				}
+			}
+		}
+		return size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int firstRay(byte type) {
+		return type == MovementUtil.BISHOP ? 4 : 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int lastRay(byte type) {
+		return type == MovementUtil.ROOK ? 4 : 8;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int addTarget(
+		int piece,
+		int target,
+		byte[] pieces,
+		int[] squares,
+		int count,
+		long occupancy,
+		int[] movements,
+		int size
+	) {
+		if ((occupancy & 1L << target) == 0) {
+			movements[size++] = encode(piece, target, MovementUtil.EMPTY, -1);
+			return size;
+		}
+		int captured = pieceAt(squares, count, target);
+		if (MovementUtil.getPieceColor(pieces[captured]) != MovementUtil.getPieceColor(pieces[piece])
+				&& !MovementUtil.isKing(pieces[captured])) {
+			movements[size++] = encode(piece, target, MovementUtil.EMPTY, captured);
+		}
+		return size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int addPawnMovements(
+		int piece,
+		byte[] pieces,
+		int[] squares,
+		int count,
+		long occupancy,
+		int[] movements,
+		int size
+	) {
+		int from = squares[piece];
+		boolean white = MovementUtil.isWhite(pieces[piece]);
+		int forward = white ? -8 : 8;
+		int target = from + forward;
+		if ((occupancy & 1L << target) == 0) {
+			size = addPawnTarget(piece, target, -1, movements, size);
+			int startRow = white ? 6 : 1;
+			int doubleTarget = target + forward;
+			if (from / 8 == startRow && (occupancy & 1L << doubleTarget) == 0) {
+				movements[size++] = encode(piece, doubleTarget, MovementUtil.EMPTY, -1);
+			}
+		}
+		for (int side = -1; side <= 1; side += 2) {
+			int column = from % 8 + side;
+			if (column < 0 || column > 7) {
+				continue;
+			}
+			int captureTarget = target + side;
+			if ((occupancy & 1L << captureTarget) == 0) {
+				continue;
+			}
+			int captured = pieceAt(squares, count, captureTarget);
+			if (MovementUtil.getPieceColor(pieces[captured]) != MovementUtil.getPieceColor(pieces[piece])
+					&& !MovementUtil.isKing(pieces[captured])) {
+				size = addPawnTarget(piece, captureTarget, captured, movements, size);
+			}
+		}
+		return size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int addPawnTarget(int piece, int target, int captured, int[] movements, int size) {
+		if (target < 8 || target >= 56) {
+			for (byte promotion : PROMOTIONS) {
+				movements[size++] = encode(piece, target, promotion, captured);
+			}
+		} else {
+			movements[size++] = encode(piece, target, MovementUtil.EMPTY, captured);
+		}
+		return size;
+	}
+	
+	/**
+	 * Generates the movements that the given side could have made to reach the position, without
+	 * captures and promotions, which change the material. The caller must check if the previous
+	 * position is legal.
+	 * 
+	 * @param pieces The piece codes.
+	 * @param squares The piece squares.
+	 * @param count The number of pieces.
+	 * @param mover The side that made the movement.
+	 * @param unmovements Receives the encoded unmovements.
+	 * 
+	 * @return The number of unmovements.
+	 */
+	static int generateUnmovements(byte[] pieces, int[] squares, int count, byte mover, int[] unmovements) {
+		long occupancy = occupancy(squares, count);
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			int to = squares[i];
+			if (MovementUtil.getPieceColor(pieces[i]) != mover) {
+				continue;
+			}
+			byte type = MovementUtil.getPieceType(pieces[i]);
+			if (type == MovementUtil.PAWN) {
+				boolean white = MovementUtil.isWhite(pieces[i]);
+				int backward = white ? 8 : -8;
+				int origin = to + backward;
+				int originRow = origin / 8;
+				if (originRow >= 1 && originRow <= 6 && (occupancy & 1L << origin) == 0) {
+					unmovements[size++] = encode(i, origin, MovementUtil.EMPTY, -1);
+					int doubleOrigin = origin + backward;
+					if (to / 8 == (white ? 4 : 3) && (occupancy & 1L << doubleOrigin) == 0) {
+						unmovements[size++] = encode(i, doubleOrigin, MovementUtil.EMPTY, -1);
+					}
+				}
+			} else if (type == MovementUtil.KING || type == MovementUtil.KNIGHT) {
+				for (int origin : type == MovementUtil.KING ? KING_STEPS[to] : KNIGHT_STEPS[to]) {
+					if ((occupancy & 1L << origin) == 0) {
+						unmovements[size++] = encode(i, origin, MovementUtil.EMPTY, -1);
+					}
+				}
+			} else {
+				for (int d = firstRay(type); d < lastRay(type); d++) {
+					for (int origin : RAYS[to][d]) {
+						if ((occupancy & 1L << origin) != 0) {
+							break;
+						}
+						unmovements[size++] = encode(i, origin, MovementUtil.EMPTY, -1);
+					}
+				}
+			}
+		}
+		return size;
+	}
+	
+	@SuppressWarnings("javadoc")
+	static int encode(int piece, int square, byte promotion, int captured) {
+		return piece | square << 3 | promotion << 9 | captured + 1 << 12;
+	}
+	
+	@SuppressWarnings("javadoc")
+	static int getPiece(int movement) {
+		return movement & 0x7;
+	}
+	
+	@SuppressWarnings("javadoc")
+	static int getSquare(int movement) {
+		return movement >>> 3 & 0x3F;
+	}
+	
+	@SuppressWarnings("javadoc")
+	static byte getPromotion(int movement) {
+		return (byte) (movement >>> 9 & 0x7);
+	}
+	
+	@SuppressWarnings("javadoc")
+	static int getCaptured(int movement) {
+		return (movement >>> 12 & 0x7) - 1;
+	}
+}
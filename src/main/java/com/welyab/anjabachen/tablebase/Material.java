@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import java.util.Arrays;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * The set of pieces of an endgame, like <code>KQvK</code> or <code>KRPvKR</code>.
+ * 
+ * <p>
+ * The pieces are kept in the order used by the tablebase index: the white king, the black king,
+ * the other white pieces and the other black pieces, from the most to the least valuable.
+ * 
+ * @author Welyab Paula
+ */
+public final class Material {
+	
+	@SuppressWarnings("javadoc")
+	private static final String PIECE_ORDER = "KQRBNP";
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PIECE_VALUES = {
+		0, 1, 3, 3, 5, 9, 0
+	};
+	
+	@SuppressWarnings("javadoc")
+	private final byte[] pieces;
+	
+	@SuppressWarnings("javadoc")
+	private final String signature;
+	
+	@SuppressWarnings("javadoc")
+	private Material(String white, String black) {
+		signature = white + "v" + black;
+		pieces = new byte[white.length() + black.length()];
+		pieces[0] = MovementUtil.WHITE_KING;
+		pieces[1] = MovementUtil.BLACK_KING;
+		int index = 2;
+		for (int i = 1; i < white.length(); i++) {
+			pieces[index++] = MovementUtil.getPiece(MovementUtil.getPieceType(white.charAt(i)), MovementUtil.WHITE);
+		}
+		for (int i = 1; i < black.length(); i++) {
+			pieces[index++] = MovementUtil.getPiece(MovementUtil.getPieceType(black.charAt(i)), MovementUtil.BLACK);
+		}
+	}
+	
+	/**
+	 * Parses a material signature, like <code>KQvK</code>. The letters of each side may come in
+	 * any order, but each side must have exactly one king.
+	 * 
+	 * @param signature The signature.
+	 * 
+	 * @return The material.
+	 * 
+	 * @throws ChessException If the signature is invalid.
+	 */
+	public static Material parse(String signature) {
+		int separator = signature.indexOf('v');
+		if (separator < 0 || separator != signature.lastIndexOf('v')) {
+			throw new ChessException(String.format("Invalid material signature: %s", signature));
+		}
+		return new Material(
+			normalize(signature.substring(0, separator), signature),
+			normalize(signature.substring(separator + 1), signature)
+		);
+	}
+	
+	/**
+	 * Creates the material of the given pieces.
+	 * 
+	 * @param pieceCodes The piece codes, in any order.
+	 * @param count The number of pieces.
+	 * 
+	 * @return The material.
+	 * 
+	 * @throws ChessException If one of the sides doesn't have exactly one king.
+	 */
+	public static Material of(byte[] pieceCodes, int count) {
+		StringBuilder white = new StringBuilder();
+		StringBuilder black = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			char letter = Character.toUpperCase(MovementUtil.pieceCodeToLetter(pieceCodes[i]));
+			(MovementUtil.isWhite(pieceCodes[i]) ? white : black).append(letter);
+		}
+		return new Material(normalize(white.toString(), null), normalize(black.toString(), null));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String normalize(String side, String signature) {
+		char[] letters = side.toUpperCase().toCharArray();
+		int kings = 0;
+		for (char letter : letters) {
+			int order = PIECE_ORDER.indexOf(letter);
+			if (order < 0) {
+				throw new ChessException(String.format("Invalid material signature: %s", signature));
+			}
+			if (order == 0) {
+				kings++;
+			}
+		}
+		if (kings != 1) {
+			throw new ChessException(
+				String.format("Each side must have exactly one king: %s", signature != null ? signature : side)
+			);
+		}
+		Character[] sorted = new Character[letters.length];
+		for (int i = 0; i < letters.length; i++) {
+			sorted[i] = letters[i];
+		}
+		Arrays.sort(sorted, (a, b) -> PIECE_ORDER.indexOf(a) - PIECE_ORDER.indexOf(b));
+		StringBuilder builder = new StringBuilder();
+		for (Character letter : sorted) {
+			builder.append(letter.charValue());
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Retrieves the pieces, in the tablebase index order.
+	 * 
+	 * @return A copy of the piece codes.
+	 */
+	public byte[] getPieces() {
+		return pieces.clone();
+	}
+	
+	/**
+	 * Retrieves the piece in the given index order.
+	 * 
+	 * @param index The piece index.
+	 * 
+	 * @return The piece code.
+	 */
+	public byte getPiece(int index) {
+		return pieces[index];
+	}
+	
+	/**
+	 * Retrieves the number of pieces, kings included.
+	 * 
+	 * @return The number of pieces.
+	 */
+	public int size() {
+		return pieces.length;
+	}
+	
+	/**
+	 * Indicates if there are pawns in the material. Tables with pawns have less symmetries.
+	 * 
+	 * @return A value <code>true</code> if at least one side has pawns.
+	 */
+	public boolean hasPawns() {
+		for (byte piece : pieces) {
+			if (MovementUtil.isPawn(piece)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Creates the material with the colors of the pieces swapped: <code>KvKQ</code> becomes
+	 * <code>KQvK</code>.
+	 * 
+	 * @return The flipped material.
+	 */
+	public Material flip() {
+		int separator = signature.indexOf('v');
+		return new Material(signature.substring(separator + 1), signature.substring(0, separator));
+	}
+	
+	/**
+	 * Indicates if this is the orientation stored in the tablebases. Tables are generated with the
+	 * stronger side as white, so only one of <code>KQvK</code> and <code>KvKQ</code> is generated,
+	 * and the other is probed with the colors swapped.
+	 * 
+	 * @return A value <code>true</code> if this is the stored orientation.
+	 */
+	public boolean isCanonical() {
+		int separator = signature.indexOf('v');
+		String white = signature.substring(0, separator);
+		String black = signature.substring(separator + 1);
+		int difference = value(white) - value(black);
+		if (difference != 0) {
+			return difference > 0;
+		}
+		if (white.length() != black.length()) {
+			return white.length() > black.length();
+		}
+		for (int i = 0; i < white.length(); i++) {
+			int order = PIECE_ORDER.indexOf(white.charAt(i)) - PIECE_ORDER.indexOf(black.charAt(i));
+			if (order != 0) {
+				return order < 0;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Retrieves the stored orientation of this material.
+	 * 
+	 * @return This material, if it is canonical, or the flipped one.
+	 * 
+	 * @see #isCanonical()
+	 */
+	public Material canonical() {
+		return isCanonical() ? this : flip();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int value(String side) {
+		int value = 0;
+		for (int i = 0; i < side.length(); i++) {
+			value += PIECE_VALUES[MovementUtil.getPieceType(side.charAt(i))];
+		}
+		return value;
+	}
+	
+	/**
+	 * Indicates if the material is only the two kings.
+	 * 
+	 * @return A value <code>true</code> if there are only kings.
+	 */
+	public boolean isBareKings() {
+		return pieces.length == 2;
+	}
+	
+	@Override
+	public int hashCode() {
+		return signature.hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof Material && ((Material) obj).signature.equals(signature);
+	}
+	
+	@Override
+	public String toString() {
+		return signature;
+	}
+}
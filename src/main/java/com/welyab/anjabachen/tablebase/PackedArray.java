@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * An array of small unsigned integers packed into <code>long</code> words. Entries never cross a
+ * word boundary, so each one can be updated atomically by a compare and set of its word, and
+ * different threads may update entries that share a word.
+ * 
+ * @author Welyab Paula
+ */
+final class PackedArray {
+	
+	@SuppressWarnings("javadoc")
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+	
+	@SuppressWarnings("javadoc")
+	private final long[] words;
+	
+	@SuppressWarnings("javadoc")
+	private final long length;
+	
+	@SuppressWarnings("javadoc")
+	private final int bits;
+	
+	@SuppressWarnings("javadoc")
+	private final int entriesPerWord;
+	
+	@SuppressWarnings("javadoc")
+	private final long mask;
+	
+	/**
+	 * Creates an array with all entries set to zero.
+	 * 
+	 * @param length The number of entries.
+	 * @param bits The number of bits of each entry, from 1 to 32.
+	 */
+	PackedArray(long length, int bits) {
+		this(length, bits, new long[wordCount(length, bits)]);
+	}
+	
+	/**
+	 * Creates an array over existing words.
+	 * 
+	 * @param length The number of entries.
+	 * @param bits The number of bits of each entry, from 1 to 32.
+	 * @param words The words, as returned by {@link #getWords()}.
+	 */
+	PackedArray(long length, int bits, long[] words) {
+		if (bits < 1 || bits > 32) {
+			throw new IllegalArgumentException(String.format("Invalid number of bits: %d", bits));
+		}
+		this.length = length;
+		this.bits = bits;
+		this.words = words;
+		entriesPerWord = 64 / bits;
+		mask = (1L << bits) - 1;
+	}
+	
+	/**
+	 * Computes the number of words needed to store the given number of entries.
+	 * 
+	 * @param length The number of entries.
+	 * @param bits The number of bits of each entry.
+	 * 
+	 * @return The number of words.
+	 */
+	static int wordCount(long length, int bits) {
+		int entriesPerWord = 64 / bits;
+		long count = (length + entriesPerWord - 1) / entriesPerWord;
+		if (count > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException(String.format("Too many entries: %d", length));
+		}
+		return (int) count;
+	}
+	
+	/**
+	 * Computes the number of bits needed to store values from zero up to the given value.
+	 * 
+	 * @param maxValue The maximum value.
+	 * 
+	 * @return The number of bits.
+	 */
+	static int bitsFor(int maxValue) {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(maxValue));
+	}
+	
+	@SuppressWarnings("javadoc")
+	long length() {
+		return length;
+	}
+	
+	@SuppressWarnings("javadoc")
+	int getBits() {
+		return bits;
+	}
+	
+	@SuppressWarnings("javadoc")
+	long[] getWords() {
+		return words;
+	}
+	
+	/**
+	 * Retrieves an entry.
+	 * 
+	 * @param index The entry index.
+	 * 
+	 * @return The value.
+	 */
+	int get(long index) {
+		long word = (long) WORDS.getOpaque(words, (int) (index / entriesPerWord));
+		return (int) (word >>> shift(index) & mask);
+	}
+	
+	/**
+	 * Changes an entry, atomically with respect to the other entries of the same word.
+	 * 
+	 * @param index The entry index.
+	 * @param value The new value.
+	 */
+	void set(long index, int value) {
+		int wordIndex = (int) (index / entriesPerWord);
+		int shift = shift(index);
+		long word;
+		long updated;
+		do {
+			word = (long) WORDS.getVolatile(words, wordIndex);
+			updated = word & ~(mask << shift) | (value & mask) << shift;
+		} while (!WORDS.compareAndSet(words, wordIndex, word, updated));
+	}
+	
+	/**
+	 * Changes an entry only if it still has the expected value.
+	 * 
+	 * @param index The entry index.
+	 * @param expected The expected current value.
+	 * @param value The new value.
+	 * 
+	 * @return A value <code>true</code> if the entry was changed.
+	 */
+	boolean compareAndSet(long index, int expected, int value) {
+		int wordIndex = (int) (index / entriesPerWord);
+		int shift = shift(index);
+		long word;
+		long updated;
+		do {
+			word = (long) WORDS.getVolatile(words, wordIndex);
+			if ((word >>> shift & mask) != expected) {
+				return false;
+			}
+			updated = word & ~(mask << shift) | (value & mask) << shift;
+		} while (!WORDS.compareAndSet(words, wordIndex, word, updated));
+		return true;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int shift(long index) {
+		return (int) (index % entriesPerWord) * bits;
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.LocalizedPiece;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * The distance to mate of every position of a material set, for both sides to move.
+ * 
+ * <p>
+ * Each entry keeps a small code: <code>0</code> for draws, <code>1</code> for illegal positions
+ * and <code>plies + 2</code> for positions where the mate comes after the given number of plies
+ * with best play from both sides. An odd number of plies means the side to move mates, an even
+ * number means the side to move is mated (zero plies is a checkmate).
+ * 
+ * <p>
+ * The file format is a 64 bytes header followed by the bit packed entries of the positions with
+ * white to move and then the ones with black to move, as little endian <code>long</code> words.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see TablebaseGenerator
+ */
+public final class Tablebase {
+	
+	/** The result of a won position. */
+	public static final int WIN = 1;
+	
+	/** The result of a drawn position. */
+	public static final int DRAW = 0;
+	
+	/** The result of a lost position. */
+	public static final int LOSS = -1;
+	
+	/** The extension of the tablebase files. */
+	public static final String FILE_EXTENSION = ".atb";
+	
+	@SuppressWarnings("javadoc")
+	static final int MAGIC = 0x41544231;
+	
+	@SuppressWarnings("javadoc")
+	static final int HEADER_SIZE = 64;
+	
+	@SuppressWarnings("javadoc")
+	static final int SIGNATURE_OFFSET = 24;
+	
+	@SuppressWarnings("javadoc")
+	static final int DRAW_CODE = 0;
+	
+	@SuppressWarnings("javadoc")
+	static final int ILLEGAL_CODE = 1;
+	
+	@SuppressWarnings("javadoc")
+	private final Material material;
+	
+	@SuppressWarnings("javadoc")
+	private final TablebaseIndex index;
+	
+	@SuppressWarnings("javadoc")
+	private final PackedArray whiteToMove;
+	
+	@SuppressWarnings("javadoc")
+	private final PackedArray blackToMove;
+	
+	@SuppressWarnings("javadoc")
+	Tablebase(Material material, PackedArray whiteToMove, PackedArray blackToMove) {
+		this.material = material;
+		this.whiteToMove = whiteToMove;
+		this.blackToMove = blackToMove;
+		index = new TablebaseIndex(material);
+	}
+	
+	/**
+	 * Retrieves the material of the stored positions. The table also answers the positions with
+	 * the colors swapped.
+	 * 
+	 * @return The material.
+	 */
+	public Material getMaterial() {
+		return material;
+	}
+	
+	/**
+	 * Evaluates the position of the given board.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return {@link #WIN}, {@link #DRAW} or {@link #LOSS}, from the point of view of the side to
+	 *         move.
+	 * 
+	 * @throws ChessException If the material of the board is not the material of this table, or if
+	 *         the position is illegal.
+	 */
+	public int probeWdl(Board board) {
+		int code = probeCode(board);
+		if (code == DRAW_CODE) {
+			return DRAW;
+		}
+		return isWinCode(code) ? WIN : LOSS;
+	}
+	
+	/**
+	 * Retrieves the distance to mate of the position of the given board.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The number of plies until the mate with best play from both sides, or
+	 *         <code>-1</code> if the position is a draw. Odd distances mean the side to move mates,
+	 *         even distances mean the side to move is mated.
+	 * 
+	 * @throws ChessException If the material of the board is not the material of this table, or if
+	 *         the position is illegal.
+	 */
+	public int probeDtm(Board board) {
+		int code = probeCode(board);
+		return code == DRAW_CODE ? -1 : code - 2;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int probeCode(Board board) {
+		List<LocalizedPiece> localizedPieces = board.getLocalizedPieces();
+		if (localizedPieces.size() != material.size()) {
+			throw new ChessException(String.format("The position is not a %s position", material));
+		}
+		byte[] pieces = new byte[localizedPieces.size()];
+		int[] boardSquares = new int[localizedPieces.size()];
+		for (int i = 0; i < pieces.length; i++) {
+			LocalizedPiece localizedPiece = localizedPieces.get(i);
+			Position position = localizedPiece.getPosition();
+			pieces[i] = localizedPiece.getPieceCode();
+			boardSquares[i] = position.row * 8 + position.column;
+		}
+		
+		Material boardMaterial = Material.of(pieces, pieces.length);
+		boolean flip;
+		if (boardMaterial.equals(material)) {
+			flip = false;
+		} else if (boardMaterial.equals(material.flip())) {
+			flip = true;
+		} else {
+			throw new ChessException(String.format("The position is not a %s position", material));
+		}
+		
+		int[] squares = new int[pieces.length];
+		boolean[] used = new boolean[pieces.length];
+		for (int k = 0; k < squares.length; k++) {
+			byte expected = (byte) (flip ? -material.getPiece(k) : material.getPiece(k));
+			for (int i = 0; i < pieces.length; i++) {
+				if (!used[i] && pieces[i] == expected) {
+					used[i] = true;
+					squares[k] = flip ? boardSquares[i] ^ 56 : boardSquares[i];
+					break;
+				}
+			}
+		}
+		byte sideToMove = flip ? MovementUtil.getOppositeColor(board.getSideToMove()) : board.getSideToMove();
+		int code = getCode(index.encode(squares), sideToMove);
+		if (code == ILLEGAL_CODE) {
+			throw new ChessException("Illegal position");
+		}
+		return code;
+	}
+	
+	/**
+	 * Retrieves the code of an entry.
+	 * 
+	 * @param entry The entry index.
+	 * @param sideToMove The side to move.
+	 * 
+	 * @return The entry code.
+	 */
+	int getCode(long entry, byte sideToMove) {
+		return (sideToMove == MovementUtil.WHITE ? whiteToMove : blackToMove).get(entry);
+	}
+	
+	@SuppressWarnings("javadoc")
+	TablebaseIndex getIndex() {
+		return index;
+	}
+	
+	@SuppressWarnings("javadoc")
+	static boolean isWinCode(int code) {
+		return code > ILLEGAL_CODE && (code - 2 & 1) != 0;
+	}
+	
+	@SuppressWarnings("javadoc")
+	static boolean isLossCode(int code) {
+		return code > ILLEGAL_CODE && (code - 2 & 1) == 0;
+	}
+	
+	/**
+	 * Writes the table to a file.
+	 * 
+	 * @param file The file path.
+	 * 
+	 * @throws IOException If the file can't be written.
+	 */
+	public void write(Path file) throws IOException {
+		try (
+			FileChannel channel = FileChannel.open(
+				file,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING
+			)
+		) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC);
+			header.putInt(whiteToMove.getBits());
+			header.putLong(whiteToMove.length());
+			header.putLong(whiteToMove.getWords().length);
+			header.put(material.toString().getBytes(StandardCharsets.US_ASCII));
+			header.clear();
+			writeFully(channel, header);
+			
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			for (PackedArray array : new PackedArray[] {
+				whiteToMove,
+				blackToMove
+			}) {
+				for (long word : array.getWords()) {
+					if (!buffer.hasRemaining()) {
+						buffer.flip();
+						writeFully(channel, buffer);
+						buffer.clear();
+					}
+					buffer.putLong(word);
+				}
+			}
+			buffer.flip();
+			writeFully(channel, buffer);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return material.toString();
+	}
+}
@@ -0,0 +1,658 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Generates endgame tablebases by retrograde analysis.
+ * 
+ * <p>
+ * The generation of a table starts by evaluating every position of the material: checkmates are
+ * marked as lost, and captures and promotions, which lead to the already generated tables of the
+ * smaller material, give the first wins and losses. Then, ply by ply, the positions decided in the
+ * previous ply are expanded backwards with unmovements: the predecessors of a lost position are
+ * won, and a predecessor of a won position is lost when all its movements lead to won positions.
+ * The positions never decided are draws.
+ * 
+ * <p>
+ * The tables needed by captures and promotions are generated first, recursively. Each pass over
+ * the positions is split among the worker threads, and the distances are kept in bit packed
+ * arrays updated with atomic operations, so the threads share a single copy of the table.
+ * 
+ * <pre>
+ * TablebaseGenerator generator = TablebaseGenerator.builder()
+ * 	.threads(8)
+ * 	.directory(Paths.get("tablebases"))
+ * 	.build();
+ * generator.generate("KRvK");
+ * </pre>
+ * 
+ * @author Welyab Paula
+ */
+public final class TablebaseGenerator {
+	
+	/** The maximum number of pieces, kings included, of the generated tables. */
+	public static final int MAX_PIECES = 5;
+	
+	@SuppressWarnings("javadoc")
+	private static final int GENERATION_BITS = 10;
+	
+	@SuppressWarnings("javadoc")
+	private static final int MAX_DISTANCE = (1 << GENERATION_BITS) - 3;
+	
+	@SuppressWarnings("javadoc")
+	private static final int CHUNK_SIZE = 1 << 12;
+	
+	@SuppressWarnings("javadoc")
+	private final int threads;
+	
+	@SuppressWarnings("javadoc")
+	private final Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private final Map<Material, Tablebase> tables;
+	
+	@SuppressWarnings("javadoc")
+	private TablebaseGenerator(Builder builder) {
+		threads = builder.threads;
+		directory = builder.directory;
+		tables = new LinkedHashMap<>();
+	}
+	
+	/**
+	 * Generates the table of the given material, and the tables it depends on.
+	 * 
+	 * @param signature The material signature, like <code>KQvK</code>.
+	 * 
+	 * @return The table.
+	 * 
+	 * @throws ChessException If the signature is invalid or has too many pieces.
+	 * @throws UncheckedIOException If a table can't be written.
+	 */
+	public Tablebase generate(String signature) {
+		return generate(Material.parse(signature));
+	}
+	
+	/**
+	 * Generates the table of the given material, and the tables it depends on. Tables already
+	 * generated by this generator are reused. When a directory is configured, each generated table
+	 * is written to a file named after its material, like <code>KQvK.atb</code>.
+	 * 
+	 * @param material The material.
+	 * 
+	 * @return The table. Materials with the colors swapped share the same table.
+	 * 
+	 * @throws ChessException If the material has too many pieces.
+	 * @throws UncheckedIOException If a table can't be written.
+	 */
+	public synchronized Tablebase generate(Material material) {
+		Material canonical = material.canonical();
+		Tablebase table = tables.get(canonical);
+		if (table != null) {
+			return table;
+		}
+		if (canonical.size() > MAX_PIECES) {
+			throw new ChessException(String.format("Tables are limited to %d pieces: %s", MAX_PIECES, material));
+		}
+		for (Material dependency : getDependencies(canonical)) {
+			generate(dependency);
+		}
+		table = new Generation(canonical).run();
+		tables.put(canonical, table);
+		if (directory != null) {
+			try {
+				Files.createDirectories(directory);
+				table.write(directory.resolve(canonical + Tablebase.FILE_EXTENSION));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return table;
+	}
+	
+	/**
+	 * Retrieves the tables generated so far.
+	 * 
+	 * @return The tables, in generation order.
+	 */
+	public synchronized Collection<Tablebase> getTables() {
+		return Collections.unmodifiableCollection(new ArrayList<>(tables.values()));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<Material> getDependencies(Material material) {
+		List<Material> dependencies = new ArrayList<>();
+		byte[] pieces = material.getPieces();
+		for (int captured = -1; captured < pieces.length; captured++) {
+			if (captured >= 0 && captured < 2) {
+				continue;
+			}
+			for (int promoted = -1; promoted < pieces.length; promoted++) {
+				if (promoted == captured || promoted >= 0 && !MovementUtil.isPawn(pieces[promoted])) {
+					continue;
+				}
+				if (captured < 0 && promoted < 0) {
+					continue;
+				}
+				for (byte type : promotionTypes(promoted)) {
+					Material dependency = convert(pieces, captured, promoted, type).canonical();
+					if (!dependencies.contains(dependency)) {
+						dependencies.add(dependency);
+					}
+				}
+			}
+		}
+		return dependencies;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static byte[] promotionTypes(int promoted) {
+		return promoted < 0
+				? new byte[] {
+					MovementUtil.EMPTY
+				}
+				: new byte[] {
+					MovementUtil.QUEEN,
+					MovementUtil.ROOK,
+					MovementUtil.BISHOP,
+					MovementUtil.KNIGHT
+				};
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Material convert(byte[] pieces, int captured, int promoted, byte type) {
+		byte[] converted = new byte[pieces.length];
+		int count = 0;
+		for (int i = 0; i < pieces.length; i++) {
+			if (i == captured) {
+				continue;
+			}
+			converted[count++] = i == promoted
+					? MovementUtil.getPiece(type, MovementUtil.getPieceColor(pieces[i]))
+					: pieces[i];
+		}
+		return Material.of(converted, count);
+	}
+	
+	/**
+	 * Creates a new builder.
+	 * 
+	 * @return The builder.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+	
+	/**
+	 * Generates tables from the command line.
+	 * 
+	 * @param args The output directory, followed by the material signatures.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.err.println("Usage: TablebaseGenerator <directory> <material>...");
+			return;
+		}
+		TablebaseGenerator generator = builder().directory(Paths.get(args[0])).build();
+		for (int i = 1; i < args.length; i++) {
+			long start = System.nanoTime();
+			generator.generate(args[i]);
+			System.out.printf("%s generated in %d ms%n", args[i], (System.nanoTime() - start) / 1_000_000);
+		}
+	}
+	
+	/**
+	 * A conversion to another table, made by a capture or a promotion. Keeps the place of each
+	 * piece of the converted position in the order of the other table.
+	 */
+	private static final class Conversion {
+		
+		@SuppressWarnings("javadoc")
+		private final Tablebase table;
+		
+		@SuppressWarnings("javadoc")
+		private final int[] sources;
+		
+		@SuppressWarnings("javadoc")
+		private final boolean flip;
+		
+		@SuppressWarnings("javadoc")
+		private Conversion(Tablebase table, byte[] pieces, int captured, int promoted, byte type) {
+			this.table = table;
+			Material converted = convert(pieces, captured, promoted, type);
+			flip = !converted.equals(table.getMaterial());
+			Material target = table.getMaterial();
+			sources = new int[target.size()];
+			boolean[] used = new boolean[pieces.length];
+			for (int k = 0; k < sources.length; k++) {
+				byte expected = (byte) (flip ? -target.getPiece(k) : target.getPiece(k));
+				for (int i = 0; i < pieces.length; i++) {
+					byte piece = i == promoted
+							? MovementUtil.getPiece(type, MovementUtil.getPieceColor(pieces[i]))
+							: pieces[i];
+					if (i != captured && !used[i] && piece == expected) {
+						used[i] = true;
+						sources[k] = i;
+						break;
+					}
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private int probe(int[] squares, byte sideToMove, int[] buffer) {
+			for (int k = 0; k < sources.length; k++) {
+				buffer[k] = flip ? squares[sources[k]] ^ 56 : squares[sources[k]];
+			}
+			byte side = flip ? MovementUtil.getOppositeColor(sideToMove) : sideToMove;
+			return table.getCode(table.getIndex().encode(buffer), side);
+		}
+	}
+	
+	/**
+	 * The generation of a single table.
+	 */
+	private final class Generation {
+		
+		@SuppressWarnings("javadoc")
+		private final Material material;
+		
+		@SuppressWarnings("javadoc")
+		private final byte[] pieces;
+		
+		@SuppressWarnings("javadoc")
+		private final int count;
+		
+		@SuppressWarnings("javadoc")
+		private final TablebaseIndex index;
+		
+		@SuppressWarnings("javadoc")
+		private final PackedArray whiteToMove;
+		
+		@SuppressWarnings("javadoc")
+		private final PackedArray blackToMove;
+		
+		@SuppressWarnings("javadoc")
+		private final Conversion[][] conversions;
+		
+		@SuppressWarnings("javadoc")
+		private final AtomicInteger maxDistance;
+		
+		@SuppressWarnings("javadoc")
+		private Generation(Material material) {
+			this.material = material;
+			pieces = material.getPieces();
+			count = pieces.length;
+			index = new TablebaseIndex(material);
+			whiteToMove = new PackedArray(index.size(), GENERATION_BITS);
+			blackToMove = new PackedArray(index.size(), GENERATION_BITS);
+			maxDistance = new AtomicInteger(-1);
+			conversions = new Conversion[count + 1][1 + count * 4];
+			for (int captured = -1; captured < count; captured++) {
+				for (int promoted = -1; promoted < count; promoted++) {
+					if (captured >= 0 && captured < 2
+							|| promoted == captured
+							|| promoted >= 0 && !MovementUtil.isPawn(pieces[promoted])
+							|| captured < 0 && promoted < 0) {
+						continue;
+					}
+					for (byte type : promotionTypes(promoted)) {
+						Tablebase table = tables.get(convert(pieces, captured, promoted, type).canonical());
+						conversions[captured + 1][promotionKey(promoted, type)] = new Conversion(
+							table,
+							pieces,
+							captured,
+							promoted,
+							type
+						);
+					}
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private Tablebase run() {
+			parallel(this::initialize);
+			for (int ply = 1; ply <= maxDistance.get() + 1; ply++) {
+				int frontier = ply;
+				parallel((worker, from, to) -> propagate(worker, from, to, frontier));
+			}
+			int bits = PackedArray.bitsFor(maxDistance.get() + 2);
+			return new Tablebase(material, repack(whiteToMove, bits), repack(blackToMove, bits));
+		}
+		
+		@SuppressWarnings("javadoc")
+		private PackedArray repack(PackedArray array, int bits) {
+			PackedArray packed = new PackedArray(array.length(), bits);
+			for (long i = 0; i < array.length(); i++) {
+				int code = array.get(i);
+				if (code != 0) {
+					packed.set(i, code);
+				}
+			}
+			return packed;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private PackedArray values(byte sideToMove) {
+			return sideToMove == MovementUtil.WHITE ? whiteToMove : blackToMove;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void initialize(Worker worker, long from, long to) {
+			for (byte side = MovementUtil.WHITE; side >= MovementUtil.BLACK; side -= 2) {
+				PackedArray values = values(side);
+				for (long entry = from; entry < to; entry++) {
+					index.decode(entry, worker.squares);
+					if (!EndgameMoves.isLegal(pieces, worker.squares, count, side)) {
+						values.set(entry, Tablebase.ILLEGAL_CODE);
+						continue;
+					}
+					int code = evaluateConversions(worker, side);
+					if (code != Tablebase.DRAW_CODE) {
+						values.set(entry, code);
+						updateMaxDistance(code - 2);
+					}
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private int evaluateConversions(Worker worker, byte side) {
+			int size = EndgameMoves.generateMovements(pieces, worker.squares, count, side, worker.movements);
+			int legal = 0;
+			int bestWin = Integer.MAX_VALUE;
+			int worstLoss = -1;
+			boolean unresolved = false;
+			for (int i = 0; i < size; i++) {
+				int movement = worker.movements[i];
+				if (!makeMovement(worker, side, movement)) {
+					continue;
+				}
+				legal++;
+				Conversion conversion = conversion(movement);
+				if (conversion == null) {
+					unresolved = true;
+					continue;
+				}
+				int code = conversion.probe(worker.next, MovementUtil.getOppositeColor(side), worker.converted);
+				if (Tablebase.isLossCode(code)) {
+					bestWin = Math.min(bestWin, code - 1);
+				} else if (Tablebase.isWinCode(code)) {
+					worstLoss = Math.max(worstLoss, code - 1);
+				} else {
+					unresolved = true;
+				}
+			}
+			if (legal == 0) {
+				return EndgameMoves.isInCheck(side, pieces, worker.squares, count) ? 2 : Tablebase.DRAW_CODE;
+			}
+			if (bestWin != Integer.MAX_VALUE) {
+				return bestWin + 2;
+			}
+			return unresolved ? Tablebase.DRAW_CODE : worstLoss + 2;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void propagate(Worker worker, long from, long to, int ply) {
+			int frontierCode = ply - 1 + 2;
+			boolean lost = (ply - 1 & 1) == 0;
+			for (byte side = MovementUtil.WHITE; side >= MovementUtil.BLACK; side -= 2) {
+				PackedArray values = values(side);
+				byte mover = MovementUtil.getOppositeColor(side);
+				PackedArray predecessors = values(mover);
+				for (long entry = from; entry < to; entry++) {
+					if (values.get(entry) != frontierCode) {
+						continue;
+					}
+					index.decode(entry, worker.squares);
+					int size = EndgameMoves.generateUnmovements(pieces, worker.squares, count, mover, worker.unmovements);
+					for (int i = 0; i < size; i++) {
+						int unmovement = worker.unmovements[i];
+						System.arraycopy(worker.squares, 0, worker.previous, 0, count);
+						worker.previous[EndgameMoves.getPiece(unmovement)] = EndgameMoves.getSquare(unmovement);
+						if (!EndgameMoves.isLegal(pieces, worker.previous, count, mover)) {
+							continue;
+						}
+						long predecessor = index.encode(worker.previous);
+						long mirror = index.encodeMirror(worker.previous);
+						if (lost) {
+							markWin(predecessors, predecessor, ply);
+							if (mirror >= 0) {
+								markWin(predecessors, mirror, ply);
+							}
+						} else if (predecessors.get(predecessor) == Tablebase.DRAW_CODE
+								|| mirror >= 0 && predecessors.get(mirror) == Tablebase.DRAW_CODE) {
+							int code = forcedLossCode(worker, mover, ply);
+							if (code != Tablebase.DRAW_CODE) {
+								markLoss(predecessors, predecessor, code);
+								if (mirror >= 0) {
+									markLoss(predecessors, mirror, code);
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void markWin(PackedArray values, long entry, int ply) {
+			while (true) {
+				int code = values.get(entry);
+				if (code != Tablebase.DRAW_CODE && !(Tablebase.isWinCode(code) && code - 2 > ply)) {
+					return;
+				}
+				if (values.compareAndSet(entry, code, ply + 2)) {
+					updateMaxDistance(ply);
+					return;
+				}
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private int forcedLossCode(Worker worker, byte side, int ply) {
+			System.arraycopy(worker.previous, 0, worker.squares2, 0, count);
+			int size = EndgameMoves.generateMovements(pieces, worker.squares2, count, side, worker.movements);
+			int worstLoss = -1;
+			byte opponent = MovementUtil.getOppositeColor(side);
+			for (int i = 0; i < size; i++) {
+				int movement = worker.movements[i];
+				if (!makeMovement(worker, worker.squares2, side, movement)) {
+					continue;
+				}
+				Conversion conversion = conversion(movement);
+				int code = conversion == null
+						? values(opponent).get(index.encode(worker.next))
+						: conversion.probe(worker.next, opponent, worker.converted);
+				if (!Tablebase.isWinCode(code) || code - 2 > ply - 1) {
+					return Tablebase.DRAW_CODE;
+				}
+				worstLoss = Math.max(worstLoss, code - 1);
+			}
+			return worstLoss + 2;
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void markLoss(PackedArray values, long entry, int code) {
+			if (values.compareAndSet(entry, Tablebase.DRAW_CODE, code)) {
+				updateMaxDistance(code - 2);
+			}
+		}
+		
+		@SuppressWarnings("javadoc")
+		private boolean makeMovement(Worker worker, byte side, int movement) {
+			return makeMovement(worker, worker.squares, side, movement);
+		}
+		
+		@SuppressWarnings("javadoc")
+		private boolean makeMovement(Worker worker, int[] squares, byte side, int movement) {
+			System.arraycopy(squares, 0, worker.next, 0, count);
+			worker.next[EndgameMoves.getPiece(movement)] = EndgameMoves.getSquare(movement);
+			int captured = EndgameMoves.getCaptured(movement);
+			if (captured >= 0) {
+				worker.next[captured] = -1;
+			}
+			return !EndgameMoves.isInCheck(side, pieces, worker.next, count);
+		}
+		
+		@SuppressWarnings("javadoc")
+		private Conversion conversion(int movement) {
+			int captured = EndgameMoves.getCaptured(movement);
+			byte promotion = EndgameMoves.getPromotion(movement);
+			if (captured < 0 && promotion == MovementUtil.EMPTY) {
+				return null;
+			}
+			int promoted = promotion == MovementUtil.EMPTY ? -1 : EndgameMoves.getPiece(movement);
+			return conversions[captured + 1][promotionKey(promoted, promotion)];
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void updateMaxDistance(int distance) {
+			if (distance > MAX_DISTANCE) {
+				throw new ChessException(String.format("Distance to mate too long for %s: %d", material, distance));
+			}
+			maxDistance.accumulateAndGet(distance, Math::max);
+		}
+		
+		@SuppressWarnings("javadoc")
+		private void parallel(Task task) {
+			AtomicLong next = new AtomicLong();
+			long size = index.size();
+			Runnable runnable = () -> {
+				Worker worker = new Worker(count);
+				for (long from = next.getAndAdd(CHUNK_SIZE); from < size; from = next.getAndAdd(CHUNK_SIZE)) {
+					task.run(worker, from, Math.min(size, from + CHUNK_SIZE));
+				}
+			};
+			if (threads == 1) {
+				runnable.run();
+				return;
+			}
+			List<Thread> workers = new ArrayList<>();
+			List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+			for (int i = 0; i < threads; i++) {
+				Thread thread = new Thread(runnable, "anjabachen-tablebase-" + i);
+				thread.setUncaughtExceptionHandler((t, e) -> failures.add(e));
+				thread.start();
+				workers.add(thread);
+			}
+			boolean interrupted = false;
+			for (Thread thread : workers) {
+				while (thread.isAlive()) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (!failures.isEmpty()) {
+				throw new ChessException(String.format("Generation of %s failed", material), failures.get(0));
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int promotionKey(int promoted, byte type) {
+		return promoted < 0 ? 0 : 1 + promoted * 4 + MovementUtil.QUEEN - type;
+	}
+	
+	/**
+	 * A pass over a range of entries.
+	 */
+	@FunctionalInterface
+	private interface Task {
+		
+		@SuppressWarnings("javadoc")
+		void run(Worker worker, long from, long to);
+	}
+	
+	/**
+	 * The buffers of a worker thread, so the passes don't allocate memory per position.
+	 */
+	private static final class Worker {
+		
+		private final int[] squares;
+		
+		private final int[] squares2;
+		
+		private final int[] previous;
+		
+		private final int[] next;
+		
+		private final int[] converted;
+		
+		private final int[] movements;
+		
+		private final int[] unmovements;
+		
+		@SuppressWarnings("javadoc")
+		private Worker(int count) {
+			squares = new int[count];
+			squares2 = new int[count];
+			previous = new int[count];
+			next = new int[count];
+			converted = new int[count];
+			movements = new int[EndgameMoves.MAX_MOVEMENTS];
+			unmovements = new int[EndgameMoves.MAX_MOVEMENTS];
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	public static final class Builder {
+		
+		private int threads = Runtime.getRuntime().availableProcessors();
+		
+		private Path directory;
+		
+		private Builder() {
+		}
+		
+		public Builder threads(int threads) {
+			this.threads = Math.max(1, threads);
+			return this;
+		}
+		
+		public Builder directory(Path directory) {
+			this.directory = directory;
+			return this;
+		}
+		
+		public TablebaseGenerator build() {
+			return new TablebaseGenerator(this);
+		}
+	}
+}
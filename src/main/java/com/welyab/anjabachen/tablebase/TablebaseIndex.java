@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+/**
+ * The perfect index of the positions of a material set, reduced by the board symmetries.
+ * 
+ * <p>
+ * Without pawns, any position can be rotated and mirrored so the white king lands in the
+ * triangle <code>a1-d1-d4</code>, leaving 10 king squares. With pawns, only the left-right
+ * mirror keeps the movements, and the white king is kept in the files <code>a-d</code>, leaving 32
+ * squares. Each one of the other pieces adds a factor of 64. Indexes of impossible placements,
+ * like two pieces in the same square, exist and are marked as illegal in the tables.
+ * 
+ * @author Welyab Paula
+ */
+final class TablebaseIndex {
+	
+	@SuppressWarnings("javadoc")
+	private static final int[][] TRANSFORMS = new int[8][64];
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PAWNLESS_TRANSFORM = new int[64];
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PAWNLESS_SLOTS = new int[64];
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PAWNLESS_SQUARES = new int[10];
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PAWN_SLOTS = new int[64];
+	
+	@SuppressWarnings("javadoc")
+	private static final int[] PAWN_SQUARES = new int[32];
+	
+	static {
+		for (int square = 0; square < 64; square++) {
+			int row = square / 8;
+			int column = square % 8;
+			for (int t = 0; t < 8; t++) {
+				int r = row;
+				int c = column;
+				if ((t & 4) != 0) {
+					int swap = r;
+					r = 7 - c;
+					c = 7 - swap;
+				}
+				if ((t & 1) != 0) {
+					c = 7 - c;
+				}
+				if ((t & 2) != 0) {
+					r = 7 - r;
+				}
+				TRANSFORMS[t][square] = r * 8 + c;
+			}
+		}
+		
+		int pawnlessSlots = 0;
+		int pawnSlots = 0;
+		for (int square = 0; square < 64; square++) {
+			PAWNLESS_SLOTS[square] = -1;
+			PAWN_SLOTS[square] = -1;
+		}
+		for (int square = 0; square < 64; square++) {
+			int rank = 7 - square / 8;
+			int file = square % 8;
+			if (file <= 3 && rank <= file) {
+				PAWNLESS_SLOTS[square] = pawnlessSlots;
+				PAWNLESS_SQUARES[pawnlessSlots++] = square;
+			}
+			if (file <= 3) {
+				PAWN_SLOTS[square] = pawnSlots;
+				PAWN_SQUARES[pawnSlots++] = square;
+			}
+		}
+		for (int square = 0; square < 64; square++) {
+			for (int t = 0; t < 8; t++) {
+				if (PAWNLESS_SLOTS[TRANSFORMS[t][square]] >= 0) {
+					PAWNLESS_TRANSFORM[square] = t;
+					break;
+				}
+			}
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private final int count;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean pawns;
+	
+	@SuppressWarnings("javadoc")
+	private final long size;
+	
+	/**
+	 * Creates the index of the given material.
+	 * 
+	 * @param material The material.
+	 */
+	TablebaseIndex(Material material) {
+		count = material.size();
+		pawns = material.hasPawns();
+		size = (pawns ? PAWN_SQUARES.length : PAWNLESS_SQUARES.length) * (1L << 6 * (count - 1));
+	}
+	
+	/**
+	 * Retrieves the number of indexes of each side to move.
+	 * 
+	 * @return The index size.
+	 */
+	long size() {
+		return size;
+	}
+	
+	/**
+	 * Computes the index of a position. The squares must be in the material order.
+	 * 
+	 * @param squares The piece squares.
+	 * 
+	 * @return The index.
+	 */
+	long encode(int[] squares) {
+		int transform;
+		int slot;
+		if (pawns) {
+			transform = squares[0] % 8 <= 3 ? 0 : 1;
+			slot = PAWN_SLOTS[TRANSFORMS[transform][squares[0]]];
+		} else {
+			transform = PAWNLESS_TRANSFORM[squares[0]];
+			slot = PAWNLESS_SLOTS[TRANSFORMS[transform][squares[0]]];
+		}
+		int[] map = TRANSFORMS[transform];
+		long index = slot;
+		for (int i = 1; i < count; i++) {
+			index = index << 6 | map[squares[i]];
+		}
+		return index;
+	}
+	
+	/**
+	 * Computes the index of the mirrored position that shares the canonical king square. Without
+	 * pawns, when the white king is on the <code>a1-d4</code> diagonal, the position and its mirror
+	 * over the diagonal are both canonical, and have different indexes.
+	 * 
+	 * @param squares The piece squares.
+	 * 
+	 * @return The index of the mirrored position, or <code>-1</code> if there is no other index
+	 *         for the position.
+	 */
+	long encodeMirror(int[] squares) {
+		if (pawns) {
+			return -1;
+		}
+		int transform = PAWNLESS_TRANSFORM[squares[0]];
+		int king = TRANSFORMS[transform][squares[0]];
+		if (king / 8 + king % 8 != 7) {
+			return -1;
+		}
+		int[] map = TRANSFORMS[transform];
+		int[] mirror = TRANSFORMS[4];
+		long index = PAWNLESS_SLOTS[king];
+		for (int i = 1; i < count; i++) {
+			index = index << 6 | mirror[map[squares[i]]];
+		}
+		return index;
+	}
+	
+	/**
+	 * Computes the position of an index.
+	 * 
+	 * @param index The index.
+	 * @param squares Receives the piece squares, in the material order.
+	 */
+	void decode(long index, int[] squares) {
+		for (int i = count - 1; i > 0; i--) {
+			squares[i] = (int) (index & 63);
+			index >>>= 6;
+		}
+		squares[0] = pawns ? PAWN_SQUARES[(int) index] : PAWNLESS_SQUARES[(int) index];
+	}
+}
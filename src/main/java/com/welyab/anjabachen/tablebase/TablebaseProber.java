@@ -0,0 +1,625 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Probes the tablebase files of a directory without loading them on the heap.
+ * 
+ * <p>
+ * The files are memory mapped in fixed size regions, on demand. Only a bounded number of regions
+ * stays mapped: when the limit is reached, a region not used since the last eviction scan is
+ * dropped (the <i>clock</i> approximation of least recently used). Probes that hit a mapped region
+ * take no lock; only mapping a region is synchronized. The mapped regions are found through a
+ * small open addressing hash table of their slots, so a probe costs the same with any number of
+ * regions. The index of the position is computed directly from the board squares, and the probes
+ * don't allocate objects, so they are cheap enough to be used in every search node with few
+ * pieces.
+ * 
+ * <p>
+ * Positions with castling rights, or where an en passant capture is possible, are not answered,
+ * because the tables ignore those movements.
+ * 
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author Welyab Paula
+ * 
+ * @see TablebaseGenerator
+ */
+public final class TablebaseProber {
+	
+	/** The value returned when there is no table for the position. */
+	public static final int UNAVAILABLE = -2;
+	
+	/** The default size of the mapped regions, in bytes. */
+	public static final int DEFAULT_REGION_SIZE = 16 << 20;
+	
+	/** The default limit of the mapped bytes. */
+	public static final long DEFAULT_MAX_MAPPED_SIZE = 256L << 20;
+	
+	@SuppressWarnings("javadoc")
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+	
+	@SuppressWarnings("javadoc")
+	private final TableFile[] tables;
+	
+	@SuppressWarnings("javadoc")
+	private final long[] keys;
+	
+	@SuppressWarnings("javadoc")
+	private final boolean[] flips;
+	
+	@SuppressWarnings("javadoc")
+	private final int maxPieces;
+	
+	@SuppressWarnings("javadoc")
+	private final int regionSize;
+	
+	/** The mapped regions, read without locking and replaced only while holding the prober lock. */
+	private final AtomicReferenceArray<Region> regions;
+	
+	/** Whether each region was used since the clock hand last passed it. */
+	private final AtomicIntegerArray referenced;
+	
+	/**
+	 * The hash table of the mapped regions, with linear probing: each entry is the slot of a region
+	 * plus one, or <code>0</code> if the entry is empty. It has at least twice as many entries as
+	 * slots and is changed only while holding the prober lock; readers check the key of the region
+	 * they find, and take the lock when they miss.
+	 */
+	private final AtomicIntegerArray index;
+	
+	@SuppressWarnings("javadoc")
+	private final int indexShift;
+	
+	@SuppressWarnings("javadoc")
+	private int hand;
+	
+	@SuppressWarnings("javadoc")
+	private long mappings;
+	
+	@SuppressWarnings("javadoc")
+	TablebaseProber(List<TableFile> files, int regionSize, int maxRegions) {
+		if (regionSize < 8 || regionSize % 8 != 0) {
+			throw new IllegalArgumentException(String.format("Invalid region size: %d", regionSize));
+		}
+		this.regionSize = regionSize;
+		
+		List<TableFile> orientedTables = new ArrayList<>();
+		List<Boolean> orientedFlips = new ArrayList<>();
+		int pieces = 0;
+		for (TableFile file : files) {
+			orientedTables.add(file);
+			orientedFlips.add(false);
+			if (!file.material.flip().equals(file.material)) {
+				orientedTables.add(file);
+				orientedFlips.add(true);
+			}
+			pieces = Math.max(pieces, file.material.size());
+		}
+		maxPieces = pieces;
+		
+		Integer[] order = new Integer[orientedTables.size()];
+		long[] unsortedKeys = new long[order.length];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			Material material = orientedTables.get(i).material;
+			unsortedKeys[i] = keyOf(orientedFlips.get(i) ? material.flip() : material);
+		}
+		Arrays.sort(order, (a, b) -> Long.compare(unsortedKeys[a], unsortedKeys[b]));
+		tables = new TableFile[order.length];
+		keys = new long[order.length];
+		flips = new boolean[order.length];
+		for (int i = 0; i < order.length; i++) {
+			tables[i] = orientedTables.get(order[i]);
+			keys[i] = unsortedKeys[order[i]];
+			flips[i] = orientedFlips.get(order[i]);
+			if (i > 0 && keys[i] == keys[i - 1]) {
+				throw new ChessException(String.format("Duplicated tablebase: %s", tables[i].material));
+			}
+		}
+		
+		regions = new AtomicReferenceArray<>(Math.max(1, maxRegions));
+		referenced = new AtomicIntegerArray(regions.length());
+		index = new AtomicIntegerArray(Integer.highestOneBit(regions.length()) * 4);
+		indexShift = Long.numberOfLeadingZeros(index.length()) + 1;
+	}
+	
+	/**
+	 * Opens the tablebase files of a directory, with the default limit of mapped bytes.
+	 * 
+	 * @param directory The directory with the <code>.atb</code> files.
+	 * 
+	 * @return The prober.
+	 * 
+	 * @throws IOException If the directory or the file headers can't be read.
+	 * @throws ChessException If a file is not a valid tablebase file.
+	 */
+	public static TablebaseProber open(Path directory) throws IOException {
+		return open(directory, DEFAULT_MAX_MAPPED_SIZE);
+	}
+	
+	/**
+	 * Opens the tablebase files of a directory.
+	 * 
+	 * @param directory The directory with the <code>.atb</code> files.
+	 * @param maxMappedSize The limit of the mapped bytes. At least one region is always mapped.
+	 * 
+	 * @return The prober.
+	 * 
+	 * @throws IOException If the directory or the file headers can't be read.
+	 * @throws ChessException If a file is not a valid tablebase file.
+	 */
+	public static TablebaseProber open(Path directory, long maxMappedSize) throws IOException {
+		return open(directory, DEFAULT_REGION_SIZE, (int) Math.min(maxMappedSize / DEFAULT_REGION_SIZE, 1 << 16));
+	}
+	
+	@SuppressWarnings("javadoc")
+	static TablebaseProber open(Path directory, int regionSize, int maxRegions) throws IOException {
+		List<TableFile> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + Tablebase.FILE_EXTENSION)) {
+			for (Path path : stream) {
+				files.add(TableFile.read(path, files.size()));
+			}
+		}
+		return new TablebaseProber(files, regionSize, maxRegions);
+	}
+	
+	/**
+	 * Retrieves the greatest number of pieces, kings included, of the available tables.
+	 * 
+	 * @return The number of pieces, or <code>0</code> if there are no tables.
+	 */
+	public int getMaxPieces() {
+		return maxPieces;
+	}
+	
+	/**
+	 * Evaluates the position of the given board.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return {@link Tablebase#WIN}, {@link Tablebase#DRAW} or {@link Tablebase#LOSS}, from the
+	 *         point of view of the side to move, or {@link #UNAVAILABLE} if the position is not
+	 *         covered by the tables.
+	 * 
+	 * @throws UncheckedIOException If a table file can't be mapped.
+	 */
+	public int probeWdl(Board board) {
+		int code = probeCode(board);
+		if (code < 0) {
+			return UNAVAILABLE;
+		}
+		if (code == Tablebase.DRAW_CODE) {
+			return Tablebase.DRAW;
+		}
+		return Tablebase.isWinCode(code) ? Tablebase.WIN : Tablebase.LOSS;
+	}
+	
+	/**
+	 * Retrieves the distance to mate of the position of the given board.
+	 * 
+	 * @param board The board.
+	 * 
+	 * @return The number of plies until the mate with best play from both sides, <code>-1</code> if
+	 *         the position is a draw, or {@link #UNAVAILABLE} if the position is not covered by the
+	 *         tables. Odd distances mean the side to move mates, even distances mean the side to
+	 *         move is mated.
+	 * 
+	 * @throws UncheckedIOException If a table file can't be mapped.
+	 */
+	public int probeDtm(Board board) {
+		int code = probeCode(board);
+		if (code < 0) {
+			return UNAVAILABLE;
+		}
+		return code == Tablebase.DRAW_CODE ? -1 : code - 2;
+	}
+	
+	/**
+	 * Retrieves the number of region mappings made since the prober was opened.
+	 * 
+	 * @return The number of mappings.
+	 */
+	synchronized long getMappings() {
+		return mappings;
+	}
+	
+	/**
+	 * Retrieves the number of regions currently mapped.
+	 * 
+	 * @return The number of regions.
+	 */
+	synchronized int getMappedRegions() {
+		int count = 0;
+		for (int i = 0; i < regions.length(); i++) {
+			if (regions.get(i) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private int probeCode(Board board) {
+		if (maxPieces == 0 || board.getCastlingFlags() != 0 || isEnPassantPossible(board)) {
+			return -1;
+		}
+		
+		Scratch scratch = SCRATCH.get();
+		int count = 0;
+		long key = 0;
+		for (int square = 0; square < 64; square++) {
+			byte piece = board.getSquareValue(Position.of(square >> 3, square & 7));
+			if (piece == MovementUtil.EMPTY) {
+				continue;
+			}
+			if (count == maxPieces) {
+				return -1;
+			}
+			scratch.pieces[count] = piece;
+			scratch.boardSquares[count] = square;
+			count++;
+			key += 1L << slotOf(piece) * 4;
+		}
+		
+		int found = Arrays.binarySearch(keys, key);
+		if (found < 0) {
+			return -1;
+		}
+		TableFile table = tables[found];
+		boolean flip = flips[found];
+		int[] cursors = scratch.cursors;
+		System.arraycopy(table.offsets, 0, cursors, 0, cursors.length);
+		int[] squares = scratch.squares;
+		for (int i = 0; i < count; i++) {
+			int piece = flip ? -scratch.pieces[i] : scratch.pieces[i];
+			squares[cursors[piece + 6]++] = flip ? scratch.boardSquares[i] ^ 56 : scratch.boardSquares[i];
+		}
+		byte sideToMove = board.getSideToMove();
+		if (flip) {
+			sideToMove = MovementUtil.getOppositeColor(sideToMove);
+		}
+		
+		long entry = table.index.encode(squares);
+		long word = entry / table.entriesPerWord;
+		long offset = Tablebase.HEADER_SIZE
+				+ (sideToMove == MovementUtil.WHITE ? 0 : table.wordCount) * Long.BYTES
+				+ word * Long.BYTES;
+		ByteBuffer region = region(table, offset / regionSize);
+		long value = region.getLong((int) (offset % regionSize));
+		int code = (int) (value >>> (entry % table.entriesPerWord) * table.bits & table.mask);
+		return code == Tablebase.ILLEGAL_CODE ? -1 : code;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean isEnPassantPossible(Board board) {
+		Position target = board.getEnPassantTargetSquare();
+		if (target == null) {
+			return false;
+		}
+		byte sideToMove = board.getSideToMove();
+		int row = MovementUtil.isWhite(sideToMove) ? target.row + 1 : target.row - 1;
+		byte pawn = MovementUtil.getPiece(MovementUtil.PAWN, sideToMove);
+		return target.column > 0 && board.getSquareValue(Position.of(row, target.column - 1)) == pawn
+				|| target.column < 7 && board.getSquareValue(Position.of(row, target.column + 1)) == pawn;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private ByteBuffer region(TableFile table, long number) {
+		long key = (long) table.id << 32 | number;
+		int mask = index.length() - 1;
+		// the entries may be moved at any time, so a region that is not found is looked up again
+		// with the lock
+		for (int i = home(key), probes = 0; probes <= mask; i = i + 1 & mask, probes++) {
+			int slot = index.get(i) - 1;
+			if (slot < 0) {
+				break;
+			}
+			// the slot may be replaced at any time, so the region that was compared is the one read
+			Region region = regions.get(slot);
+			if (region != null && region.key == key) {
+				// the flag is written only when it changes, so hits don't bounce its cache line
+				if (referenced.get(slot) == 0) {
+					referenced.lazySet(slot, 1);
+				}
+				return region.buffer;
+			}
+		}
+		return map(table, number, key);
+	}
+	
+	/**
+	 * Computes the hash table entry where the search for a region starts.
+	 * 
+	 * @param key The region key.
+	 * 
+	 * @return The entry.
+	 */
+	private int home(long key) {
+		return (int) (key * 0x9E3779B97F4A7C15L >>> indexShift);
+	}
+	
+	/**
+	 * Finds the hash table entry of a region. The entries only change while holding the prober
+	 * lock, so the result is stable only for a caller that holds it.
+	 * 
+	 * @param key The region key.
+	 * 
+	 * @return The entry, or <code>-1</code> if the region is not mapped.
+	 */
+	private int find(long key) {
+		int mask = index.length() - 1;
+		for (int i = home(key);; i = i + 1 & mask) {
+			int slot = index.get(i) - 1;
+			if (slot < 0) {
+				return -1;
+			}
+			if (regions.get(slot).key == key) {
+				return i;
+			}
+		}
+	}
+	
+	/**
+	 * Removes the hash table entry of a region, moving back the entries after it that would no
+	 * longer be reachable from their home entry. Called only while holding the prober lock.
+	 * 
+	 * @param key The region key.
+	 */
+	private void unindex(long key) {
+		int mask = index.length() - 1;
+		int hole = find(key);
+		for (int i = hole + 1 & mask;; i = i + 1 & mask) {
+			int slot = index.get(i) - 1;
+			if (slot < 0) {
+				break;
+			}
+			int home = home(regions.get(slot).key);
+			boolean reachable = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+			if (!reachable) {
+				index.set(hole, slot + 1);
+				hole = i;
+			}
+		}
+		index.set(hole, 0);
+	}
+	
+	/**
+	 * Maps a region, dropping the first region of the clock whose reference flag is not set. A
+	 * probe that still reads a dropped region keeps a valid buffer, which is unmapped when it is
+	 * no longer reachable.
+	 * 
+	 * @param table The table file.
+	 * @param number The region number in the file.
+	 * @param key The region key.
+	 * 
+	 * @return The region buffer.
+	 */
+	private synchronized ByteBuffer map(TableFile table, long number, long key) {
+		// another thread may have mapped the region while this one waited for the lock
+		int found = find(key);
+		if (found >= 0) {
+			return regions.get(index.get(found) - 1).buffer;
+		}
+		int victim;
+		while (true) {
+			victim = hand;
+			hand = (hand + 1) % regions.length();
+			if (regions.get(victim) == null || referenced.get(victim) == 0) {
+				break;
+			}
+			referenced.set(victim, 0);
+		}
+		
+		ByteBuffer buffer;
+		long position = number * regionSize;
+		try (FileChannel channel = FileChannel.open(table.path, StandardOpenOption.READ)) {
+			long size = Math.min(regionSize, channel.size() - position);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Region old = regions.get(victim);
+		if (old != null) {
+			unindex(old.key);
+		}
+		regions.set(victim, new Region(key, buffer));
+		referenced.set(victim, 1);
+		int mask = index.length() - 1;
+		int entry = home(key);
+		while (index.get(entry) != 0) {
+			entry = entry + 1 & mask;
+		}
+		index.set(entry, victim + 1);
+		mappings++;
+		return buffer;
+	}
+	
+	/**
+	 * Computes the key of a material: the number of pieces of each kind, four bits for each one,
+	 * white pieces in the lower bits.
+	 * 
+	 * @param material The material.
+	 * 
+	 * @return The key.
+	 */
+	private static long keyOf(Material material) {
+		long key = 0;
+		for (int i = 0; i < material.size(); i++) {
+			key += 1L << slotOf(material.getPiece(i)) * 4;
+		}
+		return key;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int slotOf(byte piece) {
+		int slot = MovementUtil.KING - MovementUtil.getPieceType(piece);
+		return piece > 0 ? slot : slot + 6;
+	}
+	
+	/**
+	 * The header information of a table file.
+	 */
+	static final class TableFile {
+		
+		@SuppressWarnings("javadoc")
+		private final Path path;
+		
+		@SuppressWarnings("javadoc")
+		private final int id;
+		
+		@SuppressWarnings("javadoc")
+		private final Material material;
+		
+		@SuppressWarnings("javadoc")
+		private final TablebaseIndex index;
+		
+		@SuppressWarnings("javadoc")
+		private final int bits;
+		
+		@SuppressWarnings("javadoc")
+		private final int entriesPerWord;
+		
+		@SuppressWarnings("javadoc")
+		private final long mask;
+		
+		@SuppressWarnings("javadoc")
+		private final long wordCount;
+		
+		/** The index of the first piece of each piece code in the material order. */
+		private final int[] offsets;
+		
+		@SuppressWarnings("javadoc")
+		private TableFile(Path path, int id, Material material, int bits, long wordCount) {
+			this.path = path;
+			this.id = id;
+			this.material = material;
+			this.bits = bits;
+			this.wordCount = wordCount;
+			index = new TablebaseIndex(material);
+			entriesPerWord = 64 / bits;
+			mask = (1L << bits) - 1;
+			offsets = new int[13];
+			for (int i = material.size() - 1; i >= 0; i--) {
+				offsets[material.getPiece(i) + 6] = i;
+			}
+		}
+		
+		/**
+		 * Reads the header of a table file.
+		 * 
+		 * @param path The file path.
+		 * @param id The identifier of the file in the prober.
+		 * 
+		 * @return The file information.
+		 * 
+		 * @throws IOException If the file can't be read.
+		 * @throws ChessException If the file is not a valid tablebase file.
+		 */
+		static TableFile read(Path path, int id) throws IOException {
+			ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			long fileSize;
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				fileSize = channel.size();
+				while (header.hasRemaining() && channel.read(header) >= 0) {
+					// reads the whole header
+				}
+			}
+			header.flip();
+			if (header.remaining() < Tablebase.HEADER_SIZE || header.getInt() != Tablebase.MAGIC) {
+				throw new ChessException(String.format("Invalid tablebase file: %s", path));
+			}
+			int bits = header.getInt();
+			long length = header.getLong();
+			long wordCount = header.getLong();
+			int end = Tablebase.SIGNATURE_OFFSET;
+			while (end < Tablebase.HEADER_SIZE && header.get(end) != 0) {
+				end++;
+			}
+			String signature = new String(
+				header.array(),
+				Tablebase.SIGNATURE_OFFSET,
+				end - Tablebase.SIGNATURE_OFFSET,
+				StandardCharsets.US_ASCII
+			);
+			Material material = Material.parse(signature);
+			if (material.size() > TablebaseGenerator.MAX_PIECES
+					|| bits < 1 || bits > 32
+					|| length != new TablebaseIndex(material).size()
+					|| wordCount != PackedArray.wordCount(length, bits)
+					|| fileSize != Tablebase.HEADER_SIZE + 2 * wordCount * Long.BYTES) {
+				throw new ChessException(String.format("Invalid tablebase file: %s", path));
+			}
+			return new TableFile(path, id, material, bits, wordCount);
+		}
+	}
+	
+	/**
+	 * A mapped region of a table file.
+	 */
+	@SuppressWarnings("javadoc")
+	private static final class Region {
+		
+		private final long key;
+		
+		private final ByteBuffer buffer;
+		
+		private Region(long key, ByteBuffer buffer) {
+			this.key = key;
+			this.buffer = buffer;
+		}
+	}
+	
+	/**
+	 * The per thread arrays used by the probes.
+	 */
+	private static final class Scratch {
+		
+		@SuppressWarnings("javadoc")
+		private final byte[] pieces = new byte[TablebaseGenerator.MAX_PIECES];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] boardSquares = new int[TablebaseGenerator.MAX_PIECES];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] squares = new int[TablebaseGenerator.MAX_PIECES];
+		
+		@SuppressWarnings("javadoc")
+		private final int[] cursors = new int[13];
+	}
+}
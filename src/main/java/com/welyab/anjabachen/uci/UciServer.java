@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.uci;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.book.PolyglotBook;
+import com.welyab.anjabachen.engine.Engine;
+import com.welyab.anjabachen.engine.MovementCode;
+import com.welyab.anjabachen.engine.SearchInfo;
+import com.welyab.anjabachen.engine.SearchLimits;
+import com.welyab.anjabachen.engine.SearchListener;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+import com.welyab.anjabachen.tablebase.TablebaseProber;
+
+/**
+ * A front-end for the <a href="http://wbec-ridderkerk.nl/html/UCIProtocol.html">Universal Chess
+ * Interface</a> protocol. Commands are read line by line from the input and the answers are
+ * written to the output.
+ * 
+ * <p>
+ * The search runs in the {@link Engine} thread, so the input loop keeps reading commands like
+ * <code>stop</code>, <code>ponderhit</code> and <code>isready</code> while the engine is thinking.
+ * 
+ * @author Welyab Paula
+ */
+public final class UciServer {
+	
+	@SuppressWarnings("javadoc")
+	private static final String ENGINE_NAME = "AN.JA.BA.CH.EN";
+	
+	@SuppressWarnings("javadoc")
+	private static final String ENGINE_AUTHOR = "Welyab Paula";
+	
+	@SuppressWarnings("javadoc")
+	private final BufferedReader input;
+	
+	@SuppressWarnings("javadoc")
+	private final PrintStream output;
+	
+	@SuppressWarnings("javadoc")
+	private final Engine engine;
+	
+	@SuppressWarnings("javadoc")
+	private Board board;
+	
+	@SuppressWarnings("javadoc")
+	private long[] gameHistory;
+	
+	@SuppressWarnings("javadoc")
+	private int multiPv = 1;
+	
+	@SuppressWarnings("javadoc")
+	private PolyglotBook book;
+	
+	@SuppressWarnings("javadoc")
+	private String bookPath;
+	
+	/** The random values of the book keys, replaced by the <code>BookRandoms</code> option. */
+	private long[] bookRandoms = PolyglotBook.getDefaultRandoms();
+	
+	@SuppressWarnings("javadoc")
+	private boolean ownBook;
+	
+	@SuppressWarnings("javadoc")
+	private final Random bookRandom = new Random();
+	
+	@SuppressWarnings("javadoc")
+	private boolean infiniteSearch;
+	
+	@SuppressWarnings("javadoc")
+	private boolean ponderSearch;
+	
+	/**
+	 * Creates a server that reads commands from the given input and writes the answers to the given
+	 * output.
+	 * 
+	 * @param input The input with the commands sent by the GUI.
+	 * @param output The output for the engine answers.
+	 */
+	public UciServer(InputStream input, OutputStream output) {
+		this.input = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII));
+		this.output = new PrintStream(output, false, StandardCharsets.US_ASCII);
+		engine = new Engine();
+		board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		gameHistory = new long[0];
+	}
+	
+	/**
+	 * Reads and executes commands until the <code>quit</code> command is received or the input
+	 * ends. When the input ends, a running search is allowed to finish, unless it is an infinite or
+	 * ponder search.
+	 * 
+	 * @throws IOException If the input can't be read.
+	 */
+	public void run() throws IOException {
+		String line;
+		boolean quit = false;
+		while (!quit && (line = input.readLine()) != null) {
+			quit = !execute(line);
+		}
+		if (quit || infiniteSearch || ponderSearch) {
+			engine.stop();
+		}
+		try {
+			engine.waitForSearch();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		output.flush();
+	}
+	
+	/**
+	 * Executes a single command.
+	 * 
+	 * @param line The command line.
+	 * 
+	 * @return A value <code>false</code> if the command is <code>quit</code>.
+	 */
+	boolean execute(String line) {
+		String[] tokens = line.trim().split("\\s+");
+		switch (tokens[0]) {
+			case "uci" -> identify();
+			case "isready" -> send("readyok");
+			case "ucinewgame" -> newGame();
+			case "position" -> position(tokens);
+			case "go" -> go(tokens);
+			case "stop" -> engine.stop();
+			case "ponderhit" -> ponderHit();
+			case "setoption" -> setOption(tokens);
+			case "quit" -> {
+				return false;
+			}
+			case "" -> {
+			}
+			default -> send("info string Unknown command: " + tokens[0]);
+		}
+		return true;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void identify() {
+		send("id name " + ENGINE_NAME);
+		send("id author " + ENGINE_AUTHOR);
+		send(
+			String.format(
+				"option name Hash type spin default %d min %d max %d",
+				Engine.DEFAULT_HASH_SIZE,
+				Engine.MIN_HASH_SIZE,
+				Engine.MAX_HASH_SIZE
+			)
+		);
+		send(
+			String.format(
+				"option name Threads type spin default %d min 1 max %d",
+				Engine.DEFAULT_THREADS,
+				Engine.MAX_THREADS
+			)
+		);
+		send("option name Ponder type check default false");
+		send(String.format("option name MultiPV type spin default 1 min 1 max %d", SearchLimits.MAX_MULTI_PV));
+		send("option name TablebasePath type string default <empty>");
+		send("option name OwnBook type check default false");
+		send("option name BookFile type string default <empty>");
+		send("option name BookRandoms type string default <empty>");
+		send("uciok");
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void newGame() {
+		engine.newGame();
+		board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		gameHistory = new long[0];
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void position(String[] tokens) {
+		int index = 1;
+		String fen;
+		if (tokens.length > 1 && tokens[1].equals("startpos")) {
+			fen = MovementUtil.FEN_INITIAL_POSITION;
+			index = 2;
+		} else if (tokens.length > 1 && tokens[1].equals("fen")) {
+			StringBuilder builder = new StringBuilder();
+			for (index = 2; index < tokens.length && !tokens[index].equals("moves"); index++) {
+				if (builder.length() > 0) {
+					builder.append(' ');
+				}
+				builder.append(tokens[index]);
+			}
+			fen = builder.toString();
+		} else {
+			send("info string Invalid position command");
+			return;
+		}
+		
+		try {
+			Board newBoard = new Board(fen);
+			long[] newHistory = new long[16];
+			int historySize = 0;
+			if (index < tokens.length && tokens[index].equals("moves")) {
+				for (index++; index < tokens.length; index++) {
+					if (historySize == newHistory.length) {
+						newHistory = Arrays.copyOf(newHistory, historySize * 2);
+					}
+					newHistory[historySize++] = newBoard.getZobristKey();
+					applyMovement(newBoard, tokens[index]);
+				}
+			}
+			board = newBoard;
+			gameHistory = Arrays.copyOf(newHistory, historySize);
+		} catch (ChessException | IllegalArgumentException e) {
+			send("info string Invalid position: " + e.getMessage());
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void applyMovement(Board board, String notation) {
+		int code = MovementCode.parse(notation);
+		Position origin = MovementCode.getOrigin(code);
+		byte pieceCode = board.getSquareValue(origin);
+		if (pieceCode == MovementUtil.EMPTY || MovementUtil.getPieceColor(pieceCode) != board.getSideToMove()) {
+			throw new ChessException(String.format("Illegal movement: %s", notation));
+		}
+		byte promotion = MovementCode.getPromotion(code);
+		board.move(
+			origin,
+			MovementCode.getTarget(code),
+			promotion == MovementUtil.EMPTY ? MovementUtil.QUEEN : promotion
+		);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void go(String[] tokens) {
+		SearchLimits.Builder builder = SearchLimits.builder().multiPv(multiPv);
+		try {
+			for (int i = 1; i < tokens.length; i++) {
+				switch (tokens[i]) {
+					case "depth" -> builder.depth(Integer.parseInt(tokens[++i]));
+					case "nodes" -> builder.nodes(Long.parseLong(tokens[++i]));
+					case "movetime" -> builder.moveTime(Long.parseLong(tokens[++i]));
+					case "wtime" -> builder.whiteTime(Long.parseLong(tokens[++i]));
+					case "btime" -> builder.blackTime(Long.parseLong(tokens[++i]));
+					case "winc" -> builder.whiteIncrement(Long.parseLong(tokens[++i]));
+					case "binc" -> builder.blackIncrement(Long.parseLong(tokens[++i]));
+					case "movestogo" -> builder.movesToGo(Integer.parseInt(tokens[++i]));
+					case "mate" -> builder.depth(Integer.parseInt(tokens[++i]) * 2);
+					case "infinite" -> builder.infinite(true);
+					case "ponder" -> builder.ponder(true);
+					default -> {
+						// "searchmoves" and unknown tokens are ignored
+					}
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			send("info string Invalid go command");
+			return;
+		}
+		SearchLimits limits = builder.build();
+		if (ownBook && book != null && !limits.isInfinite() && !limits.isPonder()) {
+			Optional<Movement> bookMovement = book.pickMovement(board, bookRandom);
+			if (bookMovement.isPresent()) {
+				Movement movement = bookMovement.get();
+				StringBuilder bestMove = new StringBuilder("bestmove ");
+				MovementCode.appendTo(MovementCode.of(movement.getOrigin(), movement.getTarget()), bestMove);
+				send(bestMove.toString());
+				return;
+			}
+		}
+		infiniteSearch = limits.isInfinite();
+		ponderSearch = limits.isPonder();
+		engine.go(board, gameHistory, limits, new Listener());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void ponderHit() {
+		ponderSearch = false;
+		engine.ponderHit();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void setOption(String[] tokens) {
+		StringBuilder name = new StringBuilder();
+		String value = null;
+		for (int i = 1; i < tokens.length; i++) {
+			if (tokens[i].equals("name")) {
+				continue;
+			}
+			if (tokens[i].equals("value")) {
+				value = i + 1 < tokens.length ? String.join(" ", Arrays.copyOfRange(tokens, i + 1, tokens.length)) : null;
+				break;
+			}
+			if (name.length() > 0) {
+				name.append(' ');
+			}
+			name.append(tokens[i]);
+		}
+		try {
+			switch (name.toString().toLowerCase()) {
+				case "hash" -> engine.setHashSize(Integer.parseInt(value));
+				case "threads" -> engine.setThreads(Integer.parseInt(value));
+				case "multipv" -> multiPv = Integer.parseInt(value);
+				case "tablebasepath" -> setTablebasePath(value);
+				case "ownbook" -> ownBook = Boolean.parseBoolean(value);
+				case "bookfile" -> setBookFile(value);
+				case "bookrandoms" -> setBookRandoms(value);
+				case "ponder" -> {
+					// the GUI decides when to ponder, the engine only needs to support "go ponder"
+				}
+				default -> send("info string Unknown option: " + name);
+			}
+		} catch (NumberFormatException e) {
+			send("info string Invalid value for option " + name + ": " + value);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void setTablebasePath(String path) {
+		if (path == null || path.isEmpty() || path.equals("<empty>")) {
+			engine.setTablebases(null);
+			return;
+		}
+		try {
+			TablebaseProber tablebases = TablebaseProber.open(Paths.get(path));
+			engine.setTablebases(tablebases);
+			send(String.format("info string Found tablebases with up to %d pieces", tablebases.getMaxPieces()));
+		} catch (IOException | ChessException e) {
+			send("info string Can't open the tablebases: " + e.getMessage());
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void setBookFile(String path) {
+		if (path == null || path.isEmpty() || path.equals("<empty>")) {
+			book = null;
+			bookPath = null;
+			return;
+		}
+		bookPath = path;
+		try {
+			book = PolyglotBook.open(Paths.get(path), bookRandoms);
+			send(String.format("info string Opened book with %d entries", book.size()));
+		} catch (IOException | ChessException e) {
+			send("info string Can't open the book: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Replaces the random values of the book keys with the ones of a text file, like the
+	 * <code>Random64</code> table of the Polyglot format, and opens the book file again with them.
+	 * An empty path restores the default values.
+	 * 
+	 * @param path The text file.
+	 */
+	private void setBookRandoms(String path) {
+		if (path == null || path.isEmpty() || path.equals("<empty>")) {
+			bookRandoms = PolyglotBook.getDefaultRandoms();
+		} else {
+			try {
+				bookRandoms = PolyglotBook.readRandoms(Paths.get(path));
+			} catch (IOException | ChessException e) {
+				send("info string Can't read the book random values: " + e.getMessage());
+				return;
+			}
+		}
+		if (bookPath != null) {
+			setBookFile(bookPath);
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private void send(String message) {
+		synchronized (output) {
+			output.println(message);
+			output.flush();
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String formatInfo(SearchInfo info) {
+		StringBuilder builder = new StringBuilder("info");
+		builder.append(" depth ").append(info.getDepth())
+			.append(" seldepth ").append(info.getSelectiveDepth())
+			.append(" multipv ").append(info.getMultiPv())
+			.append(" score ");
+		if (info.isMateScore()) {
+			builder.append("mate ").append(info.getMateDistance());
+		} else {
+			builder.append("cp ").append(info.getScore());
+		}
+		builder.append(" nodes ").append(info.getNodes())
+			.append(" nps ").append(info.getNodesPerSecond())
+			.append(" hashfull ").append(info.getHashfull())
+			.append(" time ").append(info.getTime())
+			.append(" pv");
+		for (int movement : info.getPrincipalVariation()) {
+			MovementCode.appendTo(movement, builder.append(' '));
+		}
+		return builder.toString();
+	}
+	
+	/**
+	 * Sends the search progress and result to the GUI.
+	 */
+	private final class Listener implements SearchListener {
+		
+		@Override
+		public void onInfo(SearchInfo info) {
+			send(formatInfo(info));
+		}
+		
+		@Override
+		public void onBestMovement(int bestMovement, int ponderMovement) {
+			StringBuilder builder = new StringBuilder("bestmove ");
+			MovementCode.appendTo(bestMovement, builder);
+			if (ponderMovement != MovementCode.NONE) {
+				MovementCode.appendTo(ponderMovement, builder.append(" ponder "));
+			}
+			send(builder.toString());
+		}
+	}
+	
+	/**
+	 * Starts the UCI server over the standard input and output.
+	 * 
+	 * @param args Not used.
+	 * 
+	 * @throws IOException If the standard input can't be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		new UciServer(System.in, System.out).run();
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the <code>IndexSort</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class IndexSortTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void indexesShouldBeSortedByTheirRowsKeepingTheOrderOfEqualRows() {
+		Random random = new Random(7);
+		long[] keys = new long[1000];
+		int[] order = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextInt(50) - 25L;
+			order[i] = i;
+		}
+		IndexSort.sort(
+			order,
+			new int[order.length],
+			0,
+			order.length,
+			(row1, row2) -> Long.compareUnsigned(keys[row1], keys[row2])
+		);
+		for (int i = 1; i < order.length; i++) {
+			int result = Long.compareUnsigned(keys[order[i - 1]], keys[order[i]]);
+			assertTrue(result < 0 || result == 0 && order[i - 1] < order[i]);
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void onlyTheGivenRangeShouldBeSorted() {
+		int[] order = {
+			5, 4, 3, 2, 1, 0
+		};
+		IndexSort.sort(order, new int[order.length], 1, 5, Integer::compare);
+		assertArrayEquals(new int[] {
+			5, 1, 2, 3, 4, 0
+		}, order);
+	}
+}
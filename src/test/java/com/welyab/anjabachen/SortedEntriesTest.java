@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the <code>SortedEntries</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class SortedEntriesTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void entriesShouldBeFoundAcrossChunks() throws IOException {
+		Path file = directory.resolve("entries.bin");
+		try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(file))) {
+			output.writeInt(0xCAFE);
+			// keys 0, 0, 1, 1, ..., 49, 49 and then two keys that are negative as signed numbers
+			for (int i = 0; i < 100; i++) {
+				output.writeLong(i / 2);
+				output.writeInt(i);
+			}
+			output.writeLong(-2);
+			output.writeInt(100);
+			output.writeLong(-1);
+			output.writeInt(101);
+		}
+		SortedEntries entries;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// 5 entries of 12 bytes per chunk
+			entries = SortedEntries.map(channel, 4, 102, 12, 64);
+		}
+		assertEquals(102, entries.size());
+		for (long key = 0; key < 50; key++) {
+			long entry = entries.lowerBound(key);
+			assertEquals(key * 2, entry);
+			assertTrue(entries.hasKey(entry + 1, key));
+			assertFalse(entries.hasKey(entry + 2, key));
+			assertEquals(key * 2 + 1, entries.getInt(entry + 1, 8));
+		}
+		assertEquals(101, entries.getInt(entries.lowerBound(-1), 8));
+		assertEquals(100, entries.lowerBound(50));
+		assertFalse(entries.hasKey(102, -1));
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * Unit tests for the <code>WorkerPool</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class WorkerPoolTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void allTasksShouldBeRunAndWorkersFinished() throws InterruptedException {
+		AtomicLong sum = new AtomicLong();
+		AtomicInteger finished = new AtomicInteger();
+		try (WorkerPool<Integer> pool = new WorkerPool<>("test", 4, 2, worker -> new WorkerPool.Worker<>() {
+			
+			@Override
+			public void process(Integer task) {
+				sum.addAndGet(task);
+			}
+			
+			@Override
+			public void finish() {
+				finished.incrementAndGet();
+			}
+		})) {
+			for (int i = 1; i <= 1000; i++) {
+				assertTrue(pool.submit(i));
+			}
+			pool.finish();
+		}
+		assertEquals(500500, sum.get());
+		assertEquals(4, finished.get());
+	}
+	
+	@Test
+	@Timeout(10)
+	@SuppressWarnings("javadoc")
+	public void failingTaskShouldStopThePoolWithoutBlockingTheProducer() throws InterruptedException {
+		AtomicInteger finished = new AtomicInteger();
+		IllegalStateException failure = new IllegalStateException("failure");
+		try (WorkerPool<Integer> pool = new WorkerPool<>("test", 2, 1, worker -> new WorkerPool.Worker<>() {
+			
+			@Override
+			public void process(Integer task) {
+				if (task == 10) {
+					throw failure;
+				}
+			}
+			
+			@Override
+			public void finish() {
+				finished.incrementAndGet();
+			}
+		})) {
+			int submitted = 0;
+			for (int i = 0; i < 1_000_000 && pool.submit(i); i++) {
+				submitted++;
+			}
+			assertTrue(submitted < 1_000_000);
+			assertTrue(pool.isFailed());
+			assertSame(failure, assertThrows(IllegalStateException.class, pool::finish));
+			assertSame(failure, assertThrows(IllegalStateException.class, pool::finish));
+		}
+		assertEquals(0, finished.get());
+	}
+	
+	@Test
+	@Timeout(10)
+	@SuppressWarnings("javadoc")
+	public void closeShouldCancelTheWorkers() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		WorkerPool<Integer> pool = new WorkerPool<>("test", 1, 4, worker -> task -> {
+			started.countDown();
+			try {
+				Thread.sleep(60_000);
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+				throw e;
+			}
+		});
+		assertTrue(pool.submit(1));
+		started.await();
+		pool.close();
+		interrupted.await();
+		assertFalse(pool.submit(2));
+		ChessException exception = assertThrows(ChessException.class, pool::finish);
+		assertEquals("test cancelled", exception.getMessage());
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Unit tests for the <code>OpeningBookBuilder</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class OpeningBookBuilderTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private static final String GAMES = String.join(
+		"\n",
+		"[Event \"A\"]",
+		"[Result \"1-0\"]",
+		"",
+		"1. e4 e5 {a comment [with brackets]} 2. Nf3 (2. Bc4 Nf6) Nc6 $1 3. Bb5 1-0",
+		"",
+		"[Event \"B\"]",
+		"[Result \"1/2-1/2\"]",
+		"",
+		"1.e4 e5 2.Nf3 Nf6 1/2-1/2",
+		"",
+		"[Event \"C\"]",
+		"[Result \"0-1\"]",
+		"",
+		"1. e4 c5 ; sicilian",
+		"2. Nf3 d6 0-1",
+		"",
+		"[Event \"D\"]",
+		"[Result \"1-0\"]",
+		"",
+		"1. d4 d5 1-0",
+		"",
+		"[Event \"E\"]",
+		"[Result \"*\"]",
+		"",
+		"1. c4 *",
+		"",
+		"[Event \"F\"]",
+		"[Result \"1-0\"]",
+		"[FEN \"4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1\"]",
+		"",
+		"1. O-O Kd7 1-0",
+		"",
+		"[Event \"G\"]",
+		"[Result \"1-0\"]",
+		"",
+		"1. e4 e5 2. Ke3 1-0",
+		""
+	);
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void bookShouldCountGamesOfEachMovement() throws IOException, InterruptedException {
+		Path output = directory.resolve("book.bin");
+		BookBuildResult result = OpeningBookBuilder.builder()
+			.threads(2)
+			.maxEntries(4)
+			.tempDirectory(directory)
+			.build()
+			.build(new ByteArrayInputStream(GAMES.getBytes(StandardCharsets.UTF_8)), output);
+		
+		assertEquals(7, result.getGames());
+		assertEquals(2, result.getRejectedGames());
+		assertTrue(result.getRuns() > 1);
+		PolyglotBook book = PolyglotBook.open(output);
+		assertEquals(result.getEntries(), book.size());
+		
+		Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		assertEquals(List.of("e2e4:5", "d2d4:2"), describe(book.getMovements(board)));
+		board.move(Position.of("e2"), Position.of("e4"));
+		assertEquals(List.of("c7c5:2", "e7e5:1"), describe(book.getMovements(board)));
+		board.move(Position.of("e7"), Position.of("e5"));
+		assertEquals(List.of("g1f3:3"), describe(book.getMovements(board)));
+		board.move(Position.of("g1"), Position.of("f3"));
+		assertEquals(List.of("g8f6:1"), describe(book.getMovements(board)));
+		
+		Board castling = new Board("4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1");
+		assertEquals(List.of("e1g1:2"), describe(book.getMovements(castling)));
+		try (var files = Files.list(directory)) {
+			assertEquals(List.of(output), files.collect(Collectors.toList()));
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void movementsShouldBePrunedByPlyAndGames() throws IOException, InterruptedException {
+		Path output = directory.resolve("book.bin");
+		BookBuildResult result = OpeningBookBuilder.builder()
+			.threads(1)
+			.maxPly(2)
+			.minGames(2)
+			.build()
+			.build(new ByteArrayInputStream(GAMES.getBytes(StandardCharsets.UTF_8)), output);
+		
+		assertEquals(1, result.getRuns());
+		PolyglotBook book = PolyglotBook.open(output);
+		Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		assertEquals(List.of("e2e4:5"), describe(book.getMovements(board)));
+		board.move(Position.of("e2"), Position.of("e4"));
+		assertEquals(List.of("e7e5:1"), describe(book.getMovements(board)));
+		board.move(Position.of("e7"), Position.of("e5"));
+		assertTrue(book.getMovements(board).isEmpty());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void bookShouldBeKeyedWithThePolyglotRandoms() throws IOException, InterruptedException {
+		Path output = directory.resolve("book.bin");
+		OpeningBookBuilder.builder()
+			.threads(1)
+			.maxPly(2)
+			.build()
+			.build(new ByteArrayInputStream(GAMES.getBytes(StandardCharsets.UTF_8)), output);
+		
+		// the keys of the initial position and of the position after 1. e4 given by the Polyglot
+		// format description, as any other Polyglot tool computes them
+		ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(output));
+		List<String> found = new ArrayList<>();
+		while (entries.hasRemaining()) {
+			long key = entries.getLong();
+			int movement = entries.getShort() & 0xFFFF;
+			entries.position(entries.position() + 6);
+			if (key == 0x463B96181691FC9CL || key == 0x823C9B50FD114196L) {
+				found.add(String.format("%016X:%d", key, movement));
+			}
+		}
+		// e2e4, then c7c5 and e7e5, as from row << 9 | from file << 6 | to row << 3 | to file
+		assertTrue(
+			found.containsAll(
+				List.of(
+					"463B96181691FC9C:" + (1 << 9 | 4 << 6 | 3 << 3 | 4),
+					"823C9B50FD114196:" + (6 << 9 | 2 << 6 | 4 << 3 | 2),
+					"823C9B50FD114196:" + (6 << 9 | 4 << 6 | 4 << 3 | 4)
+				)
+			),
+			found.toString()
+		);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<String> describe(List<BookMovement> movements) {
+		return movements.stream()
+			.map(
+				movement -> movement.getMovement().getOrigin().getNotation()
+						+ movement.getMovement().getTarget().getPosition().getNotation()
+						+ ":" + movement.getWeight()
+			)
+			.collect(Collectors.toList());
+	}
+}
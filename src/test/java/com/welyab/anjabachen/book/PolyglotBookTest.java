@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.book;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Position;
+import com.welyab.anjabachen.movement.ZobristKey;
+
+/**
+ * Unit tests for the <code>PolyglotBook</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class PolyglotBookTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void movementsShouldBeFoundByKey() throws IOException {
+		long[] randoms = ZobristKey.getRandoms();
+		Board afterE4 = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		afterE4.move(Position.of("e2"), Position.of("e4"));
+		List<long[]> entries = new ArrayList<>();
+		addEntry(entries, new Board(MovementUtil.FEN_INITIAL_POSITION), randoms, "d2d4", 5);
+		addEntry(entries, new Board(MovementUtil.FEN_INITIAL_POSITION), randoms, "e2e4", 10);
+		addEntry(entries, new Board(MovementUtil.FEN_INITIAL_POSITION), randoms, "g1f3", 0);
+		addEntry(entries, new Board(MovementUtil.FEN_INITIAL_POSITION), randoms, "e2e5", 20);
+		addEntry(entries, afterE4, randoms, "c7c5", 1);
+		addFiller(entries, 200);
+		Path file = writeBook(entries);
+		
+		PolyglotBook book = new PolyglotBook(file, randoms, 2 * PolyglotBook.ENTRY_SIZE);
+		assertEquals(entries.size(), book.size());
+		assertEquals(
+			List.of("e2e4:10", "d2d4:5", "g1f3:0"),
+			describe(book.getMovements(new Board(MovementUtil.FEN_INITIAL_POSITION)))
+		);
+		assertEquals(List.of("c7c5:1"), describe(book.getMovements(afterE4)));
+		assertTrue(book.getMovements(new Board("4k3/8/8/8/8/8/8/4K3 w - - 0 1")).isEmpty());
+		
+		Random random = new Random(3);
+		for (int i = 0; i < 50; i++) {
+			Movement movement = book.pickMovement(new Board(MovementUtil.FEN_INITIAL_POSITION), random).get();
+			assertTrue(List.of("e2e4", "d2d4").contains(describe(movement)));
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void castlingAndPromotionsShouldBeDecoded() throws IOException {
+		long[] randoms = PolyglotBook.getDefaultRandoms();
+		Board castling = new Board("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		Board promotion = new Board("4k3/P7/8/8/8/8/8/4K3 w - - 0 1");
+		List<long[]> entries = new ArrayList<>();
+		addEntry(entries, castling, randoms, "e1h1", 3);
+		addEntry(entries, castling, randoms, "e1a1", 2);
+		addEntry(entries, promotion, randoms, "a7a8n", 1);
+		PolyglotBook book = PolyglotBook.open(writeBook(entries));
+		assertEquals(List.of("e1g1:3", "e1c1:2"), describe(book.getMovements(castling)));
+		List<BookMovement> promotions = book.getMovements(promotion);
+		assertEquals(1, promotions.size());
+		assertEquals(
+			MovementUtil.KNIGHT,
+			MovementUtil.getPieceType(promotions.get(0).getMovement().getTarget().getPieceCode())
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void randomsShouldBeLoadedFromText() throws IOException {
+		long[] randoms = new long[ZobristKey.RANDOM_VALUES_COUNT];
+		Random random = new Random(5);
+		StringBuilder text = new StringBuilder("const uint64 Random64[781] = {\n");
+		for (int i = 0; i < randoms.length; i++) {
+			randoms[i] = random.nextLong();
+			text.append(String.format("   U64(0x%016X),%n", randoms[i]));
+		}
+		text.append("};\n");
+		Path randomsFile = directory.resolve("randoms.txt");
+		Files.writeString(randomsFile, text, StandardCharsets.US_ASCII);
+		assertArrayEquals(randoms, PolyglotBook.readRandoms(randomsFile));
+		
+		Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		List<long[]> entries = new ArrayList<>();
+		addEntry(entries, board, randoms, "e2e4", 1);
+		Path file = writeBook(entries);
+		assertEquals(1, PolyglotBook.open(file, PolyglotBook.readRandoms(randomsFile)).getMovements(board).size());
+		assertTrue(PolyglotBook.open(file).getMovements(board).isEmpty());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void defaultRandomsShouldGiveThePolyglotKeys() {
+		// the examples of the Polyglot format description
+		Map<String, Long> keys = new LinkedHashMap<>();
+		keys.put("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1", 0x463B96181691FC9CL);
+		keys.put("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", 0x823C9B50FD114196L);
+		keys.put("rnbqkbnr/ppp1pppp/8/3p4/4P3/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2", 0x0756B94461C50FB0L);
+		keys.put("rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR b KQkq - 0 2", 0x662FAFB965DB29D4L);
+		keys.put("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3", 0x22A48B5A8E47FF78L);
+		keys.put("rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR b kq - 0 3", 0x652A607CA3F242C1L);
+		keys.put("rnbq1bnr/ppp1pkpp/8/3pPp2/8/8/PPPPKPPP/RNBQ1BNR w - - 0 4", 0x00FDD303C946BDD9L);
+		keys.put("rnbqkbnr/p1pppppp/8/8/PpP4P/8/1P1PPPP1/RNBQKBNR b KQkq c3 0 3", 0x3C8123EA7B067637L);
+		keys.put("rnbqkbnr/p1pppppp/8/8/P6P/R1p5/1P1PPPP1/1NBQKBNR b Kkq - 0 4", 0x5C3F9B829B279560L);
+		long[] randoms = PolyglotBook.getDefaultRandoms();
+		keys.forEach((fen, key) -> assertEquals(key.longValue(), ZobristKey.of(new Board(fen), randoms), fen));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void addEntry(List<long[]> entries, Board board, long[] randoms, String movement, int weight) {
+		int code = (movement.charAt(1) - '1') << 9
+				| (movement.charAt(0) - 'a') << 6
+				| (movement.charAt(3) - '1') << 3
+				| movement.charAt(2) - 'a';
+		if (movement.length() > 4) {
+			code |= "nbrq".indexOf(movement.charAt(4)) + 1 << 12;
+		}
+		entries.add(new long[] {
+			ZobristKey.of(board, randoms),
+			code,
+			weight
+		});
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void addFiller(List<long[]> entries, int count) {
+		Random random = new Random(1);
+		for (int i = 0; i < count; i++) {
+			entries.add(new long[] {
+				random.nextLong(),
+				random.nextInt(1 << 12),
+				random.nextInt(100)
+			});
+		}
+	}
+	
+	@SuppressWarnings("javadoc")
+	private Path writeBook(List<long[]> entries) throws IOException {
+		entries.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+		ByteBuffer buffer = ByteBuffer.allocate(entries.size() * PolyglotBook.ENTRY_SIZE);
+		for (long[] entry : entries) {
+			buffer.putLong(entry[0]).putShort((short) entry[1]).putShort((short) entry[2]).putInt(0);
+		}
+		Path file = directory.resolve("book.bin");
+		Files.write(file, buffer.array());
+		return file;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<String> describe(List<BookMovement> movements) {
+		return movements.stream()
+			.map(movement -> describe(movement.getMovement()) + ":" + movement.getWeight())
+			.collect(Collectors.toList());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String describe(Movement movement) {
+		return movement.getOrigin().getNotation() + movement.getTarget().getPosition().getNotation();
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.png.MovementsParser;
+
+/**
+ * Unit tests for the <code>GameDeduplicator</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class GameDeduplicatorTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void repeatedGamesShouldBeDetected() {
+		GameDeduplicator deduplicator = GameDeduplicator.builder().expectedGames(4).build();
+		List<Movement> ruyLopez = parse("1. e4 e5 2. Nf3 Nc6 3. Bb5");
+		List<Movement> italian = parse("1. e4 e5 2. Nf3 Nc6 3. Bc4");
+		Map<String, String> tags = Map.of("White", "Carlsen, Magnus", "Black", "Caruana, Fabiano", "Date", "2018.11.09");
+		
+		assertTrue(deduplicator.add(tags, ruyLopez));
+		assertFalse(deduplicator.add(tags, parse("1. e4 e5 2. Nf3 Nc6 3. Bb5")));
+		assertTrue(deduplicator.add(tags, italian));
+		assertTrue(deduplicator.add(tags, parse("1. e4 e5 2. Nf3 Nc6")));
+		assertTrue(deduplicator.add(Map.of("White", "Carlsen, Magnus", "Black", "Caruana, Fabiano"), ruyLopez));
+		// tags that are not part of the fingerprint and spaces around the values don't matter
+		assertFalse(
+			deduplicator.add(
+				Map.of(
+					"Event",
+					"World Championship",
+					"White",
+					" Carlsen, Magnus",
+					"Black",
+					"Caruana, Fabiano ",
+					"Date",
+					"2018.11.09"
+				),
+				ruyLopez
+			)
+		);
+		assertEquals(6, deduplicator.getGames());
+		assertEquals(2, deduplicator.getDuplicates());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void theExactSetShouldGrowPastTheExpectedSize() {
+		// the expected size is much smaller than the number of games, so the Bloom filter says
+		// "maybe seen" for most of them and the set grows several times
+		GameDeduplicator deduplicator = GameDeduplicator.builder().expectedGames(16).build();
+		FingerprintSet set = new FingerprintSet(16);
+		Random random = new Random(7);
+		long[] values = new long[20_000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = random.nextLong();
+			assertTrue(set.add(values[i]));
+		}
+		assertTrue(set.add(0));
+		assertFalse(set.add(0));
+		assertEquals(values.length + 1, set.size());
+		for (long value : values) {
+			assertTrue(set.contains(value));
+			assertFalse(set.add(value));
+		}
+		assertFalse(set.contains(random.nextLong()));
+		
+		List<Movement> movements = parse("1. d4 Nf6 2. c4 e6");
+		for (int i = 0; i < 5000; i++) {
+			assertTrue(deduplicator.add(Map.of("White", "Player " + i), movements));
+		}
+		for (int i = 0; i < 5000; i += 7) {
+			assertFalse(deduplicator.add(Map.of("White", "Player " + i), movements));
+		}
+		assertEquals(715, deduplicator.getDuplicates());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void importShouldSkipDuplicatesAcrossFiles() throws IOException, InterruptedException {
+		String game1 = "[White \"A\"]\n[Black \"B\"]\n[Date \"2019.01.01\"]\n\n1. e4 e5 2. Nf3 1-0\n\n";
+		String game2 = "[White \"A\"]\n[Black \"B\"]\n[Date \"2019.01.02\"]\n\n1. e4 e5 2. Nf3 1-0\n\n";
+		String game3 = "[White \"C\"]\n[Black \"D\"]\n[Date \"2019.01.01\"]\n\n1. d4 d5 1/2-1/2\n\n";
+		Path archive1 = directory.resolve("archive1.pgn");
+		Path archive2 = directory.resolve("archive2.pgn");
+		Files.writeString(archive1, game1 + game2 + game1, StandardCharsets.UTF_8);
+		Files.writeString(archive2, game3 + game2 + game3, StandardCharsets.UTF_8);
+		
+		Path output = directory.resolve("games.ajg");
+		GameDeduplicator deduplicator = GameDeduplicator.builder().build();
+		assertEquals(2, GameFileWriter.importPgn(archive1, output, deduplicator));
+		assertEquals(1, GameFileWriter.importPgn(archive2, output, deduplicator));
+		assertEquals(3, deduplicator.getDuplicates());
+		
+		GameFile games = GameFile.open(output);
+		assertEquals(3, games.getCount());
+		assertEquals("2019.01.02", games.read(1).getTag("Date"));
+		assertEquals("C", games.read(2).getTag("White"));
+		
+		// a new deduplicator knows the stored games after reading them
+		GameDeduplicator reloaded = GameDeduplicator.builder().exact(false).build();
+		games.forEach(reloaded::add);
+		assertEquals(0, GameFileWriter.importPgn(archive2, output, reloaded));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<Movement> parse(String movetext) {
+		List<Movement> movements = new ArrayList<>();
+		new MovementsParser(MovementUtil.FEN_INITIAL_POSITION, movetext)
+			.parse((board, movement) -> movements.add(movement));
+		return movements;
+	}
+}
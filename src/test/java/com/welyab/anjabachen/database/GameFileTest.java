@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.png.MovementsParser;
+
+/**
+ * Unit tests for the <code>GameFile</code> and <code>GameFileWriter</code> classes.
+ * 
+ * @author Welyab Paula
+ */
+public class GameFileTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private static final String[] GAMES = {
+		"1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5 7. Bb3 d6 8. c3 O-O",
+		"1. d4 d5 2. c4 dxc4 3. e4 b5 4. a4 c6 5. axb5 cxb5 6. Qf3",
+		"1. e4 f5 2. exf5 g5 3. fxg6 Nf6 4. gxh7 Rg8 5. hxg8=N",
+		"1. f3 e5 2. g4 Qh4#"
+	};
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void gamesShouldBeReadBackByIdAndSequentially() throws IOException {
+		Path file = directory.resolve("games.ajg");
+		List<List<Movement>> expected = new ArrayList<>();
+		try (GameFileWriter writer = GameFileWriter.open(file)) {
+			for (int i = 0; i < 40; i++) {
+				List<Movement> movements = parse(GAMES[i % GAMES.length]);
+				expected.add(movements);
+				assertEquals(i, writer.write(tags(i), movements, i % 2 == 0 ? "1-0" : "*"));
+			}
+		}
+		
+		// small regions, so the games are spread over several mappings
+		GameFile games = new GameFile(file, 64);
+		assertEquals(40, games.getCount());
+		for (int i : new int[] {
+			39,
+			0,
+			17,
+			2
+		}) {
+			StoredGame game = games.read(i);
+			assertEquals(i, game.getId());
+			assertEquals(tags(i), game.getTags());
+			assertEquals(i % 2 == 0 ? "1-0" : "*", game.getResult());
+			assertSameMovements(expected.get(i), game.getMovements());
+		}
+		assertEquals(MovementUtil.WHITE_KNIGHT, games.read(2).getMovements().get(8).getTarget().getPieceCode());
+		
+		List<StoredGame> scanned = new ArrayList<>();
+		games.forEach(scanned::add);
+		assertEquals(40, scanned.size());
+		for (int i = 0; i < scanned.size(); i++) {
+			assertEquals(i, scanned.get(i).getId());
+			assertSameMovements(expected.get(i), scanned.get(i).getMovements());
+		}
+		
+		int[] plies = new int[2];
+		games.replay(3, (board, movement) -> plies[movement == null ? 1 : 0]++);
+		assertEquals(4, plies[0]);
+		assertEquals(1, plies[1]);
+		assertThrows(IndexOutOfBoundsException.class, () -> games.read(40));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void gamesShouldBeAppendedToAnExistingFile() throws IOException {
+		Path file = directory.resolve("games.ajg");
+		try (GameFileWriter writer = GameFileWriter.open(file)) {
+			writer.write(tags(0), parse(GAMES[0]), "1-0");
+		}
+		try (GameFileWriter writer = GameFileWriter.open(file)) {
+			assertEquals(1, writer.getCount());
+			assertThrows(ChessException.class, () -> writer.write(tags(9), parse(GAMES[3]).subList(1, 4), "0-1"));
+			assertEquals(1, writer.write(tags(1), parse(GAMES[1]), "0-1"));
+		}
+		GameFile games = GameFile.open(file);
+		assertEquals(2, games.getCount());
+		assertEquals(tags(0), games.read(0).getTags());
+		assertEquals("0-1", games.read(1).getResult());
+		assertSameMovements(parse(GAMES[1]), games.read(1).getMovements());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void unfinishedAppendShouldLeaveTheFileReadable() throws IOException {
+		Path file = directory.resolve("games.ajg");
+		Path crashed = directory.resolve("crashed.ajg");
+		try (GameFileWriter writer = GameFileWriter.open(file)) {
+			writer.write(tags(0), parse(GAMES[0]), "1-0");
+		}
+		try (GameFileWriter writer = GameFileWriter.open(file)) {
+			// enough games to flush the buffer of the writer several times
+			for (int i = 1; i <= 3000; i++) {
+				writer.write(tags(i), parse(GAMES[i % GAMES.length]), "1/2-1/2");
+			}
+			GameFile games = GameFile.open(file);
+			assertEquals(1, games.getCount());
+			assertSameMovements(parse(GAMES[0]), games.read(0).getMovements());
+			// the files as a crash would leave them
+			Files.copy(file, crashed);
+			Files.copy(GameFile.savedIndexFile(file), GameFile.savedIndexFile(crashed));
+		}
+		assertEquals(3001, GameFile.open(file).getCount());
+		assertFalse(Files.exists(GameFile.savedIndexFile(file)));
+		
+		// the games of the interrupted append are dropped by the next writer
+		GameFile games = GameFile.open(crashed);
+		assertEquals(1, games.getCount());
+		assertSameMovements(parse(GAMES[0]), games.read(0).getMovements());
+		try (GameFileWriter writer = GameFileWriter.open(crashed)) {
+			assertEquals(1, writer.write(tags(1), parse(GAMES[1]), "0-1"));
+		}
+		games = GameFile.open(crashed);
+		assertEquals(2, games.getCount());
+		assertSameMovements(parse(GAMES[1]), games.read(1).getMovements());
+		assertFalse(Files.exists(GameFile.savedIndexFile(crashed)));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void appendsShouldLeaveNoDeadBytes() throws IOException {
+		Path appended = directory.resolve("appended.ajg");
+		for (int i = 0; i < 20; i++) {
+			try (GameFileWriter writer = GameFileWriter.open(appended)) {
+				writer.write(tags(i), parse(GAMES[i % GAMES.length]), "*");
+			}
+		}
+		Path written = directory.resolve("written.ajg");
+		try (GameFileWriter writer = GameFileWriter.open(written)) {
+			for (int i = 0; i < 20; i++) {
+				writer.write(tags(i), parse(GAMES[i % GAMES.length]), "*");
+			}
+		}
+		assertEquals(Files.size(written), Files.size(appended));
+		List<String> rounds = new ArrayList<>();
+		GameFile.open(appended).forEach(game -> rounds.add(game.getTag("Round")));
+		assertEquals(20, rounds.size());
+		assertEquals("19", rounds.get(19));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void pgnFilesShouldBeImportedInOrder() throws IOException, InterruptedException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append(String.format("[Round \"%d\"]%n[Result \"*\"]%n%n%s *%n%n", i, GAMES[i % GAMES.length]));
+		}
+		Path pgn = directory.resolve("games.pgn");
+		Files.writeString(pgn, text, StandardCharsets.UTF_8);
+		Path file = directory.resolve("games.ajg");
+		assertEquals(200, GameFileWriter.importPgn(pgn, file));
+		GameFile games = GameFile.open(file);
+		assertEquals(200, games.getCount());
+		assertEquals("123", games.read(123).getTag("Round"));
+		assertTrue(Files.size(file) < Files.size(pgn) / 2);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void unfinishedFileShouldBeRejected() throws IOException {
+		Path file = directory.resolve("broken.ajg");
+		Files.write(file, new byte[] {
+			'A', 'J', 'G', 'F', 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0
+		});
+		assertThrows(ChessException.class, () -> GameFile.open(file));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Map<String, String> tags(int round) {
+		Map<String, String> tags = new LinkedHashMap<>();
+		tags.put("Event", "Café");
+		tags.put("Round", Integer.toString(round));
+		return tags;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<Movement> parse(String movetext) {
+		return new MovementsParser(MovementUtil.FEN_INITIAL_POSITION, movetext).getMovements();
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void assertSameMovements(List<Movement> expected, List<Movement> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getOrigin(), actual.get(i).getOrigin());
+			assertEquals(expected.get(i).getTarget().getPosition(), actual.get(i).getTarget().getPosition());
+			assertEquals(expected.get(i).getTarget().getPieceCode(), actual.get(i).getTarget().getPieceCode());
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.png.MovementFormatter;
+import com.welyab.anjabachen.movement.png.MovementsParser;
+
+/**
+ * Unit tests for the <code>OpeningExplorer</code> and <code>OpeningExplorerBuilder</code> classes.
+ * 
+ * @author Welyab Paula
+ */
+public class OpeningExplorerTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	/** The movements, the result, the white rating and the black rating of each game. */
+	@SuppressWarnings("javadoc")
+	private static final String[][] GAMES = {
+		{"1. e4 e5 2. Nf3 Nc6", "1-0", "2000", "1800"},
+		{"1. e4 c5 2. Nf3 d6", "0-1", "2200", "2400"},
+		{"1. e4 e5 2. Bc4 Nf6", "1/2-1/2", "1600", ""},
+		{"1. d4 d5 2. c4 e6", "1-0", "2500", "2500"},
+		{"1. e4 e5 2. Nf3 Nf6", "*", "2000", "2000"}
+	};
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void movementsShouldBeAggregatedByPosition() throws IOException, InterruptedException {
+		Path games = directory.resolve("games.ajg");
+		try (GameFileWriter writer = GameFileWriter.open(games)) {
+			for (String[] game : GAMES) {
+				writer.write(tags(game), parse(game[0]), game[1]);
+			}
+		}
+		Path output = directory.resolve("explorer.bin");
+		assertEquals(4, OpeningExplorerBuilder.builder().threads(2).build().build(GameFile.open(games), output));
+		
+		OpeningExplorer explorer = OpeningExplorer.open(output);
+		Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		List<ExplorerMove> moves = explorer.getMovements(board);
+		assertEquals(2, moves.size());
+		ExplorerMove e4 = moves.get(0);
+		assertEquals("e4", MovementFormatter.toSan(board, e4.getMovement()));
+		assertEquals(3, e4.getGames());
+		assertEquals(1, e4.getWhiteWins());
+		assertEquals(1, e4.getDraws());
+		assertEquals(1, e4.getBlackWins());
+		assertEquals(50.0, e4.getScore(), 1e-9);
+		assertEquals(1933, e4.getAverageRating());
+		assertEquals("d4", MovementFormatter.toSan(board, moves.get(1).getMovement()));
+		assertEquals(100.0, moves.get(1).getScore(), 1e-9);
+		
+		// the rating of black, who plays the movement, is unknown in the drawn game
+		List<ExplorerMove> replies = explorer.getMovements("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1");
+		assertEquals(2, replies.size());
+		assertEquals(2, replies.get(0).getGames());
+		assertEquals(1800, replies.get(0).getAverageRating());
+		assertEquals(25.0, replies.get(0).getScore(), 1e-9);
+		assertEquals(100.0, replies.get(1).getScore(), 1e-9);
+		
+		assertEquals(0, explorer.getMovements("4k3/8/8/8/8/8/8/4K3 w - - 0 1").size());
+		assertEquals(13, explorer.size());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void pgnFilesShouldGiveTheSameExplorer() throws IOException, InterruptedException {
+		Path pgn = directory.resolve("games.pgn");
+		StringBuilder text = new StringBuilder();
+		for (String[] game : GAMES) {
+			text.append(
+				String.format(
+					"[Event \"?\"]%n[WhiteElo \"%s\"]%n[BlackElo \"%s\"]%n[Result \"%s\"]%n%n%s %s%n%n",
+					game[2],
+					game[3],
+					game[1],
+					game[0],
+					game[1]
+				)
+			);
+		}
+		Files.writeString(pgn, text, StandardCharsets.UTF_8);
+		Path output = directory.resolve("explorer.bin");
+		OpeningExplorerBuilder builder = OpeningExplorerBuilder.builder().threads(2).minGames(2).build();
+		assertEquals(4, builder.build(pgn, output));
+		
+		OpeningExplorer explorer = OpeningExplorer.open(output);
+		List<ExplorerMove> moves = explorer.getMovements(MovementUtil.FEN_INITIAL_POSITION);
+		assertEquals(1, moves.size());
+		assertEquals(3, moves.get(0).getGames());
+		assertEquals(1933, moves.get(0).getAverageRating());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void rareEntriesShouldBePrunedWhenTheTableIsFull() {
+		ExplorerTable table = new ExplorerTable(16);
+		for (int i = 0; i < 10; i++) {
+			table.add(1L, 100, 1, 2000);
+		}
+		for (int i = 0; i < 100; i++) {
+			table.add(i + 2L, 200, 0, 0);
+			table.add(1L, 300, -1, 0);
+		}
+		assertTrue(table.size() < 16);
+		assertTrue(table.getPrunedEntries() >= 85);
+		assertTrue(table.getPrunedEntries() + table.size() >= 102);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Map<String, String> tags(String[] game) {
+		Map<String, String> tags = new LinkedHashMap<>();
+		tags.put("WhiteElo", game[2]);
+		tags.put("BlackElo", game[3]);
+		return tags;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<Movement> parse(String movetext) {
+		List<Movement> movements = new ArrayList<>();
+		new MovementsParser(MovementUtil.FEN_INITIAL_POSITION, movetext)
+			.parse((board, movement) -> movements.add(movement));
+		return movements;
+	}
+}
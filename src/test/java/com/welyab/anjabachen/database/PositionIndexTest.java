@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.database;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.png.MovementsParser;
+
+/**
+ * Unit tests for the <code>PositionIndex</code> and <code>PositionIndexBuilder</code> classes.
+ * 
+ * @author Welyab Paula
+ */
+public class PositionIndexTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private static final String[] GAMES = {
+		"1. e4 e5 2. Nf3 Nc6 3. Bb5 a6",
+		"1. Nf3 Nc6 2. e4 e5 3. Bc4 Bc5",
+		"1. d4 d5 2. c4 e6",
+		"1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5 4. c3 Nf6"
+	};
+	
+	/** The position after <code>1. e4 e5 2. Nf3 Nc6</code>, reached by transposition in game 1. */
+	@SuppressWarnings("javadoc")
+	private static final String FEN_KNIGHTS = "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3";
+	
+	/** The position after <code>3. Bc4 Bc5</code>, the final position of game 1. */
+	@SuppressWarnings("javadoc")
+	private static final String FEN_ITALIAN = "r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4";
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void positionsShouldBeFoundInTheGamesThatReachThem() throws IOException, InterruptedException {
+		Path games = directory.resolve("games.ajg");
+		write(games, 0, 8);
+		Path index = directory.resolve("index");
+		// a tiny memory budget, so each worker spills several runs
+		PositionIndexBuilder builder = PositionIndexBuilder.builder().threads(3).maxEntries(20).build();
+		assertEquals(8, builder.update(GameFile.open(games), index));
+		
+		PositionIndex positions = PositionIndex.open(index);
+		assertEquals(8, positions.getGameCount());
+		assertEquals(2 * (7 + 7 + 5 + 9), positions.size());
+		assertArrayEquals(new long[] {
+			0, 1, 3, 4, 5, 7
+		}, positions.findGames(FEN_KNIGHTS));
+		List<PositionMatch> matches = positions.find(FEN_KNIGHTS);
+		assertEquals(new PositionMatch(0, 4), matches.get(0));
+		assertEquals(new PositionMatch(1, 4), matches.get(1));
+		assertEquals(new PositionMatch(1, 6), positions.find(FEN_ITALIAN).get(0));
+		assertArrayEquals(new long[] {
+			1, 3, 5, 7
+		}, positions.findGames(FEN_ITALIAN));
+		assertArrayEquals(new long[] {
+			2, 6
+		}, positions.findGames("rnbqkbnr/ppp2ppp/4p3/3p4/2PP4/8/PP2PPPP/RNBQKBNR w KQkq - 0 3"));
+		assertEquals(8, positions.findGames(MovementUtil.FEN_INITIAL_POSITION).length);
+		assertEquals(0, positions.find("4k3/8/8/8/8/8/8/4K3 w - - 0 1").size());
+		
+		assertEquals(0, builder.update(GameFile.open(games), index));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void appendedGamesShouldBeIndexedIncrementally() throws IOException, InterruptedException {
+		Path games = directory.resolve("games.ajg");
+		Path index = directory.resolve("index");
+		PositionIndexBuilder builder = PositionIndexBuilder.builder().threads(2).build();
+		write(games, 0, 3);
+		assertEquals(3, builder.update(GameFile.open(games), index));
+		write(games, 3, 5);
+		assertEquals(5, builder.update(GameFile.open(games), index));
+		
+		PositionIndex positions = PositionIndex.open(index);
+		assertEquals(2, positions.getSegmentCount());
+		assertEquals(8, positions.getGameCount());
+		long[] expected = {
+			1, 3, 5, 7
+		};
+		assertArrayEquals(expected, positions.findGames(FEN_ITALIAN));
+		
+		builder.compact(index);
+		positions = PositionIndex.open(index);
+		assertEquals(1, positions.getSegmentCount());
+		assertEquals(8, positions.getGameCount());
+		assertArrayEquals(expected, positions.findGames(FEN_ITALIAN));
+		assertEquals(new PositionMatch(3, 6), positions.find(FEN_ITALIAN).get(1));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void interruptedCompactionShouldLeaveAReadableIndex() throws IOException, InterruptedException {
+		Path games = directory.resolve("games.ajg");
+		Path index = directory.resolve("index");
+		PositionIndexBuilder builder = PositionIndexBuilder.builder().threads(2).build();
+		for (int i = 0; i < 3; i++) {
+			write(games, 3 * i, 3);
+			assertEquals(3, builder.update(GameFile.open(games), index));
+		}
+		List<Path> segments = PositionIndex.listSegments(index);
+		assertEquals(
+			List.of(
+				PositionIndex.segmentFile(index, 0),
+				PositionIndex.segmentFile(index, 3),
+				PositionIndex.segmentFile(index, 6)
+			),
+			segments
+		);
+		
+		// compaction deletes the segments from the last one down, so stopping after the first
+		// deletion loses only the last games
+		Files.delete(segments.get(2));
+		PositionIndex positions = PositionIndex.open(index);
+		assertEquals(6, positions.getGameCount());
+		assertArrayEquals(new long[] {
+			1, 3, 5
+		}, positions.findGames(FEN_ITALIAN));
+		assertEquals(3, builder.update(GameFile.open(games), index));
+		builder.compact(index);
+		positions = PositionIndex.open(index);
+		assertEquals(1, positions.getSegmentCount());
+		assertArrayEquals(new long[] {
+			1, 3, 5, 7
+		}, positions.findGames(FEN_ITALIAN));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void pgnFilesShouldBeIndexedWithTheIdsOfTheImportedGames() throws IOException, InterruptedException {
+		Path pgn = directory.resolve("games.pgn");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			text.append(String.format("[Event \"Game %d\"]%n%n%s *%n%n", i, GAMES[i % GAMES.length]));
+		}
+		Files.writeString(pgn, text, StandardCharsets.UTF_8);
+		Path index = directory.resolve("index");
+		PositionIndexBuilder builder = PositionIndexBuilder.builder().threads(2).build();
+		assertEquals(6, builder.update(pgn, index));
+		assertEquals(0, builder.update(pgn, index));
+		
+		Path games = directory.resolve("games.ajg");
+		GameFileWriter.importPgn(pgn, games);
+		GameFile gameFile = GameFile.open(games);
+		PositionIndex positions = PositionIndex.open(index);
+		for (long id : positions.findGames(FEN_ITALIAN)) {
+			List<Movement> movements = gameFile.read(id).getMovements();
+			assertTrue(movements.size() >= 6, String.valueOf(id));
+		}
+		assertArrayEquals(new long[] {
+			1, 3, 5
+		}, positions.findGames(FEN_ITALIAN));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static void write(Path file, int from, int count) throws IOException {
+		try (GameFileWriter writer = GameFileWriter.open(file)) {
+			for (int i = from; i < from + count; i++) {
+				List<Movement> movements = new ArrayList<>();
+				new MovementsParser(MovementUtil.FEN_INITIAL_POSITION, GAMES[i % GAMES.length])
+					.parse((board, movement) -> movements.add(movement));
+				writer.write(Map.of("Round", String.valueOf(i)), movements, "*");
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the <code>BatchAnalyzer</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class BatchAnalyzerTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void allPositionsShouldBeAnalyzed() throws InterruptedException {
+		BatchAnalyzer analyzer = BatchAnalyzer.builder()
+			.threads(2)
+			.queueCapacity(1)
+			.hashSizePerThread(1)
+			.limits(SearchLimits.ofDepth(2))
+			.build();
+		List<AnalysisResult> results = new ArrayList<>();
+		long count = analyzer.analyze(
+			Stream.of(
+				"6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1",
+				"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+				"not a fen",
+				"4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1",
+				"k7/8/1Q6/8/8/8/8/7K b - - 0 1"
+			),
+			results::add
+		);
+		assertEquals(5, count);
+		assertEquals(5, results.size());
+		results.sort(Comparator.comparingLong(AnalysisResult::getIndex));
+		assertEquals("a1a8", MovementCode.toString(results.get(0).getBestMovement()));
+		assertTrue(results.get(0).getInfo().isMateScore());
+		assertFalse(results.get(1).isFailed());
+		assertTrue(results.get(2).isFailed());
+		assertEquals("d1d5", MovementCode.toString(results.get(3).getBestMovement()));
+		assertEquals(MovementCode.NONE, results.get(4).getBestMovement());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void sinkFailureShouldStopTheBatch() {
+		BatchAnalyzer analyzer = BatchAnalyzer.builder()
+			.threads(2)
+			.queueCapacity(1)
+			.hashSizePerThread(1)
+			.limits(SearchLimits.ofDepth(1))
+			.build();
+		IllegalStateException exception = assertThrows(
+			IllegalStateException.class,
+			() -> analyzer.analyze(Stream.generate(() -> "4k3/8/8/8/8/8/8/4K3 w - - 0 1").limit(100), result -> {
+				throw new IllegalStateException("Sink failure");
+			})
+		);
+		assertEquals("Sink failure", exception.getMessage());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void infiniteLimitsShouldBeRejected() {
+		assertThrows(
+			IllegalArgumentException.class,
+			() -> BatchAnalyzer.builder().limits(SearchLimits.builder().infinite(true).build()).build()
+		);
+	}
+}
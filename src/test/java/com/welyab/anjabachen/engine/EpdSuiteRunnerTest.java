@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.movement.fen.EpdReader;
+
+/**
+ * Unit tests for the <code>EpdSuiteRunner</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class EpdSuiteRunnerTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void movementsShouldBeScoredAgainstTheOperations() throws InterruptedException {
+		String suite = String.join(
+			"\n",
+			"6k1/5ppp/8/8/8/8/8/R5K1 w - - bm Ra8#; id \"mate\";",
+			"6k1/5ppp/8/8/8/8/8/R5K1 w - - bm Ra7; id \"wrong\";",
+			"4k3/8/8/3q4/8/8/8/3RK3 w - - am Rd2; id \"avoid\";",
+			"4k3/8/8/3q4/8/8/8/3RK3 w - - bm d1d5; id \"coordinates\";",
+			"4k3/8/8/3q4/8/8/8/3RK3 w - - bm Qd5; id \"illegal\";",
+			"4k3/8/8/3q4/8/8/8/3RK3 w - - id \"nothing\";",
+			"4k3/8/8/3q4/8/8/3RK3 w - - bm Rxd5; id \"broken\";",
+			"4k3/8/8/3q4/8/8/8/3RK3 w - - bm Rxd5; id \"after\";"
+		);
+		EpdSuiteRunner runner = EpdSuiteRunner.builder()
+			.threads(2)
+			.queueCapacity(1)
+			.hashSizePerThread(1)
+			.limits(SearchLimits.builder().depth(3).nodes(200_000).build())
+			.build();
+		List<EpdSuiteResult> results = new ArrayList<>();
+		assertEquals(8, runner.run(new EpdReader(new StringReader(suite)), results::add));
+		results.sort(Comparator.comparingLong(result -> result.getRecord().getIndex()));
+		
+		assertEquals(EpdSuiteResult.Status.SOLVED, results.get(0).getStatus());
+		assertEquals("Ra8#", results.get(0).getBestMovement());
+		assertEquals(EpdSuiteResult.Status.FAILED, results.get(1).getStatus());
+		assertEquals(EpdSuiteResult.Status.SOLVED, results.get(2).getStatus());
+		assertEquals("Rxd5", results.get(2).getBestMovement());
+		assertEquals(EpdSuiteResult.Status.SOLVED, results.get(3).getStatus());
+		assertEquals(EpdSuiteResult.Status.INVALID, results.get(4).getStatus());
+		assertEquals(EpdSuiteResult.Status.INVALID, results.get(5).getStatus());
+		assertEquals("No bm or am operation", results.get(5).getMessage());
+		assertEquals(EpdSuiteResult.Status.INVALID, results.get(6).getStatus());
+		assertTrue(results.get(6).getMessage().startsWith("Invalid EPD at line 7"));
+		assertEquals(EpdSuiteResult.Status.SOLVED, results.get(7).getStatus());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void infiniteLimitsShouldBeRejected() {
+		assertThrows(
+			IllegalArgumentException.class,
+			() -> EpdSuiteRunner.builder().limits(SearchLimits.builder().infinite(true).build()).build()
+		);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import com.welyab.anjabachen.movement.Board;
+
+/**
+ * Unit tests for the <code>Searcher</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class SearcherTest {
+	
+	@ParameterizedTest
+	@CsvSource({
+		"6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1, a1a8",
+		"r5k1/8/8/8/8/8/5PPP/6K1 b - - 0 1, a8a1",
+	})
+	@SuppressWarnings("javadoc")
+	public void shouldFindMateInOne(String fen, String expected) {
+		SearchInfo info = new Searcher(new TranspositionTable(1)).search(new Board(fen), SearchLimits.ofDepth(3));
+		assertEquals(expected, MovementCode.toString(info.getBestMovement()));
+		assertTrue(info.isMateScore());
+		assertEquals(1, info.getMateDistance());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldCaptureUndefendedQueen() {
+		Board board = new Board("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1");
+		SearchInfo info = new Searcher(new TranspositionTable(1)).search(board, SearchLimits.ofDepth(2));
+		assertEquals("d1d5", MovementCode.toString(info.getBestMovement()));
+		assertTrue(info.getScore() > 300);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void boardShouldBeRestoredAfterSearch() {
+		String fen = "r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3";
+		Board board = new Board(fen);
+		new Searcher(new TranspositionTable(1)).search(board, SearchLimits.ofDepth(2));
+		assertEquals(fen, board.getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void stalemateShouldHaveNoMovementAndDrawScore() {
+		SearchInfo info = new Searcher(new TranspositionTable(1))
+			.search(new Board("k7/8/1Q6/8/8/8/8/7K b - - 0 1"), SearchLimits.ofDepth(4));
+		assertEquals(MovementCode.NONE, info.getBestMovement());
+		assertEquals(0, info.getScore());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void nodeLimitShouldStopSearch() {
+		SearchLimits limits = SearchLimits.builder().nodes(2000).build();
+		SearchInfo info = new Searcher(new TranspositionTable(1)).search(new Board(), limits);
+		assertTrue(info.getDepth() < SearchLimits.MAX_DEPTH);
+		assertTrue(info.getBestMovement() != MovementCode.NONE);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void consecutiveSearchesShouldWarmStart() {
+		Searcher searcher = new Searcher(new TranspositionTable(4));
+		Board board = new Board("r1bqkbnr/pppp1ppp/2n5/4p3/4P3/5N2/PPPP1PPP/RNBQKB1R w KQkq - 2 3");
+		SearchInfo cold = searcher.search(board, SearchLimits.ofDepth(4));
+		SearchInfo warm = searcher.search(board, SearchLimits.ofDepth(4));
+		assertTrue(warm.getNodes() < cold.getNodes());
+		assertEquals(cold.getBestMovement(), warm.getBestMovement());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void multiPvShouldReportDistinctRankedLines() {
+		List<SearchInfo> lines = new ArrayList<>();
+		Board board = new Board("4k3/8/8/3q4/8/8/8/3RK3 w - - 0 1");
+		SearchLimits limits = SearchLimits.builder().depth(2).multiPv(3).build();
+		SearchInfo best = new Searcher(new TranspositionTable(1)).search(board, limits, lines::add);
+		List<SearchInfo> lastIteration = lines.subList(lines.size() - 3, lines.size());
+		assertEquals(best, lastIteration.get(0));
+		assertEquals("d1d5", MovementCode.toString(best.getBestMovement()));
+		for (int i = 0; i < lastIteration.size(); i++) {
+			SearchInfo line = lastIteration.get(i);
+			assertEquals(i + 1, line.getMultiPv());
+			assertEquals(2, line.getDepth());
+			if (i > 0) {
+				SearchInfo previous = lastIteration.get(i - 1);
+				assertTrue(line.getScore() <= previous.getScore());
+				assertTrue(line.getBestMovement() != previous.getBestMovement());
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the <code>TranspositionTable</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class TranspositionTableTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void storedEntryShouldBeFound() {
+		TranspositionTable table = new TranspositionTable(1);
+		int movement = MovementCode.parse("e2e4");
+		table.store(0x1234_5678_9ABC_DEF0L, movement, -250, 7, TranspositionTable.LOWER_BOUND);
+		long entry = table.probe(0x1234_5678_9ABC_DEF0L);
+		assertEquals(movement, TranspositionTable.getMovement(entry));
+		assertEquals(-250, TranspositionTable.getScore(entry));
+		assertEquals(7, TranspositionTable.getDepth(entry));
+		assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.getBound(entry));
+		assertEquals(0, table.probe(0x1234_5678_9ABC_DEF1L));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void deeperEntryShouldOnlyBeKeptInTheSameGeneration() {
+		TranspositionTable table = new TranspositionTable(1);
+		long key = 42;
+		table.store(key, MovementCode.NONE, 10, 8, TranspositionTable.LOWER_BOUND);
+		table.store(key, MovementCode.NONE, 20, 2, TranspositionTable.LOWER_BOUND);
+		assertEquals(10, TranspositionTable.getScore(table.probe(key)));
+		
+		table.newSearch();
+		assertEquals(10, TranspositionTable.getScore(table.probe(key)));
+		assertEquals(0, table.getHashfull());
+		table.store(key, MovementCode.NONE, 20, 2, TranspositionTable.LOWER_BOUND);
+		assertEquals(20, TranspositionTable.getScore(table.probe(key)));
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.movement.fen.FenParserException;
+
+/**
+ * Unit tests for the <code>BoardPool</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class BoardPoolTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void releasedBoardsShouldBeReused() {
+		Board first = BoardPool.acquire("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+		first.move(Position.E1, Position.E2);
+		BoardPool.release(first);
+		
+		Board second = BoardPool.acquire(MovementUtil.FEN_INITIAL_POSITION);
+		assertSame(first, second);
+		assertEquals(MovementUtil.FEN_INITIAL_POSITION, second.getFen());
+		assertFalse(second.hasPreviousMovement());
+		
+		Board third = BoardPool.acquire(second);
+		assertNotSame(second, third);
+		assertEquals(second, third);
+		BoardPool.release(third);
+		BoardPool.release(second);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void copiesMadeOnAPoolMissShouldKeepTheHistory() throws InterruptedException {
+		Board board = new Board();
+		board.move(Position.of("e2"), Position.of("e4"));
+		Board[] copy = new Board[1];
+		// a new thread starts with an empty pool
+		Thread thread = new Thread(() -> copy[0] = BoardPool.acquire(board));
+		thread.start();
+		thread.join();
+		assertNotSame(board, copy[0]);
+		assertEquals(board, copy[0]);
+		assertEquals(board.getZobristKey(), copy[0].getZobristKey());
+		assertTrue(copy[0].hasPreviousMovement());
+		copy[0].undo();
+		assertEquals(new Board(), copy[0]);
+		assertTrue(board.hasPreviousMovement());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void invalidFenShouldKeepTheBoardInThePool() {
+		Board board = BoardPool.acquire(MovementUtil.FEN_INITIAL_POSITION);
+		BoardPool.release(board);
+		assertThrows(FenParserException.class, () -> BoardPool.acquire("4k3/8/8 w - - 0 1"));
+		assertSame(board, BoardPool.acquire("4k3/8/8/8/8/8/8/4K3 b - - 0 1"));
+		BoardPool.release(board);
+	}
+}
@@ -17,9 +17,13 @@ package com.welyab.anjabachen.movement;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -139,6 +143,66 @@ public class BoardTest {
 		assertEquals(fen, new Board(fen).getFen());
 	}
 	
+	@ParameterizedTest
+	@ValueSource(
+		strings = {
+			"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+			"3r1rk1/pb2bp2/2qp3p/2B2P1P/1PpPp1Pp/4P3/2Q1B3/2KR2N1 b - b3 0 23",
+			"r3k2r/8/8/8/8/8/8/R3K2R w Kq - 100 10000",
+			"8/8/3K4/8/6k1/8/8/8 b - - 0 65"
+		}
+	)
+	@SuppressWarnings("javadoc")
+	public void fenShouldBeWrittenToCallerBuffers(String fen) {
+		StringBuilder builder = new StringBuilder("fen: ");
+		new Board(fen).writeFen(builder);
+		assertEquals("fen: " + fen, builder.toString());
+		
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		assertEquals(fen.length(), new Board(fen).writeFen(buffer));
+		assertEquals(fen, new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII));
+		
+		ByteBuffer small = ByteBuffer.allocate(fen.length() - 1);
+		assertThrows(BufferOverflowException.class, () -> new Board(fen).writeFen(small));
+		assertEquals(0, small.position());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void cachedFenShouldFollowThePosition() {
+		Board board = new Board();
+		String fen = board.getFen();
+		assertSame(fen, board.getFen());
+		board.move(Position.E2, Position.E4);
+		assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1", board.getFen());
+		Board copy = board.copy();
+		board.undo();
+		assertEquals(fen, board.getFen());
+		assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq - 0 1", copy.getFen());
+		copy.move(Position.E7, Position.E5);
+		assertEquals("rnbqkbnr/pppp1ppp/8/4p3/4P3/8/PPPP1PPP/RNBQKBNR w KQkq - 0 2", copy.getFen());
+		board.loadFen("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+		assertEquals("4k3/8/8/8/8/8/8/4K3 w - - 0 1", board.getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void boardShouldBeSetFromAnotherBoard() {
+		Board other = new Board("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 3 20");
+		other.move(Position.E1, Position.G1);
+		Board board = new Board("4k3/8/8/8/8/8/8/4K3 w - - 0 1");
+		board.set(other);
+		assertEquals(other.getFen(), board.getFen());
+		assertEquals(other, board);
+		assertEquals(other.getZobristKey(), board.getZobristKey());
+		board.undo();
+		assertEquals("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 3 20", board.getFen());
+		assertEquals("r3k2r/8/8/8/8/8/8/R4RK1 b kq - 4 20", other.getFen());
+		assertTrue(other.hasPreviousMovement());
+		board.set(board);
+		assertEquals("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 3 20", board.getFen());
+	}
+	
 	@ParameterizedTest
 	@CsvSource(
 		{
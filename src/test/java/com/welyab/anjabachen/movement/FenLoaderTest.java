@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.fen.FenParser;
+import com.welyab.anjabachen.movement.fen.FenParserException;
+import com.welyab.anjabachen.movement.fen.FenPositionInfo;
+
+/**
+ * Unit tests for the <code>FenLoader</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class FenLoaderTest {
+	
+	@ParameterizedTest
+	@ValueSource(
+		strings = {
+			MovementUtil.FEN_INITIAL_POSITION,
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 b - - 17 214",
+			"r3k2r/8/8/8/8/8/8/1R2K1R1 w KQkq - 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w - -",
+			"4k3/8/8/8/8/8/8/4K3 w - - - -",
+			"4k3/8/8/8/8/8/8/4K3 w - - +3 0012",
+			"4k3/8/8/8/8/8/8/4K3/ w - - 0 1",
+			"4k3/44/8/8/8/8/8/4K3 w Kq - 0 1"
+		}
+	)
+	@SuppressWarnings("javadoc")
+	public void validFenShouldGiveSameStateAsFenParser(String fen) {
+		FenParser parser = new FenParser(fen);
+		FenPositionInfo info = parser.getFenPositionInfo();
+		Board board = new Board(fen);
+		for (LocalizedPiece piece : parser.getLocalizedPieces()) {
+			assertEquals(piece.getPieceCode(), board.getSquareValue(piece.getPosition()));
+		}
+		assertEquals(parser.getLocalizedPieces().size(), board.getLocalizedPieces().size());
+		assertEquals(info.getSideToMove(), board.getSideToMove());
+		assertEquals(info.getEnPassantTargetSquare(), board.getEnPassantTargetSquare());
+		assertEquals(info.getHalfMoveClock(), board.getHalfMoveClock());
+		assertEquals(info.getFullMoveCounter(), board.getFullMoveCounter());
+		
+		// the bytes of a line with other content around it
+		byte[] line = ("fen: " + fen + "\n").getBytes(StandardCharsets.US_ASCII);
+		Board fromBytes = new Board();
+		fromBytes.loadFen(line, 5, fen.length());
+		assertEquals(board.getFen(), fromBytes.getFen());
+		assertEquals(board.getZobristKey(), fromBytes.getZobristKey());
+	}
+	
+	@ParameterizedTest
+	@ValueSource(
+		strings = {
+			"",
+			" w - - 0 1",
+			"8/8/8/8/8/8/8 w - - 0 1",
+			"4k3/8/8/8/8/8/8/4K3/8 w - - 0 1",
+			"4k3/9/8/8/8/8/8/4K3 w - - 0 1",
+			"4k3/7/8/8/8/8/8/4K3 w - - 0 1",
+			"4k3/8/8/8/8/8/8/4X3 w - - 0 1",
+			"4k3/8/8/8/8/8/8/4K3",
+			"4k3/8/8/8/8/8/8/4K3 x - - 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w  - 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w QK - 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w KQkqK - 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w - e 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w - e3e 0 1",
+			"4k3/8/8/8/8/8/8/4K3 w - - 128 1",
+			"4k3/8/8/8/8/8/8/4K3 w - - x 1",
+			"4k3/8/8/8/8/8/8/4K3 w - - 0 32768",
+			"4k3/8/8/8/8/8/8/4K3 w - - 0 +"
+		}
+	)
+	@SuppressWarnings("javadoc")
+	public void invalidFenShouldBeRejectedLikeFenParser(String fen) {
+		assertThrows(FenParserException.class, () -> new FenParser(fen).parse());
+		FenParserException exception = assertThrows(FenParserException.class, () -> new Board(fen));
+		assertEquals(fen, exception.getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void boardShouldBeReusedForManyPositions() {
+		Board board = new Board();
+		board.move(Position.E2, Position.E4);
+		board.move(Position.E7, Position.E5);
+		
+		String text = "x r3k2r/8/8/8/8/8/8/R3K2R b Kq - 5 30 x";
+		board.loadFen(text, 2, text.length() - 2);
+		assertEquals("r3k2r/8/8/8/8/8/8/R3K2R b Kq - 5 30", board.getFen());
+		assertEquals(new Board("r3k2r/8/8/8/8/8/8/R3K2R b Kq - 5 30").getZobristKey(), board.getZobristKey());
+		board.move(Position.E8, Position.C8);
+		assertEquals("2kr3r/8/8/8/8/8/8/R3K2R w K - 6 31", board.getFen());
+		
+		board.loadFen(new StringBuilder(MovementUtil.FEN_INITIAL_POSITION));
+		assertEquals(MovementUtil.FEN_INITIAL_POSITION, board.getFen());
+		assertEquals(20, board.getMovements().streamMovements().count());
+		
+		// a failed load keeps the position
+		assertThrows(FenParserException.class, () -> board.loadFen("8/8/8/8/8/8/8/8 w - - 0 x"));
+		assertThrows(ChessException.class, () -> board.loadFen("4k3/8/8/8/8/8/8/3KK3 w - - 0 1"));
+		assertEquals(MovementUtil.FEN_INITIAL_POSITION, board.getFen());
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Unit tests for the <code>PositionCodec</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class PositionCodecTest {
+	
+	@ParameterizedTest
+	@ValueSource(
+		strings = {
+			MovementUtil.FEN_INITIAL_POSITION,
+			"rnbqkbnr/ppp1p1pp/8/3pPp2/8/8/PPPP1PPP/RNBQKBNR w KQkq f6 0 3",
+			"rnbqkbnr/pppp1ppp/8/8/3Pp3/8/PPP1PPPP/RNBQKBNR b Kq d3 0 3",
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 17 214",
+			"4k3/8/8/8/8/8/8/4K3 b - - 99 1000",
+			"8/8/8/8/8/8/8/8 w - - 0 1"
+		}
+	)
+	@SuppressWarnings("javadoc")
+	public void positionsShouldSurviveRoundTrip(String fen) {
+		Board board = new Board(fen);
+		ByteBuffer buffer = ByteBuffer.allocate(PositionCodec.MAX_SIZE + 3);
+		buffer.put((byte) 1);
+		int size = board.writeTo(buffer);
+		assertEquals(PositionCodec.getSize(board), size);
+		assertEquals(1 + size, buffer.position());
+		buffer.flip().get();
+		
+		Board decoded = new Board(buffer);
+		assertEquals(1 + size, buffer.position());
+		assertEquals(fen, decoded.getFen());
+		assertEquals(board.getZobristKey(), decoded.getZobristKey());
+		assertEquals(
+			board.getMovements().streamMovements().count(),
+			decoded.getMovements().streamMovements().count()
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void initialPositionShouldUseAllBytes() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		assertEquals(PositionCodec.MAX_SIZE, PositionCodec.encode(new Board(), buffer));
+		assertEquals(14, PositionCodec.getSize(new Board("4k3/8/8/8/8/8/8/4K3 w - - 0 1")));
+		assertThrows(BufferOverflowException.class, () -> new Board().writeTo(ByteBuffer.allocate(28)));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void loadingShouldReplaceThePositionOfBoard() {
+		ByteBuffer buffer = ByteBuffer.allocate(PositionCodec.MAX_SIZE * 2);
+		new Board("r3k2r/8/8/8/8/8/8/R3K2R b Qk - 3 40").writeTo(buffer);
+		new Board().writeTo(buffer);
+		buffer.flip();
+		
+		Board board = new Board();
+		board.move(Position.E2, Position.E4);
+		board.move(Position.E7, Position.E5);
+		board.move(Position.E1, Position.E2);
+		board.loadFrom(buffer);
+		assertEquals("r3k2r/8/8/8/8/8/8/R3K2R b Qk - 3 40", board.getFen());
+		board.move(Position.E8, Position.G8);
+		assertEquals("r4rk1/8/8/8/8/8/8/R3K2R w Q - 4 41", board.getFen());
+		board.loadFrom(buffer);
+		assertEquals(MovementUtil.FEN_INITIAL_POSITION, board.getFen());
+		assertEquals(new Board().getZobristKey(), board.getZobristKey());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void invalidDataShouldBeRejected() {
+		Board board = new Board();
+		String fen = board.getFen();
+		assertThrows(ChessException.class, () -> board.loadFrom(ByteBuffer.allocate(4)));
+		
+		ByteBuffer buffer = ByteBuffer.allocate(PositionCodec.MAX_SIZE);
+		board.writeTo(buffer);
+		buffer.limit(buffer.position() - 1).position(0);
+		assertThrows(ChessException.class, () -> board.loadFrom(buffer));
+		
+		// a nibble that is not a piece
+		ByteBuffer invalidPiece = ByteBuffer.allocate(PositionCodec.MAX_SIZE);
+		board.writeTo(invalidPiece);
+		invalidPiece.put(8, (byte) 0xC0).flip();
+		assertThrows(ChessException.class, () -> board.loadFrom(invalidPiece));
+		
+		// two white kings
+		ByteBuffer twoKings = ByteBuffer.allocate(PositionCodec.MAX_SIZE);
+		new Board("4k3/8/8/8/8/8/8/3QK3 w - - 0 1").writeTo(twoKings);
+		twoKings.put(8, (byte) 0xB5).flip();
+		assertThrows(ChessException.class, () -> board.loadFrom(twoKings));
+		
+		assertEquals(fen, board.getFen());
+		assertEquals(0, twoKings.position());
+	}
+}
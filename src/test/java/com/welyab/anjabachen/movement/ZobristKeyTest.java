@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the <code>ZobristKey</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class ZobristKeyTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void transpositionsShouldHaveSameKey() {
+		Board board1 = new Board();
+		board1.move(Position.G1, Position.F3);
+		board1.move(Position.G8, Position.F6);
+		board1.move(Position.B1, Position.C3);
+		Board board2 = new Board();
+		board2.move(Position.B1, Position.C3);
+		board2.move(Position.G8, Position.F6);
+		board2.move(Position.G1, Position.F3);
+		assertEquals(board1.getZobristKey(), board2.getZobristKey());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void undoShouldRestoreKey() {
+		Board board = new Board();
+		long key = board.getZobristKey();
+		board.move(Position.E2, Position.E4);
+		assertNotEquals(key, board.getZobristKey());
+		board.undo();
+		assertEquals(key, board.getZobristKey());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void sideToMoveAndCastlingShouldChangeKey() {
+		long key = new Board("4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1").getZobristKey();
+		assertNotEquals(key, new Board("4k3/8/8/8/8/8/8/R3K2R b KQ - 0 1").getZobristKey());
+		assertNotEquals(key, new Board("4k3/8/8/8/8/8/8/R3K2R w K - 0 1").getZobristKey());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void enPassantShouldOnlyCountWhenCaptureIsPossible() {
+		assertEquals(
+			new Board("4k3/8/8/8/4P3/8/8/4K3 b - - 0 1").getZobristKey(),
+			new Board("4k3/8/8/8/4P3/8/8/4K3 b - e3 0 1").getZobristKey()
+		);
+		assertNotEquals(
+			new Board("4k3/8/8/8/3pP3/8/8/4K3 b - - 0 1").getZobristKey(),
+			new Board("4k3/8/8/8/3pP3/8/8/4K3 b - e3 0 1").getZobristKey()
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void incrementalKeyShouldMatchFullComputation() {
+		Random random = new Random(7);
+		for (String fen : List.of(
+			MovementUtil.FEN_INITIAL_POSITION,
+			"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+			"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+			"n1n5/PPPk4/8/8/8/8/4Kppp/5N1N b - - 0 1"
+		)) {
+			Board board = new Board(fen);
+			for (int ply = 0; ply < 200; ply++) {
+				List<Movement> movements = board.getMovements().streamMovements().collect(Collectors.toList());
+				if (movements.isEmpty()) {
+					break;
+				}
+				board.move(movements.get(random.nextInt(movements.size())));
+				assertEquals(new Board(board.getFen()).getZobristKey(), board.getZobristKey());
+			}
+			while (board.hasPreviousMovement()) {
+				board.undo();
+				assertEquals(new Board(board.getFen()).getZobristKey(), board.getZobristKey());
+			}
+			assertEquals(new Board(fen).getZobristKey(), board.getZobristKey());
+		}
+	}
+}
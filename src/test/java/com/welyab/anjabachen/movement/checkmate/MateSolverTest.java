@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Unit tests for the <code>MateSolver</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class MateSolverTest {
+	
+	@SuppressWarnings("javadoc")
+	static final Path CHECKMATE_IN_2 = Paths.get("src/test/resources/movement/checkmate/checkmate_in_2.txt");
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldSolveMateInOne() {
+		Board board = new Board("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+		MateSolution solution = new MateSolver().solve(board, 3).get();
+		assertEquals(1, solution.getMateIn());
+		assertEquals("mate in 1: a1a8", solution.toString());
+		assertEquals("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", board.getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldReturnFullMatingLine() {
+		Board board = new Board("r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 0");
+		MateSolution solution = new MateSolver().solve(board, 2).get();
+		assertEquals(2, solution.getMateIn());
+		assertEquals(3, solution.getMovements().size());
+		assertEquals("mate in 2: d5f6 g7f6 c4f7", solution.toString());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldNotFindMateWhenThereIsNone() {
+		assertFalse(new MateSolver().solve(new Board(), 2).isPresent());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldSolveAllPuzzlesOfCheckmateInTwoFile() throws IOException {
+		List<String> lines = Files.readAllLines(CHECKMATE_IN_2);
+		MateSolver solver = new MateSolver();
+		List<String> failures = new ArrayList<>();
+		int puzzles = 0;
+		for (int i = 0; i + 2 < lines.size(); i += 4) {
+			puzzles++;
+			String fen = lines.get(i + 1).trim();
+			String solution = lines.get(i + 2).trim();
+			Optional<MateSolution> found = solver.solve(new Board(fen), 2);
+			if (found.isEmpty()) {
+				failures.add(fen);
+			} else if (!matches(found.get().getKeyMovement(), firstMovement(solution))) {
+				failures.add(fen + " " + found.get() + " " + solution);
+			}
+		}
+		assertTrue(puzzles > 100);
+		assertEquals(List.of(), failures);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String firstMovement(String solution) {
+		return solution.replaceAll("\\d+\\.+", " ").trim().split("\\s+")[0];
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static boolean matches(Movement movement, String san) {
+		String clean = san.replaceAll("[+#x]", "");
+		int promotion = clean.indexOf('=');
+		if (promotion >= 0) {
+			char letter = clean.charAt(promotion + 1);
+			if (Character.toUpperCase(MovementUtil.pieceCodeToLetter(movement.getTarget().getPieceCode())) != letter) {
+				return false;
+			}
+			clean = clean.substring(0, promotion);
+		}
+		String target = clean.substring(clean.length() - 2);
+		char piece = Character.isUpperCase(clean.charAt(0)) ? clean.charAt(0) : MovementUtil.PAWN_LETTER;
+		if (clean.startsWith("O-O")) {
+			return MovementUtil.isKing(movement.getTarget().getPieceCode());
+		}
+		byte originPiece = movement.getTarget().getPieceCode();
+		boolean pieceMatches = promotion >= 0
+				|| Character.toUpperCase(MovementUtil.pieceCodeToLetter(originPiece)) == piece;
+		return pieceMatches && movement.getTarget().getPosition().getNotation().equals(target);
+	}
+}
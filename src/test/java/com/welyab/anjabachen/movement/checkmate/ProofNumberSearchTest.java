@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Unit tests for the <code>ProofNumberSearch</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class ProofNumberSearchTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldProveMateAndBuildTree() {
+		String fen = "r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 0";
+		Board board = new Board(fen);
+		ProofNumberResult result = new ProofNumberSearch().solve(board, 2);
+		assertTrue(result.isProven());
+		assertEquals(0, result.getProofNumber());
+		assertEquals(ProofNumberSearch.INFINITY, result.getDisproofNumber());
+		assertEquals(2, result.getMateIn());
+		ProofTree key = result.getTree().getChildren().get(0);
+		assertEquals(Position.D5, key.getMovement().getOrigin());
+		assertEquals(Position.F6, key.getMovement().getTarget().getPosition());
+		assertEquals(fen, board.getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldDisproveMateWhenThereIsNone() {
+		ProofNumberResult result = new ProofNumberSearch().solve(new Board(), 2);
+		assertTrue(result.isDisproven());
+		assertFalse(result.isProven());
+		assertNull(result.getTree());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void smallTableShouldStillProveMate() {
+		Board board = new Board("1rb4r/pkPp3p/1b1P3n/1Q6/N3Pp2/8/P1P3PP/7K w - - 1 0");
+		ProofNumberResult result = new ProofNumberSearch(1024, Long.MAX_VALUE).solve(board, 2);
+		assertTrue(result.isProven());
+		assertEquals(2, result.getMateIn());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void smallTableShouldStillSolveThePuzzles() throws IOException {
+		// the table is collected many times, with the subtrees below refuted root movements first
+		List<String> lines = Files.readAllLines(MateSolverTest.CHECKMATE_IN_2);
+		ProofNumberSearch search = new ProofNumberSearch(1024, Long.MAX_VALUE);
+		for (int i = 0; i + 2 < lines.size() && i < 4 * 30; i += 4) {
+			Board board = new Board(lines.get(i + 1).trim());
+			ProofNumberResult result = search.solve(board, 2);
+			assertTrue(result.isProven(), board.getFen());
+			assertTrue(result.getMateIn() <= 2, board.getFen());
+		}
+		assertTrue(search.solve(new Board(), 2).isDisproven());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void nodeLimitShouldLeaveResultUnknown() {
+		ProofNumberResult result = new ProofNumberSearch(1024, 10).solve(new Board(), 2);
+		assertFalse(result.isProven());
+		assertFalse(result.isDisproven());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void shouldSolvePuzzlesInParallel() throws IOException, InterruptedException {
+		List<String> lines = Files.readAllLines(MateSolverTest.CHECKMATE_IN_2);
+		List<String> fens = new ArrayList<>();
+		for (int i = 0; i + 2 < lines.size() && fens.size() < 12; i += 4) {
+			fens.add(lines.get(i + 1).trim());
+		}
+		List<ProofNumberResult> results = ProofNumberSearch.solveAll(
+			fens,
+			2,
+			2,
+			() -> new ProofNumberSearch(1 << 16, Long.MAX_VALUE)
+		);
+		assertEquals(fens.size(), results.size());
+		for (ProofNumberResult result : results) {
+			assertTrue(result.isProven());
+			assertTrue(result.getMateIn() <= 2);
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void parallelSearchFailuresShouldBeRethrown() throws InterruptedException {
+		List<String> fens = List.of("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1", "not a fen");
+		List<ProofNumberResult> results = ProofNumberSearch.solveAll(fens, 1, 2, ProofNumberSearch::new);
+		assertTrue(results.get(0).isProven());
+		assertNull(results.get(1));
+		assertThrows(
+			IllegalArgumentException.class,
+			() -> ProofNumberSearch.solveAll(fens, 0, 2, ProofNumberSearch::new)
+		);
+	}
+}
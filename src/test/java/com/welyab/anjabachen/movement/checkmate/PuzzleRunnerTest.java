@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.checkmate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Unit tests for the <code>PuzzleRunner</code> and <code>PuzzleReader</code> classes.
+ * 
+ * @author Welyab Paula
+ */
+public class PuzzleRunnerTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void allPuzzlesOfCheckmateInTwoFileShouldBeSolved() throws IOException, InterruptedException {
+		PuzzleRunner runner = PuzzleRunner.builder().threads(2).queueCapacity(4).build();
+		List<PuzzleResult> failures = new ArrayList<>();
+		long count;
+		try (PuzzleReader reader = PuzzleReader.open(MateSolverTest.CHECKMATE_IN_2)) {
+			count = runner.run(reader, result -> {
+				if (!result.isSolved()) {
+					failures.add(result);
+				}
+			});
+		}
+		assertTrue(count > 100);
+		assertEquals(List.of(), failures);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void wrongSolutionsShouldBeReported() throws InterruptedException {
+		String puzzles = String.join(
+			"\n",
+			"Good",
+			"r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 0",
+			"1. Nf6+ gxf6 2. Bxf7#",
+			"",
+			"Not checkmate",
+			"r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 0",
+			"1. Nf6+ gxf6 2. Bxf6",
+			"",
+			"Shorter mate",
+			"7k/8/6K1/8/8/8/8/Q7 w - - 0 1",
+			"1. Qb1 Kg8 2. Qb8#",
+			"",
+			"Illegal",
+			"r2qkb1r/pp2nppp/3p4/2pNN1B1/2BnP3/3P4/PPP2PPP/R2bK2R w KQkq - 1 0",
+			"1. Qh5",
+			""
+		);
+		List<PuzzleResult> results = new ArrayList<>();
+		long count = PuzzleRunner.builder()
+			.threads(2)
+			.queueCapacity(1)
+			.build()
+			.run(new PuzzleReader(new StringReader(puzzles)), results::add);
+		assertEquals(4, count);
+		results.sort(Comparator.comparingLong(result -> result.getPuzzle().getIndex()));
+		assertEquals(PuzzleResult.Status.SOLVED, results.get(0).getStatus());
+		assertEquals("mate in 2: d5f6 g7f6 c4f7", results.get(0).getEngineSolution().toString());
+		assertTrue(results.get(0).getTime(TimeUnit.NANOSECONDS) > 0);
+		assertEquals(PuzzleResult.Status.MISMATCH, results.get(1).getStatus());
+		assertEquals(PuzzleResult.Status.MISMATCH, results.get(2).getStatus());
+		assertEquals(1, results.get(2).getEngineSolution().getMateIn());
+		assertEquals(PuzzleResult.Status.INVALID, results.get(3).getStatus());
+		assertNotNull(results.get(3).getMessage());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void incompletePuzzleShouldBeReportedAndSkipped() throws InterruptedException {
+		String puzzles = String.join(
+			"\n",
+			"Missing solution",
+			"7k/8/6K1/8/8/8/8/Q7 w - - 0 1",
+			"",
+			"Mate in one",
+			"7k/8/6K1/8/8/8/8/Q7 w - - 0 1",
+			"1. Qa8#",
+			"",
+			"Missing position"
+		);
+		List<PuzzleResult> results = new ArrayList<>();
+		long count = PuzzleRunner.builder()
+			.threads(2)
+			.build()
+			.run(new PuzzleReader(new StringReader(puzzles)), results::add);
+		assertEquals(3, count);
+		results.sort(Comparator.comparingLong(result -> result.getPuzzle().getIndex()));
+		assertEquals(PuzzleResult.Status.INVALID, results.get(0).getStatus());
+		assertEquals("Incomplete problem at line 1", results.get(0).getMessage());
+		assertEquals(PuzzleResult.Status.SOLVED, results.get(1).getStatus());
+		assertEquals(PuzzleResult.Status.INVALID, results.get(2).getStatus());
+		assertEquals("Incomplete problem at line 8", results.get(2).getMessage());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void sinkFailureShouldStopTheRun() {
+		String puzzle = "Mate in one\n7k/8/6K1/8/8/8/8/Q7 w - - 0 1\n1. Qa8#\n\n";
+		PuzzleRunner runner = PuzzleRunner.builder().threads(2).queueCapacity(1).build();
+		ChessException exception = assertThrows(
+			ChessException.class,
+			() -> runner.run(new PuzzleReader(new StringReader(puzzle.repeat(20))), result -> {
+				throw new ChessException("Sink failure");
+			})
+		);
+		assertEquals("Sink failure", exception.getMessage());
+	}
+}
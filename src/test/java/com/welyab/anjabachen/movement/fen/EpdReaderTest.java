@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.fen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.ChessException;
+
+/**
+ * Unit tests for the <code>EpdReader</code> and <code>EpdWriter</code> classes.
+ * 
+ * @author Welyab Paula
+ */
+public class EpdReaderTest {
+	
+	@SuppressWarnings("javadoc")
+	private static final String SUITE = String.join(
+		"\n",
+		"2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - bm Qg6; id \"WAC.001\";",
+		"",
+		"8/7p/5k2/5p2/p1p2P2/Pr1pPK2/1P1R3P/8 b - - bm Rxb2; id \"WAC.002\";",
+		"1kr5/3n4/q3p2p/p2n2p1/PppB1P2/5BP1/1P2Q2P/3R2K1 w - - 3 40 bm f5; am Qe5; c0 \"f5=10, Be5+=2\";",
+		"r1b1k2r/ppppnppp/2n2q2/2b5/3NP3/2P1B3/PP3PPP/RN1QKB1R w KQkq - acd 12; hmvc 4; fmvn 7; pv Qd2 O-O;"
+	);
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void suiteLinesShouldBeParsed() {
+		List<EpdRecord> records = new ArrayList<>();
+		new EpdReader(new StringReader(SUITE)).forEachRemaining(records::add);
+		assertEquals(4, records.size());
+		
+		EpdRecord wac = records.get(0);
+		assertEquals(0, wac.getIndex());
+		assertEquals("2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - 0 1", wac.getFen());
+		assertEquals(List.of("Qg6"), wac.getOperands("bm"));
+		assertEquals("WAC.001", wac.getId());
+		assertEquals("#0 WAC.001", wac.toString());
+		assertTrue(wac.getOperands("am").isEmpty());
+		assertNull(wac.getOperand("acd"));
+		
+		EpdRecord sts = records.get(2);
+		assertEquals("1kr5/3n4/q3p2p/p2n2p1/PppB1P2/5BP1/1P2Q2P/3R2K1 w - - 3 40", sts.getFen());
+		assertEquals("Qe5", sts.getOperand("am"));
+		assertEquals("f5=10, Be5+=2", sts.getOperand("c0"));
+		
+		EpdRecord analysis = records.get(3);
+		assertEquals("r1b1k2r/ppppnppp/2n2q2/2b5/3NP3/2P1B3/PP3PPP/RN1QKB1R w KQkq - 4 7", analysis.getFen());
+		assertEquals("12", analysis.getOperand("acd"));
+		assertEquals(List.of("Qd2", "O-O"), analysis.getOperands("pv"));
+		assertEquals(List.of("acd", "hmvc", "fmvn", "pv"), new ArrayList<>(analysis.getOperations().keySet()));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void recordsShouldSurviveWriting() throws IOException {
+		StringWriter text = new StringWriter();
+		try (EpdWriter writer = new EpdWriter(text)) {
+			new EpdReader(new StringReader(SUITE)).forEachRemaining(record -> {
+				try {
+					writer.write(record);
+				} catch (IOException e) {
+					throw new AssertionError(e);
+				}
+			});
+			assertEquals(4, writer.getCount());
+		}
+		List<String> lines = text.toString().lines().toList();
+		assertEquals("2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - bm Qg6; id \"WAC.001\";", lines.get(0));
+		assertEquals(
+			"1kr5/3n4/q3p2p/p2n2p1/PppB1P2/5BP1/1P2Q2P/3R2K1 w - - bm f5; am Qe5; c0 \"f5=10, Be5+=2\";",
+			lines.get(2)
+		);
+		
+		List<EpdRecord> original = new ArrayList<>();
+		new EpdReader(new StringReader(SUITE)).forEachRemaining(original::add);
+		List<EpdRecord> written = new ArrayList<>();
+		new EpdReader(new StringReader(text.toString())).forEachRemaining(written::add);
+		for (int i = 0; i < original.size(); i++) {
+			assertEquals(original.get(i).getOperations(), written.get(i).getOperations());
+		}
+		// the clock fields of the line are not part of the EPD record
+		assertEquals("1kr5/3n4/q3p2p/p2n2p1/PppB1P2/5BP1/1P2Q2P/3R2K1 w - - 0 1", written.get(2).getFen());
+		assertEquals(original.get(3).getFen(), written.get(3).getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void invalidLinesShouldBeReportedWithTheLineNumber() {
+		String lines = "4k3/8/8/8/8/8/8/4K3 w - - bm Kd2;\n\n4k3/8/8/8/8/8/8 w - - bm Kd2;\n4k3/8/8/8/8/8/8/4K3 b - -";
+		List<EpdRecord> records = new ArrayList<>();
+		new EpdReader(new StringReader(lines)).forEachRemaining(records::add);
+		assertEquals(3, records.size());
+		assertNull(records.get(0).getError());
+		EpdRecord invalid = records.get(1);
+		assertEquals(1, invalid.getIndex());
+		assertTrue(invalid.getError().contains("line 3"));
+		assertNull(invalid.getFen());
+		assertTrue(invalid.getOperations().isEmpty());
+		assertThrows(ChessException.class, () -> EpdWriter.format(invalid));
+		assertEquals("4k3/8/8/8/8/8/8/4K3 b - - 0 1", records.get(2).getFen());
+		
+		assertThrows(ChessException.class, () -> EpdReader.parse("4k3/8/8/8/8/8/8/4K3 w -"));
+		assertThrows(ChessException.class, () -> EpdReader.parse("4k3/8/8/8/8/8/8/4K3 w - - id \"open;"));
+		assertThrows(ChessException.class, () -> EpdReader.parse("4k3/8/8/8/8/8/8/4K3 w - - 1bm Kd2;"));
+		assertFalse(new EpdReader(new StringReader("\n  \n")).hasNext());
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+
+/**
+ * Unit tests for the <code>MovementFormatter</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class MovementFormatterTest {
+	
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R2Pp1k/8/6P1/8 b - e3 0 1",
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"6k1/8/8/Q6Q/8/8/8/Q3K3 w - - 0 1"
+	})
+	@SuppressWarnings("javadoc")
+	public void formattedMovementsShouldBeParsedBack(String fen) {
+		Board board = new Board(fen);
+		byte color = board.getSideToMove();
+		Movements movements = board.getMovements(color);
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				Movement movement = new Movement(pieceMovements.getOrigin(), pieceMovements.getTarget(j));
+				String san = MovementFormatter.toSan(board, movement);
+				Movement parsed = MovementParser.parseMovement(san, color, board);
+				assertEquals(movement.getOrigin(), parsed.getOrigin(), san);
+				assertEquals(movement.getTarget().getPosition(), parsed.getTarget().getPosition(), san);
+				assertEquals(movement.getTarget().getPieceCode(), parsed.getTarget().getPieceCode(), san);
+			}
+		}
+		assertEquals(fen, board.getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void disambiguationShouldBeMinimal() {
+		Board board = new Board("6k1/8/8/Q6Q/8/8/8/Q3K3 w - - 0 1");
+		assertEquals("Qe2", san(board, "Qh5-e2"));
+		assertEquals("Q5a3", san(board, "Qa5-a3"));
+		assertEquals("Q1a3", san(board, "Qa1-a3"));
+		assertEquals("Qhd5+", san(board, "Qh5-d5"));
+		assertEquals("Qa1c3", san(new Board("6k1/8/8/Q7/8/8/8/Q3Q2K w - - 0 1"), "Qa1-c3"));
+		Board knights = new Board("r1bqkb1r/pppp1ppp/2n2n2/4p3/4P3/2N2N2/PPPP1PPP/R1BQKB1R w KQkq - 0 1");
+		assertEquals("Nd5", san(knights, "Nc3-d5"));
+		assertEquals("Nxe5", san(knights, "Nf3xe5"));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void suffixesAndSpecialMovementsShouldBeWritten() {
+		assertEquals("a8=Q+", san(new Board("4k3/P7/8/8/8/8/8/4K3 w - - 0 1"), "a7-a8=Q"));
+		assertEquals("cxb8=N", san(new Board("1rb4r/pkPp3p/1b1P3n/1Q6/N3Pp2/8/P1P3PP/7K w - - 1 0"), "c7xb8=N"));
+		assertEquals("exd6", san(new Board("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1"), "e5xd6"));
+		assertEquals("O-O-O+", san(new Board("3k4/8/8/8/8/8/8/R3K3 w Q - 0 1"), "O-O-O"));
+		
+		Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+		StringBuilder builder = new StringBuilder();
+		for (String token : new String[] {
+			"f3",
+			"e5",
+			"g4",
+			"Qh4"
+		}) {
+			Movement movement = MovementParser.parseMovement(token, board.getSideToMove(), board);
+			MovementFormatter.appendLan(board, movement, builder).append(' ');
+			board.move(movement);
+		}
+		assertEquals("f2-f3 e7-e5 g2-g4 Qd8-h4# ", builder.toString());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String san(Board board, String lan) {
+		Movement movement = findByLan(board, lan);
+		return MovementFormatter.toSan(board, movement);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static Movement findByLan(Board board, String lan) {
+		Movements movements = board.getMovements(board.getSideToMove());
+		for (int i = 0; i < movements.getOriginCount(); i++) {
+			PieceMovements pieceMovements = movements.getPieceMovements(i);
+			for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+				Movement movement = new Movement(pieceMovements.getOrigin(), pieceMovements.getTarget(j));
+				if (lan.equals(MovementFormatter.toLan(board, movement).replaceAll("[+#]", ""))) {
+					return movement;
+				}
+			}
+		}
+		throw new AssertionError(lan);
+	}
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementTarget;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.Movements;
+import com.welyab.anjabachen.movement.PieceMovements;
+import com.welyab.anjabachen.movement.Position;
+
+/**
+ * Unit tests for the <code>MovementParser</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class MovementParserTest {
+	
+	@SuppressWarnings("javadoc")
+	private static final int BASIC_FLAGS = MovementUtil.CAPTURE_MASK
+			| MovementUtil.EN_PASSANT_MASK
+			| MovementUtil.CASTLING_MASK
+			| MovementUtil.PROMOTION_MASK;
+	
+	@ParameterizedTest
+	@ValueSource(strings = {
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+		"r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R b KQkq - 0 1",
+		"8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+		"8/2p5/3p4/KP5r/1R2Pp1k/8/6P1/8 b - e3 0 1",
+		"r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+		"rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+		"r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"
+	})
+	@SuppressWarnings("javadoc")
+	public void everyLegalMovementShouldBeResolvedFromItsSquares(String fen) {
+		Board board = new Board(fen);
+		for (byte color : new byte[] {
+			MovementUtil.WHITE,
+			MovementUtil.BLACK
+		}) {
+			Movements movements = board.getMovements(color);
+			for (int i = 0; i < movements.getOriginCount(); i++) {
+				PieceMovements pieceMovements = movements.getPieceMovements(i);
+				Position origin = pieceMovements.getOrigin();
+				byte pieceType = MovementUtil.getPieceType(pieceMovements.getPieceCode());
+				for (int j = 0; j < pieceMovements.getTargertsCount(); j++) {
+					MovementTarget target = pieceMovements.getTarget(j);
+					Position position = target.getPosition();
+					byte promotionType = MovementUtil.isPromotion(target.getFlags())
+							? MovementUtil.getPieceType(target.getPieceCode())
+							: MovementUtil.EMPTY;
+					Movement movement = board.resolveMovement(
+						color,
+						pieceType,
+						origin.row,
+						origin.column,
+						position.row,
+						position.column,
+						promotionType
+					);
+					String description = String.format("%s %s%s", fen, origin, position);
+					assertEquals(origin, movement.getOrigin(), description);
+					assertEquals(target.getPieceCode(), movement.getTarget().getPieceCode(), description);
+					assertEquals(target.getFlags() & BASIC_FLAGS, movement.getTarget().getFlags(), description);
+				}
+			}
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void pawnPushesShouldNotJumpOverPieces() {
+		Board board = new Board("4k3/8/8/8/8/4n3/4P3/4K3 w - - 0 1");
+		assertThrows(ChessException.class, () -> MovementParser.parseMovement("e4", MovementUtil.WHITE, board));
+		assertThrows(ChessException.class, () -> MovementParser.parseMovement("e3", MovementUtil.WHITE, board));
+		Movement push = MovementParser.parseMovement("d5", MovementUtil.BLACK, new Board("4k3/3p4/8/8/8/8/8/4K3 b - - 0 1"));
+		assertEquals(Position.of(1, 3), push.getOrigin());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void enPassantShouldRespectHorizontalPins() {
+		Movement capture = MovementParser.parseMovement(
+			"exd6e.p.",
+			MovementUtil.WHITE,
+			new Board("4k3/8/8/3pP3/8/8/8/4K3 w - d6 0 1")
+		);
+		assertTrue(MovementUtil.isEnPassant(capture.getTarget().getFlags()));
+		assertThrows(
+			ChessException.class,
+			() -> MovementParser.parseMovement("exd6", MovementUtil.WHITE, new Board("8/8/8/K2pP2r/8/8/8/4k3 w - d6 0 1"))
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void promotionShouldDefaultToQueen() {
+		Board board = new Board("4k3/1P6/8/8/8/8/8/4K3 w - - 0 1");
+		Movement queen = MovementParser.parseMovement("b8", MovementUtil.WHITE, board);
+		assertEquals(MovementUtil.WHITE_QUEEN, queen.getTarget().getPieceCode());
+		Movement rook = MovementParser.parseMovement("b8=R+", MovementUtil.WHITE, board);
+		assertEquals(MovementUtil.WHITE_ROOK, rook.getTarget().getPieceCode());
+		assertThrows(ChessException.class, () -> MovementParser.parseMovement("b8=K", MovementUtil.WHITE, board));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void castlingShouldNotCrossAttackedSquares() {
+		Board board = new Board("r3k2r/8/8/8/8/8/8/R3K2R w KQkq - 0 1");
+		Movement kingSide = MovementParser.parseMovement("O-O", MovementUtil.WHITE, board);
+		assertEquals(Position.of(7, 6), kingSide.getTarget().getPosition());
+		assertTrue(MovementUtil.isCastling(kingSide.getTarget().getFlags()));
+		Movement queenSide = MovementParser.parseMovement("0-0-0", MovementUtil.BLACK, board);
+		assertEquals(Position.of(0, 2), queenSide.getTarget().getPosition());
+		Board attacked = new Board("r3k2r/8/8/8/8/8/3r1r2/R3K2R w KQ - 0 1");
+		assertThrows(ChessException.class, () -> MovementParser.parseMovement("O-O", MovementUtil.WHITE, attacked));
+		assertThrows(ChessException.class, () -> MovementParser.parseMovement("O-O-O", MovementUtil.WHITE, attacked));
+		assertThrows(ChessException.class, () -> MovementParser.parseMovement("O-O-", MovementUtil.WHITE, board));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void ambiguousMovementShouldBeRejected() {
+		Board board = new Board("4k3/8/8/8/8/2N3N1/8/4K3 w - - 0 1");
+		ChessException exception = assertThrows(
+			ChessException.class,
+			() -> MovementParser.parseMovement("Ne4", MovementUtil.WHITE, board)
+		);
+		assertEquals("Ambiguous movement: Ne4", exception.getMessage());
+		assertEquals(Position.of(5, 2), MovementParser.parseMovement("Nce4", MovementUtil.WHITE, board).getOrigin());
+	}
+}
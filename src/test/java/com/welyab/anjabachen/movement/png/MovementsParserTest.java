@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Unit tests for the <code>MovementsParser</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class MovementsParserTest {
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void movementsShouldBePlayedInSequence() {
+		MovementsParser parser = new MovementsParser(
+			MovementUtil.FEN_INITIAL_POSITION,
+			"1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 1-0"
+		);
+		assertEquals(10, parser.getMovements().size());
+		assertEquals(
+			"r1bqk2r/1pppbppp/p1n2n2/4p3/B3P3/5N2/PPPP1PPP/RNBQ1RK1 w kq - 4 6",
+			parser.getBoard().getFen()
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void blackFirstAndGluedMoveNumbersShouldBeAccepted() {
+		MovementsParser parser = new MovementsParser(
+			"6k1/pp4p1/2p5/2bp4/8/P5Pb/1P3rrP/2BRRN1K b - - 0 1",
+			"1...Rg1+ 2.Kxg1 Rxf1#"
+		);
+		assertEquals(3, parser.getMovements().size());
+		assertEquals("6k1/pp4p1/2p5/2bp4/8/P5Pb/1P5P/2BRRrK1 w - - 0 3", parser.getBoard().getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void promotionAndDisambiguationShouldBeResolved() {
+		MovementsParser parser = new MovementsParser(
+			"1rb4r/pkPp3p/1b1P3n/1Q6/N3Pp2/8/P1P3PP/7K w - - 1 0",
+			"1. Qd5+ Ka6 2. cxb8=N#"
+		);
+		assertEquals(
+			MovementUtil.WHITE_KNIGHT,
+			parser.getMovements().get(2).getTarget().getPieceCode()
+		);
+		MovementsParser rooks = new MovementsParser("4k3/8/8/8/8/8/4K3/R6R w - - 0 1", "1. Rhd1 Kf7 2. Rab1");
+		assertEquals(3, rooks.getMovements().size());
+		assertEquals("8/5k2/8/8/8/8/4K3/1R1R4 b - - 3 2", rooks.getBoard().getFen());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void pinnedPieceShouldNotBeAmbiguous() {
+		MovementsParser parser = new MovementsParser("4k3/8/8/b7/8/2N3N1/8/4K3 w - - 0 1", "1. Ne4");
+		assertEquals(6, parser.getMovements().get(0).getOrigin().column);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void illegalMovementShouldBeRejected() {
+		assertThrows(
+			ChessException.class,
+			() -> new MovementsParser(MovementUtil.FEN_INITIAL_POSITION, "1. e5").parse()
+		);
+		assertThrows(
+			ChessException.class,
+			() -> new MovementsParser("4k3/8/8/8/8/8/4K3/R6R w - - 0 1", "1. Rd1").parse()
+		);
+	}
+}
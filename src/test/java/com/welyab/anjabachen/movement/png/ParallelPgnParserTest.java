@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Unit tests for the <code>ParallelPgnParser</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class ParallelPgnParserTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private static final String[] OPENINGS = {
+		"1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 {Ruy Lopez} 4. Ba4 Nf6",
+		"1. d4 d5 2. c4 e6 3. Nc3 Nf6",
+		"1. e4 c5 (1... e6 2. d4) 2. Nf3 d6 3. d4 cxd4 4. Nxd4 Nf6 5. Nc3 a6",
+		"1. c4 e5",
+		"1. e4 e5 2. Ke3"
+	};
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void orderedModeShouldMatchSequentialReading() throws IOException, InterruptedException {
+		Path file = writeGames(300);
+		List<ParsedGame> games = new ArrayList<>();
+		long count = ParallelPgnParser.builder()
+			.threads(3)
+			.chunkSize(512)
+			.build()
+			.parse(file, games::add);
+		
+		List<PgnGame> expected = new ArrayList<>();
+		try (PgnReader reader = PgnReader.open(file)) {
+			reader.forEachRemaining(expected::add);
+		}
+		assertEquals(300, count);
+		assertEquals(expected.size(), games.size());
+		for (int i = 0; i < games.size(); i++) {
+			ParsedGame parsed = games.get(i);
+			assertEquals(i, parsed.getGame().getIndex());
+			assertEquals(expected.get(i).getTags(), parsed.getGame().getTags());
+			assertEquals(expected.get(i).getMovetext(), parsed.getGame().getMovetext());
+			assertEquals(i % OPENINGS.length == 4, parsed.isFailed());
+		}
+		assertEquals(8, games.get(0).getMovements().size());
+		assertEquals(2, games.get(4).getMovements().size());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void unorderedModeShouldDeliverAllGames() throws IOException, InterruptedException {
+		Path file = writeGames(200);
+		List<ParsedGame> games = new ArrayList<>();
+		ParallelPgnParser.builder()
+			.threads(4)
+			.chunkSize(300)
+			.ordered(false)
+			.build()
+			.parse(file, games::add);
+		assertEquals(200, games.size());
+		games.sort(Comparator.comparingInt(game -> Integer.parseInt(game.getGame().getTag("Round"))));
+		for (int i = 0; i < games.size(); i++) {
+			assertEquals(Integer.toString(i), games.get(i).getGame().getTag("Round"));
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void gameStartShouldFollowABlankLine() throws IOException, InterruptedException {
+		String text = "[Event \"a\"]\r\n\r\n1. e4 *\r\n[Event \"b\"]\n1. d4 *\n\n[Event \"c\"]\n1. c4 *\n";
+		Path file = directory.resolve("boundaries.pgn");
+		Files.writeString(file, text, StandardCharsets.US_ASCII);
+		try (FileChannel channel = FileChannel.open(file)) {
+			long size = channel.size();
+			assertEquals(text.indexOf("[Event \"c\"]"), ParallelPgnParser.findGameStart(channel, 1, size));
+			assertEquals(size, ParallelPgnParser.findGameStart(channel, text.indexOf("[Event \"c\"]") + 1, size));
+		}
+		List<ParsedGame> games = new ArrayList<>();
+		ParallelPgnParser.builder().threads(2).chunkSize(1).build().parse(file, games::add);
+		assertEquals(3, games.size());
+		assertEquals("c", games.get(2).getGame().getTag("Event"));
+		assertFalse(games.get(0).isFailed());
+		assertNull(games.get(0).getError());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private Path writeGames(int count) throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			String newLine = i % 7 == 0 ? "\r\n" : "\n";
+			text.append("[Event \"Test\"]").append(newLine)
+				.append("[Round \"").append(i).append("\"]").append(newLine)
+				.append("[Result \"*\"]").append(newLine)
+				.append(newLine)
+				.append(OPENINGS[i % OPENINGS.length]).append(" *").append(newLine)
+				.append(newLine);
+		}
+		Path file = directory.resolve("games.pgn");
+		Files.writeString(file, text, StandardCharsets.US_ASCII);
+		return file;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Unit tests for the <code>PgnReader</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class PgnReaderTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private static final String GAMES = String.join(
+		"\n",
+		"% exported by a test",
+		"[Event \"Café \\\"Open\\\"\"]",
+		"[White \"Morphy\"]",
+		"[Black \"Duke\"]",
+		"[Result \"1-0\"]",
+		"",
+		"{Opera game} 1. e4 e5 2. Nf3 d6 3. d4 Bg4?! $6 {weak} {really}",
+		"4. dxe5 (4. c3 (4. h3) Nd7) 4... Bxf3 5. Qxf3 dxe5 6. Bc4! Nf6 ; threatens mate",
+		"7. Qb3 1-0",
+		"",
+		"[Event \"No result marker\"]",
+		"[Result \"1/2-1/2\"]",
+		"",
+		"1.d4 d5 2.c4",
+		"[Event \"Unknown\"]",
+		"",
+		"1. O-O-O *",
+		"",
+		"1. e4 0-1",
+		""
+	);
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void gamesShouldBeReadWithTagsAndAnnotations() {
+		List<PgnGame> games = readAll(GAMES, 7);
+		assertEquals(4, games.size());
+		
+		PgnGame opera = games.get(0);
+		assertEquals(0, opera.getIndex());
+		assertEquals(List.of("Event", "White", "Black", "Result"), List.copyOf(opera.getTags().keySet()));
+		assertEquals("Café \"Open\"", opera.getTag("Event"));
+		assertEquals("1-0", opera.getResult());
+		assertEquals(MovementUtil.FEN_INITIAL_POSITION, opera.getFen());
+		assertEquals("Opera game", opera.getComment());
+		assertEquals("e4 e5 Nf3 d6 d4 Bg4 dxe5 Bxf3 Qxf3 dxe5 Bc4 Nf6 Qb3", opera.getMovetext());
+		
+		PgnMovement bg4 = opera.getMovements().get(5);
+		assertEquals(List.of(6, 6), bg4.getNags());
+		assertEquals("weak really", bg4.getComment());
+		PgnMovement dxe5 = opera.getMovements().get(6);
+		assertEquals(1, dxe5.getVariations().size());
+		List<PgnMovement> variation = dxe5.getVariations().get(0);
+		assertEquals(List.of("c3", "Nd7"), variation.stream().map(PgnMovement::getSan).collect(Collectors.toList()));
+		assertEquals("h3", variation.get(0).getVariations().get(0).get(0).getSan());
+		assertEquals(List.of(1), opera.getMovements().get(10).getNags());
+		assertEquals("threatens mate", opera.getMovements().get(11).getComment());
+		assertNull(opera.getMovements().get(12).getComment());
+		
+		assertEquals("d4 d5 c4", games.get(1).getMovetext());
+		assertEquals("1/2-1/2", games.get(1).getResult());
+		assertEquals("O-O-O", games.get(2).getMovetext());
+		assertEquals(PgnGame.UNKNOWN_RESULT, games.get(2).getResult());
+		assertFalse(games.get(3).getTags().containsKey("Event"));
+		assertEquals("0-1", games.get(3).getResult());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void malformedTagShouldNotStopTheReader() {
+		PgnReader reader = new PgnReader(
+			new ByteArrayInputStream("[Event \"Broken]\n1. e4 *\n\n[Event \"Fine\"]\n1. d4 *\n".getBytes(StandardCharsets.UTF_8))
+		);
+		assertThrows(ChessException.class, reader::hasNext);
+		assertEquals("e4", reader.next().getMovetext());
+		assertEquals("Fine", reader.next().getTag("Event"));
+		assertFalse(reader.hasNext());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void unterminatedCommentShouldNotStopTheReader() {
+		String text = "[Event \"Broken\"]\n\n1. e4 {never closed\n2. Nf3 *\n\n"
+				+ "[Event \"Fine\"]\n\n1. d4 {closed} d5 *\n\n"
+				+ "[Event \"Last\"]\n\n1. c4 {" + "x".repeat(3 * PgnReader.MAX_COMMENT_LENGTH);
+		PgnReader reader = new PgnReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+		ChessException exception = assertThrows(ChessException.class, reader::hasNext);
+		assertEquals("Unterminated PGN comment at line 3", exception.getMessage());
+		PgnGame game = reader.next();
+		assertEquals("Fine", game.getTag("Event"));
+		assertEquals("d4 d5", game.getMovetext());
+		assertEquals("closed", game.getMovements().get(0).getComment());
+		assertThrows(ChessException.class, reader::hasNext);
+		assertFalse(reader.hasNext());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void filesShouldBeReadOneGameAtATime() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			text.append(String.format("[Round \"%d\"]%n[Result \"*\"]%n%n1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 *%n%n", i));
+		}
+		Path file = directory.resolve("games.pgn");
+		Files.writeString(file, text, StandardCharsets.UTF_8);
+		long count = 0;
+		try (PgnReader reader = PgnReader.open(file)) {
+			while (reader.hasNext()) {
+				PgnGame game = reader.next();
+				assertEquals(Long.toString(count), game.getTag("Round"));
+				MovementsParser parser = new MovementsParser(game.getFen(), game.getMovetext());
+				assertEquals(6, parser.getMovements().size());
+				count++;
+			}
+		}
+		assertEquals(500, count);
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<PgnGame> readAll(String text, int bufferSize) {
+		PgnReader reader = new PgnReader(
+			Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))),
+			StandardCharsets.UTF_8,
+			bufferSize
+		);
+		List<PgnGame> games = new ArrayList<>();
+		reader.forEachRemaining(games::add);
+		return games;
+	}
+}
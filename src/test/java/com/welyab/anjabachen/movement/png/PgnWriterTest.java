@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.movement.png;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.Movement;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Unit tests for the <code>PgnWriter</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class PgnWriterTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	Path directory;
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void playedMovementsShouldBeWrittenWithNumbersAndComments() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (PgnWriter writer = new PgnWriter(Channels.newChannel(output), 32)) {
+			writer.writeTag("Event", "Café \"Open\"");
+			writer.writeTag("Result", "0-1");
+			Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+			StringBuilder evaluation = new StringBuilder();
+			for (String san : new String[] {
+				"f3",
+				"e5",
+				"g4",
+				"Qh4"
+			}) {
+				Movement movement = MovementParser.parseMovement(san, board.getSideToMove(), board);
+				writer.writeMovement(board, movement);
+				if (san.equals("e5")) {
+					evaluation.setLength(0);
+					evaluation.append("-0.85/18 book");
+					writer.writeComment(evaluation);
+				}
+			}
+			writer.endGame("0-1");
+			assertEquals(1, writer.getCount());
+		}
+		assertEquals(
+			String.join(
+				"\n",
+				"[Event \"Café \\\"Open\\\"\"]",
+				"[Result \"0-1\"]",
+				"",
+				"1. f3 e5 {-0.85/18 book} 2. g4 Qh4# 0-1",
+				"",
+				""
+			),
+			output.toString(StandardCharsets.UTF_8)
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void readGamesShouldBeWrittenBackWithVariations() throws IOException {
+		String text = String.join(
+			"\n",
+			"[Event \"Opera\"]",
+			"[Result \"1-0\"]",
+			"",
+			"{Opera game} 1. e4 e5 2. Nf3 d6 3. d4 Bg4?! $6 {weak} 4. dxe5 (4. c3 (4. h3) Nd7)",
+			"4... Bxf3 5. Qxf3 dxe5 6. Bc4! Nf6 7. Qb3 1-0",
+			"",
+			"[FEN \"4k3/8/8/8/8/8/4K3/R6R b - - 0 12\"]",
+			"",
+			"12... Kf7 13. Rhd1 *",
+			""
+		);
+		List<PgnGame> games = read(text);
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (PgnWriter writer = new PgnWriter(Channels.newChannel(output))) {
+			for (PgnGame game : games) {
+				writer.write(game);
+			}
+		}
+		String written = output.toString(StandardCharsets.UTF_8);
+		String lines = "{Opera game} 1. e4 e5 2. Nf3 d6 3. d4 Bg4 $6 $6 {weak} 4. dxe5 (4. c3 (4. h3)\n"
+				+ "4... Nd7) 4... Bxf3 5. Qxf3 dxe5 6. Bc4 $1 Nf6 7. Qb3 1-0\n";
+		assertTrue(written.contains(lines), written);
+		assertTrue(written.contains("\n12... Kf7 13. Rhd1 *\n"), written);
+		List<PgnGame> again = read(written);
+		assertEquals(games.size(), again.size());
+		for (int i = 0; i < games.size(); i++) {
+			assertEquals(games.get(i).getTags(), again.get(i).getTags());
+			assertEquals(games.get(i).getMovetext(), again.get(i).getMovetext());
+			assertEquals(games.get(i).getResult(), again.get(i).getResult());
+		}
+		PgnMovement dxe5 = again.get(0).getMovements().get(6);
+		assertEquals("h3", dxe5.getVariations().get(0).get(0).getVariations().get(0).get(0).getSan());
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void incompleteFenTagsShouldNumberFromTheFirstMove() throws IOException {
+		String text = "[FEN \"4k3/8/8/8/8/8/4K3/R6R b - -\"]\n\n1... Kf7 2. Rhd1 *\n";
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (PgnWriter writer = new PgnWriter(Channels.newChannel(output))) {
+			writer.write(read(text).get(0));
+		}
+		String written = output.toString(StandardCharsets.UTF_8);
+		assertTrue(written.contains("\n1... Kf7 2. Rhd1 *\n"), written);
+		
+		assertEquals(0, PgnWriter.initialPly(MovementUtil.FEN_INITIAL_POSITION));
+		assertEquals(23, PgnWriter.initialPly("4k3/8/8/8/8/8/4K3/R6R b - - 0 12"));
+		assertEquals(1, PgnWriter.initialPly("4k3/8/8/8/8/8/4K3/R6R b"));
+		assertEquals(0, PgnWriter.initialPly("4k3/8/8/8/8/8/4K3/R6R w - - 0 x"));
+		assertEquals(0, PgnWriter.initialPly(""));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void movetextShouldBeWrappedAtTheLineWidth() throws IOException {
+		String comment = "an engine evaluation with a fairly long explanation of the position";
+		Path file = directory.resolve("games.pgn");
+		try (PgnWriter writer = PgnWriter.open(file)) {
+			for (int i = 0; i < 1000; i++) {
+				writer.writeTag("Round", Integer.toString(i));
+				Board board = new Board(MovementUtil.FEN_INITIAL_POSITION);
+				for (Movement movement : new MovementsParser(
+					MovementUtil.FEN_INITIAL_POSITION,
+					"1. e4 e5 2. Nf3 Nc6 3. Bb5 a6 4. Ba4 Nf6 5. O-O Be7 6. Re1 b5 7. Bb3 d6 8. c3 O-O"
+				).getMovements()) {
+					writer.writeMovement(board, movement);
+					writer.writeComment(comment);
+				}
+				writer.endGame("*");
+			}
+		}
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		for (String line : lines) {
+			assertTrue(line.length() <= PgnWriter.LINE_WIDTH, line);
+		}
+		List<PgnGame> games;
+		try (PgnReader reader = PgnReader.open(file)) {
+			games = new ArrayList<>();
+			reader.forEachRemaining(games::add);
+		}
+		assertEquals(1000, games.size());
+		assertEquals("999", games.get(999).getTag("Round"));
+		assertEquals(16, games.get(999).getMovements().size());
+		assertEquals(comment, games.get(999).getMovements().get(15).getComment().replace('\n', ' '));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static List<PgnGame> read(String text) {
+		List<PgnGame> games = new ArrayList<>();
+		new PgnReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))).forEachRemaining(games::add);
+		return games;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.ChessException;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.checkmate.MateSolution;
+import com.welyab.anjabachen.movement.checkmate.MateSolver;
+
+/**
+ * Unit tests for the <code>TablebaseGenerator</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class TablebaseGeneratorTest {
+	
+	@SuppressWarnings("javadoc")
+	private static TablebaseGenerator generator;
+	
+	@BeforeAll
+	@SuppressWarnings("javadoc")
+	public static void generate() {
+		generator = TablebaseGenerator.builder().threads(2).build();
+		generator.generate("KQvK");
+		generator.generate("KRvK");
+		generator.generate("KPvK");
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void longestMatesShouldHaveTheKnownLength() {
+		assertEquals(19, maxDistance(generator.generate("KQvK")));
+		assertEquals(31, maxDistance(generator.generate("KRvK")));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void flippedMaterialShouldShareTheTable() {
+		Tablebase table = generator.generate("KvKR");
+		assertEquals("KRvK", table.getMaterial().toString());
+		assertEquals(1, table.probeDtm(new Board("7K/8/6k1/8/8/8/8/r7 b - - 0 1")));
+		assertEquals(Tablebase.LOSS, table.probeWdl(new Board("7K/8/6k1/8/8/8/8/r7 w - - 0 1")));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void distancesShouldMatchTheMateSolver() {
+		Tablebase table = generator.generate("KRvK");
+		MateSolver solver = new MateSolver();
+		Random random = new Random(7);
+		int checked = 0;
+		while (checked < 60) {
+			Board board;
+			int distance;
+			try {
+				board = new Board(randomFen(random, 'R'));
+				distance = table.probeDtm(board);
+			} catch (ChessException e) {
+				continue;
+			}
+			if (distance < 0 || distance > 7 && checked % 3 != 0) {
+				continue;
+			}
+			Optional<MateSolution> solution = solver.solve(board, 3);
+			if (distance <= 5) {
+				assertEquals((distance + 1) / 2, solution.get().getMateIn(), board.getFen());
+			} else {
+				assertTrue(solution.isEmpty(), board.getFen());
+			}
+			checked++;
+		}
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void pawnEndingsShouldBeSolved() {
+		Tablebase table = generator.generate("KPvK");
+		assertEquals(Tablebase.WIN, table.probeWdl(new Board("4k3/8/4K3/4P3/8/8/8/8 w - - 0 1")));
+		assertEquals(Tablebase.DRAW, table.probeWdl(new Board("4k3/8/4P3/4K3/8/8/8/8 w - - 0 1")));
+		assertEquals(Tablebase.DRAW, table.probeWdl(new Board("4k3/8/4P3/4K3/8/8/8/8 b - - 0 1")));
+		assertEquals(Tablebase.DRAW, table.probeWdl(new Board("7k/8/7K/7P/8/8/8/8 w - - 0 1")));
+		assertEquals(1, table.probeDtm(new Board("k7/2P5/1K6/8/8/8/8/8 w - - 0 1")));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void tablesShouldBeWritten(@TempDir Path directory) throws IOException {
+		TablebaseGenerator writer = TablebaseGenerator.builder().threads(1).directory(directory).build();
+		writer.generate("KQvK");
+		assertTrue(Files.exists(directory.resolve("KvK.atb")));
+		assertTrue(Files.size(directory.resolve("KQvK.atb")) > Tablebase.HEADER_SIZE);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void tooManyPiecesShouldBeRejected() {
+		assertThrows(ChessException.class, () -> generator.generate("KQRBvKN"));
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static int maxDistance(Tablebase table) {
+		int max = -1;
+		for (long entry = 0; entry < table.getIndex().size(); entry++) {
+			int code = table.getCode(entry, MovementUtil.WHITE);
+			if (code > Tablebase.ILLEGAL_CODE) {
+				max = Math.max(max, code - 2);
+			}
+		}
+		return max;
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String randomFen(Random random, char piece) {
+		char[] board = new char[64];
+		Arrays.fill(board, '1');
+		board[random.nextInt(64)] = 'K';
+		int square = random.nextInt(64);
+		if (board[square] != '1') {
+			return "";
+		}
+		board[square] = 'k';
+		square = random.nextInt(64);
+		if (board[square] != '1') {
+			return "";
+		}
+		board[square] = piece;
+		StringBuilder fen = new StringBuilder();
+		for (int row = 0; row < 8; row++) {
+			fen.append(board, row * 8, 8).append(row < 7 ? "/" : "");
+		}
+		return fen + " w - - 0 1";
+	}
+}
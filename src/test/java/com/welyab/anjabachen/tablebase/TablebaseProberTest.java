@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.tablebase;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.engine.SearchInfo;
+import com.welyab.anjabachen.engine.SearchLimits;
+import com.welyab.anjabachen.engine.Searcher;
+import com.welyab.anjabachen.engine.TranspositionTable;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementUtil;
+
+/**
+ * Unit tests for the <code>TablebaseProber</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class TablebaseProberTest {
+	
+	@TempDir
+	@SuppressWarnings("javadoc")
+	static Path directory;
+	
+	@SuppressWarnings("javadoc")
+	private static TablebaseGenerator generator;
+	
+	@BeforeAll
+	@SuppressWarnings("javadoc")
+	public static void generate() {
+		generator = TablebaseGenerator.builder().threads(2).directory(directory).build();
+		generator.generate("KQvK");
+		generator.generate("KRvK");
+		generator.generate("KPvK");
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void probesShouldMatchTheGeneratedTables() throws IOException {
+		TablebaseProber prober = TablebaseProber.open(directory, 512, 3);
+		assertEquals(3, prober.getMaxPieces());
+		Random random = new Random(11);
+		for (String signature : new String[] {
+			"KQvK",
+			"KRvK",
+			"KPvK"
+		}) {
+			Tablebase table = generator.generate(signature);
+			int[] squares = new int[table.getMaterial().size()];
+			int checked = 0;
+			while (checked < 300) {
+				long entry = (long) (random.nextDouble() * table.getIndex().size());
+				byte sideToMove = random.nextBoolean() ? MovementUtil.WHITE : MovementUtil.BLACK;
+				if (table.getCode(entry, sideToMove) == Tablebase.ILLEGAL_CODE) {
+					continue;
+				}
+				table.getIndex().decode(entry, squares);
+				Board board = new Board(toFen(table.getMaterial(), squares, sideToMove, false));
+				Board flipped = new Board(toFen(table.getMaterial(), squares, sideToMove, true));
+				int distance = table.probeDtm(board);
+				assertEquals(distance, prober.probeDtm(board), board.getFen());
+				assertEquals(distance, prober.probeDtm(flipped), flipped.getFen());
+				assertEquals(table.probeWdl(board), prober.probeWdl(flipped), flipped.getFen());
+				checked++;
+			}
+		}
+		assertTrue(prober.getMappedRegions() <= 3);
+		assertTrue(prober.getMappings() > 3);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void mappedRegionsShouldBeFoundAfterEvictions() throws IOException {
+		// small regions, so the entries of the region hash table are removed and moved many times
+		TablebaseProber prober = TablebaseProber.open(directory, 64, 100);
+		Tablebase table = generator.generate("KRvK");
+		Random random = new Random(5);
+		int[] squares = new int[table.getMaterial().size()];
+		for (int checked = 0; checked < 2000;) {
+			long entry = (long) (random.nextDouble() * table.getIndex().size());
+			if (table.getCode(entry, MovementUtil.WHITE) == Tablebase.ILLEGAL_CODE) {
+				continue;
+			}
+			table.getIndex().decode(entry, squares);
+			Board board = new Board(toFen(table.getMaterial(), squares, MovementUtil.WHITE, false));
+			assertEquals(table.probeDtm(board), prober.probeDtm(board), board.getFen());
+			long mappings = prober.getMappings();
+			assertEquals(table.probeDtm(board), prober.probeDtm(board), board.getFen());
+			assertEquals(mappings, prober.getMappings());
+			checked++;
+		}
+		assertEquals(100, prober.getMappedRegions());
+		assertTrue(prober.getMappings() > 200);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void concurrentProbesShouldMatchTheGeneratedTables() throws IOException, InterruptedException {
+		TablebaseProber prober = TablebaseProber.open(directory, 256, 2);
+		Tablebase table = generator.generate("KRvK");
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			Random random = new Random(i);
+			threads[i] = new Thread(() -> {
+				try {
+					int[] squares = new int[table.getMaterial().size()];
+					for (int checked = 0; checked < 500;) {
+						long entry = (long) (random.nextDouble() * table.getIndex().size());
+						byte sideToMove = random.nextBoolean() ? MovementUtil.WHITE : MovementUtil.BLACK;
+						if (table.getCode(entry, sideToMove) == Tablebase.ILLEGAL_CODE) {
+							continue;
+						}
+						table.getIndex().decode(entry, squares);
+						Board board = new Board(toFen(table.getMaterial(), squares, sideToMove, false));
+						assertEquals(table.probeDtm(board), prober.probeDtm(board), board.getFen());
+						checked++;
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertNull(failure.get());
+		assertTrue(prober.getMappedRegions() <= 2);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void positionsWithoutTablesShouldBeUnavailable() throws IOException {
+		TablebaseProber prober = TablebaseProber.open(directory);
+		assertEquals(
+			TablebaseProber.UNAVAILABLE,
+			prober.probeDtm(new Board(MovementUtil.FEN_INITIAL_POSITION))
+		);
+		assertEquals(
+			TablebaseProber.UNAVAILABLE,
+			prober.probeWdl(new Board("4k3/8/8/8/8/8/8/R3K3 w Q - 0 1"))
+		);
+		assertEquals(
+			TablebaseProber.UNAVAILABLE,
+			prober.probeWdl(new Board("4k3/8/8/8/8/8/8/R2RK3 w - - 0 1"))
+		);
+		assertEquals(
+			Tablebase.DRAW,
+			prober.probeWdl(new Board("4k3/8/8/8/8/8/8/B3K3 w - - 0 1"))
+		);
+		assertEquals(
+			Tablebase.DRAW,
+			prober.probeWdl(new Board("4k3/8/8/8/4P3/8/8/4K3 b - e3 0 1"))
+		);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void searchShouldUseTheTablebases() throws IOException {
+		Board board = new Board("8/8/8/4k3/8/8/8/R3K3 w - - 0 1");
+		int distance = generator.generate("KRvK").probeDtm(board);
+		Searcher searcher = new Searcher(new TranspositionTable(1));
+		searcher.setTablebases(TablebaseProber.open(directory));
+		SearchInfo info = searcher.search(board, SearchLimits.ofDepth(2));
+		assertTrue(info.isMateScore());
+		assertEquals((distance + 1) / 2, info.getMateDistance());
+	}
+	
+	@SuppressWarnings("javadoc")
+	private static String toFen(Material material, int[] squares, byte sideToMove, boolean flip) {
+		char[] board = new char[64];
+		for (int i = 0; i < 64; i++) {
+			board[i] = '1';
+		}
+		for (int i = 0; i < squares.length; i++) {
+			byte piece = material.getPiece(i);
+			char letter = MovementUtil.pieceCodeToLetter(flip ? (byte) -piece : piece);
+			board[flip ? squares[i] ^ 56 : squares[i]] = letter;
+		}
+		StringBuilder fen = new StringBuilder();
+		for (int row = 0; row < 8; row++) {
+			fen.append(board, row * 8, 8).append(row < 7 ? "/" : "");
+		}
+		byte side = flip ? MovementUtil.getOppositeColor(sideToMove) : sideToMove;
+		return fen.append(' ').append(MovementUtil.colorCodeToLetter(side)).append(" - - 0 1").toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2019 Welyab da Silva Paula
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.welyab.anjabachen.uci;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.welyab.anjabachen.book.PolyglotBook;
+import com.welyab.anjabachen.movement.Board;
+import com.welyab.anjabachen.movement.MovementUtil;
+import com.welyab.anjabachen.movement.ZobristKey;
+
+/**
+ * Unit tests for the <code>UciServer</code> class.
+ * 
+ * @author Welyab Paula
+ */
+public class UciServerTest {
+	
+	@SuppressWarnings("javadoc")
+	private static List<String> run(String... commands) throws IOException {
+		String script = Arrays.stream(commands).collect(Collectors.joining("\n", "", "\n"));
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new UciServer(new ByteArrayInputStream(script.getBytes(StandardCharsets.US_ASCII)), output).run();
+		return Arrays.asList(output.toString(StandardCharsets.US_ASCII).split("\\R"));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void handshakeShouldAnswerUciokAndReadyok() throws IOException {
+		List<String> lines = run("uci", "isready", "quit");
+		assertTrue(lines.contains("id name AN.JA.BA.CH.EN"));
+		assertTrue(lines.contains("uciok"));
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("option name Hash type spin")));
+		assertEquals("readyok", lines.get(lines.size() - 1));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void goShouldReportInfoAndBestMove() throws IOException {
+		List<String> lines = run(
+			"setoption name Hash value 2",
+			"position fen 6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1",
+			"go depth 2"
+		);
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("info depth 1 ")));
+		assertTrue(lines.stream().anyMatch(line -> line.contains("score mate 1")));
+		assertEquals("bestmove a1a8", lines.get(lines.size() - 1));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void positionShouldApplyMovements() throws IOException {
+		List<String> lines = run(
+			"position startpos moves f2f3 e7e5 g2g4",
+			"go depth 2"
+		);
+		assertEquals("bestmove d8h4", lines.get(lines.size() - 1));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void stopShouldEndInfiniteSearch() throws IOException {
+		List<String> lines = run(
+			"position startpos",
+			"go infinite",
+			"isready",
+			"stop"
+		);
+		assertTrue(lines.contains("readyok"));
+		assertTrue(lines.get(lines.size() - 1).startsWith("bestmove "));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void invalidMovementShouldBeReported() throws IOException {
+		List<String> lines = run("position startpos moves e2e5");
+		assertTrue(lines.get(0).startsWith("info string Invalid position"));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void ponderSearchShouldWaitForPonderhit() throws IOException {
+		List<String> lines = run(
+			"position startpos moves e2e4 e7e5",
+			"go ponder depth 3",
+			"isready",
+			"ponderhit"
+		);
+		String bestMove = lines.get(lines.size() - 1);
+		assertTrue(bestMove.matches("bestmove \\w{4} ponder \\w{4}"), bestMove);
+		assertTrue(lines.indexOf("readyok") < lines.size() - 1);
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void multiPvOptionShouldReportSeveralLines() throws IOException {
+		List<String> lines = run(
+			"setoption name MultiPV value 2",
+			"position startpos",
+			"go depth 2"
+		);
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("info depth 2 ") && line.contains(" multipv 1 ")));
+		assertTrue(lines.stream().anyMatch(line -> line.startsWith("info depth 2 ") && line.contains(" multipv 2 ")));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void ownBookShouldAnswerBookMovements(@TempDir Path directory) throws IOException {
+		Path book = directory.resolve("book.bin");
+		ByteBuffer entry = ByteBuffer.allocate(16)
+			.putLong(ZobristKey.of(new Board(MovementUtil.FEN_INITIAL_POSITION), PolyglotBook.getDefaultRandoms()))
+			.putShort((short) (1 << 9 | 6 << 6 | 3 << 3 | 6))
+			.putShort((short) 1)
+			.putInt(0);
+		Files.write(book, entry.array());
+		List<String> lines = run(
+			"setoption name BookFile value " + book,
+			"setoption name OwnBook value true",
+			"position startpos",
+			"go depth 5"
+		);
+		assertEquals("bestmove g2g4", lines.get(lines.size() - 1));
+		assertTrue(lines.stream().noneMatch(line -> line.startsWith("info depth")));
+	}
+	
+	@Test
+	@SuppressWarnings("javadoc")
+	public void bookRandomsOptionShouldReopenTheBook(@TempDir Path directory) throws IOException {
+		long[] randoms = new long[ZobristKey.RANDOM_VALUES_COUNT];
+		Random random = new Random(9);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < randoms.length; i++) {
+			randoms[i] = random.nextLong();
+			text.append(String.format("0x%016X,%n", randoms[i]));
+		}
+		Path randomsFile = directory.resolve("randoms.txt");
+		Files.writeString(randomsFile, text);
+		Path book = directory.resolve("book.bin");
+		ByteBuffer entry = ByteBuffer.allocate(16)
+			.putLong(ZobristKey.of(new Board(MovementUtil.FEN_INITIAL_POSITION), randoms))
+			.putShort((short) (1 << 9 | 6 << 6 | 3 << 3 | 6))
+			.putShort((short) 1)
+			.putInt(0);
+		Files.write(book, entry.array());
+		List<String> lines = run(
+			"setoption name OwnBook value true",
+			"setoption name BookFile value " + book,
+			"setoption name BookRandoms value " + randomsFile,
+			"position startpos",
+			"go depth 1"
+		);
+		assertEquals("bestmove g2g4", lines.get(lines.size() - 1));
+	}
+}